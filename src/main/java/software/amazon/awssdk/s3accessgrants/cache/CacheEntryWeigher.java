@@ -0,0 +1,78 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.awssdk.s3accessgrants.cache;
+
+import software.amazon.awssdk.identity.spi.AwsCredentialsIdentity;
+import software.amazon.awssdk.identity.spi.AwsSessionCredentialsIdentity;
+import software.amazon.awssdk.services.s3control.model.S3ControlException;
+
+/**
+ * Estimates the heap used by cache entries in bytes, so caches can be bounded by memory instead of entry count.
+ * The estimate assumes a 64-bit JVM with compressed references and two bytes per character. It counts the strings held by
+ * the key and the value and a fixed overhead for the objects around them, including the cache entry itself.
+ */
+final class CacheEntryWeigher {
+
+    private static final int OBJECT_HEADER_BYTES = 16;
+    private static final int STRING_BYTES = 24 + OBJECT_HEADER_BYTES;
+    // Caffeine node with expiry, weight and access order links.
+    private static final int CACHE_ENTRY_BYTES = 96;
+    private static final int CACHE_KEY_BYTES = 32;
+    private static final int CREDENTIALS_BYTES = 32;
+    private static final int COMPLETABLE_FUTURE_BYTES = 24;
+    // Stack trace, SDK error details and response metadata kept by the exception.
+    private static final int EXCEPTION_BYTES = 1024;
+
+    private CacheEntryWeigher() {
+    }
+
+    /**
+     * @return estimated size of an Access Grants cache entry in bytes.
+     */
+    static int weigh(CacheKey cacheKey, AwsCredentialsIdentity credentials) {
+        return saturatedInt(CACHE_ENTRY_BYTES + weigh(cacheKey) + COMPLETABLE_FUTURE_BYTES + weigh(credentials));
+    }
+
+    /**
+     * @return estimated size of an Access Denied cache entry in bytes.
+     */
+    static int weigh(CacheKey cacheKey, S3ControlException exception) {
+        return saturatedInt(CACHE_ENTRY_BYTES + weigh(cacheKey) + EXCEPTION_BYTES + weigh(exception.getMessage()));
+    }
+
+    private static long weigh(CacheKey cacheKey) {
+        return CACHE_KEY_BYTES + weigh(cacheKey.s3Prefix) + weigh(cacheKey.principal) + weigh(cacheKey.credentials);
+    }
+
+    private static long weigh(AwsCredentialsIdentity credentials) {
+        if (credentials == null) {
+            return 0;
+        }
+        long bytes = CREDENTIALS_BYTES + weigh(credentials.accessKeyId()) + weigh(credentials.secretAccessKey());
+        if (credentials instanceof AwsSessionCredentialsIdentity) {
+            bytes += weigh(((AwsSessionCredentialsIdentity) credentials).sessionToken());
+        }
+        return bytes;
+    }
+
+    private static long weigh(String value) {
+        return value == null ? 0 : STRING_BYTES + 2L * value.length();
+    }
+
+    private static int saturatedInt(long bytes) {
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+}
@@ -24,12 +24,25 @@ public class CacheKey {
     final AwsCredentialsIdentity credentials;
     final Permission permission;
     final String s3Prefix;
+    // Stable identity of the requester e.g., the caller ARN. When set it is used for keying instead of the credentials.
+    final String principal;
+    // Cache keys are probed on every request, the hash is computed once since the key is immutable.
+    private final int hashCode;
 
-    private CacheKey(AwsCredentialsIdentity credentials, Permission permission, String s3Prefix) {
+    private CacheKey(AwsCredentialsIdentity credentials, Permission permission, String s3Prefix, String principal) {
 
         this.credentials = credentials;
         this.permission = permission;
         this.s3Prefix = s3Prefix;
+        this.principal = principal;
+        this.hashCode = Objects.hash(identity(), permission, s3Prefix);
+    }
+
+    /**
+     * @return the principal if the key was built with one, the credentials otherwise.
+     */
+    Object identity() {
+        return principal != null ? principal : credentials;
     }
 
     public CacheKey.Builder toBuilder() {
@@ -50,7 +63,8 @@ public class CacheKey {
             return false;
         }
         CacheKey cacheKey = (CacheKey) o;
-        return Objects.equals(credentials, cacheKey.credentials) &&
+        return hashCode == cacheKey.hashCode &&
+               Objects.equals(identity(), cacheKey.identity()) &&
                Objects.equals(s3Prefix, cacheKey.s3Prefix) &&
                Objects.equals(permission, cacheKey.permission);
     }
@@ -58,7 +72,7 @@ public class CacheKey {
     @Override
     public int hashCode() {
 
-        return Objects.hash(credentials, permission, s3Prefix);
+        return hashCode;
     }
 
     public interface Builder {
@@ -70,12 +84,15 @@ public class CacheKey {
 
         CacheKey.Builder s3Prefix(String s3Prefix);
 
+        CacheKey.Builder principal(String principal);
+
     }
 
     static final class BuilderImpl implements CacheKey.Builder {
         private AwsCredentialsIdentity credentials;
         private Permission permission;
         private String s3Prefix;
+        private String principal;
 
         private BuilderImpl() {
         }
@@ -84,11 +101,12 @@ public class CacheKey {
             credentials(CacheKey.credentials);
             permission(CacheKey.permission);
             s3Prefix(CacheKey.s3Prefix);
+            principal(CacheKey.principal);
         }
 
         @Override
         public CacheKey build() {
-            return new CacheKey(credentials, permission, s3Prefix);
+            return new CacheKey(credentials, permission, s3Prefix, principal);
         }
 
         @Override
@@ -108,6 +126,12 @@ public class CacheKey {
             this.s3Prefix = s3Prefix;
             return this;
         }
+
+        @Override
+        public Builder principal(String principal) {
+            this.principal = principal;
+            return this;
+        }
     }
 
 
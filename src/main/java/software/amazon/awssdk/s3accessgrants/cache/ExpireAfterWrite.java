@@ -0,0 +1,48 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.awssdk.s3accessgrants.cache;
+
+import com.github.benmanes.caffeine.cache.Expiry;
+import java.time.Duration;
+
+/**
+ * Expires entries a fixed time after they are written, like Caffeine's expireAfterWrite.
+ * Unlike expireAfterWrite, entries can also be added with a shorter remaining time, e.g. entries restored by
+ * {@link S3AccessGrantsResolverSnapshot} keep the expiry they had when the snapshot was written.
+ */
+final class ExpireAfterWrite<K, V> implements Expiry<K, V> {
+
+    private final long expireAfterWriteNanos;
+
+    ExpireAfterWrite(Duration expireAfterWrite) {
+        this.expireAfterWriteNanos = expireAfterWrite.toNanos();
+    }
+
+    @Override
+    public long expireAfterCreate(K key, V value, long currentTime) {
+        return expireAfterWriteNanos;
+    }
+
+    @Override
+    public long expireAfterUpdate(K key, V value, long currentTime, long currentDuration) {
+        return expireAfterWriteNanos;
+    }
+
+    @Override
+    public long expireAfterRead(K key, V value, long currentTime, long currentDuration) {
+        return currentDuration;
+    }
+}
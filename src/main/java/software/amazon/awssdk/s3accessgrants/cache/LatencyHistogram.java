@@ -0,0 +1,159 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.awssdk.s3accessgrants.cache;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with fixed buckets in the style of HdrHistogram. Latencies are recorded in microseconds, the buckets are exact
+ * up to 8 microseconds and every power of two above is split into 8 buckets, so a percentile is at most 12.5% above the latency
+ * that was recorded. Latencies above 2^31 microseconds, about 35 minutes, are counted in the last bucket.
+ * Memory does not depend on the number of latencies recorded and recording does not take a lock.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 30;
+    static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder totalMicros = new LongAdder();
+    // counts at the previous delta, guarded by this.
+    private final long[] reportedBuckets = new long[BUCKETS];
+    private long reportedTotalMicros;
+
+    public void record(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        buckets.incrementAndGet(bucket(micros));
+        totalMicros.add(micros);
+    }
+
+    /**
+     * @return the latencies recorded since the histogram was created.
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return new Snapshot(counts, totalMicros.sum());
+    }
+
+    /**
+     * @return the latencies recorded since the previous delta.
+     */
+    public synchronized Snapshot delta() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = buckets.get(i);
+            counts[i] = count - reportedBuckets[i];
+            reportedBuckets[i] = count;
+        }
+        long total = totalMicros.sum();
+        Snapshot delta = new Snapshot(counts, total - reportedTotalMicros);
+        reportedTotalMicros = total;
+        return delta;
+    }
+
+    static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the highest latency in microseconds counted in the bucket.
+     */
+    static long highestMicros(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Latencies recorded by a histogram, percentiles are the highest latency of the bucket they fall in.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long totalMicros;
+
+        private Snapshot(long[] counts, long totalMicros) {
+            long count = 0;
+            for (long bucketCount : counts) {
+                count += bucketCount;
+            }
+            this.counts = counts;
+            this.count = count;
+            this.totalMicros = totalMicros;
+        }
+
+        static Snapshot empty() {
+            return new Snapshot(new long[BUCKETS], 0);
+        }
+
+        Snapshot merge(Snapshot other) {
+            long[] mergedCounts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                mergedCounts[i] = counts[i] + other.counts[i];
+            }
+            return new Snapshot(mergedCounts, totalMicros + other.totalMicros);
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public Duration mean() {
+            return count == 0 ? Duration.ZERO : Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(totalMicros / count));
+        }
+
+        /**
+         * @param percentile percentile in range (0, 100]
+         */
+        public Duration percentile(double percentile) {
+            if (percentile <= 0 || percentile > 100) {
+                throw new IllegalArgumentException("percentile needs to be in range (0, 100]");
+            }
+            long rank = (long) Math.ceil(percentile / 100 * count);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (count > 0 && seen >= rank) {
+                    return Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(highestMicros(i)));
+                }
+            }
+            return Duration.ZERO;
+        }
+
+        public Duration max() {
+            return percentile(100);
+        }
+    }
+}
@@ -17,10 +17,11 @@ package software.amazon.awssdk.s3accessgrants.cache;
 
 import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import java.time.Duration;
+import java.util.OptionalLong;
 import software.amazon.awssdk.metrics.MetricCategory;
+import software.amazon.awssdk.metrics.MetricCollector;
 import software.amazon.awssdk.metrics.MetricLevel;
 import software.amazon.awssdk.metrics.SdkMetric;
-import software.amazon.awssdk.metrics.internal.DefaultMetricCollector;
 
 public class MetricsCollector {
     private static final SdkMetric<Double>
@@ -54,7 +55,34 @@ public class MetricsCollector {
         ACCOUNT_ID_RESOLVER_CACHE_METRIC_LOAD_COUNT = SdkMetric.create("AccountIdResolverCacheLoadCount", Long.class, MetricLevel.INFO,
         MetricCategory.CUSTOM),
         ACCOUNT_ID_RESOLVER_CACHE_METRIC_LOAD_SUCCESS_COUNT = SdkMetric.create("AccountIdResolverCacheLoadSuccessCount", Long.class, MetricLevel.INFO, MetricCategory.CUSTOM),
-        ACCOUNT_ID_RESOLVER_CACHE_METRIC_EVICTION_COUNT = SdkMetric.create("AccountIdResolverCacheEvictionCount", Long.class, MetricLevel.INFO, MetricCategory.CUSTOM);
+        ACCOUNT_ID_RESOLVER_CACHE_METRIC_EVICTION_COUNT = SdkMetric.create("AccountIdResolverCacheEvictionCount", Long.class, MetricLevel.INFO, MetricCategory.CUSTOM),
+
+        ACCESS_GRANT_CACHE_METRIC_ESTIMATED_SIZE_BYTES = SdkMetric.create("AccessGrantsCacheEstimatedSizeBytes", Long.class,
+                                                                          MetricLevel.INFO, MetricCategory.CUSTOM),
+        ACCESS_DENIED_CACHE_METRIC_ESTIMATED_SIZE_BYTES = SdkMetric.create("AccessDeniedCacheEstimatedSizeBytes", Long.class,
+                                                                           MetricLevel.INFO, MetricCategory.CUSTOM),
+
+        ACCOUNT_ID_RESOLVER_NEGATIVE_CACHE_METRIC_HIT_COUNT = SdkMetric.create("AccountIdResolverNegativeCacheHitCount", Long.class,
+                                                                               MetricLevel.INFO, MetricCategory.CUSTOM),
+        BUCKET_REGION_RESOLVER_NEGATIVE_CACHE_METRIC_HIT_COUNT = SdkMetric.create("BucketRegionResolverNegativeCacheHitCount", Long.class,
+                                                                                  MetricLevel.INFO, MetricCategory.CUSTOM),
+
+        ACCOUNT_ID_RESOLVER_METRIC_AVOIDED_CALL_COUNT = SdkMetric.create("AccountIdResolverAvoidedS3ControlCallCount", Long.class,
+                                                                         MetricLevel.INFO, MetricCategory.CUSTOM),
+
+        CALLER_ACCOUNT_CACHE_METRIC_HIT_COUNT = SdkMetric.create("CallerAccountCacheHitCount", Long.class, MetricLevel.INFO,
+                                                                 MetricCategory.CUSTOM),
+        CALLER_ACCOUNT_CACHE_METRIC_MISS_COUNT = SdkMetric.create("CallerAccountCacheMissCount", Long.class, MetricLevel.INFO,
+                                                                  MetricCategory.CUSTOM);
+
+    public static final SdkMetric<String> STAGE_RESULT =
+        SdkMetric.create("StageResult", String.class, MetricLevel.INFO, MetricCategory.CUSTOM);
+
+    public static final SdkMetric<String> STAGE_REGION =
+        SdkMetric.create("StageRegion", String.class, MetricLevel.INFO, MetricCategory.CUSTOM);
+
+    public static final SdkMetric<Integer> CACHE_LOOKUP_PROBE_COUNT =
+        SdkMetric.create("CacheLookupProbeCount", Integer.class, MetricLevel.INFO, MetricCategory.CUSTOM);
 
     public static final SdkMetric<Integer> CALL_COUNT =
         SdkMetric.create("CallCount", Integer.class, MetricLevel.INFO, MetricCategory.CUSTOM);
@@ -65,13 +93,22 @@ public class MetricsCollector {
     public static final SdkMetric<Duration> LATENCY =
         SdkMetric.create("Latency", Duration.class, MetricLevel.INFO, MetricCategory.CUSTOM);
 
-    public static final SdkMetric<Duration> searchKeyInCacheAtCharacterLevel_CacheHit_Latency =
-        SdkMetric.create("searchKeyInCacheAtCharacterLevel_CacheHit_Latency", Duration.class, MetricLevel.INFO, MetricCategory.CUSTOM);
+    public static final SdkMetric<Long> LATENCY_COUNT =
+        SdkMetric.create("LatencyCount", Long.class, MetricLevel.INFO, MetricCategory.CUSTOM);
+
+    public static final SdkMetric<Duration> LATENCY_P50 =
+        SdkMetric.create("LatencyP50", Duration.class, MetricLevel.INFO, MetricCategory.CUSTOM);
+
+    public static final SdkMetric<Duration> LATENCY_P90 =
+        SdkMetric.create("LatencyP90", Duration.class, MetricLevel.INFO, MetricCategory.CUSTOM);
 
-    public static final SdkMetric<Duration> searchKeyInCacheAtCharacterLevel_CacheMiss_Latency =
-        SdkMetric.create("searchKeyInCacheAtCharacterLevel_CacheMiss_Latency", Duration.class, MetricLevel.INFO, MetricCategory.CUSTOM);
+    public static final SdkMetric<Duration> LATENCY_P99 =
+        SdkMetric.create("LatencyP99", Duration.class, MetricLevel.INFO, MetricCategory.CUSTOM);
 
-    public static void getMetricsForAccessGrantsCache (CacheStats stats, DefaultMetricCollector collector) {
+    public static final SdkMetric<Duration> LATENCY_MAX =
+        SdkMetric.create("LatencyMax", Duration.class, MetricLevel.INFO, MetricCategory.CUSTOM);
+
+    public static void getMetricsForAccessGrantsCache (CacheStats stats, MetricCollector collector) {
         collector.reportMetric(ACCESS_GRANT_CACHE_METRIC_HIT_RATE, stats.hitRate());
         collector.reportMetric(ACCESS_GRANT_CACHE_METRIC_HIT_COUNT, stats.hitCount());
         collector.reportMetric(ACCESS_GRANT_CACHE_METRIC_MISS_COUNT, stats.missCount());
@@ -80,7 +117,15 @@ public class MetricsCollector {
         collector.reportMetric(ACCESS_GRANT_CACHE_METRIC_EVICTION_COUNT, stats.evictionCount());
     }
 
-    public static void getMetricsForAccessDeniedCache (CacheStats stats, DefaultMetricCollector collector) {
+    public static void getEstimatedSizeForAccessGrantsCache (OptionalLong estimatedSizeBytes, MetricCollector collector) {
+        estimatedSizeBytes.ifPresent(bytes -> collector.reportMetric(ACCESS_GRANT_CACHE_METRIC_ESTIMATED_SIZE_BYTES, bytes));
+    }
+
+    public static void getEstimatedSizeForAccessDeniedCache (OptionalLong estimatedSizeBytes, MetricCollector collector) {
+        estimatedSizeBytes.ifPresent(bytes -> collector.reportMetric(ACCESS_DENIED_CACHE_METRIC_ESTIMATED_SIZE_BYTES, bytes));
+    }
+
+    public static void getMetricsForAccessDeniedCache (CacheStats stats, MetricCollector collector) {
         collector.reportMetric(ACCESS_DENIED_CACHE_METRIC_HIT_RATE, stats.hitRate());
         collector.reportMetric(ACCESS_DENIED_CACHE_METRIC_HIT_COUNT, stats.hitCount());
         collector.reportMetric(ACCESS_DENIED_CACHE_METRIC_MISS_COUNT, stats.missCount());
@@ -89,7 +134,7 @@ public class MetricsCollector {
         collector.reportMetric(ACCESS_DENIED_CACHE_METRIC_EVICTION_COUNT, stats.evictionCount());
     }
 
-    public static void getMetricsForAccountIdResolverCache (CacheStats stats, DefaultMetricCollector collector) {
+    public static void getMetricsForAccountIdResolverCache (CacheStats stats, MetricCollector collector) {
 
         collector.reportMetric(ACCOUNT_ID_RESOLVER_CACHE_METRIC_HIT_RATE, stats.hitRate());
         collector.reportMetric(ACCOUNT_ID_RESOLVER_CACHE_METRIC_HIT_COUNT, stats.hitCount());
@@ -99,4 +144,29 @@ public class MetricsCollector {
         collector.reportMetric(ACCOUNT_ID_RESOLVER_CACHE_METRIC_EVICTION_COUNT, stats.evictionCount());
     }
 
+    public static void getMetricsForAccountIdResolverNegativeCache (CacheStats stats, MetricCollector collector) {
+        collector.reportMetric(ACCOUNT_ID_RESOLVER_NEGATIVE_CACHE_METRIC_HIT_COUNT, stats.hitCount());
+    }
+
+    public static void getMetricsForAccountIdResolverAvoidedCalls (long avoidedCalls, MetricCollector collector) {
+        collector.reportMetric(ACCOUNT_ID_RESOLVER_METRIC_AVOIDED_CALL_COUNT, avoidedCalls);
+    }
+
+    public static void getMetricsForCallerAccountCache (CacheStats stats, MetricCollector collector) {
+        collector.reportMetric(CALLER_ACCOUNT_CACHE_METRIC_HIT_COUNT, stats.hitCount());
+        collector.reportMetric(CALLER_ACCOUNT_CACHE_METRIC_MISS_COUNT, stats.missCount());
+    }
+
+    public static void getMetricsForLatency (LatencyHistogram.Snapshot latency, MetricCollector collector) {
+        collector.reportMetric(LATENCY_COUNT, latency.count());
+        collector.reportMetric(LATENCY_P50, latency.percentile(50));
+        collector.reportMetric(LATENCY_P90, latency.percentile(90));
+        collector.reportMetric(LATENCY_P99, latency.percentile(99));
+        collector.reportMetric(LATENCY_MAX, latency.max());
+    }
+
+    public static void getMetricsForBucketRegionResolverNegativeCache (CacheStats stats, MetricCollector collector) {
+        collector.reportMetric(BUCKET_REGION_RESOLVER_NEGATIVE_CACHE_METRIC_HIT_COUNT, stats.hitCount());
+    }
+
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.awssdk.s3accessgrants.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.utils.Logger;
+
+/**
+ * Short lived cache of the failures of a resolver, e.g. a head bucket request for a bucket that does not exist, so a misconfigured
+ * caller does not repeat the same failing request to the service on every request.
+ * Only client errors that do not succeed when retried are cached. Throttling, server errors and network errors are never cached.
+ */
+final class ResolverNegativeCache {
+
+    private static final Logger logger = Logger.loggerFor(ResolverNegativeCache.class);
+
+    private final Cache<String, RuntimeException> cache;
+    private final boolean enabled;
+    private final boolean isAccessDeniedCached;
+
+    /**
+     * @param expireCacheAfterWriteSeconds how long a failure is cached, 0 disables the cache.
+     * @param isAccessDeniedCached false if a 403 depends on the credentials of the request while the key does not, so it is not
+     *                             returned to callers with other credentials.
+     */
+    ResolverNegativeCache(int maxCacheSize, int expireCacheAfterWriteSeconds, boolean isAccessDeniedCached) {
+        this.cache = Caffeine.newBuilder()
+                             .maximumSize(maxCacheSize)
+                             .expireAfterWrite(Math.max(expireCacheAfterWriteSeconds, 1), TimeUnit.SECONDS)
+                             .recordStats()
+                             .build();
+        this.enabled = expireCacheAfterWriteSeconds > 0;
+        this.isAccessDeniedCached = isAccessDeniedCached;
+    }
+
+    /**
+     * @return a future failed with the cached failure for the key, null if no failure is cached.
+     */
+    <V> CompletableFuture<V> getIfPresent(String key) {
+        RuntimeException failure = cache.getIfPresent(key);
+        if (failure == null) {
+            return null;
+        }
+        logger.debug(() -> "returning the cached failure for " + key + " without calling the service!");
+        CompletableFuture<V> failedFuture = new CompletableFuture<>();
+        failedFuture.completeExceptionally(failure);
+        return failedFuture;
+    }
+
+    /**
+     * Caches the failure of a request to the service for the key if the request would fail the same way when retried.
+     * @return the same future, to be returned to the callers.
+     */
+    <V> CompletableFuture<V> cacheFailure(String key, CompletableFuture<V> value) {
+        if (!enabled) {
+            return value;
+        }
+        return value.whenComplete((result, exception) -> {
+            if (exception == null) {
+                return;
+            }
+            Throwable failure = exception;
+            while ((failure instanceof CompletionException || failure instanceof ExecutionException) && failure.getCause() != null) {
+                failure = failure.getCause();
+            }
+            if (failure instanceof RuntimeException && isNonRetryableClientError(failure)) {
+                logger.debug(() -> "caching the failure for " + key + " : " + exception.getMessage());
+                cache.put(key, (RuntimeException) failure);
+            }
+        });
+    }
+
+    void invalidate(String key) {
+        cache.invalidate(key);
+    }
+
+    CacheStats getCacheStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Service exceptions can be wrapped, e.g. in the SdkServiceException thrown when the region of a bucket cannot be found in the
+     * head bucket error response, so the first exception with a status code is used.
+     */
+    private boolean isNonRetryableClientError(Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SdkServiceException && ((SdkServiceException) cause).statusCode() > 0) {
+                SdkServiceException serviceException = (SdkServiceException) cause;
+                int statusCode = serviceException.statusCode();
+                return statusCode >= 400 && statusCode < 500 && statusCode != 408 && (statusCode != 403 || isAccessDeniedCached)
+                       && !serviceException.isThrottlingException() && !serviceException.isClockSkewException();
+            }
+        }
+        return false;
+    }
+}
@@ -20,7 +20,9 @@ import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstant
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Policy;
 import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import java.util.OptionalLong;
 import java.util.concurrent.TimeUnit;
 import software.amazon.awssdk.services.s3control.model.S3ControlException;
 
@@ -39,11 +41,13 @@ public class S3AccessGrantsAccessDeniedCache {
     public interface Builder {
         S3AccessGrantsAccessDeniedCache build();
         S3AccessGrantsAccessDeniedCache.Builder maxCacheSize(int maxCacheSize);
+        S3AccessGrantsAccessDeniedCache.Builder maxCacheWeightBytes(long maxCacheWeightBytes);
     }
 
     static final class BuilderImpl implements S3AccessGrantsAccessDeniedCache.Builder {
 
         private int maxCacheSize = ACCESS_DENIED_CACHE_SIZE;
+        private long maxCacheWeightBytes;
         private BuilderImpl() {
         }
 
@@ -51,11 +55,15 @@ public class S3AccessGrantsAccessDeniedCache {
         public S3AccessGrantsAccessDeniedCache build() {
             S3AccessGrantsAccessDeniedCache s3AccessGrantsAccessDeniedCache = new S3AccessGrantsAccessDeniedCache();
             s3AccessGrantsAccessDeniedCache.maxCacheSize = maxCacheSize();
-            s3AccessGrantsAccessDeniedCache.cache = Caffeine.newBuilder()
-                                                            .maximumSize(maxCacheSize)
+            Caffeine<Object, Object> cacheBuilder = Caffeine.newBuilder()
                                                             .expireAfterWrite(5, TimeUnit.MINUTES)
-                                                            .recordStats()
-                                                            .build();
+                                                            .recordStats();
+            if (maxCacheWeightBytes > 0) {
+                s3AccessGrantsAccessDeniedCache.cache = cacheBuilder.maximumWeight(maxCacheWeightBytes)
+                                                                    .<CacheKey, S3ControlException>weigher(CacheEntryWeigher::weigh).build();
+            } else {
+                s3AccessGrantsAccessDeniedCache.cache = cacheBuilder.maximumSize(maxCacheSize).build();
+            }
 
             return s3AccessGrantsAccessDeniedCache;
         }
@@ -70,6 +78,15 @@ public class S3AccessGrantsAccessDeniedCache {
             return this;
         }
 
+        @Override
+        public Builder maxCacheWeightBytes(long maxCacheWeightBytes) {
+            if (maxCacheWeightBytes <= 0) {
+                throw new IllegalArgumentException("maxCacheWeightBytes needs to be greater than 0");
+            }
+            this.maxCacheWeightBytes = maxCacheWeightBytes;
+            return this;
+        }
+
         public int maxCacheSize() {
             return maxCacheSize;
         }
@@ -106,4 +123,12 @@ public class S3AccessGrantsAccessDeniedCache {
      */
     protected CacheStats getCacheStats() { return cache.stats(); }
 
+    /**
+     * @return estimated size of the cache in bytes, empty if the cache is bounded by entry count.
+     */
+    protected OptionalLong getEstimatedSizeBytes() {
+        cache.cleanUp();
+        return cache.policy().eviction().map(Policy.Eviction::weightedSize).orElse(OptionalLong.empty());
+    }
+
 }
@@ -15,6 +15,7 @@
 
 package software.amazon.awssdk.s3accessgrants.cache;
 
+import java.util.concurrent.CompletableFuture;
 import software.amazon.awssdk.services.s3control.S3ControlAsyncClient;
 import software.amazon.awssdk.services.s3control.model.S3ControlException;
 
@@ -28,4 +29,22 @@ public interface S3AccessGrantsAccountIdResolver {
      * @throws S3ControlException propagate S3ControlException from service call
      */
     String resolve(String accountId, String s3Prefix, S3ControlAsyncClient s3ControlAsyncClient) throws S3ControlException;
+
+    /**
+     * Resolves the AccountId without blocking the calling thread while the service is called.
+     * @param accountId AWS AccountId from the request context parameter
+     * @param s3Prefix e.g., s3://bucket-name/path/to/helloworld.txt
+     * @param s3ControlAsyncClient S3ControlAsynClient that will be used for making the requests
+     * @return AWS AccountId of the S3 Access Grants Instance that owns the location scope of the s3Prefix, completed
+     * exceptionally with the S3ControlException from the service call
+     */
+    default CompletableFuture<String> resolveAsync(String accountId, String s3Prefix, S3ControlAsyncClient s3ControlAsyncClient) {
+        CompletableFuture<String> accountIdFuture = new CompletableFuture<>();
+        try {
+            accountIdFuture.complete(resolve(accountId, s3Prefix, s3ControlAsyncClient));
+        } catch (RuntimeException e) {
+            accountIdFuture.completeExceptionally(e);
+        }
+        return accountIdFuture;
+    }
 }
@@ -14,6 +14,7 @@
  */
 package software.amazon.awssdk.s3accessgrants.cache;
 
+import java.util.concurrent.CompletableFuture;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.S3Exception;
@@ -30,4 +31,19 @@ public interface S3AccessGrantsBucketRegionResolver {
 
     Region resolve(String bucket) throws S3Exception;
 
+    /**
+     * Resolves the region of the bucket without blocking the calling thread while the service is called.
+     * @param bucket name of the bucket being accessed
+     * @return region of the bucket, completed exceptionally with the exception from the service call
+     */
+    default CompletableFuture<Region> resolveAsync(String bucket) {
+        CompletableFuture<Region> regionFuture = new CompletableFuture<>();
+        try {
+            regionFuture.complete(resolve(bucket));
+        } catch (RuntimeException e) {
+            regionFuture.completeExceptionally(e);
+        }
+        return regionFuture;
+    }
+
 }
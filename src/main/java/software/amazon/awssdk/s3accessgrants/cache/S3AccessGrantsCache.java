@@ -20,13 +20,33 @@ import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstant
 import com.github.benmanes.caffeine.cache.AsyncCache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.RemovalCause;
 import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import software.amazon.awssdk.annotations.NotNull;
 import software.amazon.awssdk.auth.credentials.AwsSessionCredentials;
+import software.amazon.awssdk.auth.credentials.CredentialUtils;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.identity.spi.AwsCredentialsIdentity;
+import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsMetrics.Stage;
+import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsMetrics.StageResult;
 import software.amazon.awssdk.services.s3control.S3ControlAsyncClient;
 import software.amazon.awssdk.services.s3control.model.Credentials;
 import software.amazon.awssdk.services.s3control.model.GetDataAccessRequest;
@@ -42,20 +62,48 @@ import software.amazon.awssdk.utils.Logger;
 public class S3AccessGrantsCache {
 
     private AsyncCache<CacheKey, AwsCredentialsIdentity> cache;
+    private final S3AccessGrantsPrefixIndex prefixIndex = new S3AccessGrantsPrefixIndex();
+    private final ConcurrentHashMap<CacheKey, CompletableFuture<AwsCredentialsIdentity>> inFlightRequests = new ConcurrentHashMap<>();
     private int maxCacheSize;
     private final S3AccessGrantsCachedAccountIdResolver s3AccessGrantsCachedAccountIdResolver;
     private final int cacheExpirationTimePercentage;
+    private final int refreshAheadTimePercentage;
+    private final ConcurrentHashMap<CacheKey, RefreshContext> refreshContexts = new ConcurrentHashMap<>();
+    private final Executor executor;
+    private final S3AccessGrantsCacheLookupMode lookupMode;
+    private final S3AccessGrantsMetrics metrics;
     private static final Logger logger = Logger.loggerFor(S3AccessGrantsCache.class);
+    private static final Duration MIN_REFRESH_BACKOFF = Duration.ofSeconds(1);
 
-    private S3AccessGrantsCache (@NotNull S3AccessGrantsCachedAccountIdResolver resolver, int maxCacheSize, int cacheExpirationTimePercentage) {
+    private S3AccessGrantsCache (@NotNull S3AccessGrantsCachedAccountIdResolver resolver, int maxCacheSize, int cacheExpirationTimePercentage,
+                                 int refreshAheadTimePercentage, long maxCacheWeightBytes, Executor executor,
+                                 S3AccessGrantsCacheLookupMode lookupMode, S3AccessGrantsMetrics metrics) {
 
         this.s3AccessGrantsCachedAccountIdResolver = resolver;
         this.cacheExpirationTimePercentage = cacheExpirationTimePercentage;
+        this.refreshAheadTimePercentage = refreshAheadTimePercentage;
         this.maxCacheSize = maxCacheSize;
-        this.cache = Caffeine.newBuilder().maximumSize(maxCacheSize)
-                                          .expireAfter(new CustomCacheExpiry<>())
-                                          .recordStats()
-                                          .buildAsync();
+        this.executor = executor;
+        this.lookupMode = lookupMode;
+        this.metrics = metrics;
+        Caffeine<CacheKey, AwsCredentialsIdentity> cacheBuilder =
+            Caffeine.newBuilder().expireAfter(new CustomCacheExpiry<CacheKey, AwsCredentialsIdentity>())
+                                 .removalListener((CacheKey key, AwsCredentialsIdentity value, RemovalCause cause) -> {
+                                     if (key != null && cause != RemovalCause.REPLACED) {
+                                         prefixIndex.remove(key, this::isCached);
+                                         refreshContexts.remove(key);
+                                     }
+                                 })
+                                 .recordStats();
+        if (maxCacheWeightBytes > 0) {
+            cacheBuilder.maximumWeight(maxCacheWeightBytes).weigher(CacheEntryWeigher::weigh);
+        } else {
+            cacheBuilder.maximumSize(maxCacheSize);
+        }
+        if (executor != null) {
+            cacheBuilder.executor(executor);
+        }
+        this.cache = cacheBuilder.buildAsync();
     }
 
     protected S3AccessGrantsCachedAccountIdResolver getS3AccessGrantsCachedAccountIdResolver() {
@@ -71,6 +119,15 @@ public class S3AccessGrantsCache {
         S3AccessGrantsCache buildWithAccountIdResolver();
         S3AccessGrantsCache.Builder maxCacheSize(int maxCacheSize);
         S3AccessGrantsCache.Builder cacheExpirationTimePercentage(int cacheExpirationTimePercentage);
+        S3AccessGrantsCache.Builder refreshAheadTimePercentage(int refreshAheadTimePercentage);
+        S3AccessGrantsCache.Builder maxCacheWeightBytes(long maxCacheWeightBytes);
+        S3AccessGrantsCache.Builder executor(Executor executor);
+        S3AccessGrantsCache.Builder lookupMode(S3AccessGrantsCacheLookupMode lookupMode);
+        /**
+         * Metrics the latencies of the cache lookup, account ID resolution and GetDataAccess are recorded to. The metrics need
+         * the {@link MetricsCollector#CACHE_LOOKUP_PROBE_COUNT} counter.
+         */
+        S3AccessGrantsCache.Builder metrics(S3AccessGrantsMetrics metrics);
         S3AccessGrantsCache.Builder s3AccessGrantsCachedAccountIdResolver(S3AccessGrantsCachedAccountIdResolver s3AccessGrantsCachedAccountIdResolver);
     }
 
@@ -78,6 +135,11 @@ public class S3AccessGrantsCache {
         private int maxCacheSize = DEFAULT_ACCESS_GRANTS_MAX_CACHE_SIZE;
         private S3AccessGrantsCachedAccountIdResolver s3AccessGrantsCachedAccountIdResolver;
         private int cacheExpirationTimePercentage;
+        private int refreshAheadTimePercentage;
+        private long maxCacheWeightBytes;
+        private Executor executor;
+        private S3AccessGrantsCacheLookupMode lookupMode = S3AccessGrantsCacheLookupMode.INDEXED;
+        private S3AccessGrantsMetrics metrics;
 
         private BuilderImpl() {
         }
@@ -86,13 +148,15 @@ public class S3AccessGrantsCache {
         public S3AccessGrantsCache build() {
             S3AccessGrantsCachedAccountIdResolver s3AccessGrantsCachedAccountIdResolver =
                 S3AccessGrantsCachedAccountIdResolver.builder().build();
-            return new S3AccessGrantsCache(s3AccessGrantsCachedAccountIdResolver, maxCacheSize, cacheExpirationTimePercentage);
+            return new S3AccessGrantsCache(s3AccessGrantsCachedAccountIdResolver, maxCacheSize, cacheExpirationTimePercentage,
+                                           refreshAheadTimePercentage, maxCacheWeightBytes, executor, lookupMode, metrics());
         }
 
         @Override
         public S3AccessGrantsCache buildWithAccountIdResolver() {
                     return new S3AccessGrantsCache(s3AccessGrantsCachedAccountIdResolver, maxCacheSize,
-                                                   cacheExpirationTimePercentage);
+                                                   cacheExpirationTimePercentage, refreshAheadTimePercentage, maxCacheWeightBytes,
+                                                   executor, lookupMode, metrics());
                 }
 
         @Override
@@ -107,6 +171,41 @@ public class S3AccessGrantsCache {
             return this;
         }
 
+        @Override
+        public Builder refreshAheadTimePercentage(int refreshAheadTimePercentage) {
+            this.refreshAheadTimePercentage = refreshAheadTimePercentage;
+            return this;
+        }
+
+        @Override
+        public Builder maxCacheWeightBytes(long maxCacheWeightBytes) {
+            this.maxCacheWeightBytes = maxCacheWeightBytes;
+            return this;
+        }
+
+        @Override
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        @Override
+        public Builder lookupMode(S3AccessGrantsCacheLookupMode lookupMode) {
+            this.lookupMode = lookupMode;
+            return this;
+        }
+
+        @Override
+        public Builder metrics(S3AccessGrantsMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        private S3AccessGrantsMetrics metrics() {
+            return metrics != null ? metrics
+                                   : new S3AccessGrantsMetrics(Collections.singletonList(MetricsCollector.CACHE_LOOKUP_PROBE_COUNT));
+        }
+
         @Override
         public Builder s3AccessGrantsCachedAccountIdResolver(S3AccessGrantsCachedAccountIdResolver s3AccessGrantsCachedAccountIdResolver) {
             this.s3AccessGrantsCachedAccountIdResolver = s3AccessGrantsCachedAccountIdResolver;
@@ -116,7 +215,8 @@ public class S3AccessGrantsCache {
 
     /**
      * This method searches for the cacheKey in the cache. It will also search for a cache key with broader permission than
-     * requested.
+     * requested. On a cache miss only one request per cache key is sent to Access Grants, concurrent callers for the same
+     * key receive the result of that request.
      * @param cacheKey CacheKey consists of AwsCredentialsIdentity, Permission, and S3Prefix.
      * @param accountId Account Id of the requester
      * @param s3AccessGrantsAccessDeniedCache instance of S3AccessGrantsAccessDeniedCache
@@ -125,81 +225,199 @@ public class S3AccessGrantsCache {
      */
     protected CompletableFuture<AwsCredentialsIdentity> getCredentials (CacheKey cacheKey, String accountId,
                                                   S3AccessGrantsAccessDeniedCache s3AccessGrantsAccessDeniedCache, S3ControlAsyncClient s3ControlAsyncClient) throws S3ControlException {
+        return getCredentials(cacheKey, accountId, s3AccessGrantsAccessDeniedCache, s3ControlAsyncClient, null);
+    }
+
+    /**
+     * Same as {@link #getCredentials(CacheKey, String, S3AccessGrantsAccessDeniedCache, S3ControlAsyncClient)}, the latencies
+     * are tagged with the region of the S3 Control client.
+     * @param regionId id of the region of the S3 Control client, known when the client is built. Reading it from the client
+     *                 would copy the configuration of the client on every request.
+     */
+    protected CompletableFuture<AwsCredentialsIdentity> getCredentials (CacheKey cacheKey, String accountId,
+                                                  S3AccessGrantsAccessDeniedCache s3AccessGrantsAccessDeniedCache, S3ControlAsyncClient s3ControlAsyncClient,
+                                                  String regionId) throws S3ControlException {
 
         logger.debug(()->"Fetching credentials from Access Grants for s3Prefix: " + cacheKey.s3Prefix);
-        
-        // First check without synchronization (fast path)
-        CompletableFuture<AwsCredentialsIdentity> credentials = searchKeyInCacheAtPrefixLevel(cacheKey);
-        if (credentials == null &&
-            (cacheKey.permission == Permission.READ ||
-             cacheKey.permission == Permission.WRITE)) {
-            credentials = searchKeyInCacheAtPrefixLevel(cacheKey.toBuilder().permission(Permission.READWRITE).build());
-        }
-        if (credentials == null) {
-            credentials = searchKeyInCacheAtCharacterLevel(cacheKey);
-        }
-        if (credentials == null &&
-            (cacheKey.permission == Permission.READ ||
-             cacheKey.permission == Permission.WRITE)) {
-            credentials = searchKeyInCacheAtCharacterLevel(cacheKey.toBuilder().permission(Permission.READWRITE).build());
-        }
-        
+
+        long start = System.nanoTime();
+        CompletableFuture<AwsCredentialsIdentity> credentials = searchKeyInCache(cacheKey, accountId, s3AccessGrantsAccessDeniedCache,
+                                                                                 s3ControlAsyncClient, regionId, false);
+        metrics.recordLatency(Stage.CACHE_LOOKUP,
+                              credentials != null ? StageResult.HIT : StageResult.MISS,
+                              regionId, System.nanoTime() - start);
         if (credentials != null) {
             return credentials;
         }
-        
-        // Double-checked locking to prevent multiple service calls
-        synchronized(this) {
-            // Check again inside synchronized block
-            credentials = searchKeyInCacheAtPrefixLevel(cacheKey);
-            if (credentials == null &&
-                (cacheKey.permission == Permission.READ ||
-                 cacheKey.permission == Permission.WRITE)) {
-                credentials = searchKeyInCacheAtPrefixLevel(cacheKey.toBuilder().permission(Permission.READWRITE).build());
-            }
+
+        // Concurrent misses for the same key share a single request to Access Grants.
+        CompletableFuture<AwsCredentialsIdentity> pendingCredentials = new CompletableFuture<>();
+        CompletableFuture<AwsCredentialsIdentity> inFlightCredentials = inFlightRequests.putIfAbsent(cacheKey, pendingCredentials);
+        if (inFlightCredentials != null) {
+            logger.debug(()->"Request for the same credentials is in progress, waiting for its result.");
+            return inFlightCredentials;
+        }
+        try {
+            // A request for the same key may have completed and cached its grant after the first search. The probes of this
+            // search were already counted by the first one.
+            credentials = searchKeyInCache(cacheKey, accountId, s3AccessGrantsAccessDeniedCache, s3ControlAsyncClient, regionId, true);
             if (credentials == null) {
-                credentials = searchKeyInCacheAtCharacterLevel(cacheKey);
+                credentials = getCredentialsFromAccessGrants(cacheKey, accountId, s3AccessGrantsAccessDeniedCache, s3ControlAsyncClient, regionId);
             }
-            if (credentials == null &&
-                (cacheKey.permission == Permission.READ ||
-                 cacheKey.permission == Permission.WRITE)) {
-                credentials = searchKeyInCacheAtCharacterLevel(cacheKey.toBuilder().permission(Permission.READWRITE).build());
+        } catch (RuntimeException e) {
+            inFlightRequests.remove(cacheKey, pendingCredentials);
+            pendingCredentials.completeExceptionally(e);
+            throw e;
+        }
+        credentials.whenComplete((sessionCredentials, exception) -> {
+            inFlightRequests.remove(cacheKey, pendingCredentials);
+            if (exception != null) {
+                pendingCredentials.completeExceptionally(exception);
+            } else {
+                pendingCredentials.complete(sessionCredentials);
             }
-            
-            if (credentials != null) {
-                return credentials;
+        });
+        return pendingCredentials;
+    }
+
+    /**
+     * This method calls Access Grants service and caches the credentials received for the matched grant.
+     * @param cacheKey CacheKey consists of AwsCredentialsIdentity, Permission, and S3Prefix.
+     * @param accountId Account Id of the requester
+     * @param s3AccessGrantsAccessDeniedCache instance of S3AccessGrantsAccessDeniedCache
+     * @param s3ControlAsyncClient S3ControlAsyncClient that will be used for making the requests
+     * @param regionId id of the region of the S3 Control client
+     * @return Access Grants credentials.
+     */
+    private CompletableFuture<AwsCredentialsIdentity> getCredentialsFromAccessGrants(CacheKey cacheKey, String accountId,
+                                                  S3AccessGrantsAccessDeniedCache s3AccessGrantsAccessDeniedCache, S3ControlAsyncClient s3ControlAsyncClient,
+                                                  String regionId) throws S3ControlException {
+        try {
+            logger.debug(()->"Credentials not available in the cache. Fetching credentials from Access Grants service.");
+            if (s3ControlAsyncClient == null) {
+                throw new IllegalArgumentException("S3ControlAsyncClient is required");
             }
-            
-            // Only one thread will execute the service call
-            try {
-                logger.debug(()->"Credentials not available in the cache. Fetching credentials from Access Grants service.");
-                if (s3ControlAsyncClient == null) {
-                    throw new IllegalArgumentException("S3ControlAsyncClient is required");
+            BiConsumer<GetDataAccessResponse, Throwable> cacheAccessDenied = (getDataAccessResponse, exception) -> {
+                if (exception != null) {
+                    cacheAccessDenied(cacheKey, exception, s3AccessGrantsAccessDeniedCache);
                 }
-                credentials = getCredentialsFromService(cacheKey,accountId, s3ControlAsyncClient).thenApply(getDataAccessResponse -> {
-                    Credentials accessGrantsCredentials = getDataAccessResponse.credentials();
-                    long duration = getTTL(accessGrantsCredentials.expiration());
-                    AwsSessionCredentials sessionCredentials = AwsSessionCredentials.builder().accessKeyId(accessGrantsCredentials.accessKeyId())
-                                                                                    .secretAccessKey(accessGrantsCredentials.secretAccessKey())
-                                                                                    .sessionToken(accessGrantsCredentials.sessionToken()).build();
-                    String accessGrantsTarget = getDataAccessResponse.matchedGrantTarget();
-                    if (accessGrantsTarget.endsWith("*")) {
-                        putValueInCache(cacheKey.toBuilder().s3Prefix(processMatchedGrantTarget(accessGrantsTarget)).build(),
-                                        CompletableFuture.supplyAsync(()-> sessionCredentials), duration);
-                    }
-                    logger.debug(()->"Successfully retrieved the credentials from Access Grants service");
-                    return sessionCredentials;
-                });
-            } catch (S3ControlException s3ControlException) {
-                logger.error(()->"Exception occurred while fetching the credentials: " + s3ControlException);
-                if (s3ControlException.statusCode() == 403) {
-                    logger.debug(()->"Caching the Access Denied request.");
-                    s3AccessGrantsAccessDeniedCache.putValueInCache(cacheKey, s3ControlException);
+            };
+            // The rest of the chain runs on the thread completing this stage, the configured executor if there is one.
+            CompletableFuture<GetDataAccessResponse> getDataAccessResponseFuture = getCredentialsFromService(cacheKey, accountId, s3ControlAsyncClient, regionId);
+            getDataAccessResponseFuture = executor == null ? getDataAccessResponseFuture.whenComplete(cacheAccessDenied)
+                                                           : getDataAccessResponseFuture.whenCompleteAsync(cacheAccessDenied, executor);
+            return getDataAccessResponseFuture.thenApply(getDataAccessResponse -> {
+                Credentials accessGrantsCredentials = getDataAccessResponse.credentials();
+                long duration = getTTL(accessGrantsCredentials.expiration());
+                AwsSessionCredentials sessionCredentials = AwsSessionCredentials.builder().accessKeyId(accessGrantsCredentials.accessKeyId())
+                                                                                .secretAccessKey(accessGrantsCredentials.secretAccessKey())
+                                                                                .sessionToken(accessGrantsCredentials.sessionToken()).build();
+                String accessGrantsTarget = getDataAccessResponse.matchedGrantTarget();
+                CacheKey grantKey;
+                boolean isCached;
+                if (accessGrantsTarget.endsWith("*")) {
+                    grantKey = cacheKey.toBuilder().s3Prefix(processMatchedGrantTarget(accessGrantsTarget)).build();
+                    putValueInCache(grantKey, CompletableFuture.completedFuture(sessionCredentials), duration);
+                    isCached = true;
+                } else {
+                    grantKey = cacheKey.toBuilder().s3Prefix(accessGrantsTarget).build();
+                    isCached = putExactTargetValueInCache(grantKey, CompletableFuture.completedFuture(sessionCredentials), duration);
                 }
-                throw s3ControlException;
-            }
+                if (isCached && refreshAheadTimePercentage > 0) {
+                    refreshContexts.put(grantKey, new RefreshContext(getRefreshTime(accessGrantsCredentials.expiration()),
+                                                                     Instant.now().plusSeconds(duration), cacheKey.s3Prefix,
+                                                                     cacheKey.permission));
+                }
+                logger.debug(()->"Successfully retrieved the credentials from Access Grants service");
+                return sessionCredentials;
+            });
+        } catch (S3ControlException s3ControlException) {
+            cacheAccessDenied(cacheKey, s3ControlException, s3AccessGrantsAccessDeniedCache);
+            throw s3ControlException;
+        }
+    }
+
+    /**
+     * This method caches the request if Access Grants denied it. Exceptions from the service are usually received as the
+     * exceptional completion of the request, wrapped in a CompletionException.
+     * @param cacheKey CacheKey consists of AwsCredentialsIdentity, Permission, and S3Prefix.
+     * @param exception exception thrown by the request or that completed it.
+     * @param s3AccessGrantsAccessDeniedCache instance of S3AccessGrantsAccessDeniedCache
+     */
+    private void cacheAccessDenied(CacheKey cacheKey, Throwable exception, S3AccessGrantsAccessDeniedCache s3AccessGrantsAccessDeniedCache) {
+        Throwable cause = exception;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (!(cause instanceof S3ControlException)) {
+            return;
+        }
+        S3ControlException s3ControlException = (S3ControlException) cause;
+        logger.error(()->"Exception occurred while fetching the credentials: " + s3ControlException);
+        if (s3ControlException.statusCode() == 403) {
+            logger.debug(()->"Caching the Access Denied request.");
+            s3AccessGrantsAccessDeniedCache.putValueInCache(cacheKey, s3ControlException);
+        }
+    }
+
+    /**
+     * This method starts a background refresh of the credentials cached for the grant once they have passed the refresh
+     * threshold. Callers keep receiving the cached credentials until the refreshed credentials replace them.
+     * The refresh is sent with the credentials of the request that read the entry, as the credentials of the request that
+     * cached it may have expired or been rotated since, e.g. when the cache is keyed by principal.
+     * @param grantKey key of the cache entry that was read.
+     * @param cacheKey key of the request that read the entry.
+     * @param accountId Account Id of the requester
+     * @param s3AccessGrantsAccessDeniedCache instance of S3AccessGrantsAccessDeniedCache
+     * @param s3ControlAsyncClient S3ControlAsyncClient that will be used for making the requests
+     * @param regionId id of the region of the S3 Control client
+     */
+    private void refreshIfNeeded(CacheKey grantKey, CacheKey cacheKey, String accountId,
+                                 S3AccessGrantsAccessDeniedCache s3AccessGrantsAccessDeniedCache, S3ControlAsyncClient s3ControlAsyncClient,
+                                 String regionId) {
+        if (refreshAheadTimePercentage <= 0) {
+            return;
+        }
+        RefreshContext refreshContext = refreshContexts.get(grantKey);
+        if (refreshContext == null || Instant.now().isBefore(refreshContext.refreshTime)
+            || !refreshContext.isRefreshing.compareAndSet(false, true)) {
+            return;
         }
-        return credentials;
+        logger.debug(()->"Refreshing the cached credentials for s3Prefix: " + grantKey.s3Prefix);
+        // The same target as the request that cached the grant, so Access Grants matches the same grant.
+        CacheKey refreshKey = cacheKey.toBuilder().s3Prefix(refreshContext.s3Prefix).permission(refreshContext.permission).build();
+        Supplier<CompletableFuture<AwsCredentialsIdentity>> refresh = () -> getCredentialsFromAccessGrants(refreshKey, accountId,
+                                                                                                           s3AccessGrantsAccessDeniedCache,
+                                                                                                           s3ControlAsyncClient, regionId);
+        CompletableFuture<AwsCredentialsIdentity> refreshedCredentials;
+        try {
+            // the request to Access Grants is asynchronous, the executor is only used to start it if one is configured.
+            refreshedCredentials = executor == null ? refresh.get()
+                                                    : CompletableFuture.supplyAsync(refresh, executor).thenCompose(Function.identity());
+        } catch (RuntimeException e) {
+            refreshedCredentials = new CompletableFuture<>();
+            refreshedCredentials.completeExceptionally(e);
+        }
+        // A successful refresh caches a new context for the matched grant, which may not be the grant that was read.
+        // A failed refresh, e.g. throttled by S3 Control, is retried once half of the remaining TTL has passed instead of on
+        // the next read.
+        refreshedCredentials.whenComplete((result, exception) -> {
+            if (exception != null) {
+                logger.debug(()->"Refreshing the cached credentials failed: " + exception);
+                refreshContext.backOff();
+            }
+            refreshContext.isRefreshing.set(false);
+        });
+    }
+
+    /**
+     * This method calculates the time after which a cache entry is refreshed in the background
+     * @param expirationTime of the credentials received from Access Grants
+     * @return refresh time of a cache entry
+     */
+    Instant getRefreshTime(Instant expirationTime) {
+        Instant now = Instant.now();
+        return now.plusSeconds((long) ((expirationTime.getEpochSecond() - now.getEpochSecond()) * (refreshAheadTimePercentage / 100.0f)));
     }
 
     /**
@@ -217,63 +435,175 @@ public class S3AccessGrantsCache {
      * @param cacheKey CacheKey consists of AwsCredentialsIdentity, Permission, and S3Prefix.
      * @param accountId Account Id of the requester.
      * @param s3ControlAsyncClient regional S3 Control client used for forwarding requests.
+     * @param region id of the region of the S3 Control client.
      * @return Access Grants Credentials.
      * @throws S3ControlException throws Exception received from service.
      */
-    private CompletableFuture<GetDataAccessResponse> getCredentialsFromService(CacheKey cacheKey, String accountId, S3ControlAsyncClient s3ControlAsyncClient) throws S3ControlException{
-        String resolvedAccountId = s3AccessGrantsCachedAccountIdResolver.resolve(accountId, cacheKey.s3Prefix, s3ControlAsyncClient);
-        logger.debug(()->"Fetching credentials from Access Grants for accountId: " + resolvedAccountId + ", s3Prefix: " + cacheKey.s3Prefix +
-                         ", permission: " + cacheKey.permission + ", privilege: " + Privilege.DEFAULT);
-        GetDataAccessRequest dataAccessRequest = GetDataAccessRequest.builder()
-                                                                     .accountId(resolvedAccountId)
-                                                                     .target(cacheKey.s3Prefix)
-                                                                     .permission(cacheKey.permission)
-                                                                     .privilege(Privilege.DEFAULT)
-                                                                     .build();
-
-        return s3ControlAsyncClient.getDataAccess(dataAccessRequest);
+    private CompletableFuture<GetDataAccessResponse> getCredentialsFromService(CacheKey cacheKey, String accountId, S3ControlAsyncClient s3ControlAsyncClient,
+                                                                               String region) throws S3ControlException{
+        long start = System.nanoTime();
+        CompletableFuture<String> resolvedAccountIdFuture =
+            s3AccessGrantsCachedAccountIdResolver.resolveAsync(accountId, cacheKey.s3Prefix, s3ControlAsyncClient);
+        metrics.recordLatencyOnCompletion(Stage.ACCOUNT_ID_RESOLUTION, region, start, resolvedAccountIdFuture);
+        return resolvedAccountIdFuture.thenCompose(resolvedAccountId -> {
+            logger.debug(()->"Fetching credentials from Access Grants for accountId: " + resolvedAccountId + ", s3Prefix: " + cacheKey.s3Prefix +
+                             ", permission: " + cacheKey.permission + ", privilege: " + Privilege.DEFAULT);
+            GetDataAccessRequest dataAccessRequest = GetDataAccessRequest.builder()
+                                                                         .accountId(resolvedAccountId)
+                                                                         .target(cacheKey.s3Prefix)
+                                                                         .permission(cacheKey.permission)
+                                                                         .privilege(Privilege.DEFAULT)
+                                                                         .overrideConfiguration(o -> o.credentialsProvider(
+                                                                             StaticCredentialsProvider.create(CredentialUtils.toCredentials(cacheKey.credentials))))
+                                                                         .build();
+
+            long getDataAccessStart = System.nanoTime();
+            CompletableFuture<GetDataAccessResponse> getDataAccessResponse = s3ControlAsyncClient.getDataAccess(dataAccessRequest);
+            metrics.recordLatencyOnCompletion(Stage.GET_DATA_ACCESS, region, getDataAccessStart, getDataAccessResponse);
+            return getDataAccessResponse;
+        });
     }
 
     /**
-     * This method searches for the cacheKey in the cache. It will also search for a cache key with higher S3 prefix than
-     * requested.
+     * This method searches the cache for the requested S3 prefix. Grants on the exact S3 prefix, e.g. object level grants,
+     * are found with a single lookup. Otherwise the prefix index is searched for the most specific grant. A grant on a
+     * path e.g., "s3://bucket/foo" is preferred over a grant of type "s3://bucket/foo*" and a grant with the requested
+     * permission is preferred over a grant with broader permission.
+     * The arguments of the request are used to refresh the entry found, see
+     * {@link #refreshIfNeeded(CacheKey, CacheKey, String, S3AccessGrantsAccessDeniedCache, S3ControlAsyncClient, String)}.
      * @param cacheKey CacheKey consists of AwsCredentialsIdentity, Permission, and S3Prefix.
+     * @param isRecheck true when searching again for a request whose first search missed, the probes are not counted again
+     *                  and the entry found is not refreshed.
      * @return cached Access Grants credentials.
      */
-    private CompletableFuture<AwsCredentialsIdentity> searchKeyInCacheAtPrefixLevel (CacheKey cacheKey) {
-
-        CompletableFuture<AwsCredentialsIdentity> cacheValue;
-        String prefix = cacheKey.s3Prefix;
-        while (!prefix.equals("s3:")){
-            cacheValue = cache.getIfPresent(cacheKey.toBuilder().s3Prefix(prefix).build());
-            if (cacheValue != null){
+    private CompletableFuture<AwsCredentialsIdentity> searchKeyInCache(CacheKey cacheKey, String accountId,
+                                                                       S3AccessGrantsAccessDeniedCache s3AccessGrantsAccessDeniedCache,
+                                                                       S3ControlAsyncClient s3ControlAsyncClient, String regionId,
+                                                                       boolean isRecheck) {
+        if (lookupMode == S3AccessGrantsCacheLookupMode.BATCHED) {
+            return searchKeyInCacheBatched(cacheKey, accountId, s3AccessGrantsAccessDeniedCache, s3ControlAsyncClient, regionId, isRecheck);
+        }
+        int probes = 1;
+        CompletableFuture<AwsCredentialsIdentity> exactTargetValue = cache.getIfPresent(cacheKey);
+        if (exactTargetValue != null) {
+            logger.debug(()->"Successfully retrieved credentials from the cache.");
+            if (!isRecheck) {
+                metrics.add(MetricsCollector.CACHE_LOOKUP_PROBE_COUNT, probes);
+                refreshIfNeeded(cacheKey, cacheKey, accountId, s3AccessGrantsAccessDeniedCache, s3ControlAsyncClient, regionId);
+            }
+            return exactTargetValue;
+        }
+        CacheKey matchedKey;
+        while ((matchedKey = findMatchingGrant(cacheKey)) != null) {
+            probes++;
+            CompletableFuture<AwsCredentialsIdentity> cacheValue = cache.getIfPresent(matchedKey);
+            if (cacheValue != null) {
                 logger.debug(()->"Successfully retrieved credentials from the cache.");
+                if (!isRecheck) {
+                    metrics.add(MetricsCollector.CACHE_LOOKUP_PROBE_COUNT, probes);
+                    refreshIfNeeded(matchedKey, cacheKey, accountId, s3AccessGrantsAccessDeniedCache, s3ControlAsyncClient, regionId);
+                }
                 return cacheValue;
             }
-            prefix = getNextPrefix(prefix);
+            // The entry was evicted or has expired after it was indexed.
+            prefixIndex.remove(matchedKey, this::isCached);
+        }
+        if (!isRecheck) {
+            metrics.add(MetricsCollector.CACHE_LOOKUP_PROBE_COUNT, probes);
         }
         return null;
     }
 
     /**
-     * This method looks for grants present in the cache of type "s3://bucketname/foo*"
+     * This method reads the exact S3 prefix and every indexed grant matching it in a single batched read and returns the
+     * most specific one, in the same order of preference as {@link #findMatchingGrant(CacheKey)}.
      * @param cacheKey CacheKey consists of AwsCredentialsIdentity, Permission, and S3Prefix.
+     * @param isRecheck see {@link #searchKeyInCache(CacheKey, String, S3AccessGrantsAccessDeniedCache, S3ControlAsyncClient, String, boolean)}.
      * @return cached Access Grants credentials.
      */
-     private CompletableFuture<AwsCredentialsIdentity> searchKeyInCacheAtCharacterLevel (CacheKey cacheKey) {
-        CompletableFuture<AwsCredentialsIdentity> cacheValue;
-        String prefix = cacheKey.s3Prefix;
-        while (!prefix.equals("s3://")){
-            cacheValue = cache.getIfPresent(cacheKey.toBuilder().s3Prefix(prefix + "*").build());
-            if (cacheValue != null){
+    private CompletableFuture<AwsCredentialsIdentity> searchKeyInCacheBatched(CacheKey cacheKey, String accountId,
+                                                                              S3AccessGrantsAccessDeniedCache s3AccessGrantsAccessDeniedCache,
+                                                                              S3ControlAsyncClient s3ControlAsyncClient, String regionId,
+                                                                              boolean isRecheck) {
+        List<CacheKey> candidateKeys = getCandidateKeys(cacheKey);
+        Map<CacheKey, AwsCredentialsIdentity> cachedValues = cache.synchronous().getAllPresent(candidateKeys);
+        if (!isRecheck) {
+            metrics.add(MetricsCollector.CACHE_LOOKUP_PROBE_COUNT, candidateKeys.size());
+        }
+        if (cachedValues.isEmpty()) {
+            return null;
+        }
+        for (CacheKey candidateKey : candidateKeys) {
+            AwsCredentialsIdentity cacheValue = cachedValues.get(candidateKey);
+            if (cacheValue != null) {
                 logger.debug(()->"Successfully retrieved credentials from the cache.");
-                return cacheValue;
+                if (!isRecheck) {
+                    refreshIfNeeded(candidateKey, cacheKey, accountId, s3AccessGrantsAccessDeniedCache, s3ControlAsyncClient, regionId);
+                }
+                return CompletableFuture.completedFuture(cacheValue);
             }
-            prefix = getNextPrefixByChar(prefix);
         }
         return null;
     }
 
+    /**
+     * Walks the prefix index once per permission instead of building a key for every prefix of the S3 prefix.
+     * @return the cacheKey followed by the keys of the indexed grants matching it, most specific first. Grants on a path
+     * with the requested permission, then with READWRITE permission, followed by grants of type "s3://bucket/foo*" in the
+     * same order.
+     */
+    List<CacheKey> getCandidateKeys(CacheKey cacheKey) {
+        boolean includeReadWrite = cacheKey.permission == Permission.READ || cacheKey.permission == Permission.WRITE;
+        List<CacheKey> candidateKeys = new ArrayList<>();
+        List<CacheKey> characterGrants = new ArrayList<>();
+        candidateKeys.add(cacheKey);
+        addMatchingGrants(cacheKey, cacheKey.permission, candidateKeys, characterGrants);
+        // A grant on the exact S3 prefix is already read through the cacheKey.
+        if (candidateKeys.size() > 1 && candidateKeys.get(1).equals(cacheKey)) {
+            candidateKeys.remove(1);
+        }
+        if (includeReadWrite) {
+            addMatchingGrants(cacheKey, Permission.READWRITE, candidateKeys, characterGrants);
+        }
+        candidateKeys.addAll(characterGrants);
+        return candidateKeys;
+    }
+
+    private void addMatchingGrants(CacheKey cacheKey, Permission permission, List<CacheKey> pathGrants, List<CacheKey> characterGrants) {
+        int pathGrantsStart = pathGrants.size();
+        int characterGrantsStart = characterGrants.size();
+        prefixIndex.findAllMatches(cacheKey.identity(), permission, cacheKey.s3Prefix, pathGrants, characterGrants);
+        reverse(pathGrants, pathGrantsStart);
+        reverse(characterGrants, characterGrantsStart);
+    }
+
+    private static void reverse(List<CacheKey> keys, int from) {
+        for (int i = from, j = keys.size() - 1; i < j; i++, j--) {
+            keys.set(i, keys.set(j, keys.get(i)));
+        }
+    }
+
+    private CacheKey findMatchingGrant(CacheKey cacheKey) {
+        CacheKey matchedKey = prefixIndex.findLongestMatch(cacheKey.identity(), cacheKey.permission, cacheKey.s3Prefix);
+        if (isPrefixLevelGrant(matchedKey) ||
+            (cacheKey.permission != Permission.READ && cacheKey.permission != Permission.WRITE)) {
+            return matchedKey;
+        }
+        CacheKey readWriteKey = prefixIndex.findLongestMatch(cacheKey.identity(), Permission.READWRITE, cacheKey.s3Prefix);
+        if (readWriteKey != null && (matchedKey == null || isPrefixLevelGrant(readWriteKey))) {
+            return readWriteKey;
+        }
+        return matchedKey;
+    }
+
+    private boolean isPrefixLevelGrant(CacheKey cacheKey) {
+        return cacheKey != null && !cacheKey.s3Prefix.endsWith("*");
+    }
+
+    private boolean isCached(CacheKey cacheKey) {
+        return cache.asMap().containsKey(cacheKey);
+    }
+
     /**
      * This method puts an entry in cache.
      * @param cacheKey CacheKey consists of AwsCredentialsIdentity, Permission, and S3Prefix.
@@ -285,20 +615,27 @@ public class S3AccessGrantsCache {
                          + " and permission: " + cacheKey.permission);
         cache.put(cacheKey, credentials);
         cache.synchronous().policy().expireVariably().ifPresent(ev -> ev.setExpiresAfter(cacheKey, duration, TimeUnit.SECONDS));
+        prefixIndex.add(cacheKey);
     }
 
     /**
-     * This method splits S3Prefix on last "/" and returns the first part.
-     */
-    private String getNextPrefix(String prefix){
-        return prefix.substring(0, prefix.lastIndexOf("/"));
-    }
-
-    /**
-     * This methods returns a substring of the string with last character removed.
+     * This method puts an entry in cache for a grant that only matches its exact target, e.g. a grant on a single object.
+     * These entries are not added to the prefix index since they do not apply to any other S3 prefix.
+     * @param cacheKey CacheKey consists of AwsCredentialsIdentity, Permission, and the matched grant target.
+     * @param credentials The cache value credentials returned by Access Grants.
+     * @param duration TTL for the cache entry.
+     * @return false if the credentials were not cached because a grant for the whole prefix is cached under the same key.
      */
-    private String getNextPrefixByChar(String prefix){
-        return prefix.substring(0, prefix.length()-1);
+    boolean putExactTargetValueInCache(CacheKey cacheKey, CompletableFuture<AwsCredentialsIdentity> credentials, long duration) {
+        if (cacheKey.equals(prefixIndex.findLongestMatch(cacheKey.identity(), cacheKey.permission, cacheKey.s3Prefix))) {
+            // A grant for the whole prefix is already cached under the same key and also covers this target.
+            return false;
+        }
+        logger.debug(()->"Caching the credentials for exact target:" + cacheKey.s3Prefix
+                         + " and permission: " + cacheKey.permission);
+        cache.put(cacheKey, credentials);
+        cache.synchronous().policy().expireVariably().ifPresent(ev -> ev.setExpiresAfter(cacheKey, duration, TimeUnit.SECONDS));
+        return true;
     }
 
     /**
@@ -318,11 +655,49 @@ public class S3AccessGrantsCache {
      */
     protected CacheStats getCacheStats() { return cache.synchronous().stats();}
 
+    /**
+     * @return estimated size of the cache in bytes, empty if the cache is bounded by entry count.
+     */
+    protected OptionalLong getEstimatedSizeBytes() {
+        cache.synchronous().cleanUp();
+        return cache.synchronous().policy().eviction().map(Policy.Eviction::weightedSize).orElse(OptionalLong.empty());
+    }
+
     /**
      * Invalidates the cache.
      */
     void invalidateCache() {
         cache.synchronous().invalidateAll();
+        prefixIndex.clear();
+        refreshContexts.clear();
+    }
+
+    /**
+     * When and for which target the credentials of a cache entry are refreshed in the background. The credentials of the
+     * refresh are those of the request that reads the entry, they are not kept here.
+     */
+    private static final class RefreshContext {
+        private volatile Instant refreshTime;
+        private final Instant expirationTime;
+        private final String s3Prefix;
+        private final Permission permission;
+        private final AtomicBoolean isRefreshing = new AtomicBoolean();
+
+        private RefreshContext(Instant refreshTime, Instant expirationTime, String s3Prefix, Permission permission) {
+            this.refreshTime = refreshTime;
+            this.expirationTime = expirationTime;
+            this.s3Prefix = s3Prefix;
+            this.permission = permission;
+        }
+
+        /**
+         * Moves the refresh time to half of the time left before the cache entry expires, at least one second away.
+         */
+        private void backOff() {
+            Instant now = Instant.now();
+            Duration backoff = Duration.between(now, expirationTime).dividedBy(2);
+            refreshTime = now.plus(backoff.compareTo(MIN_REFRESH_BACKOFF) > 0 ? backoff : MIN_REFRESH_BACKOFF);
+        }
     }
 
     private static class CustomCacheExpiry<K, V> implements Expiry<K, V> {
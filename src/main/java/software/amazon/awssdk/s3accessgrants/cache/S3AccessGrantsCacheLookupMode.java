@@ -0,0 +1,35 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.awssdk.s3accessgrants.cache;
+
+/**
+ * How the Access Grants cache searches for a grant matching the requested S3 prefix.
+ */
+public enum S3AccessGrantsCacheLookupMode {
+
+    /**
+     * The most specific grant is found in a single walk of an index of the cached grants and then read from the cache.
+     * This is the default.
+     */
+    INDEXED,
+
+    /**
+     * The requested S3 prefix and every grant of the index matching it, for the requested and the READWRITE permission,
+     * are read from the cache in a single batched read and the most specific one is returned.
+     * Grants that were indexed but are no longer cached are recorded as misses in the cache statistics.
+     */
+    BATCHED
+}
@@ -17,16 +17,24 @@ package software.amazon.awssdk.s3accessgrants.cache;
 
 import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.DEFAULT_ACCOUNT_ID_EXPIRE_CACHE_AFTER_WRITE_SECONDS;
 import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.DEFAULT_ACCOUNT_ID_MAX_CACHE_SIZE;
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.DEFAULT_RESOLVER_NEGATIVE_CACHE_EXPIRE_AFTER_WRITE_SECONDS;
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.DEFAULT_RESOLVER_NEGATIVE_CACHE_SIZE;
 import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.MAX_LIMIT_ACCOUNT_ID_EXPIRE_CACHE_AFTER_WRITE_SECONDS;
 import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.MAX_LIMIT_ACCOUNT_ID_MAX_CACHE_SIZE;
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.MAX_RESOLVER_MAX_STALE_SECONDS;
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.MAX_RESOLVER_NEGATIVE_CACHE_EXPIRE_AFTER_WRITE_SECONDS;
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.MAX_RESOLVER_NEGATIVE_CACHE_SIZE;
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.SERVE_STALE_DISABLED;
 import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsUtil.getBucketName;
 
-import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.AsyncCache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import java.time.Duration;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
 import software.amazon.awssdk.annotations.NotNull;
 import software.amazon.awssdk.services.s3control.S3ControlAsyncClient;
 import software.amazon.awssdk.services.s3control.endpoints.internal.Arn;
@@ -36,15 +44,26 @@ import software.amazon.awssdk.services.s3control.model.S3ControlException;
 import software.amazon.awssdk.utils.Logger;
 
 /**
- * A loading cache S3 Access Grants AccountId Resolver
+ * A loading cache S3 Access Grants AccountId Resolver.
+ * Accounts are cached per caller account and bucket, so a resolver can be shared by S3 Clients with different credentials and
+ * by the S3 Control clients of every region.
  */
 public class S3AccessGrantsCachedAccountIdResolver implements S3AccessGrantsAccountIdResolver {
 
     private int maxCacheSize;
     private int expireCacheAfterWriteSeconds;
+    private int maxStaleSeconds;
+    private int negativeCacheMaxSize;
+    private int negativeCacheExpireAfterWriteSeconds;
     private static final Logger logger = Logger.loggerFor(S3AccessGrantsCachedAccountIdResolver.class);
 
-    private Cache<String, String> cache;
+    private AsyncCache<String, String> cache;
+
+    private StaleEntryRefresher<String> staleEntryRefresher;
+
+    private ResolverNegativeCache negativeCache;
+
+    private final LongAdder avoidedServiceCalls = new LongAdder();
 
     public int maxCacheSize() {
         return maxCacheSize;
@@ -54,11 +73,39 @@ public class S3AccessGrantsCachedAccountIdResolver implements S3AccessGrantsAcco
         return expireCacheAfterWriteSeconds;
     }
 
-    protected CacheStats getCacheStats() { return cache.stats(); }
+    public int maxStaleSeconds() {
+        return maxStaleSeconds;
+    }
+
+    public int negativeCacheMaxSize() {
+        return negativeCacheMaxSize;
+    }
+
+    public int negativeCacheExpireAfterWriteSeconds() {
+        return negativeCacheExpireAfterWriteSeconds;
+    }
+
+    protected CacheStats getCacheStats() { return cache.synchronous().stats(); }
+
+    protected CacheStats getNegativeCacheStats() { return negativeCache.getCacheStats(); }
+
+    /**
+     * @return number of accounts returned from the caches or from a pending request without a new request to S3 Control.
+     */
+    protected long getAvoidedServiceCalls() { return avoidedServiceCalls.sum(); }
+
+    AsyncCache<String, String> getCache() { return cache; }
+
+    static String cacheKey(String accountId, String bucketName) {
+        return accountId + ":" + bucketName;
+    }
 
     S3AccessGrantsCachedAccountIdResolver() {
         this.maxCacheSize = DEFAULT_ACCOUNT_ID_MAX_CACHE_SIZE;
         this.expireCacheAfterWriteSeconds = DEFAULT_ACCOUNT_ID_EXPIRE_CACHE_AFTER_WRITE_SECONDS;
+        this.maxStaleSeconds = SERVE_STALE_DISABLED;
+        this.negativeCacheMaxSize = DEFAULT_RESOLVER_NEGATIVE_CACHE_SIZE;
+        this.negativeCacheExpireAfterWriteSeconds = DEFAULT_RESOLVER_NEGATIVE_CACHE_EXPIRE_AFTER_WRITE_SECONDS;
     }
 
 
@@ -72,14 +119,55 @@ public class S3AccessGrantsCachedAccountIdResolver implements S3AccessGrantsAcco
 
     @Override
     public String resolve(String accountId, String s3Prefix, S3ControlAsyncClient s3ControlAsyncClient) {
-        String bucketName = getBucketName(s3Prefix);
-        return cache.get(bucketName, key -> {
+        try {
+            return resolveAsync(accountId, s3Prefix, s3ControlAsyncClient).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Concurrent requests for the same caller account and bucket share a single request to the service. Non-retryable client
+     * errors other than access denied are remembered for {@code negativeCacheExpireAfterWriteSeconds}, other failures are not cached.
+     * A stale account is returned right away and refreshed in the background.
+     * A cached client error, e.g. for a bucket that is not registered with any Access Grants instance, is returned without
+     * calling the service.
+     */
+    @Override
+    public CompletableFuture<String> resolveAsync(String accountId, String s3Prefix, S3ControlAsyncClient s3ControlAsyncClient) {
+        String key = cacheKey(accountId, getBucketName(s3Prefix));
+        CompletableFuture<String> cachedFailure = negativeCache.getIfPresent(key);
+        if (cachedFailure != null) {
+            avoidedServiceCalls.increment();
+            return cachedFailure;
+        }
+        boolean[] isLoaded = new boolean[1];
+        CompletableFuture<String> resolvedAccountId = cache.get(key, (k, executor) -> {
             logger.debug(()->"Account Id not available in the cache. Fetching account from server.");
+            isLoaded[0] = true;
+            return negativeCache.cacheFailure(key, loadAccountId(accountId, s3Prefix, s3ControlAsyncClient));
+        });
+        if (!isLoaded[0]) {
+            avoidedServiceCalls.increment();
+        }
+        staleEntryRefresher.refreshIfStale(key, resolvedAccountId, () -> loadAccountId(accountId, s3Prefix, s3ControlAsyncClient));
+        return resolvedAccountId;
+    }
+
+    private CompletableFuture<String> loadAccountId(String accountId, String s3Prefix, S3ControlAsyncClient s3ControlAsyncClient) {
+        try {
             if (s3ControlAsyncClient == null) {
                 throw new IllegalArgumentException("S3ControlAsyncClient is required for the access grants instance account resolver!");
             }
             return resolveFromService(accountId, s3Prefix, s3ControlAsyncClient);
-        });
+        } catch (RuntimeException e) {
+            CompletableFuture<String> failedFuture = new CompletableFuture<>();
+            failedFuture.completeExceptionally(e);
+            return failedFuture;
+        }
     }
 
     /**
@@ -87,20 +175,21 @@ public class S3AccessGrantsCachedAccountIdResolver implements S3AccessGrantsAcco
      * @param s3Prefix e.g., s3://bucket-name/path/to/helloworld.txt
      * @return accountId from the service response
      */
-    private String resolveFromService(String accountId, String s3Prefix, S3ControlAsyncClient s3ControlAsyncClient) {
+    private CompletableFuture<String> resolveFromService(String accountId, String s3Prefix, S3ControlAsyncClient s3ControlAsyncClient) {
         CompletableFuture<GetAccessGrantsInstanceForPrefixResponse> accessGrantsInstanceForPrefix =
                 s3ControlAsyncClient.getAccessGrantsInstanceForPrefix(GetAccessGrantsInstanceForPrefixRequest
                                                                  .builder()
                                                                  .accountId(accountId)
                                                                  .s3Prefix(s3Prefix)
                                                                  .build());
-        String accessGrantsInstanceArn = accessGrantsInstanceForPrefix.join().accessGrantsInstanceArn();
-        Optional<Arn> optionalArn = Arn.parse(accessGrantsInstanceArn);
-        if (!optionalArn.isPresent()) {
-            logger.error(()->"accessGrantsInstanceArn is empty");
-            throw S3ControlException.builder().message("accessGrantsInstanceArn is empty").build();
-        }
-        return optionalArn.get().accountId();
+        return accessGrantsInstanceForPrefix.thenApply(response -> {
+            Optional<Arn> optionalArn = Arn.parse(response.accessGrantsInstanceArn());
+            if (!optionalArn.isPresent()) {
+                logger.error(()->"accessGrantsInstanceArn is empty");
+                throw S3ControlException.builder().message("accessGrantsInstanceArn is empty").build();
+            }
+            return optionalArn.get().accountId();
+        });
     }
 
     public interface Builder {
@@ -109,12 +198,33 @@ public class S3AccessGrantsCachedAccountIdResolver implements S3AccessGrantsAcco
         Builder maxCacheSize(int maxCacheSize);
 
         Builder expireCacheAfterWriteSeconds(int expireCacheAfterWriteSeconds);
+
+        /**
+         * How long an expired account is still returned while it is refreshed in the background.
+         * The account is evicted once it has not been refreshed for expireCacheAfterWriteSeconds plus maxStaleSeconds.
+         * Disabled by default.
+         */
+        Builder maxStaleSeconds(int maxStaleSeconds);
+
+        /**
+         * Maximum number of caller accounts and buckets whose account could not be resolved because of a client error that are cached.
+         */
+        Builder negativeCacheMaxSize(int negativeCacheMaxSize);
+
+        /**
+         * How long a request to the service that failed with a client error, e.g. 403 or 404, is not repeated.
+         * Throttling and server errors are never cached. 0 disables the cache.
+         */
+        Builder negativeCacheExpireAfterWriteSeconds(int negativeCacheExpireAfterWriteSeconds);
     }
 
     static final class BuilderImpl implements Builder {
         private S3ControlAsyncClient S3ControlAsyncClient;
         private int maxCacheSize = DEFAULT_ACCOUNT_ID_MAX_CACHE_SIZE;
         private int expireCacheAfterWriteSeconds = DEFAULT_ACCOUNT_ID_EXPIRE_CACHE_AFTER_WRITE_SECONDS;
+        private int maxStaleSeconds = SERVE_STALE_DISABLED;
+        private int negativeCacheMaxSize = DEFAULT_RESOLVER_NEGATIVE_CACHE_SIZE;
+        private int negativeCacheExpireAfterWriteSeconds = DEFAULT_RESOLVER_NEGATIVE_CACHE_EXPIRE_AFTER_WRITE_SECONDS;
 
         private BuilderImpl() {
         }
@@ -122,6 +232,9 @@ public class S3AccessGrantsCachedAccountIdResolver implements S3AccessGrantsAcco
         public BuilderImpl(S3AccessGrantsCachedAccountIdResolver s3AccessGrantsCachedAccountIdResolver) {
             maxCacheSize(s3AccessGrantsCachedAccountIdResolver.maxCacheSize);
             expireCacheAfterWriteSeconds(s3AccessGrantsCachedAccountIdResolver.expireCacheAfterWriteSeconds);
+            maxStaleSeconds(s3AccessGrantsCachedAccountIdResolver.maxStaleSeconds);
+            negativeCacheMaxSize(s3AccessGrantsCachedAccountIdResolver.negativeCacheMaxSize);
+            negativeCacheExpireAfterWriteSeconds(s3AccessGrantsCachedAccountIdResolver.negativeCacheExpireAfterWriteSeconds);
         }
 
         public int maxCacheSize() {
@@ -152,15 +265,53 @@ public class S3AccessGrantsCachedAccountIdResolver implements S3AccessGrantsAcco
             return this;
         }
 
+        @Override
+        public Builder maxStaleSeconds(int maxStaleSeconds) {
+            if (maxStaleSeconds < 0 || maxStaleSeconds > MAX_RESOLVER_MAX_STALE_SECONDS) {
+                throw new IllegalArgumentException(String.format("maxStaleSeconds needs to be in range [0, %d]",
+                                                                 MAX_RESOLVER_MAX_STALE_SECONDS));
+            }
+            this.maxStaleSeconds = maxStaleSeconds;
+            return this;
+        }
+
+        @Override
+        public Builder negativeCacheMaxSize(int negativeCacheMaxSize) {
+            if (negativeCacheMaxSize <= 0 || negativeCacheMaxSize > MAX_RESOLVER_NEGATIVE_CACHE_SIZE) {
+                throw new IllegalArgumentException(String.format("negativeCacheMaxSize needs to be in range (0, %d]",
+                                                                 MAX_RESOLVER_NEGATIVE_CACHE_SIZE));
+            }
+            this.negativeCacheMaxSize = negativeCacheMaxSize;
+            return this;
+        }
+
+        @Override
+        public Builder negativeCacheExpireAfterWriteSeconds(int negativeCacheExpireAfterWriteSeconds) {
+            if (negativeCacheExpireAfterWriteSeconds < 0 || negativeCacheExpireAfterWriteSeconds > MAX_RESOLVER_NEGATIVE_CACHE_EXPIRE_AFTER_WRITE_SECONDS) {
+                throw new IllegalArgumentException(String.format("negativeCacheExpireAfterWriteSeconds needs to be in range [0, %d]",
+                                                                 MAX_RESOLVER_NEGATIVE_CACHE_EXPIRE_AFTER_WRITE_SECONDS));
+            }
+            this.negativeCacheExpireAfterWriteSeconds = negativeCacheExpireAfterWriteSeconds;
+            return this;
+        }
+
         @Override
         public S3AccessGrantsCachedAccountIdResolver build() {
             S3AccessGrantsCachedAccountIdResolver resolver = new S3AccessGrantsCachedAccountIdResolver();
             resolver.maxCacheSize = maxCacheSize();
             resolver.expireCacheAfterWriteSeconds = expireCAcheAfterWriteSeconds();
+            resolver.maxStaleSeconds = maxStaleSeconds;
+            resolver.negativeCacheMaxSize = negativeCacheMaxSize;
+            resolver.negativeCacheExpireAfterWriteSeconds = negativeCacheExpireAfterWriteSeconds;
+            // The resolver is shared by S3 Control clients with different credentials, a 403 caused by the policy of one of
+            // them is not returned to the others.
+            resolver.negativeCache = new ResolverNegativeCache(negativeCacheMaxSize, negativeCacheExpireAfterWriteSeconds, false);
             resolver.cache = Caffeine.newBuilder()
                                      .maximumSize(maxCacheSize)
-                                     .expireAfterWrite(Duration.ofSeconds(expireCacheAfterWriteSeconds))
-                                     .build();
+                                     .expireAfter(new ExpireAfterWrite<String, String>(Duration.ofSeconds((long) expireCacheAfterWriteSeconds + maxStaleSeconds)))
+                                     .recordStats()
+                                     .buildAsync();
+            resolver.staleEntryRefresher = new StaleEntryRefresher<>(resolver.cache, maxStaleSeconds);
             return resolver;
         }
     }
@@ -14,27 +14,46 @@
  */
 package software.amazon.awssdk.s3accessgrants.cache;
 
-import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.AsyncCache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import software.amazon.awssdk.arns.Arn;
 import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.metrics.MetricCollector;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
-import software.amazon.awssdk.services.s3.model.HeadBucketResponse;
 import software.amazon.awssdk.services.s3.model.S3Exception;
 import software.amazon.awssdk.utils.Logger;
 
 import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
 import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.BUCKET_REGION_CACHE_SIZE;
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.BUCKET_REGION_HEADER;
 import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.BUCKET_REGION_EXPIRE_CACHE_AFTER_WRITE_SECONDS;
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.DEFAULT_RESOLVER_NEGATIVE_CACHE_EXPIRE_AFTER_WRITE_SECONDS;
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.DEFAULT_RESOLVER_NEGATIVE_CACHE_SIZE;
 import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.MAX_BUCKET_REGION_EXPIRE_CACHE_AFTER_WRITE_SECONDS;
 import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.MAX_BUCKET_REGION_CACHE_SIZE;
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.MAX_RESOLVER_MAX_STALE_SECONDS;
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.MAX_RESOLVER_NEGATIVE_CACHE_EXPIRE_AFTER_WRITE_SECONDS;
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.MAX_RESOLVER_NEGATIVE_CACHE_SIZE;
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.SERVE_STALE_DISABLED;
 
 /*
 * A layer for caching bucket regions.
 * This cache is specifically to avoid head bucket throttling.
+* The region of access points, Object Lambda access points and Outposts buckets is read from their ARN.
+* Regions seen in S3 responses can be added to the cache with putBucketRegion, so those buckets do not need a head bucket request.
+* With maxStaleSeconds, expired regions are still returned for that long while they are refreshed in the background.
+* Head bucket requests that fail with a client error, e.g. for a bucket that does not exist, are not repeated for negativeCacheExpireAfterWriteSeconds.
 * */
 public class S3AccessGrantsCachedBucketRegionResolver implements S3AccessGrantsBucketRegionResolver {
 
@@ -43,10 +62,24 @@ public class S3AccessGrantsCachedBucketRegionResolver implements S3AccessGrantsB
 
     private int expireCacheAfterWriteSeconds;
 
-    private Cache<String, Region> cache;
+    private int maxStaleSeconds;
+
+    private AsyncCache<String, Region> cache;
+
+    private StaleEntryRefresher<Region> staleEntryRefresher;
+
+    private int negativeCacheMaxSize;
+
+    private int negativeCacheExpireAfterWriteSeconds;
+
+    private ResolverNegativeCache negativeCache;
 
     private S3Client s3Client;
 
+    private S3AsyncClient s3AsyncClient;
+
+    private Executor executor;
+
     private static final Logger logger = Logger.loggerFor(S3AccessGrantsCachedBucketRegionResolver.class);
 
     public int getMaxCacheSize() {
@@ -66,7 +99,54 @@ public class S3AccessGrantsCachedBucketRegionResolver implements S3AccessGrantsB
         return maxCacheSize;
     }
 
-    protected CacheStats getCacheStats() { return cache.stats(); }
+    public int maxStaleSeconds() {
+        return maxStaleSeconds;
+    }
+
+    public int negativeCacheMaxSize() {
+        return negativeCacheMaxSize;
+    }
+
+    public int negativeCacheExpireAfterWriteSeconds() {
+        return negativeCacheExpireAfterWriteSeconds;
+    }
+
+    public Executor executor() {
+        return executor;
+    }
+
+    protected CacheStats getCacheStats() { return cache.synchronous().stats(); }
+
+    protected CacheStats getNegativeCacheStats() { return negativeCache.getCacheStats(); }
+
+    /**
+     * Reports the metrics of the failures cached by the resolver.
+     * @param collector collector the metrics are reported to
+     */
+    public void reportMetrics(MetricCollector collector) {
+        reportMetrics(Collections.singletonList(this), collector);
+    }
+
+    /**
+     * Reports the metrics of the failures cached by the resolvers, summed over all of them.
+     * @param bucketRegionResolvers resolvers whose metrics are reported, resolvers that do not cache failures are skipped
+     * @param collector collector the metrics are reported to
+     */
+    public static void reportMetrics(Collection<? extends S3AccessGrantsBucketRegionResolver> bucketRegionResolvers,
+                                     MetricCollector collector) {
+        CacheStats stats = null;
+        for (S3AccessGrantsBucketRegionResolver bucketRegionResolver : bucketRegionResolvers) {
+            if (bucketRegionResolver instanceof S3AccessGrantsCachedBucketRegionResolver) {
+                CacheStats resolverStats = ((S3AccessGrantsCachedBucketRegionResolver) bucketRegionResolver).getNegativeCacheStats();
+                stats = stats == null ? resolverStats : stats.plus(resolverStats);
+            }
+        }
+        if (stats != null) {
+            MetricsCollector.getMetricsForBucketRegionResolverNegativeCache(stats, collector);
+        }
+    }
+
+    AsyncCache<String, Region> getCache() { return cache; }
 
     public S3AccessGrantsCachedBucketRegionResolver.Builder toBuilder() {
         return new S3AccessGrantsCachedBucketRegionResolver.BuilderImpl(this);
@@ -79,47 +159,140 @@ public class S3AccessGrantsCachedBucketRegionResolver implements S3AccessGrantsB
     private S3AccessGrantsCachedBucketRegionResolver() {
         this.maxCacheSize = BUCKET_REGION_CACHE_SIZE;
         this.expireCacheAfterWriteSeconds = BUCKET_REGION_EXPIRE_CACHE_AFTER_WRITE_SECONDS;
+        this.maxStaleSeconds = SERVE_STALE_DISABLED;
+        this.negativeCacheMaxSize = DEFAULT_RESOLVER_NEGATIVE_CACHE_SIZE;
+        this.negativeCacheExpireAfterWriteSeconds = DEFAULT_RESOLVER_NEGATIVE_CACHE_EXPIRE_AFTER_WRITE_SECONDS;
     }
 
     @Override
     public Region resolve(String bucket) throws S3Exception {
-        Region bucketRegion = cache.getIfPresent(bucket);
-        if(bucketRegion == null) {
-            logger.debug(() -> "bucket region not available in cache, fetching the region from the service!");
-            if (s3Client == null) {
-                throw new IllegalArgumentException("S3Client is required for the bucket region resolver!");
+        try {
+            return resolveAsync(bucket).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
-            bucketRegion = resolveFromService(bucket);
-            if(bucketRegion != null) {
-                cache.put(bucket, bucketRegion);
+            throw e;
+        }
+    }
+
+    /**
+     * Concurrent requests for the same bucket share a single head bucket request. Non-retryable client errors are remembered
+     * for {@code negativeCacheExpireAfterWriteSeconds}, other failures are not cached.
+     * The request is made with the S3AsyncClient if one is configured, otherwise the S3Client is called on the calling thread.
+     * No request is made for ARNs that carry a region.
+     * A stale region is returned right away and refreshed in the background. The refresh with the S3Client runs on the configured
+     * executor, or on the calling thread if there is none.
+     * A cached client error is returned without making a request.
+     */
+    @Override
+    public CompletableFuture<Region> resolveAsync(String bucket) {
+        Region arnRegion = getRegionFromArn(bucket);
+        if (arnRegion != null) {
+            return CompletableFuture.completedFuture(arnRegion);
+        }
+        CompletableFuture<Region> cachedFailure = negativeCache.getIfPresent(bucket);
+        if (cachedFailure != null) {
+            return cachedFailure;
+        }
+        CompletableFuture<Region> bucketRegion = cache.get(bucket, (key, executor) -> negativeCache.cacheFailure(bucket, loadBucketRegion(bucket)));
+        staleEntryRefresher.refreshIfStale(bucket, bucketRegion, () -> s3AsyncClient != null || executor == null ? loadBucketRegion(bucket)
+            : CompletableFuture.supplyAsync(() -> loadBucketRegion(bucket), executor).thenCompose(Function.identity()));
+        return bucketRegion;
+    }
+
+    private CompletableFuture<Region> loadBucketRegion(String bucket) {
+        logger.debug(() -> "bucket region not available in cache, fetching the region from the service!");
+        logger.info(() -> "making a call to S3 for determining the bucket region! "+bucket);
+        HeadBucketRequest bucketLocationRequest = HeadBucketRequest.builder().bucket(bucket).build();
+        CompletableFuture<Region> bucketRegion = new CompletableFuture<>();
+        if (s3AsyncClient != null) {
+            try {
+                return s3AsyncClient.headBucket(bucketLocationRequest)
+                                    .handle((headBucketResponse, e) -> e == null ? toRegion(headBucketResponse.bucketRegion())
+                                                                                 : toRegion(getRegionFromException(e)));
+            } catch (RuntimeException e) {
+                bucketRegion.completeExceptionally(e);
+                return bucketRegion;
             }
-        } else {
-            logger.debug(() -> "bucket region available in cache!");
+        }
+        try {
+            bucketRegion.complete(toRegion(resolveFromService(bucketLocationRequest)));
+        } catch (RuntimeException e) {
+            bucketRegion.completeExceptionally(e);
         }
         return bucketRegion;
+    }
 
+    /**
+     * Caches the region of a bucket learned from an S3 response, e.g. the x-amz-bucket-region header of a redirect.
+     * A pending head bucket request for the bucket is not replaced. A stale region is refreshed even if it did not change.
+     * @param bucket name of the bucket
+     * @param region region where the bucket exists
+     */
+    public void putBucketRegion(String bucket, Region region) {
+        if (bucket == null || region == null || getRegionFromArn(bucket) != null) {
+            return;
+        }
+        CompletableFuture<Region> cachedRegion = cache.getIfPresent(bucket);
+        if (cachedRegion != null && (!cachedRegion.isDone() || (region.equals(cachedRegion.getNow(null)) && !staleEntryRefresher.isStale(bucket)))) {
+            return;
+        }
+        logger.debug(() -> "caching the region " + region + " learned from an S3 response for the bucket " + bucket);
+        negativeCache.invalidate(bucket);
+        cache.put(bucket, CompletableFuture.completedFuture(region));
     }
 
-    private Region resolveFromService(String bucket) {
-        String resolvedRegion = null;
+    /**
+     * @return region of an S3 ARN, e.g. arn:aws:s3:us-west-2:123456789012:accesspoint/my-access-point. null for bucket names,
+     * access point aliases and Multi-Region Access Points, which do not carry a region.
+     */
+    static Region getRegionFromArn(String bucket) {
+        if (bucket == null || !bucket.startsWith("arn:")) {
+            return null;
+        }
         try {
-                logger.info(() -> "making a call to S3 for determining the bucket region! "+bucket);
-                HeadBucketRequest bucketLocationRequest = HeadBucketRequest.builder().bucket(bucket).build();
-                HeadBucketResponse headBucketResponse = s3Client.headBucket(bucketLocationRequest);
-                resolvedRegion = headBucketResponse.bucketRegion();
-        } catch (S3Exception e) {
-            logger.debug(() -> "an exception occurred while make head bucket request to fetch bucket region. Attempting to extract the region from headers!");
-            if (e.awsErrorDetails() != null && e.awsErrorDetails().sdkHttpResponse() != null && e.awsErrorDetails().sdkHttpResponse().headers().get("x-amz-bucket-region") != null ) {
-                // A fallback in case the head bucket requests fails.
-                String bucketRegion = e.awsErrorDetails().sdkHttpResponse().headers().get("x-amz-bucket-region").get(0);
-                resolvedRegion = bucketRegion;
-            } else {
-                throw SdkServiceException.builder()
-                        .message(e.getMessage())
-                        .cause(e)
-                        .build();
+            Arn arn = Arn.fromString(bucket);
+            if (!arn.service().startsWith("s3")) {
+                return null;
             }
+            return arn.region().map(Region::of).orElse(null);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private String resolveFromService(HeadBucketRequest bucketLocationRequest) {
+        try {
+            return s3Client.headBucket(bucketLocationRequest).bucketRegion();
+        } catch (S3Exception e) {
+            return getRegionFromException(e);
         }
+    }
+
+    /**
+     * A fallback in case the head bucket requests fails, the region is extracted from the headers of the error response.
+     */
+    private String getRegionFromException(Throwable exception) {
+        Throwable cause = exception;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (!(cause instanceof S3Exception)) {
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new CompletionException(cause);
+        }
+        S3Exception e = (S3Exception) cause;
+        logger.debug(() -> "an exception occurred while make head bucket request to fetch bucket region. Attempting to extract the region from headers!");
+        if (e.awsErrorDetails() != null && e.awsErrorDetails().sdkHttpResponse() != null && e.awsErrorDetails().sdkHttpResponse().headers().get(BUCKET_REGION_HEADER) != null ) {
+            return e.awsErrorDetails().sdkHttpResponse().headers().get(BUCKET_REGION_HEADER).get(0);
+        }
+        throw SdkServiceException.builder()
+                .message(e.getMessage())
+                .cause(e)
+                .build();
+    }
+
+    private static Region toRegion(String resolvedRegion) {
         if(resolvedRegion == null) throw SdkServiceException.builder().message("S3 error! region cannot be determined for the specified bucket!").build();
         return Region.of(resolvedRegion);
     }
@@ -132,22 +305,63 @@ public class S3AccessGrantsCachedBucketRegionResolver implements S3AccessGrantsB
 
         S3AccessGrantsCachedBucketRegionResolver.Builder s3Client(S3Client s3Client);
 
+        /**
+         * S3AsyncClient used for the head bucket requests instead of the S3Client, so the callers are not blocked.
+         */
+        S3AccessGrantsCachedBucketRegionResolver.Builder s3AsyncClient(S3AsyncClient s3AsyncClient);
+
         S3AccessGrantsCachedBucketRegionResolver.Builder expireCacheAfterWriteSeconds(int expireCacheAfterWriteSeconds);
+
+        /**
+         * How long an expired region is still returned while it is refreshed in the background.
+         * The region is evicted once it has not been refreshed for expireCacheAfterWriteSeconds plus maxStaleSeconds.
+         * Disabled by default.
+         */
+        S3AccessGrantsCachedBucketRegionResolver.Builder maxStaleSeconds(int maxStaleSeconds);
+
+        /**
+         * Maximum number of buckets whose head bucket request failed with a client error that are cached.
+         */
+        S3AccessGrantsCachedBucketRegionResolver.Builder negativeCacheMaxSize(int negativeCacheMaxSize);
+
+        /**
+         * How long a head bucket request that failed with a client error, e.g. 403 or 404, is not repeated.
+         * Throttling and server errors are never cached. 0 disables the cache.
+         */
+        S3AccessGrantsCachedBucketRegionResolver.Builder negativeCacheExpireAfterWriteSeconds(int negativeCacheExpireAfterWriteSeconds);
+
+        /**
+         * Executor used for the background refreshes of stale regions with the S3Client and cache maintenance.
+         * By default, the refreshes with the S3Client run on the calling thread and cache maintenance on ForkJoinPool.commonPool().
+         */
+        S3AccessGrantsCachedBucketRegionResolver.Builder executor(Executor executor);
     }
 
     static final class BuilderImpl implements S3AccessGrantsCachedBucketRegionResolver.Builder {
         private int maxCacheSize = BUCKET_REGION_CACHE_SIZE;
         private int expireCacheAfterWriteSeconds = BUCKET_REGION_EXPIRE_CACHE_AFTER_WRITE_SECONDS;
+        private int maxStaleSeconds = SERVE_STALE_DISABLED;
+        private int negativeCacheMaxSize = DEFAULT_RESOLVER_NEGATIVE_CACHE_SIZE;
+        private int negativeCacheExpireAfterWriteSeconds = DEFAULT_RESOLVER_NEGATIVE_CACHE_EXPIRE_AFTER_WRITE_SECONDS;
 
         private S3Client s3Client;
 
+        private S3AsyncClient s3AsyncClient;
+
+        private Executor executor;
+
         private BuilderImpl() {
         }
 
         public BuilderImpl(S3AccessGrantsCachedBucketRegionResolver s3AccessGrantsCachedBucketRegionResolver) {
             maxCacheSize(s3AccessGrantsCachedBucketRegionResolver.maxCacheSize);
             expireCacheAfterWriteSeconds(s3AccessGrantsCachedBucketRegionResolver.expireCacheAfterWriteSeconds);
-            s3Client(s3AccessGrantsCachedBucketRegionResolver.s3Client);
+            maxStaleSeconds(s3AccessGrantsCachedBucketRegionResolver.maxStaleSeconds);
+            negativeCacheMaxSize(s3AccessGrantsCachedBucketRegionResolver.negativeCacheMaxSize);
+            negativeCacheExpireAfterWriteSeconds(s3AccessGrantsCachedBucketRegionResolver.negativeCacheExpireAfterWriteSeconds);
+            this.s3Client = s3AccessGrantsCachedBucketRegionResolver.s3Client;
+            this.s3AsyncClient = s3AccessGrantsCachedBucketRegionResolver.s3AsyncClient;
+            this.executor = s3AccessGrantsCachedBucketRegionResolver.executor;
         }
 
         public int maxCacheSize() {
@@ -155,14 +369,34 @@ public class S3AccessGrantsCachedBucketRegionResolver implements S3AccessGrantsB
         }
 
         public S3Client s3Client() {
-            if(s3Client == null) throw new IllegalArgumentException("S3 Client is required while configuring the S3 Bucket Region resolver!");
+            if(s3Client == null && s3AsyncClient == null) throw new IllegalArgumentException("S3 Client is required while configuring the S3 Bucket Region resolver!");
             return s3Client;
         }
 
+        public S3AsyncClient s3AsyncClient() {
+            return s3AsyncClient;
+        }
+
         public int expireCacheAfterWriteSeconds() {
             return expireCacheAfterWriteSeconds;
         }
 
+        public int maxStaleSeconds() {
+            return maxStaleSeconds;
+        }
+
+        public int negativeCacheMaxSize() {
+            return negativeCacheMaxSize;
+        }
+
+        public int negativeCacheExpireAfterWriteSeconds() {
+            return negativeCacheExpireAfterWriteSeconds;
+        }
+
+        public Executor executor() {
+            return executor;
+        }
+
         @Override
         public S3AccessGrantsCachedBucketRegionResolver.Builder maxCacheSize(int maxCacheSize) {
             if (maxCacheSize <= 0 || maxCacheSize > MAX_BUCKET_REGION_CACHE_SIZE) {
@@ -180,6 +414,14 @@ public class S3AccessGrantsCachedBucketRegionResolver implements S3AccessGrantsB
             this.s3Client = s3Client;
             return this;
         }
+
+        @Override
+        public S3AccessGrantsCachedBucketRegionResolver.Builder s3AsyncClient(S3AsyncClient s3AsyncClient) {
+            if (s3AsyncClient == null)
+                throw new IllegalArgumentException("S3 Async Client is required while configuring the S3 Bucket Region resolver!");
+            this.s3AsyncClient = s3AsyncClient;
+            return this;
+        }
         @Override
         public S3AccessGrantsCachedBucketRegionResolver.Builder expireCacheAfterWriteSeconds(int expireCacheAfterWriteSeconds) {
             if (expireCacheAfterWriteSeconds <= 0 || expireCacheAfterWriteSeconds > MAX_BUCKET_REGION_EXPIRE_CACHE_AFTER_WRITE_SECONDS) {
@@ -190,16 +432,64 @@ public class S3AccessGrantsCachedBucketRegionResolver implements S3AccessGrantsB
             return this;
         }
 
+        @Override
+        public S3AccessGrantsCachedBucketRegionResolver.Builder maxStaleSeconds(int maxStaleSeconds) {
+            if (maxStaleSeconds < 0 || maxStaleSeconds > MAX_RESOLVER_MAX_STALE_SECONDS) {
+                throw new IllegalArgumentException(String.format("maxStaleSeconds needs to be in range [0, %d]",
+                        MAX_RESOLVER_MAX_STALE_SECONDS));
+            }
+            this.maxStaleSeconds = maxStaleSeconds;
+            return this;
+        }
+
+        @Override
+        public S3AccessGrantsCachedBucketRegionResolver.Builder negativeCacheMaxSize(int negativeCacheMaxSize) {
+            if (negativeCacheMaxSize <= 0 || negativeCacheMaxSize > MAX_RESOLVER_NEGATIVE_CACHE_SIZE) {
+                throw new IllegalArgumentException(String.format("negativeCacheMaxSize needs to be in range (0, %d]",
+                        MAX_RESOLVER_NEGATIVE_CACHE_SIZE));
+            }
+            this.negativeCacheMaxSize = negativeCacheMaxSize;
+            return this;
+        }
+
+        @Override
+        public S3AccessGrantsCachedBucketRegionResolver.Builder negativeCacheExpireAfterWriteSeconds(int negativeCacheExpireAfterWriteSeconds) {
+            if (negativeCacheExpireAfterWriteSeconds < 0 || negativeCacheExpireAfterWriteSeconds > MAX_RESOLVER_NEGATIVE_CACHE_EXPIRE_AFTER_WRITE_SECONDS) {
+                throw new IllegalArgumentException(String.format("negativeCacheExpireAfterWriteSeconds needs to be in range [0, %d]",
+                        MAX_RESOLVER_NEGATIVE_CACHE_EXPIRE_AFTER_WRITE_SECONDS));
+            }
+            this.negativeCacheExpireAfterWriteSeconds = negativeCacheExpireAfterWriteSeconds;
+            return this;
+        }
+
+        @Override
+        public S3AccessGrantsCachedBucketRegionResolver.Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
         @Override
         public S3AccessGrantsCachedBucketRegionResolver build() {
             S3AccessGrantsCachedBucketRegionResolver resolver = new S3AccessGrantsCachedBucketRegionResolver();
             resolver.maxCacheSize = maxCacheSize();
             resolver.expireCacheAfterWriteSeconds = expireCacheAfterWriteSeconds();
             resolver.s3Client = s3Client();
-            resolver.cache = Caffeine.newBuilder()
+            resolver.s3AsyncClient = s3AsyncClient();
+            resolver.maxStaleSeconds = maxStaleSeconds();
+            resolver.negativeCacheMaxSize = negativeCacheMaxSize();
+            resolver.negativeCacheExpireAfterWriteSeconds = negativeCacheExpireAfterWriteSeconds();
+            resolver.executor = executor();
+            resolver.negativeCache = new ResolverNegativeCache(negativeCacheMaxSize, negativeCacheExpireAfterWriteSeconds, true);
+            Caffeine<Object, Object> cacheBuilder = Caffeine.newBuilder()
                     .maximumSize(maxCacheSize)
-                    .expireAfterWrite(Duration.ofSeconds(expireCacheAfterWriteSeconds))
-                    .build();
+                    .recordStats();
+            if (executor != null) {
+                cacheBuilder.executor(executor);
+            }
+            resolver.cache = cacheBuilder
+                    .expireAfter(new ExpireAfterWrite<String, Region>(Duration.ofSeconds((long) expireCacheAfterWriteSeconds + maxStaleSeconds)))
+                    .buildAsync();
+            resolver.staleEntryRefresher = new StaleEntryRefresher<>(resolver.cache, maxStaleSeconds);
             return resolver;
         }
     }
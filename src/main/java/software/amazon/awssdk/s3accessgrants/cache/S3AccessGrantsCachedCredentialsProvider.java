@@ -36,9 +36,48 @@ public interface S3AccessGrantsCachedCredentialsProvider {
                                                              String accountId, S3ControlAsyncClient s3ControlAsyncClient) throws Exception;
 
     /**
-     * @return metrics collected by access grants cache jar
+     * Cached credentials are looked up by the principal instead of the credentials, so they can still be used after the
+     * credentials of the same principal are rotated.
+     * @param credentials Credentials used for calling Access Grants.
+     * @param permission Permission requested by the user. Can be Read, Write, or ReadWrite.
+     * @param s3Prefix S3Prefix requested by the user. e.g., s3://bucket-name/path/to/helloworld.txt
+     * @param principal Stable identity of the credentials e.g., the caller ARN returned by STS GetCallerIdentity.
+     * @param s3ControlAsyncClient S3ControlAsynClient that will be used for making the requests
+     * @return Credentials from Access Grants.
+     * @throws S3ControlException in-case exception is cached.
+     */
+    default CompletableFuture<AwsCredentialsIdentity> getDataAccess (AwsCredentialsIdentity credentials, Permission permission, String s3Prefix,
+                                                                     String accountId, String principal,
+                                                                     S3ControlAsyncClient s3ControlAsyncClient) throws Exception {
+        return getDataAccess(credentials, permission, s3Prefix, accountId, s3ControlAsyncClient);
+    }
+
+    /**
+     * Same as the other getDataAccess methods, the latencies are tagged with the region of the S3 Control client.
+     * @param principal Stable identity of the credentials, or null to look up cached credentials by the credentials.
+     * @param regionId Id of the region the S3 Control client was built for. It is passed by the caller since reading it
+     *                 from the client copies the configuration of the client.
+     */
+    default CompletableFuture<AwsCredentialsIdentity> getDataAccess (AwsCredentialsIdentity credentials, Permission permission, String s3Prefix,
+                                                                     String accountId, String principal,
+                                                                     S3ControlAsyncClient s3ControlAsyncClient, String regionId) throws Exception {
+        return principal == null ? getDataAccess(credentials, permission, s3Prefix, accountId, s3ControlAsyncClient)
+                                 : getDataAccess(credentials, permission, s3Prefix, accountId, principal, s3ControlAsyncClient);
+    }
+
+    /**
+     * @return metrics collected by access grants cache jar, the counters of the requests are totals since the cache was created
      */
     MetricCollector getAccessGrantsMetrics();
 
+    /**
+     * Used by the metrics reporter of the plugin, which publishes the metrics on a fixed interval. Other callers should use
+     * {@link #getAccessGrantsMetrics()}.
+     * @return metrics collected by access grants cache jar, the counters of the requests are counted since the previous call
+     */
+    default MetricCollector reportAccessGrantsMetrics() {
+        return getAccessGrantsMetrics();
+    }
+
 }
 
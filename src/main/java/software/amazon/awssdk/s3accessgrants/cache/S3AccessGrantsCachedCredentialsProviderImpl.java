@@ -15,15 +15,15 @@
 
 package software.amazon.awssdk.s3accessgrants.cache;
 
-import java.time.Duration;
-import java.time.Instant;
+import java.util.Arrays;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import software.amazon.awssdk.annotations.NotNull;
 import software.amazon.awssdk.core.metrics.CoreMetric;
 import software.amazon.awssdk.identity.spi.AwsCredentialsIdentity;
 import software.amazon.awssdk.identity.spi.AwsSessionCredentialsIdentity;
 import software.amazon.awssdk.metrics.MetricCollector;
-import software.amazon.awssdk.metrics.internal.DefaultMetricCollector;
+import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsMetrics.Stage;
 import software.amazon.awssdk.services.s3control.S3ControlAsyncClient;
 import software.amazon.awssdk.services.s3control.model.Permission;
 import software.amazon.awssdk.services.s3control.model.S3ControlException;
@@ -32,34 +32,38 @@ import software.amazon.awssdk.utils.Logger;
 import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.CACHE_EXPIRATION_TIME_PERCENTAGE;
 import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.DEFAULT_ACCESS_GRANTS_MAX_CACHE_SIZE;
 import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.MAX_LIMIT_ACCESS_GRANTS_MAX_CACHE_SIZE;
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.REFRESH_AHEAD_DISABLED;
 
 public class S3AccessGrantsCachedCredentialsProviderImpl implements S3AccessGrantsCachedCredentialsProvider {
 
     private final S3AccessGrantsCache accessGrantsCache;
     private final S3AccessGrantsAccessDeniedCache s3AccessGrantsAccessDeniedCache;
-    DefaultMetricCollector collector = new DefaultMetricCollector("AccessGrantsMetricsCollector");
+    private final S3AccessGrantsMetrics metrics =
+        new S3AccessGrantsMetrics(Arrays.asList(MetricsCollector.CALL_COUNT, MetricsCollector.ERROR_COUNT,
+                                                MetricsCollector.CACHE_LOOKUP_PROBE_COUNT));
     public static final Logger logger = Logger.loggerFor(S3AccessGrantsCachedCredentialsProviderImpl.class);
 
-    private S3AccessGrantsCachedCredentialsProviderImpl(int maxCacheSize, int cacheExpirationTimePercentage) {
+    private S3AccessGrantsCachedCredentialsProviderImpl(BuilderImpl builder, boolean withAccountIdResolver) {
+        S3AccessGrantsCache.Builder accessGrantsCacheBuilder =
+            S3AccessGrantsCache.builder()
+                               .maxCacheSize(builder.maxCacheSize)
+                               .cacheExpirationTimePercentage(builder.cacheExpirationTimePercentage)
+                               .refreshAheadTimePercentage(builder.refreshAheadTimePercentage)
+                               .maxCacheWeightBytes(builder.maxCacheWeightBytes)
+                               .executor(builder.executor)
+                               .lookupMode(builder.lookupMode)
+                               .metrics(metrics);
+        accessGrantsCache = withAccountIdResolver
+                            ? accessGrantsCacheBuilder.s3AccessGrantsCachedAccountIdResolver(builder.s3AccessGrantsCachedAccountIdResolver)
+                                                      .buildWithAccountIdResolver()
+                            : accessGrantsCacheBuilder.build();
 
-        accessGrantsCache = S3AccessGrantsCache.builder()
-                                               .maxCacheSize(maxCacheSize)
-                                               .cacheExpirationTimePercentage(cacheExpirationTimePercentage).build();
-
-        s3AccessGrantsAccessDeniedCache = S3AccessGrantsAccessDeniedCache.builder()
-                                                .maxCacheSize(DEFAULT_ACCESS_GRANTS_MAX_CACHE_SIZE).build();
-    }
-
-    S3AccessGrantsCachedCredentialsProviderImpl(S3AccessGrantsCachedAccountIdResolver resolver,
-                                                int maxCacheSize, int cacheExpirationTimePercentage) {
-
-        accessGrantsCache = S3AccessGrantsCache.builder()
-                                               .maxCacheSize(maxCacheSize)
-                                               .cacheExpirationTimePercentage(cacheExpirationTimePercentage)
-                                               .s3AccessGrantsCachedAccountIdResolver(resolver)
-                                               .buildWithAccountIdResolver();
-        s3AccessGrantsAccessDeniedCache = S3AccessGrantsAccessDeniedCache.builder()
-                                                                         .maxCacheSize(DEFAULT_ACCESS_GRANTS_MAX_CACHE_SIZE).build();
+        S3AccessGrantsAccessDeniedCache.Builder accessDeniedCacheBuilder =
+            S3AccessGrantsAccessDeniedCache.builder().maxCacheSize(DEFAULT_ACCESS_GRANTS_MAX_CACHE_SIZE);
+        if (builder.maxAccessDeniedCacheWeightBytes > 0) {
+            accessDeniedCacheBuilder.maxCacheWeightBytes(builder.maxAccessDeniedCacheWeightBytes);
+        }
+        s3AccessGrantsAccessDeniedCache = accessDeniedCacheBuilder.build();
     }
 
     public static S3AccessGrantsCachedCredentialsProviderImpl.Builder builder() {
@@ -72,6 +76,29 @@ public class S3AccessGrantsCachedCredentialsProviderImpl implements S3AccessGran
         S3AccessGrantsCachedCredentialsProviderImpl.Builder s3AccessGrantsCachedAccountIdResolver(S3AccessGrantsCachedAccountIdResolver s3AccessGrantsCachedAccountIdResolver);
         S3AccessGrantsCachedCredentialsProviderImpl.Builder maxCacheSize(int maxCacheSize);
         S3AccessGrantsCachedCredentialsProviderImpl.Builder cacheExpirationTimePercentage(int cacheExpirationTimePercentage);
+        /**
+         * Enables refreshing cached credentials in the background once this percentage of their duration has passed.
+         * The value needs to be lower than the cacheExpirationTimePercentage. Refresh-ahead is disabled by default.
+         */
+        S3AccessGrantsCachedCredentialsProviderImpl.Builder refreshAheadTimePercentage(int refreshAheadTimePercentage);
+        /**
+         * Bounds the Access Grants cache by the estimated heap used by its entries instead of maxCacheSize.
+         * Useful when the size of the cached credentials varies a lot e.g., with long session tokens.
+         */
+        S3AccessGrantsCachedCredentialsProviderImpl.Builder maxCacheWeightBytes(long maxCacheWeightBytes);
+        /**
+         * Bounds the Access Denied cache by the estimated heap used by its entries instead of the number of entries.
+         */
+        S3AccessGrantsCachedCredentialsProviderImpl.Builder maxAccessDeniedCacheWeightBytes(long maxAccessDeniedCacheWeightBytes);
+        /**
+         * Executor used for the continuations of requests to Access Grants, background refreshes and cache maintenance.
+         * By default, continuations run on the thread completing the request and background work on ForkJoinPool.commonPool().
+         */
+        S3AccessGrantsCachedCredentialsProviderImpl.Builder executor(Executor executor);
+        /**
+         * How the Access Grants cache searches for a grant matching the requested S3 prefix, see {@link S3AccessGrantsCacheLookupMode}.
+         */
+        S3AccessGrantsCachedCredentialsProviderImpl.Builder lookupMode(S3AccessGrantsCacheLookupMode lookupMode);
     }
 
     static final class BuilderImpl implements S3AccessGrantsCachedCredentialsProviderImpl.Builder {
@@ -79,18 +106,31 @@ public class S3AccessGrantsCachedCredentialsProviderImpl implements S3AccessGran
         private S3AccessGrantsCachedAccountIdResolver s3AccessGrantsCachedAccountIdResolver;
         private int maxCacheSize = DEFAULT_ACCESS_GRANTS_MAX_CACHE_SIZE;
         private int cacheExpirationTimePercentage = CACHE_EXPIRATION_TIME_PERCENTAGE;
+        private int refreshAheadTimePercentage = REFRESH_AHEAD_DISABLED;
+        private long maxCacheWeightBytes;
+        private long maxAccessDeniedCacheWeightBytes;
+        private Executor executor;
+        private S3AccessGrantsCacheLookupMode lookupMode = S3AccessGrantsCacheLookupMode.INDEXED;
 
         private BuilderImpl() {
         }
 
         @Override
         public S3AccessGrantsCachedCredentialsProviderImpl build() {
-            return new S3AccessGrantsCachedCredentialsProviderImpl(maxCacheSize, cacheExpirationTimePercentage);
+            validateRefreshAheadTimePercentage();
+            return new S3AccessGrantsCachedCredentialsProviderImpl(this, false);
         }
 
         @Override
         public S3AccessGrantsCachedCredentialsProviderImpl buildWithAccountIdResolver() {
-            return new S3AccessGrantsCachedCredentialsProviderImpl(s3AccessGrantsCachedAccountIdResolver, maxCacheSize, cacheExpirationTimePercentage);
+            validateRefreshAheadTimePercentage();
+            return new S3AccessGrantsCachedCredentialsProviderImpl(this, true);
+        }
+
+        private void validateRefreshAheadTimePercentage() {
+            if (refreshAheadTimePercentage != REFRESH_AHEAD_DISABLED && refreshAheadTimePercentage >= cacheExpirationTimePercentage) {
+                throw new IllegalArgumentException("refreshAheadTimePercentage needs to be lower than cacheExpirationTimePercentage");
+            }
         }
 
         @Override
@@ -105,6 +145,7 @@ public class S3AccessGrantsCachedCredentialsProviderImpl implements S3AccessGran
                 throw new IllegalArgumentException(String.format("maxCacheSize needs to be in range (0, %d]",
                                                                  MAX_LIMIT_ACCESS_GRANTS_MAX_CACHE_SIZE));
             }
+            this.maxCacheSize = maxCacheSize;
             return this;
         }
 
@@ -118,17 +159,74 @@ public class S3AccessGrantsCachedCredentialsProviderImpl implements S3AccessGran
             return this;
         }
 
+        @Override
+        public Builder refreshAheadTimePercentage(int refreshAheadTimePercentage) {
+            if (refreshAheadTimePercentage < 0 || refreshAheadTimePercentage >= 100) {
+                throw new IllegalArgumentException("refreshAheadTimePercentage needs to be in range [0, 100)");
+            }
+            this.refreshAheadTimePercentage = refreshAheadTimePercentage;
+            return this;
+        }
+
+        @Override
+        public Builder maxCacheWeightBytes(long maxCacheWeightBytes) {
+            if (maxCacheWeightBytes <= 0) {
+                throw new IllegalArgumentException("maxCacheWeightBytes needs to be greater than 0");
+            }
+            this.maxCacheWeightBytes = maxCacheWeightBytes;
+            return this;
+        }
+
+        @Override
+        public Builder maxAccessDeniedCacheWeightBytes(long maxAccessDeniedCacheWeightBytes) {
+            if (maxAccessDeniedCacheWeightBytes <= 0) {
+                throw new IllegalArgumentException("maxAccessDeniedCacheWeightBytes needs to be greater than 0");
+            }
+            this.maxAccessDeniedCacheWeightBytes = maxAccessDeniedCacheWeightBytes;
+            return this;
+        }
+
+        @Override
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        @Override
+        public Builder lookupMode(S3AccessGrantsCacheLookupMode lookupMode) {
+            if (lookupMode == null) {
+                throw new IllegalArgumentException("lookupMode is required");
+            }
+            this.lookupMode = lookupMode;
+            return this;
+        }
+
     }
 
     @Override
     public CompletableFuture<AwsCredentialsIdentity> getDataAccess(AwsCredentialsIdentity credentials, Permission permission,
                                                                    String s3Prefix, @NotNull String accountId, S3ControlAsyncClient s3ControlAsyncClient) throws S3ControlException {
+        return getDataAccess(credentials, permission, s3Prefix, accountId, null, s3ControlAsyncClient);
+    }
 
-        Instant start = Instant.now();
+    @Override
+    public CompletableFuture<AwsCredentialsIdentity> getDataAccess(AwsCredentialsIdentity credentials, Permission permission,
+                                                                   String s3Prefix, @NotNull String accountId, String principal,
+                                                                   S3ControlAsyncClient s3ControlAsyncClient) throws S3ControlException {
+        return getDataAccess(credentials, permission, s3Prefix, accountId, principal, s3ControlAsyncClient, null);
+    }
+
+    @Override
+    public CompletableFuture<AwsCredentialsIdentity> getDataAccess(AwsCredentialsIdentity credentials, Permission permission,
+                                                                   String s3Prefix, @NotNull String accountId, String principal,
+                                                                   S3ControlAsyncClient s3ControlAsyncClient, String regionId) throws S3ControlException {
+
+        long start = System.nanoTime();
         CacheKey cacheKey = CacheKey.builder()
                                     .credentials(credentials)
                                     .permission(permission)
-                                    .s3Prefix(s3Prefix).build();
+                                    .s3Prefix(s3Prefix)
+                                    .principal(principal).build();
 
         S3ControlException s3ControlException = s3AccessGrantsAccessDeniedCache.getValueFromCache(cacheKey);
         if (s3ControlException != null) {
@@ -139,13 +237,19 @@ public class S3AccessGrantsCachedCredentialsProviderImpl implements S3AccessGran
 
         CompletableFuture<AwsCredentialsIdentity> accessGrantsCredentials;
         try {
-            accessGrantsCredentials = accessGrantsCache.getCredentials(cacheKey, accountId, s3AccessGrantsAccessDeniedCache, s3ControlAsyncClient);
+            accessGrantsCredentials = accessGrantsCache.getCredentials(cacheKey, accountId, s3AccessGrantsAccessDeniedCache, s3ControlAsyncClient, regionId);
         }catch (S3ControlException e) {
-            collector.reportMetric(MetricsCollector.ERROR_COUNT,1);
+            metrics.increment(MetricsCollector.ERROR_COUNT);
             throw e;
         }
-        collector.reportMetric(MetricsCollector.LATENCY, Duration.between(start, Instant.now()));
-        collector.reportMetric(MetricsCollector.CALL_COUNT, 1);
+        // The latency is recorded once the credentials are available, not when the future is returned.
+        metrics.recordLatencyOnCompletion(Stage.ACCESS_GRANTS_CREDENTIALS, regionId, start, accessGrantsCredentials);
+        accessGrantsCredentials.whenComplete((sessionCredentials, e) -> {
+            if (e != null) {
+                metrics.increment(MetricsCollector.ERROR_COUNT);
+            }
+        });
+        metrics.increment(MetricsCollector.CALL_COUNT);
         return accessGrantsCredentials;
     }
 
@@ -153,18 +257,33 @@ public class S3AccessGrantsCachedCredentialsProviderImpl implements S3AccessGran
         accessGrantsCache.invalidateCache();
     }
 
-    private void collectMetrics() {
+    private MetricCollector collectMetrics(S3AccessGrantsMetrics.Snapshot requestMetrics) {
+        MetricCollector collector = MetricCollector.create("AccessGrantsMetricsCollector");
+        requestMetrics.reportTo(collector);
+        LatencyHistogram.Snapshot latency = requestMetrics.latency(Stage.ACCESS_GRANTS_CREDENTIALS);
+        if (latency.count() > 0) {
+            collector.reportMetric(MetricsCollector.LATENCY, latency.mean());
+        }
         collector.reportMetric(CoreMetric.SERVICE_ID, "AccessGrants");
         collector.reportMetric(CoreMetric.OPERATION_NAME, "Metrics");
         MetricsCollector.getMetricsForAccessGrantsCache(accessGrantsCache.getCacheStats(), collector);
         MetricsCollector.getMetricsForAccessDeniedCache(s3AccessGrantsAccessDeniedCache.getCacheStats(), collector);
+        MetricsCollector.getEstimatedSizeForAccessGrantsCache(accessGrantsCache.getEstimatedSizeBytes(), collector);
+        MetricsCollector.getEstimatedSizeForAccessDeniedCache(s3AccessGrantsAccessDeniedCache.getEstimatedSizeBytes(), collector);
         MetricsCollector.getMetricsForAccountIdResolverCache(accessGrantsCache.getS3AccessGrantsCachedAccountIdResolver().getCacheStats(), collector);
+        MetricsCollector.getMetricsForAccountIdResolverNegativeCache(accessGrantsCache.getS3AccessGrantsCachedAccountIdResolver().getNegativeCacheStats(), collector);
+        MetricsCollector.getMetricsForAccountIdResolverAvoidedCalls(accessGrantsCache.getS3AccessGrantsCachedAccountIdResolver().getAvoidedServiceCalls(), collector);
+        return collector;
     }
 
     @Override
     public MetricCollector getAccessGrantsMetrics() {
-        collectMetrics();
-        return collector;
+        return collectMetrics(metrics.snapshot());
+    }
+
+    @Override
+    public MetricCollector reportAccessGrantsMetrics() {
+        return collectMetrics(metrics.delta());
     }
 
 }
@@ -24,6 +24,7 @@ public class S3AccessGrantsConstants {
     public static final int DEFAULT_ACCESS_GRANTS_MAX_CACHE_SIZE = 30_000;
     public static final int MAX_LIMIT_ACCESS_GRANTS_MAX_CACHE_SIZE = 1_000_000;
     public static final int CACHE_EXPIRATION_TIME_PERCENTAGE = 90;
+    public static final int REFRESH_AHEAD_DISABLED = 0;
 
     public static final int ACCESS_DENIED_CACHE_SIZE = 3_000;
 
@@ -31,6 +32,20 @@ public class S3AccessGrantsConstants {
     public static final int MAX_BUCKET_REGION_CACHE_SIZE = 1_000_000;
     public static final int BUCKET_REGION_EXPIRE_CACHE_AFTER_WRITE_SECONDS= 3_600; // 1 hour
     public static final int MAX_BUCKET_REGION_EXPIRE_CACHE_AFTER_WRITE_SECONDS = 86_400; // 1 day
+    public static final String BUCKET_REGION_HEADER = "x-amz-bucket-region";
+
+    public static final int SERVE_STALE_DISABLED = 0;
+    public static final int MAX_RESOLVER_MAX_STALE_SECONDS = 86_400; // 1 day
+
+    public static final int DEFAULT_RESOLVER_NEGATIVE_CACHE_SIZE = 1_000;
+    public static final int MAX_RESOLVER_NEGATIVE_CACHE_SIZE = 1_000_000;
+    public static final int DEFAULT_RESOLVER_NEGATIVE_CACHE_EXPIRE_AFTER_WRITE_SECONDS = 60; // 1 minute
+    public static final int MAX_RESOLVER_NEGATIVE_CACHE_EXPIRE_AFTER_WRITE_SECONDS = 3_600; // 1 hour
+
+    public static final int DEFAULT_SNAPSHOT_WRITE_INTERVAL_SECONDS = 60;
+    public static final int MAX_SNAPSHOT_WRITE_INTERVAL_SECONDS = 86_400; // 1 day
+
+    public static final int MAX_LATENCY_HISTOGRAMS = 256;
 
 
 }
@@ -0,0 +1,317 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.awssdk.s3accessgrants.cache;
+
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.MAX_LATENCY_HISTOGRAMS;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricCollector;
+import software.amazon.awssdk.metrics.SdkMetric;
+import software.amazon.awssdk.utils.Logger;
+
+/**
+ * Aggregates the counters and latencies of the plugin in constant memory, so requests only update them and the metrics are
+ * published on an interval. Counters are {@link LongAdder}s and latencies are recorded in a {@link LatencyHistogram} per stage,
+ * result and region.
+ * The histograms of every stage and result are allocated when the metrics are created, so recording a latency does not
+ * allocate. At most {@value S3AccessGrantsConstants#MAX_LATENCY_HISTOGRAMS} histograms are added for the regions.
+ * {@link #snapshot()} returns the totals since the metrics were created and {@link #delta()} the totals since the previous delta.
+ * The counters are fixed when the metrics are created.
+ */
+public final class S3AccessGrantsMetrics {
+
+    private static final Logger logger = Logger.loggerFor(S3AccessGrantsMetrics.class);
+    private static final Stage[] STAGES = Stage.values();
+    private static final StageResult[] RESULTS = StageResult.values();
+    // One slot per result and one for the stages without a result.
+    private static final int RESULT_SLOTS = RESULTS.length + 1;
+
+    private final Map<SdkMetric<Integer>, Counter> counters;
+    private final LatencySlot[] latencies = new LatencySlot[STAGES.length * RESULT_SLOTS];
+    private final AtomicInteger regionHistograms = new AtomicInteger();
+
+    /**
+     * @param counters counters that can be incremented, they are reported even if they have not been incremented.
+     */
+    public S3AccessGrantsMetrics(Collection<SdkMetric<Integer>> counters) {
+        Map<SdkMetric<Integer>, Counter> counterMap = new LinkedHashMap<>();
+        counters.forEach(counter -> counterMap.put(counter, new Counter()));
+        this.counters = Collections.unmodifiableMap(counterMap);
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencySlot();
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the counter was not passed when the metrics were created
+     */
+    public void increment(SdkMetric<Integer> metric) {
+        add(metric, 1);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the counter was not passed when the metrics were created
+     */
+    public void add(SdkMetric<Integer> metric, long value) {
+        Counter counter = counters.get(metric);
+        if (counter == null) {
+            throw new IllegalArgumentException("unknown counter " + metric.name());
+        }
+        counter.value.add(value);
+    }
+
+    public void recordLatency(Stage stage, long nanos) {
+        recordLatency(stage, null, null, nanos);
+    }
+
+    /**
+     * @param result result of the stage, null if the stage does not have a result
+     * @param region region the stage was run for, null if it is not known
+     */
+    public void recordLatency(Stage stage, StageResult result, String region, long nanos) {
+        LatencySlot slot = latencies[slot(stage, result)];
+        if (region == null) {
+            slot.histogram.record(nanos);
+            return;
+        }
+        LatencyHistogram histogram = slot.regions.get(region);
+        if (histogram == null) {
+            histogram = addRegion(slot, stage, region);
+            if (histogram == null) {
+                return;
+            }
+        }
+        histogram.record(nanos);
+    }
+
+    /**
+     * Records the latency of the stage from startNanos until the future completes. The stage is a hit if the future was already
+     * complete when it was returned, e.g. by a cache, an error if it completed exceptionally and a miss otherwise.
+     */
+    public void recordLatencyOnCompletion(Stage stage, String region, long startNanos, CompletableFuture<?> future) {
+        if (future == null) {
+            return;
+        }
+        boolean isDone = future.isDone();
+        future.whenComplete((value, e) -> recordLatency(stage, e != null ? StageResult.ERROR
+                                                                          : isDone ? StageResult.HIT : StageResult.MISS,
+                                                        region, System.nanoTime() - startNanos));
+    }
+
+    /**
+     * @return the counters and latencies since the metrics were created.
+     */
+    public Snapshot snapshot() {
+        Map<SdkMetric<Integer>, Long> counts = new LinkedHashMap<>();
+        counters.forEach((metric, counter) -> counts.put(metric, counter.value.sum()));
+        return new Snapshot(counts, latencySnapshots(LatencyHistogram::snapshot));
+    }
+
+    /**
+     * @return the counters and latencies since the previous delta.
+     */
+    public synchronized Snapshot delta() {
+        Map<SdkMetric<Integer>, Long> counts = new LinkedHashMap<>();
+        counters.forEach((metric, counter) -> {
+            long value = counter.value.sum();
+            counts.put(metric, value - counter.reported);
+            counter.reported = value;
+        });
+        return new Snapshot(counts, latencySnapshots(LatencyHistogram::delta));
+    }
+
+    private LatencyHistogram addRegion(LatencySlot slot, Stage stage, String region) {
+        // The count is reserved before the histogram is added, so concurrent writers never go over the maximum.
+        if (regionHistograms.incrementAndGet() > MAX_LATENCY_HISTOGRAMS) {
+            regionHistograms.decrementAndGet();
+            logger.debug(() -> "not recording the latency of " + stage.metricName() + " in " + region
+                               + " as the maximum number of latency histograms is reached");
+            return null;
+        }
+        LatencyHistogram histogram = new LatencyHistogram();
+        LatencyHistogram existing = slot.regions.putIfAbsent(region, histogram);
+        if (existing != null) {
+            regionHistograms.decrementAndGet();
+            return existing;
+        }
+        return histogram;
+    }
+
+    private List<Latency> latencySnapshots(Function<LatencyHistogram, LatencyHistogram.Snapshot> read) {
+        List<Latency> latencySnapshots = new ArrayList<>();
+        for (int i = 0; i < latencies.length; i++) {
+            Stage stage = STAGES[i / RESULT_SLOTS];
+            StageResult result = i % RESULT_SLOTS == 0 ? null : RESULTS[i % RESULT_SLOTS - 1];
+            LatencySlot slot = latencies[i];
+            latencySnapshots.add(new Latency(stage, result, null, read.apply(slot.histogram)));
+            slot.regions.forEach((region, histogram) -> latencySnapshots.add(new Latency(stage, result, region,
+                                                                                         read.apply(histogram))));
+        }
+        return latencySnapshots;
+    }
+
+    private static int slot(Stage stage, StageResult result) {
+        return stage.ordinal() * RESULT_SLOTS + (result == null ? 0 : result.ordinal() + 1);
+    }
+
+    /**
+     * Stages of the request path whose latency is recorded, published as a child collection named after the stage.
+     */
+    public enum Stage {
+        AUTH_SCHEME_RESOLUTION("AuthSchemeResolution"),
+        BUCKET_REGION_LOOKUP("BucketRegionLookup"),
+        CALLER_IDENTITY("CallerIdentity"),
+        ACCOUNT_ID_RESOLUTION("AccountIdResolution"),
+        CACHE_LOOKUP("CacheLookup"),
+        GET_DATA_ACCESS("GetDataAccess"),
+        // Whole credentials provider call, from the cache lookup until the credentials are available.
+        ACCESS_GRANTS_CREDENTIALS("AccessGrantsCredentials");
+
+        private final String metricName;
+
+        Stage(String metricName) {
+            this.metricName = metricName;
+        }
+
+        public String metricName() {
+            return metricName;
+        }
+    }
+
+    /**
+     * Result of a stage, published as {@link MetricsCollector#STAGE_RESULT}.
+     */
+    public enum StageResult {
+        // The value was already available.
+        HIT("Hit"),
+        // The stage had to wait for the value.
+        MISS("Miss"),
+        ERROR("Error");
+
+        private final String metricValue;
+
+        StageResult(String metricValue) {
+            this.metricValue = metricValue;
+        }
+
+        public String metricValue() {
+            return metricValue;
+        }
+    }
+
+    private static final class Counter {
+        private final LongAdder value = new LongAdder();
+        // value at the previous delta, guarded by the metrics.
+        private long reported;
+    }
+
+    private static final class LatencySlot {
+        // Latencies recorded without a region.
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final ConcurrentHashMap<String, LatencyHistogram> regions = new ConcurrentHashMap<>();
+    }
+
+    private static final class Latency {
+        private final Stage stage;
+        private final StageResult result;
+        private final String region;
+        private final LatencyHistogram.Snapshot snapshot;
+
+        private Latency(Stage stage, StageResult result, String region, LatencyHistogram.Snapshot snapshot) {
+            this.stage = stage;
+            this.result = result;
+            this.region = region;
+            this.snapshot = snapshot;
+        }
+    }
+
+    /**
+     * Counters and latencies of the metrics at a point in time.
+     */
+    public static final class Snapshot {
+        private final Map<SdkMetric<Integer>, Long> counts;
+        private final List<Latency> latencies;
+
+        private Snapshot(Map<SdkMetric<Integer>, Long> counts, List<Latency> latencies) {
+            this.counts = counts;
+            this.latencies = latencies;
+        }
+
+        public long count(SdkMetric<Integer> metric) {
+            return counts.getOrDefault(metric, 0L);
+        }
+
+        /**
+         * @return the latencies of the stage for every result and region.
+         */
+        public LatencyHistogram.Snapshot latency(Stage stage) {
+            LatencyHistogram.Snapshot latency = LatencyHistogram.Snapshot.empty();
+            for (Latency entry : latencies) {
+                if (entry.stage == stage) {
+                    latency = latency.merge(entry.snapshot);
+                }
+            }
+            return latency;
+        }
+
+        public LatencyHistogram.Snapshot latency(Stage stage, StageResult result, String region) {
+            for (Latency entry : latencies) {
+                if (entry.stage == stage && entry.result == result && Objects.equals(entry.region, region)) {
+                    return entry.snapshot;
+                }
+            }
+            return LatencyHistogram.Snapshot.empty();
+        }
+
+        /**
+         * Reports the counters, and the latencies of every stage, result and region with at least one latency as a child
+         * collection named after the stage.
+         */
+        public void reportTo(MetricCollector collector) {
+            counts.forEach((metric, count) -> collector.reportMetric(metric, (int) Math.min(count, Integer.MAX_VALUE)));
+            for (Latency entry : latencies) {
+                if (entry.snapshot.count() > 0) {
+                    MetricCollector child = collector.createChild(entry.stage.metricName());
+                    if (entry.result != null) {
+                        child.reportMetric(MetricsCollector.STAGE_RESULT, entry.result.metricValue());
+                    }
+                    if (entry.region != null) {
+                        child.reportMetric(MetricsCollector.STAGE_REGION, entry.region);
+                    }
+                    MetricsCollector.getMetricsForLatency(entry.snapshot, child);
+                }
+            }
+        }
+
+        public MetricCollection toMetricCollection(String name) {
+            MetricCollector collector = MetricCollector.create(name);
+            reportTo(collector);
+            return collector.collect();
+        }
+    }
+}
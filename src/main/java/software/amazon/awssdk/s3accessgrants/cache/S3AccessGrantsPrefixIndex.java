@@ -0,0 +1,363 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.awssdk.s3accessgrants.cache;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+import software.amazon.awssdk.services.s3control.model.Permission;
+
+/**
+ * A prefix trie over the keys stored in the Access Grants cache.
+ * The index only knows which grants are cached, the Caffeine cache still owns the values, their expiry and eviction.
+ * Every level of the trie is one "/" separated segment of the S3 prefix and there is one trie per requester identity and
+ * permission, see {@link CacheKey#identity()}.
+ * Grants of type "s3://bucket/foo*" are kept on the node of their parent path together with the partial segment "foo".
+ * Reads do not take any locks or allocate, path segments are looked up through a reusable view over the requested S3 prefix.
+ * Writes for the same identity are serialized.
+ */
+final class S3AccessGrantsPrefixIndex {
+
+    private static final char DELIMITER = '/';
+    private static final String CHARACTER_WILDCARD = "*";
+    private static final int PERMISSION_COUNT = Permission.values().length;
+    // "s3:" is never matched at prefix level and "s3://" is never matched at character level.
+    private static final int MIN_PATH_GRANT_DEPTH = 2;
+    private static final int MIN_CHARACTER_GRANT_LENGTH = "s3://".length() + 1;
+    private static final CharacterGrant[] NO_CHARACTER_GRANTS = new CharacterGrant[0];
+    private static final ThreadLocal<Segment> SEGMENT_PROBE = ThreadLocal.withInitial(Segment::new);
+
+    private final ConcurrentHashMap<Object, AtomicReferenceArray<Node>> roots = new ConcurrentHashMap<>();
+
+    /**
+     * Finds the most specific grant matching the s3Prefix in a single walk of the trie.
+     * A grant on a path always wins over a grant of type "s3://bucket/foo*".
+     * @param identity identity of the requester, see {@link CacheKey#identity()}
+     * @param permission permission of the grant
+     * @param s3Prefix S3Prefix requested by the user. e.g., s3://bucket-name/path/to/helloworld.txt
+     * @return cache key of the matching grant, null if nothing matches.
+     */
+    CacheKey findLongestMatch(Object identity, Permission permission, String s3Prefix) {
+        AtomicReferenceArray<Node> permissions = roots.get(identity);
+        if (permissions == null) {
+            return null;
+        }
+        Node node = permissions.get(permission.ordinal());
+        CacheKey pathGrant = null;
+        CacheKey characterGrant = null;
+        Segment probe = SEGMENT_PROBE.get();
+        int length = s3Prefix.length();
+        int depth = 0;
+        int start = 0;
+        while (node != null) {
+            if (depth >= MIN_PATH_GRANT_DEPTH && node.pathGrant != null) {
+                pathGrant = node.pathGrant;
+            }
+            if (start > length) {
+                break;
+            }
+            CacheKey matchingCharacterGrant = node.findCharacterGrant(s3Prefix, start);
+            if (matchingCharacterGrant != null) {
+                characterGrant = matchingCharacterGrant;
+            }
+            // Same hash as String.hashCode of the segment, computed while searching for the delimiter.
+            int end = start;
+            int hash = 0;
+            char c;
+            while (end < length && (c = s3Prefix.charAt(end)) != DELIMITER) {
+                hash = 31 * hash + c;
+                end++;
+            }
+            node = node.children.get(probe.set(s3Prefix, start, end, hash));
+            start = end + 1;
+            depth++;
+        }
+        probe.clear();
+        return pathGrant != null ? pathGrant : characterGrant;
+    }
+
+    /**
+     * Adds the cache keys of every grant matching the s3Prefix, least specific first, in a single walk of the trie.
+     * @param identity identity of the requester, see {@link CacheKey#identity()}
+     * @param permission permission of the grant
+     * @param s3Prefix S3Prefix requested by the user. e.g., s3://bucket-name/path/to/helloworld.txt
+     * @param pathGrants receives the matching grants on a path
+     * @param characterGrants receives the matching grants of type "s3://bucket/foo*"
+     */
+    void findAllMatches(Object identity, Permission permission, String s3Prefix, List<CacheKey> pathGrants,
+                        List<CacheKey> characterGrants) {
+        AtomicReferenceArray<Node> permissions = roots.get(identity);
+        if (permissions == null) {
+            return;
+        }
+        Node node = permissions.get(permission.ordinal());
+        Segment probe = SEGMENT_PROBE.get();
+        int length = s3Prefix.length();
+        int depth = 0;
+        int start = 0;
+        while (node != null) {
+            CacheKey pathGrant = node.pathGrant;
+            if (depth >= MIN_PATH_GRANT_DEPTH && pathGrant != null) {
+                pathGrants.add(pathGrant);
+            }
+            if (start > length) {
+                break;
+            }
+            node.findAllCharacterGrants(s3Prefix, start, characterGrants);
+            int end = start;
+            int hash = 0;
+            char c;
+            while (end < length && (c = s3Prefix.charAt(end)) != DELIMITER) {
+                hash = 31 * hash + c;
+                end++;
+            }
+            node = node.children.get(probe.set(s3Prefix, start, end, hash));
+            start = end + 1;
+            depth++;
+        }
+        probe.clear();
+    }
+
+    /**
+     * Adds the cache key of a grant to the index.
+     * @param cacheKey CacheKey consists of AwsCredentialsIdentity, Permission, and S3Prefix.
+     */
+    void add(CacheKey cacheKey) {
+        boolean isCharacterGrant = isCharacterGrant(cacheKey);
+        String target = isCharacterGrant ? removeWildcard(cacheKey.s3Prefix) : cacheKey.s3Prefix;
+        if (isCharacterGrant && target.length() < MIN_CHARACTER_GRANT_LENGTH) {
+            return;
+        }
+        roots.compute(cacheKey.identity(), (identity, permissions) -> {
+            if (permissions == null) {
+                permissions = new AtomicReferenceArray<>(PERMISSION_COUNT);
+            }
+            Node node = permissions.get(cacheKey.permission.ordinal());
+            if (node == null) {
+                node = new Node();
+                permissions.set(cacheKey.permission.ordinal(), node);
+            }
+            int start = 0;
+            int end;
+            while ((end = target.indexOf(DELIMITER, start)) >= 0) {
+                node = node.children.computeIfAbsent(new Segment(target.substring(start, end)), segment -> new Node());
+                start = end + 1;
+            }
+            String lastSegment = target.substring(start);
+            if (isCharacterGrant) {
+                node.putCharacterGrant(lastSegment, cacheKey);
+            } else {
+                node.children.computeIfAbsent(new Segment(lastSegment), segment -> new Node()).pathGrant = cacheKey;
+            }
+            return permissions;
+        });
+    }
+
+    /**
+     * Removes the cache key of a grant from the index. Nodes that no longer lead to any grant are pruned.
+     * @param cacheKey CacheKey consists of AwsCredentialsIdentity, Permission, and S3Prefix.
+     * @param isCached checked while holding the write lock, the key is kept if the grant was cached again in the meantime.
+     */
+    void remove(CacheKey cacheKey, Predicate<CacheKey> isCached) {
+        boolean isCharacterGrant = isCharacterGrant(cacheKey);
+        String target = isCharacterGrant ? removeWildcard(cacheKey.s3Prefix) : cacheKey.s3Prefix;
+        roots.computeIfPresent(cacheKey.identity(), (identity, permissions) -> {
+            Node root = permissions.get(cacheKey.permission.ordinal());
+            if (root == null || isCached.test(cacheKey)) {
+                return permissions;
+            }
+            if (remove(root, target, 0, isCharacterGrant, cacheKey)) {
+                permissions.set(cacheKey.permission.ordinal(), null);
+            }
+            for (int i = 0; i < PERMISSION_COUNT; i++) {
+                if (permissions.get(i) != null) {
+                    return permissions;
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Removes all the entries of the index.
+     */
+    void clear() {
+        roots.clear();
+    }
+
+    /**
+     * @return true if the node became empty and can be pruned by its parent.
+     */
+    private static boolean remove(Node node, String target, int start, boolean isCharacterGrant, CacheKey cacheKey) {
+        int end = target.indexOf(DELIMITER, start);
+        if (end < 0 && isCharacterGrant) {
+            node.removeCharacterGrant(target.substring(start), cacheKey);
+            return node.isEmpty();
+        }
+        Segment segment = new Segment(end < 0 ? target.substring(start) : target.substring(start, end));
+        Node child = node.children.get(segment);
+        if (child == null) {
+            return node.isEmpty();
+        }
+        if (end < 0) {
+            if (cacheKey.equals(child.pathGrant)) {
+                child.pathGrant = null;
+            }
+        } else {
+            remove(child, target, end + 1, isCharacterGrant, cacheKey);
+        }
+        if (child.isEmpty()) {
+            node.children.remove(segment);
+        }
+        return node.isEmpty();
+    }
+
+    private static boolean isCharacterGrant(CacheKey cacheKey) {
+        return cacheKey.s3Prefix.endsWith(CHARACTER_WILDCARD);
+    }
+
+    private static String removeWildcard(String s3Prefix) {
+        return s3Prefix.substring(0, s3Prefix.length() - 1);
+    }
+
+    private static final class Node {
+        private final ConcurrentHashMap<Segment, Node> children = new ConcurrentHashMap<>();
+        private volatile CacheKey pathGrant;
+        // Sorted by the length of the partial segment, longest first. Replaced on every write.
+        private volatile CharacterGrant[] characterGrants = NO_CHARACTER_GRANTS;
+
+        /**
+         * Finds the longest grant of type "s3://bucket/foo*" whose partial segment is a prefix of the segment
+         * of s3Prefix starting at segmentStart.
+         */
+        private CacheKey findCharacterGrant(String s3Prefix, int segmentStart) {
+            for (CharacterGrant characterGrant : characterGrants) {
+                if (segmentStart + characterGrant.partialSegment.length() >= MIN_CHARACTER_GRANT_LENGTH
+                    && s3Prefix.startsWith(characterGrant.partialSegment, segmentStart)) {
+                    return characterGrant.cacheKey;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Adds every grant of type "s3://bucket/foo*" whose partial segment is a prefix of the segment of s3Prefix
+         * starting at segmentStart, shortest first.
+         */
+        private void findAllCharacterGrants(String s3Prefix, int segmentStart, List<CacheKey> matches) {
+            CharacterGrant[] grants = characterGrants;
+            for (int i = grants.length - 1; i >= 0; i--) {
+                CharacterGrant characterGrant = grants[i];
+                if (segmentStart + characterGrant.partialSegment.length() >= MIN_CHARACTER_GRANT_LENGTH
+                    && s3Prefix.startsWith(characterGrant.partialSegment, segmentStart)) {
+                    matches.add(characterGrant.cacheKey);
+                }
+            }
+        }
+
+        private void putCharacterGrant(String partialSegment, CacheKey cacheKey) {
+            CharacterGrant[] current = characterGrants;
+            CharacterGrant[] updated = new CharacterGrant[current.length + 1];
+            int i = 0;
+            for (CharacterGrant characterGrant : current) {
+                if (!characterGrant.partialSegment.equals(partialSegment)) {
+                    updated[i++] = characterGrant;
+                }
+            }
+            updated[i++] = new CharacterGrant(partialSegment, cacheKey);
+            updated = Arrays.copyOf(updated, i);
+            Arrays.sort(updated, (a, b) -> b.partialSegment.length() - a.partialSegment.length());
+            characterGrants = updated;
+        }
+
+        private void removeCharacterGrant(String partialSegment, CacheKey cacheKey) {
+            CharacterGrant[] current = characterGrants;
+            CharacterGrant[] updated = new CharacterGrant[current.length];
+            int i = 0;
+            for (CharacterGrant characterGrant : current) {
+                if (!(characterGrant.partialSegment.equals(partialSegment) && characterGrant.cacheKey.equals(cacheKey))) {
+                    updated[i++] = characterGrant;
+                }
+            }
+            characterGrants = i == 0 ? NO_CHARACTER_GRANTS : Arrays.copyOf(updated, i);
+        }
+
+        private boolean isEmpty() {
+            return pathGrant == null && characterGrants.length == 0 && children.isEmpty();
+        }
+    }
+
+    /**
+     * A path segment of an S3 prefix. Segments stored in the trie own their string, the probe used for lookups is a view
+     * over the requested S3 prefix that is reused to avoid allocating a substring for every segment.
+     */
+    private static final class Segment {
+        private String source;
+        private int start;
+        private int end;
+        private int hash;
+
+        private Segment() {
+        }
+
+        private Segment(String segment) {
+            set(segment, 0, segment.length(), segment.hashCode());
+        }
+
+        private Segment set(String source, int start, int end, int hash) {
+            this.source = source;
+            this.start = start;
+            this.end = end;
+            this.hash = hash;
+            return this;
+        }
+
+        private void clear() {
+            this.source = null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Segment)) {
+                return false;
+            }
+            Segment segment = (Segment) o;
+            int length = end - start;
+            return hash == segment.hash && length == segment.end - segment.start
+                   && source.regionMatches(start, segment.source, segment.start, length);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class CharacterGrant {
+        private final String partialSegment;
+        private final CacheKey cacheKey;
+
+        private CharacterGrant(String partialSegment, CacheKey cacheKey) {
+            this.partialSegment = partialSegment;
+            this.cacheKey = cacheKey;
+        }
+    }
+}
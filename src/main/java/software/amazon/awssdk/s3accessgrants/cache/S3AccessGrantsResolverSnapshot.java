@@ -0,0 +1,352 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.awssdk.s3accessgrants.cache;
+
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.DEFAULT_SNAPSHOT_WRITE_INTERVAL_SECONDS;
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.MAX_SNAPSHOT_WRITE_INTERVAL_SECONDS;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Policy;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.utils.Logger;
+
+/**
+ * Keeps a copy of the bucket region and Access Grants instance account caches in a local file, so a new JVM can start with the
+ * values discovered by the previous one instead of calling HeadBucket and GetAccessGrantsInstanceForPrefix again.
+ * Only bucket names, regions and account IDs are written, never credentials.
+ * Every entry is written with the time it expires at. Expired entries are not loaded and loaded entries expire at the same time
+ * they would have expired in the JVM that wrote them.
+ * The file is rewritten periodically and when the JVM shuts down. It is replaced atomically, so readers never see a partial file.
+ * Several bucket region resolvers, e.g. one per set of credentials, can share a snapshot. The regions of all of them are written
+ * and loaded into each of them.
+ */
+public final class S3AccessGrantsResolverSnapshot implements AutoCloseable {
+
+    private static final String HEADER = "# S3 Access Grants resolver snapshot v2";
+    private static final String BUCKET_REGION = "region";
+    private static final String ACCOUNT_ID = "account";
+    private static final char SEPARATOR = '\t';
+    private static final Logger logger = Logger.loggerFor(S3AccessGrantsResolverSnapshot.class);
+
+    private final Path file;
+    private final Set<S3AccessGrantsCachedBucketRegionResolver> bucketRegionResolvers = new CopyOnWriteArraySet<>();
+    private final S3AccessGrantsCachedAccountIdResolver accountIdResolver;
+    private final int writeIntervalSeconds;
+    private final Clock clock;
+    private final Object writeLock = new Object();
+    private ScheduledExecutorService scheduler;
+    private Thread shutdownHook;
+
+    private S3AccessGrantsResolverSnapshot(BuilderImpl builder) {
+        this.file = builder.file;
+        if (builder.bucketRegionResolver != null) {
+            bucketRegionResolvers.add(builder.bucketRegionResolver);
+        }
+        this.accountIdResolver = builder.accountIdResolver;
+        this.writeIntervalSeconds = builder.writeIntervalSeconds;
+        this.clock = builder.clock;
+    }
+
+    public static Builder builder() {
+        return new BuilderImpl();
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    public int writeIntervalSeconds() {
+        return writeIntervalSeconds;
+    }
+
+    /**
+     * Loads the snapshot into the caches and starts writing it periodically and when the JVM shuts down.
+     * A missing or unreadable file leaves the caches empty.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        load();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "s3-access-grants-resolver-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::write, writeIntervalSeconds, writeIntervalSeconds, TimeUnit.SECONDS);
+        shutdownHook = new Thread(this::write, "s3-access-grants-resolver-snapshot-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Adds a bucket region resolver to the snapshot. The regions of the snapshot file are loaded into it if the snapshot has
+     * already been started.
+     */
+    public void addBucketRegionResolver(S3AccessGrantsCachedBucketRegionResolver bucketRegionResolver) {
+        synchronized (this) {
+            if (!bucketRegionResolvers.add(bucketRegionResolver) || scheduler == null) {
+                return;
+            }
+        }
+        load(Collections.singleton(bucketRegionResolver), null);
+    }
+
+    /**
+     * Stops writing the regions of the bucket region resolver. They are kept in the file until it is written again.
+     */
+    public void removeBucketRegionResolver(S3AccessGrantsCachedBucketRegionResolver bucketRegionResolver) {
+        bucketRegionResolvers.remove(bucketRegionResolver);
+    }
+
+    /**
+     * Writes the snapshot one last time and stops writing it.
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        scheduler = null;
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // the JVM is already shutting down and the hook writes the snapshot.
+            return;
+        }
+        write();
+    }
+
+    /**
+     * Adds the entries of the snapshot file that have not expired to the caches. Entries already cached are kept.
+     * @return number of entries loaded.
+     */
+    public int load() {
+        return load(bucketRegionResolvers, accountIdResolver);
+    }
+
+    private int load(Collection<S3AccessGrantsCachedBucketRegionResolver> bucketRegionResolvers,
+                     S3AccessGrantsCachedAccountIdResolver accountIdResolver) {
+        long now = clock.millis();
+        int loaded = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(reader.readLine())) {
+                logger.warn(() -> "ignoring the resolver snapshot " + file + " as it was not written by this version of the plugin!");
+                return 0;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (loadEntry(line, now, bucketRegionResolvers, accountIdResolver)) {
+                    loaded++;
+                }
+            }
+        } catch (NoSuchFileException e) {
+            logger.debug(() -> "no resolver snapshot found at " + file);
+        } catch (IOException | RuntimeException e) {
+            logger.warn(() -> "could not load the resolver snapshot " + file + " : " + e.getMessage());
+        }
+        int loadedEntries = loaded;
+        logger.debug(() -> "loaded " + loadedEntries + " entries from the resolver snapshot " + file);
+        return loaded;
+    }
+
+    /**
+     * Writes the entries of the caches that have not expired to the snapshot file.
+     * Failures are logged, the previous snapshot is kept.
+     */
+    public void write() {
+        synchronized (writeLock) {
+            long now = clock.millis();
+            Path temporaryFile = null;
+            try {
+                Path directory = file.toAbsolutePath().getParent();
+                Files.createDirectories(directory);
+                temporaryFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+                try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+                    writer.write(HEADER);
+                    writer.newLine();
+                    // A bucket cached by several resolvers is written once.
+                    Set<String> writtenBuckets = new HashSet<>();
+                    for (S3AccessGrantsCachedBucketRegionResolver bucketRegionResolver : bucketRegionResolvers) {
+                        writeEntries(writer, BUCKET_REGION, bucketRegionResolver.getCache(), Region::id, now, writtenBuckets);
+                    }
+                    if (accountIdResolver != null) {
+                        writeEntries(writer, ACCOUNT_ID, accountIdResolver.getCache(), Function.identity(), now, new HashSet<>());
+                    }
+                }
+                try {
+                    Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.warn(() -> "could not write the resolver snapshot " + file + " : " + e.getMessage());
+                if (temporaryFile != null) {
+                    try {
+                        Files.deleteIfExists(temporaryFile);
+                    } catch (IOException ignored) {
+                        // nothing else to clean up.
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean loadEntry(String line, long now, Collection<S3AccessGrantsCachedBucketRegionResolver> bucketRegionResolvers,
+                                     S3AccessGrantsCachedAccountIdResolver accountIdResolver) {
+        String[] fields = line.split(String.valueOf(SEPARATOR));
+        if (fields.length != 4 || fields[1].isEmpty() || fields[2].isEmpty()) {
+            return false;
+        }
+        long remainingMillis;
+        try {
+            remainingMillis = Long.parseLong(fields[3]) - now;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (remainingMillis <= 0) {
+            return false;
+        }
+        if (BUCKET_REGION.equals(fields[0])) {
+            boolean loaded = false;
+            for (S3AccessGrantsCachedBucketRegionResolver bucketRegionResolver : bucketRegionResolvers) {
+                loaded |= loadEntry(bucketRegionResolver.getCache(), fields[1], Region.of(fields[2]), remainingMillis);
+            }
+            return loaded;
+        }
+        if (ACCOUNT_ID.equals(fields[0]) && accountIdResolver != null) {
+            return loadEntry(accountIdResolver.getCache(), fields[1], fields[2], remainingMillis);
+        }
+        return false;
+    }
+
+    private static <V> boolean loadEntry(AsyncCache<String, V> cache, String key, V value, long remainingMillis) {
+        return expiration(cache).putIfAbsent(key, value, remainingMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static <V> void writeEntries(BufferedWriter writer, String type, AsyncCache<String, V> cache,
+                                         Function<V, String> format, long now, Set<String> writtenKeys) throws IOException {
+        Policy.VarExpiration<String, V> expiration = expiration(cache);
+        // Entries that are still being loaded are not part of the map.
+        for (Map.Entry<String, V> entry : cache.synchronous().asMap().entrySet()) {
+            OptionalLong remainingMillis = expiration.getExpiresAfter(entry.getKey(), TimeUnit.MILLISECONDS);
+            if (!remainingMillis.isPresent() || remainingMillis.getAsLong() <= 0 || !writtenKeys.add(entry.getKey())) {
+                continue;
+            }
+            writer.write(type + SEPARATOR + entry.getKey() + SEPARATOR + format.apply(entry.getValue())
+                         + SEPARATOR + (now + remainingMillis.getAsLong()));
+            writer.newLine();
+        }
+    }
+
+    private static <V> Policy.VarExpiration<String, V> expiration(AsyncCache<String, V> cache) {
+        return cache.synchronous().policy().expireVariably()
+                    .orElseThrow(() -> new IllegalStateException("resolver caches need to expire entries with ExpireAfterWrite"));
+    }
+
+    public interface Builder {
+        /**
+         * Local file the snapshot is written to and loaded from. Required.
+         */
+        Builder file(Path file);
+
+        Builder bucketRegionResolver(S3AccessGrantsCachedBucketRegionResolver bucketRegionResolver);
+
+        Builder accountIdResolver(S3AccessGrantsCachedAccountIdResolver accountIdResolver);
+
+        /**
+         * How often the snapshot is written. Defaults to {@value S3AccessGrantsConstants#DEFAULT_SNAPSHOT_WRITE_INTERVAL_SECONDS} seconds.
+         */
+        Builder writeIntervalSeconds(int writeIntervalSeconds);
+
+        S3AccessGrantsResolverSnapshot build();
+    }
+
+    static final class BuilderImpl implements Builder {
+        private Path file;
+        private S3AccessGrantsCachedBucketRegionResolver bucketRegionResolver;
+        private S3AccessGrantsCachedAccountIdResolver accountIdResolver;
+        private int writeIntervalSeconds = DEFAULT_SNAPSHOT_WRITE_INTERVAL_SECONDS;
+        private Clock clock = Clock.systemUTC();
+
+        private BuilderImpl() {
+        }
+
+        @Override
+        public Builder file(Path file) {
+            this.file = file;
+            return this;
+        }
+
+        @Override
+        public Builder bucketRegionResolver(S3AccessGrantsCachedBucketRegionResolver bucketRegionResolver) {
+            this.bucketRegionResolver = bucketRegionResolver;
+            return this;
+        }
+
+        @Override
+        public Builder accountIdResolver(S3AccessGrantsCachedAccountIdResolver accountIdResolver) {
+            this.accountIdResolver = accountIdResolver;
+            return this;
+        }
+
+        @Override
+        public Builder writeIntervalSeconds(int writeIntervalSeconds) {
+            if (writeIntervalSeconds <= 0 || writeIntervalSeconds > MAX_SNAPSHOT_WRITE_INTERVAL_SECONDS) {
+                throw new IllegalArgumentException(String.format("writeIntervalSeconds needs to be in range (0, %d]",
+                                                                 MAX_SNAPSHOT_WRITE_INTERVAL_SECONDS));
+            }
+            this.writeIntervalSeconds = writeIntervalSeconds;
+            return this;
+        }
+
+        Builder clock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        @Override
+        public S3AccessGrantsResolverSnapshot build() {
+            if (file == null) {
+                throw new IllegalArgumentException("A file is required for the resolver snapshot!");
+            }
+            if (bucketRegionResolver == null && accountIdResolver == null) {
+                throw new IllegalArgumentException("A bucket region resolver or an account id resolver is required for the resolver snapshot!");
+            }
+            return new S3AccessGrantsResolverSnapshot(this);
+        }
+    }
+}
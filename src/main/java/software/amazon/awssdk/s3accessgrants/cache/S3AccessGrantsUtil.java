@@ -15,11 +15,28 @@
 
 package software.amazon.awssdk.s3accessgrants.cache;
 
-import java.net.URI;
-
 public class S3AccessGrantsUtil {
 
+    private static final String SCHEME_SEPARATOR = "://";
+
+    /**
+     * Extracts the bucket name without parsing the prefix as a URI, as it is called for every request.
+     * @param s3Prefix e.g., s3://bucket-name/path/to/helloworld.txt
+     * @return the bucket name, or null if the prefix does not have a scheme or a bucket name.
+     */
     public static String getBucketName(String s3Prefix) {
-        return URI.create(s3Prefix).getHost();
+        if (s3Prefix == null) {
+            return null;
+        }
+        int start = s3Prefix.indexOf(SCHEME_SEPARATOR);
+        if (start < 0) {
+            return null;
+        }
+        start += SCHEME_SEPARATOR.length();
+        int end = start;
+        while (end < s3Prefix.length() && s3Prefix.charAt(end) != '/' && s3Prefix.charAt(end) != '?' && s3Prefix.charAt(end) != '#') {
+            end++;
+        }
+        return end == start ? null : s3Prefix.substring(start, end);
     }
 }
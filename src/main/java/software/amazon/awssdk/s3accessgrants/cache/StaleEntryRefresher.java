@@ -0,0 +1,87 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.awssdk.s3accessgrants.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import software.amazon.awssdk.utils.Logger;
+
+/**
+ * Serves the entries of a resolver cache for up to maxStaleSeconds after they are due for a refresh, while they are refreshed in
+ * the background. The cache needs to expire entries with {@link ExpireAfterWrite} after expireCacheAfterWriteSeconds plus
+ * maxStaleSeconds, so entries that could not be refreshed in time are still evicted and the next caller waits for the service.
+ */
+final class StaleEntryRefresher<V> {
+
+    private static final Logger logger = Logger.loggerFor(StaleEntryRefresher.class);
+
+    private final AsyncCache<String, V> cache;
+    private final long maxStaleMillis;
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    StaleEntryRefresher(AsyncCache<String, V> cache, int maxStaleSeconds) {
+        this.cache = cache;
+        this.maxStaleMillis = TimeUnit.SECONDS.toMillis(maxStaleSeconds);
+    }
+
+    /**
+     * @return true if the entry is past expireCacheAfterWriteSeconds and is only served until it is refreshed.
+     */
+    boolean isStale(String key) {
+        if (maxStaleMillis <= 0) {
+            return false;
+        }
+        OptionalLong remainingMillis = cache.synchronous().policy().expireVariably()
+                                            .map(expiration -> expiration.getExpiresAfter(key, TimeUnit.MILLISECONDS))
+                                            .orElse(OptionalLong.empty());
+        return remainingMillis.isPresent() && remainingMillis.getAsLong() <= maxStaleMillis;
+    }
+
+    /**
+     * Starts a background refresh of the entry if it is stale and no refresh of the entry is running yet.
+     * The refreshed value only replaces the value that was read, a value written in the meantime is kept.
+     * Failed refreshes are ignored, the stale value is served until it expires.
+     * @param key key of the entry that was read
+     * @param cachedValue value that was read
+     * @param loader loads the value from the service without blocking the calling thread
+     */
+    void refreshIfStale(String key, CompletableFuture<V> cachedValue, Supplier<CompletableFuture<V>> loader) {
+        if (!cachedValue.isDone() || cachedValue.isCompletedExceptionally() || !isStale(key) || !refreshing.add(key)) {
+            return;
+        }
+        logger.debug(() -> "serving a stale cache entry while refreshing it in the background: " + key);
+        CompletableFuture<V> refreshedValue;
+        try {
+            refreshedValue = loader.get();
+        } catch (RuntimeException e) {
+            refreshedValue = new CompletableFuture<>();
+            refreshedValue.completeExceptionally(e);
+        }
+        refreshedValue.whenComplete((value, e) -> {
+            refreshing.remove(key);
+            if (e != null) {
+                logger.debug(() -> "refreshing the stale cache entry " + key + " failed: " + e.getMessage());
+                return;
+            }
+            cache.asMap().replace(key, cachedValue, CompletableFuture.completedFuture(value));
+        });
+    }
+}
@@ -15,11 +15,19 @@
 
 package software.amazon.awssdk.s3accessgrants.plugin;
 
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
 import software.amazon.awssdk.services.s3control.model.Privilege;
 import software.amazon.awssdk.utils.builder.CopyableBuilder;
 
 public interface Builder extends CopyableBuilder<Builder, S3AccessGrantsPlugin> {
     Builder enableFallback(Boolean choice);
     Builder userAgent (String userAgent);
+    Builder enablePrincipalKeyedCache(Boolean choice);
+    Builder executor(Executor executor);
+    Builder resolverSnapshotFile(Path resolverSnapshotFile);
+    Builder resolverMaxStaleSeconds(int resolverMaxStaleSeconds);
+    Builder sharedRuntime(S3AccessGrantsSharedRuntime sharedRuntime);
+    Builder metricsPublishingIntervalSeconds(int metricsPublishingIntervalSeconds);
     
 }
@@ -16,13 +16,16 @@
 package software.amazon.awssdk.s3accessgrants.plugin;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
 import software.amazon.awssdk.annotations.NotNull;
 import software.amazon.awssdk.core.exception.SdkServiceException;
 import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsCachedBucketRegionResolver;
+import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsMetrics.Stage;
+import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsMetrics.StageResult;
+import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsMetrics;
 import software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsOperationToPermissionMapper;
 import software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsStaticOperationToPermissionMapper;
 import software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils;
@@ -35,6 +38,7 @@ import software.amazon.awssdk.services.s3control.model.Permission;
 import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.PERMISSION_PROPERTY;
 import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.PREFIX_PROPERTY;
 import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.BUCKET_LOCATION_PROPERTY;
+import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.BUCKET_NAME_PROPERTY;
 import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.logger;
 import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.CONTACT_TEAM_MESSAGE_TEMPLATE;
 import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.DEFAULT_CROSS_REGION_ACCESS_SETTING;
@@ -47,6 +51,8 @@ import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGran
  * It uses a default auth scheme configured on S3 Clients and appends parameters specifically required for access grants to resolve a request.
  * The auth scheme provider takes a set of parameters using.
  * {@link S3AuthSchemeParams}, and resolves to a list of {@link AuthSchemeOption} based on the given parameters.
+ * The auth scheme provider does not make any network calls. With cross-region access enabled, only the bucket name is passed on
+ * and the region of the bucket is resolved by {@link S3AccessGrantsIdentityProvider}.
  */
 public class S3AccessGrantsAuthSchemeProvider implements S3AuthSchemeProvider {
 
@@ -57,9 +63,17 @@ public class S3AccessGrantsAuthSchemeProvider implements S3AuthSchemeProvider {
 
     private final S3AccessGrantsOperationToPermissionMapper permissionMapper;
 
-    private final S3AccessGrantsCachedBucketRegionResolver bucketRegionCache;
+    private final S3AccessGrantsMetrics stageMetrics;
 
     S3AccessGrantsAuthSchemeProvider(@NotNull S3AuthSchemeProvider authSchemeProvider, S3Client s3Client, Boolean isCrossRegionAccessEnabled) {
+        this(authSchemeProvider, s3Client, isCrossRegionAccessEnabled, new S3AccessGrantsMetrics(Collections.emptyList()));
+    }
+
+    /**
+     * @param stageMetrics metrics the latency of the auth scheme resolution is recorded to
+     */
+    S3AccessGrantsAuthSchemeProvider(@NotNull S3AuthSchemeProvider authSchemeProvider, S3Client s3Client, Boolean isCrossRegionAccessEnabled,
+                                     S3AccessGrantsMetrics stageMetrics) {
         S3AccessGrantsUtils.argumentNotNull(authSchemeProvider,
                 "Expecting an Auth Scheme Provider to be specified while configuring S3Clients!");
         S3AccessGrantsUtils.argumentNotNull(s3Client, String.format(CONTACT_TEAM_MESSAGE_TEMPLATE, "S3 Client", "Plugin"));
@@ -67,7 +81,7 @@ public class S3AccessGrantsAuthSchemeProvider implements S3AuthSchemeProvider {
         this.s3Client = s3Client;
         this.isCrossRegionAccessEnabled = isCrossRegionAccessEnabled == null ? DEFAULT_CROSS_REGION_ACCESS_SETTING : isCrossRegionAccessEnabled;
         this.permissionMapper = new S3AccessGrantsStaticOperationToPermissionMapper();
-        this.bucketRegionCache = S3AccessGrantsCachedBucketRegionResolver.builder().s3Client(s3Client).build();
+        this.stageMetrics = stageMetrics;
     }
 
     /**
@@ -80,6 +94,7 @@ public class S3AccessGrantsAuthSchemeProvider implements S3AuthSchemeProvider {
         S3AccessGrantsUtils.argumentNotNull(authSchemeParams,
                 "An internal exception has occurred. Valid auth scheme params were not passed to the Auth Scheme Provider. Please contact the S3 Access Grants plugin team!");
 
+        long start = System.nanoTime();
         List<AuthSchemeOption> availableAuthSchemes = authSchemeProvider.resolveAuthScheme(authSchemeParams);
 
         try {
@@ -89,9 +104,12 @@ public class S3AccessGrantsAuthSchemeProvider implements S3AuthSchemeProvider {
 
             S3AccessGrantsUtils.argumentNotNull(authSchemeParams.bucket(), "Please specify a valid bucket name for the operation!");
 
-            final Region destinationRegion = getBucketLocation(authSchemeParams.bucket());
+            final String bucketName = authSchemeParams.bucket();
+            final Region destinationRegion = getBucketLocation();
 
-            logger.debug(() -> "Access Grants requests will be sent to the region "+destinationRegion);
+            if (destinationRegion != null) {
+                logger.debug(() -> "Access Grants requests will be sent to the region "+destinationRegion);
+            }
 
             String S3Prefix;
             if (operation.equalsIgnoreCase("DELETEOBJECTS")) {
@@ -112,16 +130,25 @@ public class S3AccessGrantsAuthSchemeProvider implements S3AuthSchemeProvider {
             else {
                 S3Prefix = "s3://" + authSchemeParams.bucket() + "/" + getKeyIfExists(authSchemeParams);
             }
-            return availableAuthSchemes.stream()
-                    .map(authScheme -> authScheme.toBuilder()
-                            .putIdentityProperty(PREFIX_PROPERTY,
-                                    S3Prefix)
-                            .putIdentityProperty(BUCKET_LOCATION_PROPERTY, destinationRegion)
-                            .putIdentityProperty(PERMISSION_PROPERTY, permission)
-                            .build()
-                    )
+            List<AuthSchemeOption> accessGrantsAuthSchemes = availableAuthSchemes.stream()
+                    .map(authScheme -> {
+                        AuthSchemeOption.Builder authSchemeBuilder = authScheme.toBuilder()
+                                .putIdentityProperty(PREFIX_PROPERTY,
+                                        S3Prefix)
+                                .putIdentityProperty(BUCKET_NAME_PROPERTY, bucketName)
+                                .putIdentityProperty(PERMISSION_PROPERTY, permission);
+                        if (destinationRegion != null) {
+                            authSchemeBuilder.putIdentityProperty(BUCKET_LOCATION_PROPERTY, destinationRegion);
+                        }
+                        return authSchemeBuilder.build();
+                    })
                     .collect(Collectors.toList());
+            stageMetrics.recordLatency(Stage.AUTH_SCHEME_RESOLUTION, null,
+                    destinationRegion == null ? null : destinationRegion.id(), System.nanoTime() - start);
+            return accessGrantsAuthSchemes;
         } catch (SdkServiceException e) {
+            stageMetrics.recordLatency(Stage.AUTH_SCHEME_RESOLUTION, StageResult.ERROR, null,
+                    System.nanoTime() - start);
             return availableAuthSchemes.stream()
                     .map(authScheme -> authScheme.toBuilder().putIdentityProperty(AUTH_EXCEPTIONS_PROPERTY, e).build())
                     .collect(Collectors.toList());
@@ -145,13 +172,13 @@ public class S3AccessGrantsAuthSchemeProvider implements S3AuthSchemeProvider {
     /**
      * Fetch the location where the bucket is created.
      * This is to ensure that the Access Grants requests are made to the correct region.
-     * @param bucketName bucket name in the users request
-     * @return Region where the S3 bucket exists
+     * With cross-region access enabled the location is not known yet, it is resolved asynchronously by the identity provider.
+     * @return Region where the S3 bucket exists, null if it has to be resolved by the identity provider
      */
-    private Region getBucketLocation(String bucketName) {
+    private Region getBucketLocation() {
 
         if(isCrossRegionAccessEnabled) {
-            return bucketRegionCache.resolve(bucketName);
+            return null;
         }
 
         S3AccessGrantsUtils.argumentNotNull(s3Client.serviceClientConfiguration().region(), "Expecting a region to be configured on the S3Clients!");
@@ -0,0 +1,65 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.awssdk.s3accessgrants.plugin;
+
+import java.util.Optional;
+import software.amazon.awssdk.annotations.NotNull;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsCachedBucketRegionResolver;
+import software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils;
+
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.BUCKET_REGION_HEADER;
+import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.CONTACT_TEAM_MESSAGE_TEMPLATE;
+import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.logger;
+
+/**
+ * An {@link ExecutionInterceptor} configured on S3 Clients by the plugin.
+ * S3 returns the region of the bucket in the x-amz-bucket-region header of many responses, including 301 redirects and 400 errors
+ * for requests sent to the wrong region. The interceptor adds those regions to the bucket region cache, so the plugin does not
+ * have to send a head bucket request for these buckets.
+ */
+final class S3AccessGrantsBucketRegionInterceptor implements ExecutionInterceptor {
+
+    private static final String BUCKET_FIELD = "Bucket";
+
+    private final S3AccessGrantsCachedBucketRegionResolver bucketRegionResolver;
+
+    S3AccessGrantsBucketRegionInterceptor(@NotNull S3AccessGrantsCachedBucketRegionResolver bucketRegionResolver) {
+        S3AccessGrantsUtils.argumentNotNull(bucketRegionResolver, String.format(CONTACT_TEAM_MESSAGE_TEMPLATE, "bucket region resolver", "bucket region interceptor"));
+        this.bucketRegionResolver = bucketRegionResolver;
+    }
+
+    /**
+     * Called for every response received from S3, before the response or the error is handled.
+     * Failures to record the region are logged and never fail the request.
+     */
+    @Override
+    public void afterTransmission(Context.AfterTransmission context, ExecutionAttributes executionAttributes) {
+        try {
+            Optional<String> bucketRegion = context.httpResponse().firstMatchingHeader(BUCKET_REGION_HEADER);
+            if (!bucketRegion.isPresent()) {
+                return;
+            }
+            context.request().getValueForField(BUCKET_FIELD, String.class)
+                   .ifPresent(bucket -> bucketRegionResolver.putBucketRegion(bucket, Region.of(bucketRegion.get())));
+        } catch (RuntimeException e) {
+            logger.debug(() -> "could not record the bucket region from the S3 response : " + e.getMessage());
+        }
+    }
+}
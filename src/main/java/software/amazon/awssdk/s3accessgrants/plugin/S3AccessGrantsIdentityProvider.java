@@ -15,19 +15,39 @@
 
 package software.amazon.awssdk.s3accessgrants.plugin;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.regex.Pattern;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import software.amazon.awssdk.annotations.NotNull;
+import software.amazon.awssdk.auth.credentials.CredentialUtils;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
 import software.amazon.awssdk.core.client.config.SdkAdvancedClientOption;
 import software.amazon.awssdk.core.exception.SdkServiceException;
 import software.amazon.awssdk.identity.spi.AwsCredentialsIdentity;
 import software.amazon.awssdk.identity.spi.IdentityProvider;
 import software.amazon.awssdk.identity.spi.ResolveIdentityRequest;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricCollector;
 import software.amazon.awssdk.metrics.MetricPublisher;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.s3accessgrants.cache.MetricsCollector;
+import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsBucketRegionResolver;
+import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsCachedBucketRegionResolver;
 import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsCachedCredentialsProvider;
+import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsMetrics.Stage;
+import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsMetrics.StageResult;
+import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsMetrics;
 import software.amazon.awssdk.services.s3control.S3ControlAsyncClientBuilder;
 import software.amazon.awssdk.services.s3control.model.Privilege;
 import software.amazon.awssdk.services.s3control.model.S3ControlException;
@@ -35,12 +55,20 @@ import software.amazon.awssdk.services.s3control.model.Permission;
 import software.amazon.awssdk.services.s3control.S3ControlAsyncClient;
 import software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils;
 import software.amazon.awssdk.services.sts.StsAsyncClient;
+import software.amazon.awssdk.services.sts.StsServiceClientConfiguration;
+import software.amazon.awssdk.services.sts.model.GetCallerIdentityRequest;
+import software.amazon.awssdk.utils.SdkAutoCloseable;
 import software.amazon.awssdk.utils.Validate;
 
 import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.PREFIX_PROPERTY;
 import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.PERMISSION_PROPERTY;
 import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.AUTH_EXCEPTIONS_PROPERTY;
 import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.BUCKET_LOCATION_PROPERTY;
+import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.BUCKET_NAME_PROPERTY;
+import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.DEFAULT_CALLER_ACCOUNT_CACHE_EXPIRE_AFTER_WRITE_SECONDS;
+import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.DEFAULT_CALLER_ACCOUNT_CACHE_SIZE;
+import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.DEFAULT_METRICS_PUBLISHING_INTERVAL_SECONDS;
+import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.DEFAULT_PRINCIPAL_KEYED_CACHE_SETTING;
 import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.logger;
 
 /**
@@ -48,7 +76,7 @@ import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGran
  * The class provides functionality to get the credentials from S3 access grants
  * @author Shiva Kumar Mukkapati
  */
-public class S3AccessGrantsIdentityProvider implements IdentityProvider<AwsCredentialsIdentity>{
+public class S3AccessGrantsIdentityProvider implements IdentityProvider<AwsCredentialsIdentity>, SdkAutoCloseable {
 
     private final IdentityProvider<? extends AwsCredentialsIdentity> credentialsProvider;
 
@@ -60,6 +88,9 @@ public class S3AccessGrantsIdentityProvider implements IdentityProvider<AwsCrede
 
     private final StsAsyncClient stsAsyncClient;
 
+    // Read once, the configuration of the client is copied every time it is read.
+    private final String stsRegionId;
+
     private final S3AccessGrantsCachedCredentialsProvider cache;
 
     private final boolean enableFallback;
@@ -68,9 +99,20 @@ public class S3AccessGrantsIdentityProvider implements IdentityProvider<AwsCrede
 
     private final ConcurrentHashMap<Region, S3ControlAsyncClient> clientsCache;
 
-    private volatile AwsCredentialsIdentity cachedCredentials;
+    private final boolean enablePrincipalKeyedCache;
+
+    private final Executor executor;
+
+    private final S3AccessGrantsBucketRegionResolver bucketRegionResolver;
+
+    private final AsyncCache<String, CallerIdentity> callerIdentityCache;
+
+    private final S3AccessGrantsMetricsReporter metricsReporter;
 
-    private volatile String cachedAccountId;
+    private final boolean isMetricsReporterOwner;
+    private final SdkAutoCloseable metricsPublisherRegistration;
+
+    private final S3AccessGrantsMetrics stageMetrics;
 
     private String CONTACT_TEAM_MESSAGE_TEMPLATE = "An internal exception has occurred. Valid %s was not passed to the %s. Please contact S3 access grants plugin team!";
 
@@ -86,19 +128,70 @@ public class S3AccessGrantsIdentityProvider implements IdentityProvider<AwsCrede
                                           @NotNull MetricPublisher metricsPublisher,
                                           @NotNull ConcurrentHashMap<Region, S3ControlAsyncClient> clientsCache,
                                           @NotNull ClientOverrideConfiguration overrideConfig) {
-        S3AccessGrantsUtils.argumentNotNull(credentialsProvider, "Expecting an Identity Provider to be specified while configuring S3Clients!");
-        S3AccessGrantsUtils.argumentNotNull(stsAsyncClient, String.format(CONTACT_TEAM_MESSAGE_TEMPLATE, "sts client", "identity provider"));
-        S3AccessGrantsUtils.argumentNotNull(clientsCache, String.format(CONTACT_TEAM_MESSAGE_TEMPLATE, "client cache", "identity provider"));
-        this.credentialsProvider = credentialsProvider;
-        this.stsAsyncClient = stsAsyncClient;
-        this.privilege = privilege;
-        this.isCacheEnabled = isCacheEnabled;
-        this.s3ControlBuilder = s3ControlAsyncClientBuilder;
-        this.cache = cache;
-        this.enableFallback = enableFallback;
-        this.metricsPublisher = metricsPublisher;
-        this.clientsCache = clientsCache;
-        this.overrideConfig = overrideConfig;
+        this(new BuilderImpl().credentialsProvider(credentialsProvider)
+                              .stsAsyncClient(stsAsyncClient)
+                              .privilege(privilege)
+                              .isCacheEnabled(isCacheEnabled)
+                              .s3ControlAsyncClientBuilder(s3ControlAsyncClientBuilder)
+                              .cache(cache)
+                              .enableFallback(enableFallback)
+                              .metricsPublisher(metricsPublisher)
+                              .clientsCache(clientsCache)
+                              .overrideConfig(overrideConfig));
+    }
+
+    private S3AccessGrantsIdentityProvider(BuilderImpl builder) {
+        S3AccessGrantsUtils.argumentNotNull(builder.credentialsProvider, "Expecting an Identity Provider to be specified while configuring S3Clients!");
+        S3AccessGrantsUtils.argumentNotNull(builder.stsAsyncClient, String.format(CONTACT_TEAM_MESSAGE_TEMPLATE, "sts client", "identity provider"));
+        S3AccessGrantsUtils.argumentNotNull(builder.clientsCache, String.format(CONTACT_TEAM_MESSAGE_TEMPLATE, "client cache", "identity provider"));
+        this.credentialsProvider = builder.credentialsProvider;
+        this.stsAsyncClient = builder.stsAsyncClient;
+        StsServiceClientConfiguration stsConfiguration = stsAsyncClient.serviceClientConfiguration();
+        this.stsRegionId = stsConfiguration == null || stsConfiguration.region() == null ? null : stsConfiguration.region().id();
+        this.privilege = builder.privilege;
+        this.isCacheEnabled = builder.isCacheEnabled;
+        this.s3ControlBuilder = builder.s3ControlAsyncClientBuilder;
+        this.cache = builder.cache;
+        this.enableFallback = builder.enableFallback;
+        this.metricsPublisher = builder.metricsPublisher;
+        this.clientsCache = builder.clientsCache;
+        this.overrideConfig = builder.overrideConfig;
+        this.enablePrincipalKeyedCache = builder.enablePrincipalKeyedCache;
+        this.executor = builder.executor;
+        this.bucketRegionResolver = builder.bucketRegionResolver;
+        this.stageMetrics = builder.stageMetrics != null ? builder.stageMetrics : new S3AccessGrantsMetrics(Collections.emptyList());
+        this.callerIdentityCache = builder.callerIdentityCache != null ? builder.callerIdentityCache : createCallerIdentityCache(executor);
+        this.isMetricsReporterOwner = metricsPublisher != null && builder.metricsReporter == null;
+        if (metricsPublisher == null) {
+            this.metricsReporter = null;
+        } else if (isMetricsReporterOwner) {
+            this.metricsReporter = new S3AccessGrantsMetricsReporter(this::collectMetrics, builder.metricsPublishingIntervalSeconds);
+        } else {
+            this.metricsReporter = builder.metricsReporter;
+        }
+        this.metricsPublisherRegistration = metricsReporter != null ? metricsReporter.addPublisher(metricsPublisher) : null;
+    }
+
+    /**
+     * @return a cache of the caller account and ARN of every set of credentials seen recently, see
+     * {@link #getCallerAccountID(CompletableFuture)}.
+     */
+    static AsyncCache<String, CallerIdentity> createCallerIdentityCache(Executor executor) {
+        Caffeine<Object, Object> callerIdentityCacheBuilder = Caffeine.newBuilder()
+                .maximumSize(DEFAULT_CALLER_ACCOUNT_CACHE_SIZE)
+                .expireAfterWrite(DEFAULT_CALLER_ACCOUNT_CACHE_EXPIRE_AFTER_WRITE_SECONDS, TimeUnit.SECONDS)
+                .recordStats();
+        if (executor != null) {
+            callerIdentityCacheBuilder.executor(executor);
+        }
+        return callerIdentityCacheBuilder.buildAsync();
+    }
+
+    /**
+     * Builds an identity provider with the settings of the plugin that are not part of the public constructor.
+     */
+    static Builder builder() {
+        return new BuilderImpl();
     }
 
     /**
@@ -118,6 +211,9 @@ public class S3AccessGrantsIdentityProvider implements IdentityProvider<AwsCrede
      * specific resource.
      * This method uses cache to store credentials to reduce requests sent to S3 access grant APIs
      * This method Will throw an exception if the necessary grant is not available to the requester.
+     * The credentials, caller account, bucket region, Access Grants instance account and credentials from Access Grants are
+     * resolved one after the other without blocking the calling thread, so the method can be called from the event loop of
+     * asynchronous clients.
      * </p>
      * @param resolveIdentityRequest The request to resolve an Identity
      * @return a completable future that will resolve to the credentials registered within a grant
@@ -126,6 +222,19 @@ public class S3AccessGrantsIdentityProvider implements IdentityProvider<AwsCrede
      */
     @Override
     public CompletableFuture<? extends AwsCredentialsIdentity> resolveIdentity(ResolveIdentityRequest resolveIdentityRequest) {
+        return resolveIdentity(resolveIdentityRequest, true);
+    }
+
+    /**
+     * Resolves the identity like {@link #resolveIdentity(ResolveIdentityRequest)} without falling back to the credentials of
+     * the S3 Client, so the future fails if the credentials could not be loaded from Access Grants. Used to warm up the caches.
+     */
+    CompletableFuture<? extends AwsCredentialsIdentity> loadIdentity(ResolveIdentityRequest resolveIdentityRequest) {
+        return resolveIdentity(resolveIdentityRequest, false);
+    }
+
+    private CompletableFuture<? extends AwsCredentialsIdentity> resolveIdentity(ResolveIdentityRequest resolveIdentityRequest,
+                                                                                boolean canFallback) {
 
         CompletableFuture<? extends AwsCredentialsIdentity> userCredentials;
 
@@ -137,68 +246,180 @@ public class S3AccessGrantsIdentityProvider implements IdentityProvider<AwsCrede
 
             userCredentials = credentialsProvider.resolveIdentity(resolveIdentityRequest);
             validateRequestParameters(resolveIdentityRequest, privilege, isCacheEnabled);
-            String accountId = getCallerAccountID(userCredentials);
             String S3Prefix = resolveIdentityRequest.property(PREFIX_PROPERTY).toString();
             Permission permission = Permission.fromValue(resolveIdentityRequest.property(PERMISSION_PROPERTY).toString());
-            Region destinationRegion = Region.of(resolveIdentityRequest.property(BUCKET_LOCATION_PROPERTY).toString());
 
-            S3ControlAsyncClient s3ControlAsyncClient;
-            CompletableFuture<? extends AwsCredentialsIdentity> getDataAccessResponse;
-
-            logger.debug(() -> " Call access grants with the following request params! ");
-            logger.debug(() -> " S3Prefix : " + S3Prefix);
-            logger.debug(() -> " caller accountID : " + accountId);
-            logger.debug(() -> " permission : " + permission);
-            logger.debug(() -> " bucket region : " + destinationRegion);
-
-            if(clientsCache.containsKey(destinationRegion)) {
-                getDataAccessResponse = getCredentialsFromCache(userCredentials.join(), permission, S3Prefix, accountId,  clientsCache.get(destinationRegion));
-            } else {
-                s3ControlAsyncClient = s3ControlBuilder.region(destinationRegion).overrideConfiguration(overrideConfig).build();
-                clientsCache.put(destinationRegion, s3ControlAsyncClient);
-                getDataAccessResponse = getCredentialsFromCache(userCredentials.join(), permission, S3Prefix, accountId,  s3ControlAsyncClient);
-            }
-            return getDataAccessResponse;
+            return userCredentials.thenCompose(requesterCredentials -> getCallerIdentity(requesterCredentials)
+                .thenCompose(callerIdentity -> getCredentialsForCaller(resolveIdentityRequest, requesterCredentials, callerIdentity,
+                                                                       permission, S3Prefix, canFallback)));
 
         } catch(SdkServiceException e) {
 
             unwrapAndBuildException(e);
-            if(shouldFallbackToDefaultCredentialsForThisCase(e.statusCode(), e.getCause())) {
+            if(canFallback && shouldFallbackToDefaultCredentialsForThisCase(e.statusCode(), e.getCause())) {
                 return credentialsProvider.resolveIdentity(resolveIdentityRequest);
             }
             throw e;
         }
     }
 
+    /**
+     * Resolves the region of the bucket if the request only carries the bucket name, then fetches the credentials from the
+     * S3 Control client of that region.
+     */
+    private CompletableFuture<AwsCredentialsIdentity> getCredentialsForCaller(ResolveIdentityRequest resolveIdentityRequest,
+                                                                              AwsCredentialsIdentity requesterCredentials,
+                                                                              CallerIdentity callerIdentity,
+                                                                              Permission permission, String S3Prefix,
+                                                                              boolean canFallback) {
+        String accountId = callerIdentity.accountId;
+        String principal = enablePrincipalKeyedCache ? callerIdentity.arn : null;
+
+        if(resolveIdentityRequest.property(BUCKET_LOCATION_PROPERTY) != null) {
+            Region destinationRegion = Region.of(resolveIdentityRequest.property(BUCKET_LOCATION_PROPERTY).toString());
+            return getCredentialsFromRegion(requesterCredentials, permission, S3Prefix, accountId, principal, destinationRegion,
+                                            canFallback)
+                .thenApply(Function.identity());
+        }
+
+        String bucketName = resolveIdentityRequest.property(BUCKET_NAME_PROPERTY).toString();
+        long start = System.nanoTime();
+        CompletableFuture<Region> destinationRegion = bucketRegionResolver.resolveAsync(bucketName);
+        boolean isCached = destinationRegion.isDone();
+        destinationRegion.whenComplete((region, e) -> stageMetrics.recordLatency(Stage.BUCKET_REGION_LOOKUP,
+                e != null ? StageResult.ERROR : isCached ? StageResult.HIT : StageResult.MISS,
+                region == null ? null : region.id(), System.nanoTime() - start));
+        BiFunction<Region, Throwable, CompletableFuture<AwsCredentialsIdentity>> getDataAccessResponse = (region, e) -> {
+            if (e == null) {
+                return getCredentialsFromRegion(requesterCredentials, permission, S3Prefix, accountId, principal, region, canFallback)
+                    .thenApply(Function.identity());
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            SdkServiceException throwableException = cause instanceof SdkServiceException
+                                                      ? (SdkServiceException) cause : unwrapAndBuildException(cause);
+            if (canFallback && shouldFallbackToDefaultCredentialsForThisCase(throwableException.statusCode(), throwableException.getCause())) {
+                return credentialsProvider.resolveIdentity(resolveIdentityRequest).thenApply(Function.identity());
+            }
+            throw throwableException;
+        };
+        return (executor == null ? destinationRegion.handle(getDataAccessResponse)
+                                 : destinationRegion.handleAsync(getDataAccessResponse, executor))
+            .thenCompose(Function.identity());
+    }
+
+    /**
+     * Fetches the credentials using the S3 Control client of the region where the bucket exists.
+     */
+    private CompletableFuture<? extends AwsCredentialsIdentity> getCredentialsFromRegion(AwsCredentialsIdentity credentials, Permission permission, String S3Prefix, String accountId, String principal, Region destinationRegion,
+                                                                                         boolean canFallback) {
+
+        logger.debug(() -> " Call access grants with the following request params! ");
+        logger.debug(() -> " S3Prefix : " + S3Prefix);
+        logger.debug(() -> " caller accountID : " + accountId);
+        logger.debug(() -> " permission : " + permission);
+        logger.debug(() -> " bucket region : " + destinationRegion);
+
+        S3ControlAsyncClient s3ControlAsyncClient = clientsCache.get(destinationRegion);
+        if (s3ControlAsyncClient == null) {
+            // The clients can be shared by several plugins, only one client is built per region so that none is left unclosed.
+            s3ControlAsyncClient = clientsCache.computeIfAbsent(destinationRegion, region -> {
+                // the builder can be shared by the identity providers of several S3 Clients.
+                synchronized (s3ControlBuilder) {
+                    return s3ControlBuilder.region(region).overrideConfiguration(overrideConfig).build();
+                }
+            });
+        }
+        return getCredentialsFromCache(credentials, permission, S3Prefix, accountId, principal, s3ControlAsyncClient, destinationRegion.id(),
+                                       canFallback);
+    }
+
     /**
      * The class will communicate with the cache to fetch the credentials.
      * By default, requests are routed directly to the cache to handle the credentials fetching.
      */
     CompletableFuture<? extends AwsCredentialsIdentity> getCredentialsFromCache(AwsCredentialsIdentity credentials, Permission permission, String S3Prefix, String accountId, S3ControlAsyncClient s3ControlAsyncClient) {
+        return getCredentialsFromCache(credentials, permission, S3Prefix, accountId, null, s3ControlAsyncClient, null);
+    }
+
+    /**
+     * The class will communicate with the cache to fetch the credentials.
+     * If a principal is passed, the cache looks up credentials by the principal instead of the requester credentials.
+     * The latencies recorded by the cache are tagged with the region id of the S3 Control client.
+     */
+    CompletableFuture<? extends AwsCredentialsIdentity> getCredentialsFromCache(AwsCredentialsIdentity credentials, Permission permission, String S3Prefix, String accountId, String principal,
+                                                                                S3ControlAsyncClient s3ControlAsyncClient, String regionId) {
+        return getCredentialsFromCache(credentials, permission, S3Prefix, accountId, principal, s3ControlAsyncClient, regionId, true);
+    }
+
+    private CompletableFuture<? extends AwsCredentialsIdentity> getCredentialsFromCache(AwsCredentialsIdentity credentials, Permission permission, String S3Prefix, String accountId, String principal,
+                                                                                        S3ControlAsyncClient s3ControlAsyncClient, String regionId,
+                                                                                        boolean canFallback) {
 
         try {
-            return cache.getDataAccess(credentials, permission, S3Prefix, accountId, s3ControlAsyncClient).exceptionally(e -> {
+            CompletableFuture<AwsCredentialsIdentity> accessGrantsCredentials =
+                cache.getDataAccess(credentials, permission, S3Prefix, accountId, principal, s3ControlAsyncClient, regionId);
+            BiFunction<AwsCredentialsIdentity, Throwable, AwsCredentialsIdentity> fallback = (accessGrantsIdentity, e) -> {
+                if (e == null) return accessGrantsIdentity;
                 SdkServiceException throwableException = unwrapAndBuildException(e);
-                if (shouldFallbackToDefaultCredentialsForThisCase(throwableException.statusCode(), throwableException)) return credentials;
+                if (canFallback && shouldFallbackToDefaultCredentialsForThisCase(throwableException.statusCode(), throwableException)) return credentials;
                 throw throwableException;
-            });
+            };
+            return executor == null ? accessGrantsCredentials.handle(fallback) : accessGrantsCredentials.handleAsync(fallback, executor);
         } catch (Exception e) {
             SdkServiceException throwableException = unwrapAndBuildException(e);
-            if (shouldFallbackToDefaultCredentialsForThisCase(throwableException.statusCode(), throwableException)) return CompletableFuture.supplyAsync(() -> credentials);
+            if (canFallback && shouldFallbackToDefaultCredentialsForThisCase(throwableException.statusCode(), throwableException)) return CompletableFuture.completedFuture(credentials);
             throw throwableException;
         } finally {
-            if (metricsPublisher != null) publishMetrics();
+            if (metricsReporter != null) metricsReporter.start();
         }
     }
 
-    private void publishMetrics() {
-        try {
-            metricsPublisher.publish(cache.getAccessGrantsMetrics().collect());
-            metricsPublisher.close();
-        } catch (Exception e) {
-            logger.warn(() -> "Something went wrong while publishing metrics using the metrics publisher. Please contact S3 access grants plugin team!");
-            logger.warn(() -> "cause for metrics publisher error : " + e.getMessage());
-        }
+    /**
+     * Stops publishing metrics, after publishing the metrics of the last interval. The metrics publisher is not closed.
+     * A metrics reporter passed to the builder is shared with other identity providers and is closed by its owner instead,
+     * the metrics publisher is removed from it.
+     */
+    @Override
+    public void close() {
+        if (isMetricsReporterOwner) metricsReporter.close();
+        if (metricsPublisherRegistration != null) metricsPublisherRegistration.close();
+    }
+
+    S3AccessGrantsMetrics stageMetrics() {
+        return stageMetrics;
+    }
+
+    S3AccessGrantsMetricsReporter metricsReporter() {
+        return metricsReporter;
+    }
+
+    /**
+     * @return the registration of the metrics publisher with the metrics reporter, null without a metrics publisher.
+     */
+    SdkAutoCloseable metricsPublisherRegistration() {
+        return metricsPublisherRegistration;
+    }
+
+    /**
+     * @return the metrics of the caches used by the identity provider, called by the metrics reporter on every interval.
+     */
+    MetricCollection collectMetrics() {
+        return collectMetrics(cache, callerIdentityCache, stageMetrics,
+                bucketRegionResolver == null ? Collections.emptyList() : Collections.singletonList(bucketRegionResolver));
+    }
+
+    /**
+     * @return the metrics of caches that may be shared by several identity providers, collected once for all of them.
+     */
+    static MetricCollection collectMetrics(S3AccessGrantsCachedCredentialsProvider cache,
+                                           AsyncCache<String, CallerIdentity> callerIdentityCache,
+                                           S3AccessGrantsMetrics stageMetrics,
+                                           Collection<? extends S3AccessGrantsBucketRegionResolver> bucketRegionResolvers) {
+        MetricCollector collector = cache.reportAccessGrantsMetrics();
+        MetricsCollector.getMetricsForCallerAccountCache(callerIdentityCache.synchronous().stats(), collector);
+        stageMetrics.delta().reportTo(collector);
+        S3AccessGrantsCachedBucketRegionResolver.reportMetrics(bucketRegionResolvers, collector);
+        return collector.collect();
     }
 
     private void validateRequestParameters(ResolveIdentityRequest resolveIdentityRequest, Privilege privilege, Boolean isCacheEnabled) {
@@ -209,7 +430,10 @@ public class S3AccessGrantsIdentityProvider implements IdentityProvider<AwsCrede
         Pattern pattern = Pattern.compile("s3://[a-z0-9.-]*");
         S3AccessGrantsUtils.argumentNotNull(resolveIdentityRequest.property(PREFIX_PROPERTY), String.format(CONTACT_TEAM_MESSAGE_TEMPLATE, "S3Prefix", "identity provider"));
         Validate.isTrue(pattern.matcher(resolveIdentityRequest.property(PREFIX_PROPERTY).toString()).find(), String.format(CONTACT_TEAM_MESSAGE_TEMPLATE, "S3Prefix", "identity provider"));
-        S3AccessGrantsUtils.argumentNotNull(resolveIdentityRequest.property(BUCKET_LOCATION_PROPERTY), String.format(CONTACT_TEAM_MESSAGE_TEMPLATE, "request region", "identity provider"));
+        if (resolveIdentityRequest.property(BUCKET_LOCATION_PROPERTY) == null) {
+            S3AccessGrantsUtils.argumentNotNull(resolveIdentityRequest.property(BUCKET_NAME_PROPERTY), String.format(CONTACT_TEAM_MESSAGE_TEMPLATE, "request region", "identity provider"));
+            S3AccessGrantsUtils.argumentNotNull(bucketRegionResolver, String.format(CONTACT_TEAM_MESSAGE_TEMPLATE, "bucket region resolver", "identity provider"));
+        }
         S3AccessGrantsUtils.argumentNotNull(resolveIdentityRequest.property(PERMISSION_PROPERTY), String.format(CONTACT_TEAM_MESSAGE_TEMPLATE, "permission", "identity provider"));
         logger.debug(() -> "Validation Complete. The request parameters can be forwarded to S3 Access grants!");
     }
@@ -261,33 +485,244 @@ public class S3AccessGrantsIdentityProvider implements IdentityProvider<AwsCrede
 
     /**
      * Fetches the caller accountID from the requester using STS.
-     * For every request, if the caller credentials have been used previously, the accountID resolved for that credentials will be returned.
-     * If a new set of credentials are being used, then a request will be forwarded to STS to fetch the caller accountID and cache it.
-     * Each Identity provider is only going to cache one set of credentials/accountID at any point of time.
-     * This should be a safe considering service clients can refer to only one set of credentials for each request.
-     * @return a completableFuture containing response from STS.
+     * The accountID is cached for every set of credentials the identity provider has seen recently, so requests alternating
+     * between identities, e.g. behind a multi-tenant credentials provider, do not send a request to STS on every switch.
+     * Entries are keyed by the access key ID, which is unique per STS session for temporary credentials. Concurrent requests
+     * for the same credentials share a single request to STS. A failed request is not cached.
+     * @return a completableFuture containing the caller accountID returned by STS.
      * */
-    String getCallerAccountID(CompletableFuture<? extends AwsCredentialsIdentity> userCredentials) {
-        AwsCredentialsIdentity credentials = userCredentials.join();
-        
-        // First check without synchronization (fast path)
-        if(credentials.equals(cachedCredentials)) {
-            logger.debug(() -> "caller account cached, avoiding sending requests to STS");
-            return cachedAccountId;
-        }
-        
-        // Double-checked locking to prevent multiple STS calls
-        synchronized(this) {
-            // Check again inside synchronized block
-            if(credentials.equals(cachedCredentials)) {
-                logger.debug(() -> "caller account cached, avoiding sending requests to STS");
-                return cachedAccountId;
-            }
-            
+    CompletableFuture<String> getCallerAccountID(CompletableFuture<? extends AwsCredentialsIdentity> userCredentials) {
+        return userCredentials.thenCompose(this::getCallerIdentity).thenApply(callerIdentity -> callerIdentity.accountId);
+    }
+
+    /**
+     * Fetches the caller accountID and ARN for the credentials using STS, see {@link #getCallerAccountID(CompletableFuture)}.
+     */
+    CompletableFuture<CallerIdentity> getCallerIdentity(AwsCredentialsIdentity credentials) {
+        long start = System.nanoTime();
+        CompletableFuture<CallerIdentity> callerIdentity = callerIdentityCache.get(credentials.accessKeyId(), (key, cacheExecutor) -> {
             logger.debug(() -> "caller account not cached, requesting STS to fetch caller accountID!");
-            cachedAccountId = stsAsyncClient.getCallerIdentity().join().account();
-            cachedCredentials = credentials;
-            return cachedAccountId;
+            try {
+                // STS has to resolve the identity of the requester, not of the credentials the STS client was built with.
+                GetCallerIdentityRequest request = GetCallerIdentityRequest.builder()
+                                                                           .overrideConfiguration(o -> o.credentialsProvider(
+                                                                               StaticCredentialsProvider.create(CredentialUtils.toCredentials(credentials))))
+                                                                           .build();
+                return stsAsyncClient.getCallerIdentity(request)
+                                     .thenApply(response -> new CallerIdentity(response.account(), response.arn()));
+            } catch (RuntimeException e) {
+                CompletableFuture<CallerIdentity> failedFuture = new CompletableFuture<>();
+                failedFuture.completeExceptionally(e);
+                return failedFuture;
+            }
+        });
+        stageMetrics.recordLatencyOnCompletion(Stage.CALLER_IDENTITY, stsRegionId, start, callerIdentity);
+        return callerIdentity;
+    }
+
+    CacheStats getCallerIdentityCacheStats() {
+        return callerIdentityCache.synchronous().stats();
+    }
+
+    /**
+     * Caller account and ARN resolved by STS for a set of credentials.
+     */
+    static final class CallerIdentity {
+        private final String accountId;
+        private final String arn;
+
+        private CallerIdentity(String accountId, String arn) {
+            this.accountId = accountId;
+            this.arn = arn;
+        }
+    }
+
+    interface Builder {
+        Builder credentialsProvider(IdentityProvider<? extends AwsCredentialsIdentity> credentialsProvider);
+
+        Builder stsAsyncClient(StsAsyncClient stsAsyncClient);
+
+        Builder privilege(Privilege privilege);
+
+        Builder isCacheEnabled(Boolean isCacheEnabled);
+
+        Builder s3ControlAsyncClientBuilder(S3ControlAsyncClientBuilder s3ControlAsyncClientBuilder);
+
+        Builder cache(S3AccessGrantsCachedCredentialsProvider cache);
+
+        Builder enableFallback(boolean enableFallback);
+
+        /**
+         * The metrics publisher is never closed by the identity provider.
+         */
+        Builder metricsPublisher(MetricPublisher metricsPublisher);
+
+        Builder clientsCache(ConcurrentHashMap<Region, S3ControlAsyncClient> clientsCache);
+
+        Builder overrideConfig(ClientOverrideConfiguration overrideConfig);
+
+        Builder enablePrincipalKeyedCache(boolean enablePrincipalKeyedCache);
+
+        Builder executor(Executor executor);
+
+        /**
+         * Resolves the region of the bucket when the auth scheme provider only passes the bucket name, i.e. when
+         * cross-region access is enabled.
+         */
+        Builder bucketRegionResolver(S3AccessGrantsBucketRegionResolver bucketRegionResolver);
+
+        /**
+         * How often the metrics of the plugin are published through the metrics publisher.
+         */
+        Builder metricsPublishingIntervalSeconds(int metricsPublishingIntervalSeconds);
+
+        /**
+         * Metrics the latencies of the bucket region lookup and the caller identity are recorded to, published with the
+         * metrics of the cache. The plugin records the auth scheme resolution to the same metrics.
+         */
+        Builder stageMetrics(S3AccessGrantsMetrics stageMetrics);
+
+        /**
+         * Cache of the caller identities, shared by the identity providers of the S3 Clients of a plugin.
+         */
+        Builder callerIdentityCache(AsyncCache<String, CallerIdentity> callerIdentityCache);
+
+        /**
+         * Reporter the metrics publisher is added to, shared by the identity providers that report the same metrics.
+         * The identity provider does not close a reporter it did not create.
+         */
+        Builder metricsReporter(S3AccessGrantsMetricsReporter metricsReporter);
+
+        S3AccessGrantsIdentityProvider build();
+    }
+
+    static final class BuilderImpl implements Builder {
+        private IdentityProvider<? extends AwsCredentialsIdentity> credentialsProvider;
+        private StsAsyncClient stsAsyncClient;
+        private Privilege privilege;
+        private Boolean isCacheEnabled;
+        private S3ControlAsyncClientBuilder s3ControlAsyncClientBuilder;
+        private S3AccessGrantsCachedCredentialsProvider cache;
+        private boolean enableFallback;
+        private MetricPublisher metricsPublisher;
+        private ConcurrentHashMap<Region, S3ControlAsyncClient> clientsCache;
+        private ClientOverrideConfiguration overrideConfig;
+        private boolean enablePrincipalKeyedCache = DEFAULT_PRINCIPAL_KEYED_CACHE_SETTING;
+        private Executor executor;
+        private S3AccessGrantsBucketRegionResolver bucketRegionResolver;
+        private int metricsPublishingIntervalSeconds = DEFAULT_METRICS_PUBLISHING_INTERVAL_SECONDS;
+        private S3AccessGrantsMetrics stageMetrics;
+        private AsyncCache<String, CallerIdentity> callerIdentityCache;
+        private S3AccessGrantsMetricsReporter metricsReporter;
+
+        BuilderImpl() {
+        }
+
+        @Override
+        public BuilderImpl credentialsProvider(IdentityProvider<? extends AwsCredentialsIdentity> credentialsProvider) {
+            this.credentialsProvider = credentialsProvider;
+            return this;
+        }
+
+        @Override
+        public BuilderImpl stsAsyncClient(StsAsyncClient stsAsyncClient) {
+            this.stsAsyncClient = stsAsyncClient;
+            return this;
+        }
+
+        @Override
+        public BuilderImpl privilege(Privilege privilege) {
+            this.privilege = privilege;
+            return this;
+        }
+
+        @Override
+        public BuilderImpl isCacheEnabled(Boolean isCacheEnabled) {
+            this.isCacheEnabled = isCacheEnabled;
+            return this;
+        }
+
+        @Override
+        public BuilderImpl s3ControlAsyncClientBuilder(S3ControlAsyncClientBuilder s3ControlAsyncClientBuilder) {
+            this.s3ControlAsyncClientBuilder = s3ControlAsyncClientBuilder;
+            return this;
+        }
+
+        @Override
+        public BuilderImpl cache(S3AccessGrantsCachedCredentialsProvider cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        @Override
+        public BuilderImpl enableFallback(boolean enableFallback) {
+            this.enableFallback = enableFallback;
+            return this;
+        }
+
+        @Override
+        public BuilderImpl metricsPublisher(MetricPublisher metricsPublisher) {
+            this.metricsPublisher = metricsPublisher;
+            return this;
+        }
+
+        @Override
+        public BuilderImpl clientsCache(ConcurrentHashMap<Region, S3ControlAsyncClient> clientsCache) {
+            this.clientsCache = clientsCache;
+            return this;
+        }
+
+        @Override
+        public BuilderImpl overrideConfig(ClientOverrideConfiguration overrideConfig) {
+            this.overrideConfig = overrideConfig;
+            return this;
+        }
+
+        @Override
+        public BuilderImpl enablePrincipalKeyedCache(boolean enablePrincipalKeyedCache) {
+            this.enablePrincipalKeyedCache = enablePrincipalKeyedCache;
+            return this;
+        }
+
+        @Override
+        public BuilderImpl executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        @Override
+        public BuilderImpl bucketRegionResolver(S3AccessGrantsBucketRegionResolver bucketRegionResolver) {
+            this.bucketRegionResolver = bucketRegionResolver;
+            return this;
+        }
+
+        @Override
+        public BuilderImpl metricsPublishingIntervalSeconds(int metricsPublishingIntervalSeconds) {
+            this.metricsPublishingIntervalSeconds = metricsPublishingIntervalSeconds;
+            return this;
+        }
+
+        @Override
+        public BuilderImpl stageMetrics(S3AccessGrantsMetrics stageMetrics) {
+            this.stageMetrics = stageMetrics;
+            return this;
+        }
+
+        @Override
+        public BuilderImpl callerIdentityCache(AsyncCache<String, CallerIdentity> callerIdentityCache) {
+            this.callerIdentityCache = callerIdentityCache;
+            return this;
+        }
+
+        @Override
+        public BuilderImpl metricsReporter(S3AccessGrantsMetricsReporter metricsReporter) {
+            this.metricsReporter = metricsReporter;
+            return this;
+        }
+
+        @Override
+        public S3AccessGrantsIdentityProvider build() {
+            return new S3AccessGrantsIdentityProvider(this);
         }
     }
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.awssdk.s3accessgrants.plugin;
+
+import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.logger;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricPublisher;
+import software.amazon.awssdk.utils.SdkAutoCloseable;
+
+/**
+ * Publishes the metrics of the plugin through the metric publishers of the S3 Clients on a fixed interval, so requests only
+ * update counters. There is one reporter per set of metrics, the metrics are collected once per interval and published to
+ * every publisher. The publishers belong to the S3 Clients and are never closed by the reporter, they are removed once every
+ * registration of the publisher has been closed. Publishers are held weakly, so the publisher of an S3 Client that is no
+ * longer used is dropped even if its registration is never closed.
+ */
+final class S3AccessGrantsMetricsReporter implements SdkAutoCloseable {
+
+    // registrations of every publisher, guarded by itself.
+    private final Map<MetricPublisher, Integer> registrations = new WeakHashMap<>();
+    private final Supplier<MetricCollection> metrics;
+    private final int intervalSeconds;
+    private final AtomicBoolean isStarted = new AtomicBoolean();
+    private ScheduledExecutorService scheduler;
+    private boolean isClosed;
+
+    S3AccessGrantsMetricsReporter(Supplier<MetricCollection> metrics, int intervalSeconds) {
+        this.metrics = metrics;
+        this.intervalSeconds = intervalSeconds;
+    }
+
+    /**
+     * Adds a publisher the metrics are published to. A publisher added more than once receives the metrics once.
+     * @return the registration of the publisher, the publisher is removed once all its registrations are closed.
+     * Closing a registration more than once has no effect.
+     */
+    SdkAutoCloseable addPublisher(MetricPublisher metricPublisher) {
+        synchronized (registrations) {
+            registrations.merge(metricPublisher, 1, Integer::sum);
+        }
+        WeakReference<MetricPublisher> registeredPublisher = new WeakReference<>(metricPublisher);
+        AtomicBoolean isRemoved = new AtomicBoolean();
+        return () -> {
+            MetricPublisher publisher = registeredPublisher.get();
+            if (publisher != null && isRemoved.compareAndSet(false, true)) {
+                removePublisher(publisher);
+            }
+        };
+    }
+
+    private void removePublisher(MetricPublisher metricPublisher) {
+        synchronized (registrations) {
+            Integer remaining = registrations.get(metricPublisher);
+            if (remaining == null || remaining <= 1) {
+                registrations.remove(metricPublisher);
+            } else {
+                registrations.put(metricPublisher, remaining - 1);
+            }
+        }
+    }
+
+    int intervalSeconds() {
+        return intervalSeconds;
+    }
+
+    /**
+     * Starts publishing the metrics. Only the first call starts the reporter, later calls return without taking a lock.
+     */
+    void start() {
+        if (isStarted.get() || !isStarted.compareAndSet(false, true)) {
+            return;
+        }
+        synchronized (this) {
+            if (isClosed) {
+                return;
+            }
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "s3-access-grants-metrics-reporter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleAtFixedRate(this::publish, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Publishes the metrics collected since the last call to every publisher. Failures are logged, the next interval is
+     * published as usual.
+     */
+    void publish() {
+        List<MetricPublisher> metricPublishers;
+        synchronized (registrations) {
+            metricPublishers = new ArrayList<>(registrations.keySet());
+        }
+        if (metricPublishers.isEmpty()) {
+            return;
+        }
+        MetricCollection collection;
+        try {
+            collection = metrics.get();
+        } catch (Exception e) {
+            logger.warn(() -> "Something went wrong while collecting the metrics of the plugin. Please contact S3 access grants plugin team!");
+            logger.warn(() -> "cause for metrics collection error : " + e.getMessage());
+            return;
+        }
+        for (MetricPublisher metricPublisher : metricPublishers) {
+            try {
+                metricPublisher.publish(collection);
+            } catch (Exception e) {
+                logger.warn(() -> "Something went wrong while publishing metrics using the metrics publisher. Please contact S3 access grants plugin team!");
+                logger.warn(() -> "cause for metrics publisher error : " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Stops publishing, after publishing the metrics of the last interval if the reporter was started.
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService runningScheduler;
+        synchronized (this) {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
+            runningScheduler = scheduler;
+            scheduler = null;
+        }
+        if (runningScheduler != null) {
+            runningScheduler.shutdownNow();
+            publish();
+        }
+    }
+}
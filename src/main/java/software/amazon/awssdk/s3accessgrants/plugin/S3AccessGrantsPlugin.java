@@ -15,16 +15,26 @@
 
 package software.amazon.awssdk.s3accessgrants.plugin;
 
+import com.github.benmanes.caffeine.cache.AsyncCache;
 import software.amazon.awssdk.annotations.NotNull;
 import software.amazon.awssdk.core.SdkPlugin;
 import software.amazon.awssdk.core.SdkServiceClientConfiguration;
 import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
 import software.amazon.awssdk.core.client.config.SdkAdvancedClientOption;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.identity.spi.AwsCredentialsIdentity;
+import software.amazon.awssdk.identity.spi.IdentityProvider;
+import software.amazon.awssdk.identity.spi.ResolveIdentityRequest;
 import software.amazon.awssdk.metrics.MetricPublisher;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsCachedAccountIdResolver;
+import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsCachedBucketRegionResolver;
 import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsCachedCredentialsProvider;
 import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsCachedCredentialsProviderImpl;
+import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsMetrics;
+import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsResolverSnapshot;
 import software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.S3ServiceClientConfiguration;
 import software.amazon.awssdk.services.s3control.S3ControlAsyncClientBuilder;
@@ -33,11 +43,37 @@ import software.amazon.awssdk.utils.builder.ToCopyableBuilder;
 import software.amazon.awssdk.services.s3control.S3ControlAsyncClient;
 import software.amazon.awssdk.utils.Validate;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.MAX_RESOLVER_MAX_STALE_SECONDS;
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.SERVE_STALE_DISABLED;
+import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.BUCKET_LOCATION_PROPERTY;
+import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.BUCKET_NAME_PROPERTY;
 import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.DEFAULT_PRIVILEGE_FOR_PLUGIN;
+import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.DEFAULT_WARM_UP_CONCURRENCY;
+import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.PERMISSION_PROPERTY;
+import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.PREFIX_PROPERTY;
 import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.DEFAULT_CACHE_SETTING;
 import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.DEFAULT_FALLBACK_SETTING;
+import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.DEFAULT_PRINCIPAL_KEYED_CACHE_SETTING;
+import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.DEFAULT_METRICS_PUBLISHING_INTERVAL_SECONDS;
+import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.MAX_METRICS_PUBLISHING_INTERVAL_SECONDS;
 import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.logger;
 import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.DEFAULT_CROSS_REGION_ACCESS_SETTING;
 import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.USER_AGENT;
@@ -50,10 +86,33 @@ public class S3AccessGrantsPlugin  implements SdkPlugin, ToCopyableBuilder<Build
 
     private boolean enableFallback;
     private String userAgent;
+    private boolean enablePrincipalKeyedCache;
+    private Executor executor;
+    private Path resolverSnapshotFile;
+    private int resolverMaxStaleSeconds;
+    private S3AccessGrantsSharedRuntime sharedRuntime;
+    private int metricsPublishingIntervalSeconds;
+    // The shared runtime, or a runtime of this plugin only, that owns the clients and caches of the S3 Clients.
+    private final S3AccessGrantsSharedRuntime runtime;
+    private final AtomicBoolean isClosed = new AtomicBoolean();
+    // Held weakly, so the identity providers of S3 Clients that are no longer used can be garbage collected.
+    private final Map<S3AccessGrantsIdentityProvider, WarmUpKey> warmUpTargets = Collections.synchronizedMap(new WeakHashMap<>());
 
     S3AccessGrantsPlugin(BuilderImpl builder) {
         this.enableFallback = builder.enableFallback;
         this.userAgent = builder.userAgent;
+        this.enablePrincipalKeyedCache = builder.enablePrincipalKeyedCache;
+        this.executor = builder.executor;
+        this.resolverSnapshotFile = builder.resolverSnapshotFile;
+        this.resolverMaxStaleSeconds = builder.resolverMaxStaleSeconds;
+        this.sharedRuntime = builder.sharedRuntime;
+        this.metricsPublishingIntervalSeconds = builder.metricsPublishingIntervalSeconds;
+        if (sharedRuntime != null) {
+            sharedRuntime.acquire();
+            this.runtime = sharedRuntime;
+        } else {
+            this.runtime = S3AccessGrantsSharedRuntime.create();
+        }
     }
 
     public static Builder builder() {
@@ -72,6 +131,34 @@ public class S3AccessGrantsPlugin  implements SdkPlugin, ToCopyableBuilder<Build
         return this.userAgent;
     }
 
+    boolean enablePrincipalKeyedCache() {
+        return this.enablePrincipalKeyedCache;
+    }
+
+    Executor executor() {
+        return this.executor;
+    }
+
+    Path resolverSnapshotFile() {
+        return this.resolverSnapshotFile;
+    }
+
+    int resolverMaxStaleSeconds() {
+        return this.resolverMaxStaleSeconds;
+    }
+
+    S3AccessGrantsSharedRuntime sharedRuntime() {
+        return this.sharedRuntime;
+    }
+
+    int metricsPublishingIntervalSeconds() {
+        return this.metricsPublishingIntervalSeconds;
+    }
+
+    S3AccessGrantsSharedRuntime runtime() {
+        return this.runtime;
+    }
+
     ClientOverrideConfiguration overrideConfig = ClientOverrideConfiguration.builder()
                     .putAdvancedOption(SdkAdvancedClientOption.USER_AGENT_PREFIX, userAgent()).build();
 
@@ -100,50 +187,273 @@ public class S3AccessGrantsPlugin  implements SdkPlugin, ToCopyableBuilder<Build
             logger.warn(() -> "cross-region access not opted in! S3 Client will not be able to communicate with buckets outside the configured region!");
         }
 
-        S3ControlAsyncClientBuilder s3ControlAsyncClientBuilder = S3ControlAsyncClient.builder()
-                .credentialsProvider(serviceClientConfiguration.credentialsProvider());
+        IdentityProvider<? extends AwsCredentialsIdentity> credentialsProvider = serviceClientConfiguration.credentialsProvider();
+        Region region = serviceClientConfiguration.region();
+
+        S3ControlAsyncClientBuilder s3ControlAsyncClientBuilder = shared("S3ControlAsyncClientBuilder", credentialsProvider, region,
+                () -> S3ControlAsyncClient.builder()
+                        .credentialsProvider(credentialsProvider));
 
-        S3Client s3Client = S3Client
+        S3Client s3Client = shared("S3Client", credentialsProvider, region, () -> closeOnRelease(credentialsProvider, region, S3Client
                 .builder()
                 .crossRegionAccessEnabled(true)
                 .overrideConfiguration(overrideConfig)
-                .credentialsProvider(serviceClientConfiguration.credentialsProvider())
-                .region(serviceClientConfiguration.region())
-                .build();
+                .credentialsProvider(credentialsProvider)
+                .region(region)
+                .build()));
+
+        S3AsyncClient s3AsyncClient = shared("S3AsyncClient", credentialsProvider, region, () -> closeOnRelease(credentialsProvider, region, S3AsyncClient
+                .builder()
+                .crossRegionAccessEnabled(true)
+                .overrideConfiguration(overrideConfig)
+                .credentialsProvider(credentialsProvider)
+                .region(region)
+                .build()));
+
+        S3AccessGrantsCachedAccountIdResolver accountIdResolver = shared("AccountIdResolver", () -> S3AccessGrantsCachedAccountIdResolver.builder()
+                .maxStaleSeconds(resolverMaxStaleSeconds)
+                .build());
+
+        // The snapshot holds the regions of the bucket region resolver of every credentials provider and region.
+        S3AccessGrantsResolverSnapshot resolverSnapshot = resolverSnapshotFile == null ? null : shared("ResolverSnapshot", () -> {
+            S3AccessGrantsResolverSnapshot snapshot = S3AccessGrantsResolverSnapshot.builder()
+                    .file(resolverSnapshotFile)
+                    .accountIdResolver(accountIdResolver)
+                    .build();
+            snapshot.start();
+            return closeOnShutdown(snapshot);
+        });
+
+        // HeadBucket is sent with the credentials and region of the S3 Client, so the resolver is not shared across them.
+        S3AccessGrantsCachedBucketRegionResolver bucketRegionResolver = shared("BucketRegionResolver", credentialsProvider, region, () -> {
+            S3AccessGrantsCachedBucketRegionResolver resolver = S3AccessGrantsCachedBucketRegionResolver
+                    .builder()
+                    .s3Client(s3Client)
+                    .s3AsyncClient(s3AsyncClient)
+                    .maxStaleSeconds(resolverMaxStaleSeconds)
+                    .executor(executor)
+                    .build();
+            if (resolverSnapshot != null) {
+                resolverSnapshot.addBucketRegionResolver(resolver);
+                closeOnRelease(credentialsProvider, region, () -> resolverSnapshot.removeBucketRegionResolver(resolver));
+            }
+            return resolver;
+        });
+
+        ClientOverrideConfiguration clientOverrideConfiguration = serviceClientConfiguration.overrideConfiguration();
+        serviceClientConfiguration.overrideConfiguration(clientOverrideConfiguration.toBuilder()
+                .addExecutionInterceptor(new S3AccessGrantsBucketRegionInterceptor(bucketRegionResolver))
+                .build());
+
+        S3AccessGrantsMetrics stageMetrics = shared("StageMetrics", () -> new S3AccessGrantsMetrics(Collections.emptyList()));
 
-        serviceClientConfiguration.authSchemeProvider(new S3AccessGrantsAuthSchemeProvider(serviceClientConfiguration.authSchemeProvider(), s3Client, enableCrossRegionAccess));
+        serviceClientConfiguration.authSchemeProvider(new S3AccessGrantsAuthSchemeProvider(serviceClientConfiguration.authSchemeProvider(), s3Client, enableCrossRegionAccess, stageMetrics));
 
-        S3AccessGrantsCachedCredentialsProvider cache = createAccessGrantsCache();
+        S3AccessGrantsCachedCredentialsProvider cache = shared("AccessGrantsCache", () -> createAccessGrantsCache(accountIdResolver));
 
-        ConcurrentHashMap<Region, S3ControlAsyncClient> clientsCache = new ConcurrentHashMap<>();
+        AsyncCache<String, S3AccessGrantsIdentityProvider.CallerIdentity> callerIdentityCache = shared("CallerIdentityCache",
+                () -> S3AccessGrantsIdentityProvider.createCallerIdentityCache(executor));
 
-        StsAsyncClient stsClient = StsAsyncClient.builder()
-                .credentialsProvider(serviceClientConfiguration.credentialsProvider())
+        // One reporter publishes the shared metrics to the publishers of every S3 Client, so they are collected once per interval.
+        S3AccessGrantsMetricsReporter metricsReporter = shared("MetricsReporter", () -> closeOnShutdown(new S3AccessGrantsMetricsReporter(
+                () -> S3AccessGrantsIdentityProvider.collectMetrics(cache, callerIdentityCache, stageMetrics,
+                        runtime.components("BucketRegionResolver")),
+                metricsPublishingIntervalSeconds)));
+
+        ConcurrentHashMap<Region, S3ControlAsyncClient> clientsCache = shared("S3ControlAsyncClients", credentialsProvider, region, () -> {
+            ConcurrentHashMap<Region, S3ControlAsyncClient> s3ControlAsyncClients = new ConcurrentHashMap<>();
+            closeOnRelease(credentialsProvider, region, () -> s3ControlAsyncClients.values().forEach(S3ControlAsyncClient::close));
+            return s3ControlAsyncClients;
+        });
+
+        StsAsyncClient stsClient = shared("StsAsyncClient", credentialsProvider, region, () -> closeOnRelease(credentialsProvider, region, StsAsyncClient.builder()
+                .credentialsProvider(credentialsProvider)
                 .overrideConfiguration(overrideConfig)
-                .region(serviceClientConfiguration.region())
-                .build();
+                .region(region)
+                .build()));
 
         MetricPublisher metricPublisher = config.overrideConfiguration() != null? (config.overrideConfiguration().metricPublishers() != null ? (config.overrideConfiguration().metricPublishers().size() > 0 ? config.overrideConfiguration().metricPublishers().get(0) : null) : null) : null;
 
-        serviceClientConfiguration.credentialsProvider(new S3AccessGrantsIdentityProvider(serviceClientConfiguration.credentialsProvider(),
-                stsClient,
-                DEFAULT_PRIVILEGE_FOR_PLUGIN,
-                DEFAULT_CACHE_SETTING,
-                s3ControlAsyncClientBuilder,
-                cache,
-                enableFallback,
-                metricPublisher,
-                clientsCache,
-                overrideConfig
-                ));
+        S3AccessGrantsIdentityProvider identityProvider = S3AccessGrantsIdentityProvider.builder()
+                .credentialsProvider(credentialsProvider)
+                .stsAsyncClient(stsClient)
+                .privilege(DEFAULT_PRIVILEGE_FOR_PLUGIN)
+                .isCacheEnabled(DEFAULT_CACHE_SETTING)
+                .s3ControlAsyncClientBuilder(s3ControlAsyncClientBuilder)
+                .cache(cache)
+                .enableFallback(enableFallback)
+                .metricsPublisher(metricPublisher)
+                .clientsCache(clientsCache)
+                .overrideConfig(overrideConfig)
+                .enablePrincipalKeyedCache(enablePrincipalKeyedCache)
+                .executor(executor)
+                .bucketRegionResolver(bucketRegionResolver)
+                .metricsPublishingIntervalSeconds(metricsPublishingIntervalSeconds)
+                .stageMetrics(stageMetrics)
+                .callerIdentityCache(callerIdentityCache)
+                .metricsReporter(metricsReporter)
+                .build();
+
+        serviceClientConfiguration.credentialsProvider(identityProvider);
+        // The metrics publisher of the S3 Client is removed from the shared metrics reporter once the plugin is released.
+        if (identityProvider.metricsPublisherRegistration() != null) {
+            runtime.closeOnRelease(this, identityProvider.metricsPublisherRegistration());
+        }
+
+        addWarmUpTarget(identityProvider, credentialsProvider, enableCrossRegionAccess ? null : region);
 
         logger.debug(() -> "Completed configuring S3 Clients to use S3 Access Grants as a permission layer!");
 
     }
 
-    private S3AccessGrantsCachedCredentialsProvider createAccessGrantsCache() {
+    /**
+     * Loads the bucket region, the account of the Access Grants instance and the credentials for each entry into the caches of
+     * the S3 Clients configured with this plugin, so the first requests to these prefixes do not wait for S3 Access Grants.
+     * At most {@value S3AccessGrantsUtils#DEFAULT_WARM_UP_CONCURRENCY} entries are loaded at the same time.
+     * @param entries buckets, prefixes and permissions the S3 Clients are going to be used for
+     * @return a future completed once every entry has been loaded. The future fails once every entry has been attempted
+     * if any of them could not be loaded.
+     * @throws IllegalStateException if the plugin has not been configured on an S3 Client yet
+     */
+    public CompletableFuture<Void> warmUp(List<S3AccessGrantsWarmUpEntry> entries) {
+        return warmUp(entries, DEFAULT_WARM_UP_CONCURRENCY);
+    }
+
+    /**
+     * See {@link #warmUp(List)}.
+     * @param maxConcurrency maximum number of entries loaded at the same time
+     */
+    public CompletableFuture<Void> warmUp(List<S3AccessGrantsWarmUpEntry> entries, int maxConcurrency) {
+        S3AccessGrantsUtils.argumentNotNull(entries, "Expecting a list of entries to warm up the S3 Access Grants caches!");
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency needs to be greater than 0");
+        }
+        Collection<WarmUpTarget> targets = warmUpTargets();
+        if (targets.isEmpty()) {
+            throw new IllegalStateException("The plugin needs to be configured on an S3 Client before warming up the S3 Access Grants caches!");
+        }
+        List<Supplier<CompletableFuture<?>>> tasks = new ArrayList<>();
+        for (WarmUpTarget target : targets) {
+            for (S3AccessGrantsWarmUpEntry entry : entries) {
+                tasks.add(() -> target.warmUp(entry));
+            }
+        }
+        logger.info(() -> "warming up the S3 Access Grants caches with " + tasks.size() + " entries!");
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        AtomicInteger next = new AtomicInteger();
+        CompletableFuture<?>[] workers = new CompletableFuture<?>[Math.min(maxConcurrency, tasks.size())];
+        for (int i = 0; i < workers.length; i++) {
+            // Without an executor, the workers start on the calling thread and continue on the SDK threads.
+            workers[i] = executor == null ? warmUpNext(tasks, next, failures)
+                                          : CompletableFuture.completedFuture(null).thenComposeAsync(v -> warmUpNext(tasks, next, failures), executor);
+        }
+        return CompletableFuture.allOf(workers).thenApply(v -> {
+            if (!failures.isEmpty()) {
+                SdkClientException exception = SdkClientException.builder()
+                        .message(failures.size() + " of " + tasks.size() + " entries could not be loaded while warming up the S3 Access Grants caches!")
+                        .cause(failures.peek())
+                        .build();
+                failures.stream().skip(1).forEach(exception::addSuppressed);
+                throw exception;
+            }
+            logger.info(() -> "S3 Access Grants caches are warmed up!");
+            return null;
+        });
+    }
+
+    /**
+     * Registers the identity provider configured on an S3 Client, so its caches are loaded by {@link #warmUp(List)}.
+     * @param credentialsProvider credentials provider of the S3 Client
+     * @param region region of the S3 Client, null if cross-region access is enabled
+     */
+    void addWarmUpTarget(S3AccessGrantsIdentityProvider identityProvider, Object credentialsProvider, Region region) {
+        warmUpTargets.put(identityProvider, new WarmUpKey(credentialsProvider, region));
+    }
 
-        return S3AccessGrantsCachedCredentialsProviderImpl.builder().build();
+    /**
+     * @return an identity provider per credentials provider and region still in use. The identity providers of S3 Clients
+     * with the same credentials provider and region share their caches, so loading one of them is enough.
+     */
+    private Collection<WarmUpTarget> warmUpTargets() {
+        Map<WarmUpKey, WarmUpTarget> targets = new LinkedHashMap<>();
+        synchronized (warmUpTargets) {
+            warmUpTargets.forEach((identityProvider, key) -> targets.putIfAbsent(key, new WarmUpTarget(identityProvider, key.region)));
+        }
+        return targets.values();
+    }
+
+    /**
+     * Loads the next entry that has not been picked up by any other worker, until every entry has been loaded.
+     * Entries that are loaded right away, e.g. because they are already cached, are loaded in a loop instead of recursively.
+     */
+    private static CompletableFuture<Void> warmUpNext(List<Supplier<CompletableFuture<?>>> tasks, AtomicInteger next, Queue<Throwable> failures) {
+        int index;
+        while ((index = next.getAndIncrement()) < tasks.size()) {
+            CompletableFuture<?> task;
+            try {
+                task = tasks.get(index).get();
+            } catch (RuntimeException e) {
+                task = new CompletableFuture<>();
+                task.completeExceptionally(e);
+            }
+            CompletableFuture<Void> handled = task.handle((result, e) -> {
+                if (e != null) {
+                    failures.add(e);
+                }
+                return null;
+            });
+            if (!handled.isDone()) {
+                return handled.thenCompose(v -> warmUpNext(tasks, next, failures));
+            }
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Publishes the last metrics of the S3 Clients configured with this plugin and closes the clients the plugin created for
+     * them. With a shared runtime, the reference of this plugin to the runtime is released instead. The clients of the credentials
+     * providers and regions no other plugin uses are closed, and the last metrics are published once the runtime is closed.
+     * Calling close more than once has no effect.
+     */
+    @Override
+    public void close() {
+        if (!isClosed.compareAndSet(false, true)) {
+            return;
+        }
+        runtime.release(this);
+    }
+
+    /**
+     * @return the component of the runtime of the plugin, shared by every S3 Client configured with it.
+     */
+    private <T> T shared(String name, Supplier<T> factory) {
+        return runtime.component(name, factory);
+    }
+
+    /**
+     * @return the component of the runtime of the plugin for the credentials provider and region of the S3 Client, used by this
+     * plugin until it is closed.
+     */
+    private <T> T shared(String name, Object credentialsProvider, Region region, Supplier<T> factory) {
+        return runtime.component(name, credentialsProvider, region, this, factory);
+    }
+
+    private <T extends AutoCloseable> T closeOnShutdown(T closeable) {
+        runtime.closeOnShutdown(closeable);
+        return closeable;
+    }
+
+    private <T extends AutoCloseable> T closeOnRelease(Object credentialsProvider, Region region, T closeable) {
+        runtime.closeOnRelease(credentialsProvider, region, closeable);
+        return closeable;
+    }
+
+    private S3AccessGrantsCachedCredentialsProvider createAccessGrantsCache(S3AccessGrantsCachedAccountIdResolver accountIdResolver) {
+
+        return S3AccessGrantsCachedCredentialsProviderImpl.builder()
+                .executor(executor)
+                .s3AccessGrantsCachedAccountIdResolver(accountIdResolver)
+                .buildWithAccountIdResolver();
 
     }
 
@@ -163,17 +473,97 @@ public class S3AccessGrantsPlugin  implements SdkPlugin, ToCopyableBuilder<Build
         return new BuilderImpl(this);
     }
 
+    /**
+     * Credentials provider and region of an S3 Client, the region is null if cross-region access is enabled.
+     * Credentials providers are compared by identity, as two providers that are equal may still resolve different credentials.
+     */
+    private static final class WarmUpKey {
+        private final Object credentialsProvider;
+        private final Region region;
+
+        private WarmUpKey(Object credentialsProvider, Region region) {
+            this.credentialsProvider = credentialsProvider;
+            this.region = region;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof WarmUpKey)) {
+                return false;
+            }
+            WarmUpKey key = (WarmUpKey) o;
+            return credentialsProvider == key.credentialsProvider && Objects.equals(region, key.region);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(credentialsProvider) + Objects.hashCode(region);
+        }
+    }
+
+    /**
+     * Identity provider configured on an S3 Client and the region of the client, null if cross-region access is enabled.
+     */
+    private static final class WarmUpTarget {
+        private final S3AccessGrantsIdentityProvider identityProvider;
+        private final Region region;
+
+        private WarmUpTarget(S3AccessGrantsIdentityProvider identityProvider, Region region) {
+            this.identityProvider = identityProvider;
+            this.region = region;
+        }
+
+        /**
+         * Resolves the identity the same way as for a request to S3, which loads every cache on the way, without falling back
+         * to the credentials of the S3 Client so an entry that could not be loaded is reported.
+         */
+        @SuppressWarnings("unchecked")
+        private CompletableFuture<?> warmUp(S3AccessGrantsWarmUpEntry entry) {
+            ResolveIdentityRequest.Builder request = ResolveIdentityRequest.builder()
+                    .putProperty(PREFIX_PROPERTY, entry.s3Prefix())
+                    .putProperty(PERMISSION_PROPERTY, entry.permission())
+                    .putProperty(BUCKET_NAME_PROPERTY, entry.bucket());
+            if (region != null) {
+                request.putProperty(BUCKET_LOCATION_PROPERTY, region);
+            }
+            return identityProvider.loadIdentity(request.build())
+                    .whenComplete((credentials, e) -> {
+                        if (e != null) {
+                            logger.warn(() -> "could not warm up the S3 Access Grants caches for " + entry + " : " + e.getMessage());
+                        }
+                    });
+        }
+    }
+
     public static final class BuilderImpl implements Builder {
 
         private boolean enableFallback;
         private String userAgent;
+        private boolean enablePrincipalKeyedCache;
+        private Executor executor;
+        private Path resolverSnapshotFile;
+        private int resolverMaxStaleSeconds;
+        private S3AccessGrantsSharedRuntime sharedRuntime;
+        private int metricsPublishingIntervalSeconds;
         BuilderImpl() {
             this.enableFallback = DEFAULT_FALLBACK_SETTING;
             this.userAgent = USER_AGENT;
+            this.enablePrincipalKeyedCache = DEFAULT_PRINCIPAL_KEYED_CACHE_SETTING;
+            this.resolverMaxStaleSeconds = SERVE_STALE_DISABLED;
+            this.metricsPublishingIntervalSeconds = DEFAULT_METRICS_PUBLISHING_INTERVAL_SECONDS;
         }
 
         BuilderImpl(S3AccessGrantsPlugin plugin) {
             this.enableFallback = plugin.enableFallback;
+            this.enablePrincipalKeyedCache = plugin.enablePrincipalKeyedCache;
+            this.executor = plugin.executor;
+            this.resolverSnapshotFile = plugin.resolverSnapshotFile;
+            this.resolverMaxStaleSeconds = plugin.resolverMaxStaleSeconds;
+            this.sharedRuntime = plugin.sharedRuntime;
+            this.metricsPublishingIntervalSeconds = plugin.metricsPublishingIntervalSeconds;
         }
 
         @Override
@@ -187,6 +577,80 @@ public class S3AccessGrantsPlugin  implements SdkPlugin, ToCopyableBuilder<Build
            return this;
         }
 
+        /**
+         * Cache Access Grants credentials by the caller ARN returned by STS instead of the credentials of the requester.
+         * Cached credentials can then still be used after the credentials of the same principal are rotated.
+         */
+        @Override
+        public Builder enablePrincipalKeyedCache(@NotNull Boolean choice) {
+            this.enablePrincipalKeyedCache = choice == null ? DEFAULT_PRINCIPAL_KEYED_CACHE_SETTING : choice;
+            return this;
+        }
+
+        /**
+         * Executor used for the continuations of requests to S3 Access Grants, background refreshes and cache maintenance,
+         * instead of the SDK threads completing the requests and ForkJoinPool.commonPool().
+         * e.g., a dedicated thread pool or, on Java 21 and later, Executors.newVirtualThreadPerTaskExecutor().
+         * The plugin does not shut down the executor.
+         */
+        @Override
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Local file used to keep the bucket regions and the accounts of the Access Grants instances across restarts.
+         * The file is loaded when the plugin is configured on its first S3 Client and written periodically, when the plugin is
+         * closed and when the JVM shuts down. It does not contain any credentials. Disabled by default.
+         */
+        @Override
+        public Builder resolverSnapshotFile(Path resolverSnapshotFile) {
+            this.resolverSnapshotFile = resolverSnapshotFile;
+            return this;
+        }
+
+        /**
+         * How long an expired bucket region or Access Grants instance account is still used while it is refreshed in the
+         * background, so requests do not wait for head bucket or GetAccessGrantsInstanceForPrefix once an hour.
+         * Disabled by default.
+         */
+        @Override
+        public Builder resolverMaxStaleSeconds(int resolverMaxStaleSeconds) {
+            if (resolverMaxStaleSeconds < 0 || resolverMaxStaleSeconds > MAX_RESOLVER_MAX_STALE_SECONDS) {
+                throw new IllegalArgumentException(String.format("resolverMaxStaleSeconds needs to be in range [0, %d]",
+                        MAX_RESOLVER_MAX_STALE_SECONDS));
+            }
+            this.resolverMaxStaleSeconds = resolverMaxStaleSeconds;
+            return this;
+        }
+
+        /**
+         * Runtime shared with other plugins, so the S3 Clients configured with them share their caches and clients.
+         * The plugin holds a reference to the runtime until the plugin is closed. Not shared by default.
+         */
+        @Override
+        public Builder sharedRuntime(S3AccessGrantsSharedRuntime sharedRuntime) {
+            this.sharedRuntime = sharedRuntime;
+            return this;
+        }
+
+        /**
+         * How often the metrics of the plugin are published through the first metric publisher of the S3 Client.
+         * Requests only update counters, the metrics are published on this interval and when the plugin is closed.
+         * The metric publisher is never closed by the plugin. Defaults to
+         * {@value S3AccessGrantsUtils#DEFAULT_METRICS_PUBLISHING_INTERVAL_SECONDS} seconds.
+         */
+        @Override
+        public Builder metricsPublishingIntervalSeconds(int metricsPublishingIntervalSeconds) {
+            if (metricsPublishingIntervalSeconds <= 0 || metricsPublishingIntervalSeconds > MAX_METRICS_PUBLISHING_INTERVAL_SECONDS) {
+                throw new IllegalArgumentException(String.format("metricsPublishingIntervalSeconds needs to be in range (0, %d]",
+                        MAX_METRICS_PUBLISHING_INTERVAL_SECONDS));
+            }
+            this.metricsPublishingIntervalSeconds = metricsPublishingIntervalSeconds;
+            return this;
+        }
+
         @Override
         public Builder userAgent(@NotNull String userAgent) {
             if (userAgent == null) {
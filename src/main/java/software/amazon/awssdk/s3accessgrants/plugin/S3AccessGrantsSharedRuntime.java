@@ -0,0 +1,263 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.awssdk.s3accessgrants.plugin;
+
+import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import software.amazon.awssdk.utils.SdkAutoCloseable;
+
+/**
+ * Caches, resolvers and clients shared by every S3 Client configured with a plugin that uses this runtime, e.g. when an
+ * application creates an S3 Client per tenant or per thread pool. The S3 Clients then share the cached credentials, bucket
+ * regions and accounts, and concurrent requests for the same credentials are sent to S3 Access Grants once.
+ * The STS, S3 and S3 Control clients used by the plugin are shared by the S3 Clients with the same credentials provider and region,
+ * they are closed once every plugin that uses them has been closed.
+ * The caches are created with the settings of the first plugin that configures an S3 Client, plugins sharing a runtime are
+ * expected to use the same settings.
+ *
+ * The runtime is reference counted. The caller of {@link #create()} and every plugin built with the runtime hold a reference,
+ * the clients of the runtime are closed once {@link #close()} has been called on the runtime and on every plugin.
+ */
+public final class S3AccessGrantsSharedRuntime implements SdkAutoCloseable {
+
+    private final Map<Object, Object> components = new HashMap<>();
+    private final Map<Object, KeyedComponents> keyedComponents = new HashMap<>();
+    private final List<AutoCloseable> closeables = new ArrayList<>();
+    private final Map<Object, List<AutoCloseable>> ownerCloseables = new IdentityHashMap<>();
+    private int references = 1;
+    private boolean isOwnerReleased;
+
+    private S3AccessGrantsSharedRuntime() {
+    }
+
+    public static S3AccessGrantsSharedRuntime create() {
+        return new S3AccessGrantsSharedRuntime();
+    }
+
+    /**
+     * Releases the reference of the caller of {@link #create()}. Calling close more than once has no effect.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (isOwnerReleased) {
+                return;
+            }
+            isOwnerReleased = true;
+        }
+        release();
+    }
+
+    /**
+     * Adds a reference held by a plugin.
+     * @throws IllegalStateException if the runtime has already been shut down
+     */
+    synchronized void acquire() {
+        if (references == 0) {
+            throw new IllegalStateException("The S3 Access Grants shared runtime has already been closed!");
+        }
+        references++;
+    }
+
+    /**
+     * Removes a reference, the clients of the runtime are closed once no reference is left.
+     */
+    void release() {
+        release(null);
+    }
+
+    /**
+     * Removes the reference held by a plugin. The components of the credentials providers and regions no other plugin uses
+     * are closed, the clients of the runtime are closed once no reference is left.
+     */
+    void release(Object owner) {
+        List<AutoCloseable> toClose = new ArrayList<>();
+        boolean isShutdown;
+        synchronized (this) {
+            if (references == 0) {
+                return;
+            }
+            isShutdown = --references == 0;
+            if (isShutdown) {
+                // The shared closeables go first, so the snapshot and the metrics published on close still see every component.
+                toClose.addAll(closeables);
+                closeables.clear();
+                keyedComponents.values().forEach(keyed -> toClose.addAll(keyed.closeables));
+                ownerCloseables.values().forEach(toClose::addAll);
+                ownerCloseables.clear();
+            } else {
+                List<AutoCloseable> closeablesOfOwner = ownerCloseables.remove(owner);
+                if (closeablesOfOwner != null) {
+                    toClose.addAll(closeablesOfOwner);
+                }
+                Iterator<KeyedComponents> iterator = keyedComponents.values().iterator();
+                while (iterator.hasNext()) {
+                    KeyedComponents keyed = iterator.next();
+                    if (keyed.owners.remove(owner) && keyed.owners.isEmpty()) {
+                        toClose.addAll(keyed.closeables);
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+        if (isShutdown) {
+            logger.debug(() -> "closing the S3 Access Grants shared runtime!");
+        }
+        for (AutoCloseable closeable : toClose) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                logger.warn(() -> "could not close " + closeable + " while closing the S3 Access Grants shared runtime: " + e.getMessage());
+            }
+        }
+        if (isShutdown) {
+            synchronized (this) {
+                components.clear();
+                keyedComponents.clear();
+            }
+        }
+    }
+
+    synchronized int references() {
+        return references;
+    }
+
+    /**
+     * @return the component shared under the key, created by the factory if it does not exist yet.
+     */
+    @SuppressWarnings("unchecked")
+    synchronized <T> T component(Object key, Supplier<T> factory) {
+        if (references == 0) {
+            throw new IllegalStateException("The S3 Access Grants shared runtime has already been closed!");
+        }
+        Object component = components.get(key);
+        if (component == null) {
+            component = factory.get();
+            components.put(key, component);
+        }
+        return (T) component;
+    }
+
+    /**
+     * @return the component shared by the S3 Clients with the same credentials provider and region.
+     */
+    <T> T component(String name, Object credentialsProvider, Object region, Supplier<T> factory) {
+        return component(name, credentialsProvider, region, null, factory);
+    }
+
+    /**
+     * @param owner plugin using the component, the components of the credentials provider and region are closed once every
+     * plugin using them has been released, see {@link #release(Object)}.
+     * @return the component shared by the S3 Clients with the same credentials provider and region.
+     */
+    @SuppressWarnings("unchecked")
+    synchronized <T> T component(String name, Object credentialsProvider, Object region, Object owner, Supplier<T> factory) {
+        if (references == 0) {
+            throw new IllegalStateException("The S3 Access Grants shared runtime has already been closed!");
+        }
+        KeyedComponents keyed = keyedComponents.computeIfAbsent(key(credentialsProvider, region), key -> new KeyedComponents());
+        if (owner != null) {
+            keyed.owners.add(owner);
+        }
+        Object component = keyed.components.get(name);
+        if (component == null) {
+            component = factory.get();
+            keyed.components.put(name, component);
+        }
+        return (T) component;
+    }
+
+    /**
+     * @return the components shared under the name for every credentials provider and region, see
+     * {@link #component(String, Object, Object, Object, Supplier)}.
+     */
+    @SuppressWarnings("unchecked")
+    synchronized <T> List<T> components(String name) {
+        List<T> namedComponents = new ArrayList<>();
+        for (KeyedComponents keyed : keyedComponents.values()) {
+            Object component = keyed.components.get(name);
+            if (component != null) {
+                namedComponents.add((T) component);
+            }
+        }
+        return namedComponents;
+    }
+
+    /**
+     * Closes the resource when the runtime is closed.
+     */
+    synchronized void closeOnShutdown(AutoCloseable closeable) {
+        closeables.add(closeable);
+    }
+
+    /**
+     * Closes the resource with the components of the credentials provider and region.
+     */
+    synchronized void closeOnRelease(Object credentialsProvider, Object region, AutoCloseable closeable) {
+        keyedComponents.computeIfAbsent(key(credentialsProvider, region), key -> new KeyedComponents()).closeables.add(closeable);
+    }
+
+    /**
+     * Closes the resource when the plugin is released, see {@link #release(Object)}.
+     */
+    synchronized void closeOnRelease(Object owner, AutoCloseable closeable) {
+        ownerCloseables.computeIfAbsent(owner, key -> new ArrayList<>()).add(closeable);
+    }
+
+    private static Object key(Object credentialsProvider, Object region) {
+        return Arrays.asList(new IdentityKey(credentialsProvider), region);
+    }
+
+    /**
+     * The components of a credentials provider and region, with the plugins that use them.
+     */
+    private static final class KeyedComponents {
+        private final Map<String, Object> components = new HashMap<>();
+        private final Set<Object> owners = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final List<AutoCloseable> closeables = new ArrayList<>();
+    }
+
+    /**
+     * Credentials providers are compared by identity, as two providers that are equal may still resolve different credentials.
+     */
+    private static final class IdentityKey {
+        private final Object value;
+
+        private IdentityKey(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof IdentityKey && ((IdentityKey) o).value == value;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(value);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.awssdk.s3accessgrants.plugin;
+
+import software.amazon.awssdk.services.s3control.model.Permission;
+
+/**
+ * A bucket, prefix and permission whose credentials are loaded into the plugin caches by
+ * {@link S3AccessGrantsPlugin#warmUp(java.util.List)} before the first request is made.
+ */
+public final class S3AccessGrantsWarmUpEntry {
+
+    private final String bucket;
+    private final String prefix;
+    private final Permission permission;
+
+    private S3AccessGrantsWarmUpEntry(BuilderImpl builder) {
+        this.bucket = builder.bucket;
+        this.prefix = builder.prefix;
+        this.permission = builder.permission;
+    }
+
+    public static Builder builder() {
+        return new BuilderImpl();
+    }
+
+    public String bucket() {
+        return bucket;
+    }
+
+    public String prefix() {
+        return prefix;
+    }
+
+    public Permission permission() {
+        return permission;
+    }
+
+    /**
+     * @return the S3 prefix requested from Access Grants, the same way it is built for requests to S3.
+     * e.g., s3://bucket-name/path/to/helloworld.txt or s3://bucket-name/* when no prefix is specified.
+     */
+    String s3Prefix() {
+        return "s3://" + bucket + "/" + (prefix == null || prefix.isEmpty() ? "*" : prefix);
+    }
+
+    @Override
+    public String toString() {
+        return s3Prefix() + " (" + permission + ")";
+    }
+
+    public interface Builder {
+        /**
+         * Name of the bucket. Required.
+         */
+        Builder bucket(String bucket);
+
+        /**
+         * Object key or key prefix in the bucket, e.g. path/to/helloworld.txt. Access to the whole bucket if not specified.
+         */
+        Builder prefix(String prefix);
+
+        /**
+         * Permission requested from Access Grants. Required.
+         */
+        Builder permission(Permission permission);
+
+        S3AccessGrantsWarmUpEntry build();
+    }
+
+    static final class BuilderImpl implements Builder {
+        private String bucket;
+        private String prefix;
+        private Permission permission;
+
+        private BuilderImpl() {
+        }
+
+        @Override
+        public Builder bucket(String bucket) {
+            this.bucket = bucket;
+            return this;
+        }
+
+        @Override
+        public Builder prefix(String prefix) {
+            this.prefix = prefix;
+            return this;
+        }
+
+        @Override
+        public Builder permission(Permission permission) {
+            this.permission = permission;
+            return this;
+        }
+
+        @Override
+        public S3AccessGrantsWarmUpEntry build() {
+            if (bucket == null || bucket.isEmpty()) {
+                throw new IllegalArgumentException("A bucket is required for warming up the S3 Access Grants caches!");
+            }
+            if (permission == null || permission == Permission.UNKNOWN_TO_SDK_VERSION) {
+                throw new IllegalArgumentException("A valid permission is required for warming up the S3 Access Grants caches!");
+            }
+            return new S3AccessGrantsWarmUpEntry(this);
+        }
+    }
+}
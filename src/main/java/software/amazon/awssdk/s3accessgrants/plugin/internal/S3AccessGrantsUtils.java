@@ -33,6 +33,7 @@ public class S3AccessGrantsUtils {
     public static final IdentityProperty PREFIX_PROPERTY = IdentityProperty.create(String.class, "S3Prefix");
     public static final IdentityProperty OPERATION_PROPERTY = IdentityProperty.create(String.class,"Operation");
     public static final IdentityProperty BUCKET_LOCATION_PROPERTY = IdentityProperty.create(Region.class, "BucketLocation");
+    public static final IdentityProperty BUCKET_NAME_PROPERTY = IdentityProperty.create(String.class, "BucketName");
 
     public static final IdentityProperty AUTH_EXCEPTIONS_PROPERTY = IdentityProperty.create(SdkServiceException.class, "AuthExceptions");
 
@@ -48,6 +49,18 @@ public class S3AccessGrantsUtils {
 
     public static final Boolean DEFAULT_CROSS_REGION_ACCESS_SETTING = false;
 
+    public static final Boolean DEFAULT_PRINCIPAL_KEYED_CACHE_SETTING = false;
+
+    public static final int DEFAULT_WARM_UP_CONCURRENCY = 10;
+
+    public static final int DEFAULT_CALLER_ACCOUNT_CACHE_SIZE = 1_000;
+
+    public static final int DEFAULT_CALLER_ACCOUNT_CACHE_EXPIRE_AFTER_WRITE_SECONDS = 3_600;
+
+    public static final int DEFAULT_METRICS_PUBLISHING_INTERVAL_SECONDS = 60;
+
+    public static final int MAX_METRICS_PUBLISHING_INTERVAL_SECONDS = 3_600;
+
     public static String USER_AGENT = "aws-s3-accessgrants-java-sdk-v2-plugin";
 
     public static void argumentNotNull(Object param, String message) {
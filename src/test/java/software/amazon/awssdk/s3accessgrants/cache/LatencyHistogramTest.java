@@ -0,0 +1,74 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package software.amazon.awssdk.s3accessgrants.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void histogram_bucketsAreContiguousAndWithinPrecision() {
+        int previous = -1;
+        for (long micros = 0; micros < 100_000; micros++) {
+            int bucket = LatencyHistogram.bucket(micros);
+            assertThat(bucket).isBetween(previous, previous + 1);
+            assertThat(LatencyHistogram.highestMicros(bucket)).isGreaterThanOrEqualTo(micros)
+                                                              .isLessThanOrEqualTo(Math.max(micros, (long) (micros * 1.125)));
+            previous = bucket;
+        }
+        assertThat(LatencyHistogram.bucket(Long.MAX_VALUE)).isEqualTo(LatencyHistogram.BUCKETS - 1);
+        assertThat(LatencyHistogram.highestMicros(LatencyHistogram.BUCKETS - 1)).isEqualTo((1L << 31) - 1);
+    }
+
+    @Test
+    public void histogram_reportsPercentiles() {
+        // Given
+        LatencyHistogram histogram = new LatencyHistogram();
+        // When
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+        // Then
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.count()).isEqualTo(100);
+        assertThat(snapshot.percentile(50)).isBetween(Duration.ofMillis(50), Duration.ofMillis(57));
+        assertThat(snapshot.percentile(99)).isBetween(Duration.ofMillis(99), Duration.ofMillis(112));
+        assertThat(snapshot.max()).isBetween(Duration.ofMillis(100), Duration.ofMillis(113));
+        assertThat(snapshot.mean()).isEqualTo(Duration.ofNanos(50_500_000));
+        assertThatThrownBy(() -> snapshot.percentile(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void histogram_deltaOnlyCoversLatenciesSinceThePreviousDelta() {
+        // Given
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(10));
+        assertThat(histogram.delta().count()).isEqualTo(1);
+        // When
+        histogram.record(TimeUnit.SECONDS.toNanos(1));
+        // Then
+        LatencyHistogram.Snapshot delta = histogram.delta();
+        assertThat(delta.count()).isEqualTo(1);
+        assertThat(delta.percentile(50)).isGreaterThanOrEqualTo(Duration.ofSeconds(1));
+        assertThat(histogram.delta().count()).isEqualTo(0);
+        assertThat(histogram.delta().max()).isEqualTo(Duration.ZERO);
+        assertThat(histogram.snapshot().count()).isEqualTo(2);
+    }
+}
@@ -88,4 +88,23 @@ public class S3AccessGrantsAccessDeniedCacheTest {
                                                                                           .maxCacheSize(1_000_020).build());
     }
 
+    @Test
+    public void accessDeniedCache_boundedByEstimatedSize() {
+        // Given
+        long maxCacheWeightBytes = 4096;
+        S3AccessGrantsAccessDeniedCache weightedCache = S3AccessGrantsAccessDeniedCache.builder()
+                                                                                       .maxCacheWeightBytes(maxCacheWeightBytes).build();
+        // When
+        for (int i = 0; i < 100; i++) {
+            weightedCache.putValueInCache(CacheKey.builder()
+                                                  .credentials(AWS_SESSION_CREDENTIALS)
+                                                  .permission(Permission.READ)
+                                                  .s3Prefix("s3://bucket2/foo/bar" + i).build(), s3ControlException);
+        }
+        // Then
+        assertThat(weightedCache.getEstimatedSizeBytes().getAsLong()).isPositive().isLessThanOrEqualTo(maxCacheWeightBytes);
+        assertThat(cache.getEstimatedSizeBytes().isPresent()).isFalse();
+        assertThrows(IllegalArgumentException.class, () -> S3AccessGrantsAccessDeniedCache.builder().maxCacheWeightBytes(0));
+    }
+
 }
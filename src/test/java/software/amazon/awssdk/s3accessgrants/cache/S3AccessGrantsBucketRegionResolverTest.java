@@ -8,7 +8,10 @@ import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
 import software.amazon.awssdk.awscore.exception.AwsServiceException;
 import software.amazon.awssdk.core.exception.SdkServiceException;
 import software.amazon.awssdk.http.SdkHttpResponse;
+import software.amazon.awssdk.metrics.MetricCollector;
+import software.amazon.awssdk.metrics.MetricRecord;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
 import software.amazon.awssdk.services.s3.model.HeadBucketResponse;
@@ -16,6 +19,10 @@ import software.amazon.awssdk.services.s3.model.S3Exception;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.verify;
@@ -146,4 +153,202 @@ public class S3AccessGrantsBucketRegionResolverTest {
 
     }
 
+    @Test
+    public void call_resolve_concurrently_should_make_one_head_bucket_request() {
+        S3Client localS3Client = mock(S3Client.class);
+        CountDownLatch headBucketStarted = new CountDownLatch(1);
+        CountDownLatch releaseHeadBucket = new CountDownLatch(1);
+        when(localS3Client.headBucket(any(HeadBucketRequest.class))).thenAnswer(invocation -> {
+            headBucketStarted.countDown();
+            releaseHeadBucket.await();
+            return HeadBucketResponse.builder().bucketRegion(Region.US_EAST_1.toString()).build();
+        });
+        S3AccessGrantsCachedBucketRegionResolver localS3AccessGrantsCachedBucketRegionResolver = S3AccessGrantsCachedBucketRegionResolver.builder().s3Client(localS3Client).build();
+        List<CompletableFuture<Region>> regions = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            regions.add(CompletableFuture.supplyAsync(() -> localS3AccessGrantsCachedBucketRegionResolver.resolve(TEST_BUCKET_NAME)));
+        }
+        Assertions.assertThatNoException().isThrownBy(headBucketStarted::await);
+        releaseHeadBucket.countDown();
+        regions.forEach(region -> Assert.assertEquals(Region.US_EAST_1, region.join()));
+        verify(localS3Client, times(1)).headBucket(any(HeadBucketRequest.class));
+    }
+
+    @Test
+    public void call_resolve_async_with_s3_async_client() {
+        S3AsyncClient s3AsyncClient = mock(S3AsyncClient.class);
+        CompletableFuture<HeadBucketResponse> headBucketResponse = new CompletableFuture<>();
+        when(s3AsyncClient.headBucket(any(HeadBucketRequest.class))).thenReturn(headBucketResponse);
+        S3AccessGrantsCachedBucketRegionResolver localS3AccessGrantsCachedBucketRegionResolver = S3AccessGrantsCachedBucketRegionResolver.builder().s3AsyncClient(s3AsyncClient).build();
+        CompletableFuture<Region> region1 = localS3AccessGrantsCachedBucketRegionResolver.resolveAsync(TEST_BUCKET_NAME);
+        CompletableFuture<Region> region2 = localS3AccessGrantsCachedBucketRegionResolver.resolveAsync(TEST_BUCKET_NAME);
+        Assert.assertFalse(region1.isDone());
+        headBucketResponse.complete(HeadBucketResponse.builder().bucketRegion(Region.US_WEST_2.toString()).build());
+        Assert.assertEquals(Region.US_WEST_2, region1.join());
+        Assert.assertEquals(Region.US_WEST_2, region2.join());
+        verify(s3AsyncClient, times(1)).headBucket(any(HeadBucketRequest.class));
+        verify(s3Client, times(0)).headBucket(any(HeadBucketRequest.class));
+    }
+
+    @Test
+    public void call_resolve_async_with_s3_async_client_returns_redirect() {
+        S3AsyncClient s3AsyncClient = mock(S3AsyncClient.class);
+        AwsServiceException s3Exception = mock(S3Exception.class);
+        List<String> regionList = new ArrayList<>();
+        regionList.add(Region.EU_WEST_1.toString());
+        SdkHttpResponse sdkHttpResponse = SdkHttpResponse.builder().putHeader("x-amz-bucket-region", regionList).build();
+        when(s3Exception.awsErrorDetails()).thenReturn(AwsErrorDetails.builder().sdkHttpResponse(sdkHttpResponse).build());
+        CompletableFuture<HeadBucketResponse> headBucketResponse = new CompletableFuture<>();
+        headBucketResponse.completeExceptionally(new CompletionException(s3Exception));
+        when(s3AsyncClient.headBucket(any(HeadBucketRequest.class))).thenReturn(headBucketResponse);
+        S3AccessGrantsCachedBucketRegionResolver localS3AccessGrantsCachedBucketRegionResolver = S3AccessGrantsCachedBucketRegionResolver.builder().s3AsyncClient(s3AsyncClient).build();
+        Assert.assertEquals(Region.EU_WEST_1, localS3AccessGrantsCachedBucketRegionResolver.resolve(TEST_BUCKET_NAME));
+    }
+
+    @Test
+    public void call_resolve_async_does_not_cache_failures() {
+        S3AsyncClient s3AsyncClient = mock(S3AsyncClient.class);
+        CompletableFuture<HeadBucketResponse> failedResponse = new CompletableFuture<>();
+        failedResponse.completeExceptionally(S3Exception.builder().message("Service unavailable").statusCode(503).build());
+        when(s3AsyncClient.headBucket(any(HeadBucketRequest.class)))
+            .thenReturn(failedResponse, CompletableFuture.completedFuture(HeadBucketResponse.builder().bucketRegion(Region.US_EAST_1.toString()).build()));
+        S3AccessGrantsCachedBucketRegionResolver localS3AccessGrantsCachedBucketRegionResolver = S3AccessGrantsCachedBucketRegionResolver.builder().s3AsyncClient(s3AsyncClient).build();
+        Assertions.assertThatThrownBy(() -> localS3AccessGrantsCachedBucketRegionResolver.resolve(TEST_BUCKET_NAME)).isInstanceOf(SdkServiceException.class);
+        Assert.assertEquals(Region.US_EAST_1, localS3AccessGrantsCachedBucketRegionResolver.resolve(TEST_BUCKET_NAME));
+        verify(s3AsyncClient, times(2)).headBucket(any(HeadBucketRequest.class));
+    }
+
+    @Test
+    public void call_resolve_with_access_point_arn_should_not_make_head_bucket_request() {
+        Assert.assertEquals(Region.US_WEST_2, s3AccessGrantsCachedBucketRegionResolver.resolve("arn:aws:s3:us-west-2:123456789012:accesspoint/test-access-point"));
+        Assert.assertEquals(Region.EU_CENTRAL_1, s3AccessGrantsCachedBucketRegionResolver.resolve("arn:aws:s3-object-lambda:eu-central-1:123456789012:accesspoint/test-access-point"));
+        verify(s3Client, times(0)).headBucket(any(HeadBucketRequest.class));
+    }
+
+    @Test
+    public void call_resolve_with_multi_region_access_point_arn_should_make_head_bucket_request() {
+        Assert.assertEquals(Region.US_EAST_1, s3AccessGrantsCachedBucketRegionResolver.resolve("arn:aws:s3::123456789012:accesspoint/test.mrap"));
+        verify(s3Client, times(1)).headBucket(any(HeadBucketRequest.class));
+    }
+
+    @Test
+    public void call_resolve_with_region_learned_from_response_should_not_make_head_bucket_request() {
+        s3AccessGrantsCachedBucketRegionResolver.putBucketRegion(TEST_BUCKET_NAME, Region.AP_SOUTH_1);
+        Assert.assertEquals(Region.AP_SOUTH_1, s3AccessGrantsCachedBucketRegionResolver.resolve(TEST_BUCKET_NAME));
+        verify(s3Client, times(0)).headBucket(any(HeadBucketRequest.class));
+    }
+
+    @Test
+    public void call_resolve_with_stale_region_returns_it_while_refreshing_in_background() {
+        S3AsyncClient s3AsyncClient = mock(S3AsyncClient.class);
+        CompletableFuture<HeadBucketResponse> headBucketResponse = new CompletableFuture<>();
+        when(s3AsyncClient.headBucket(any(HeadBucketRequest.class))).thenReturn(headBucketResponse);
+        S3AccessGrantsCachedBucketRegionResolver localS3AccessGrantsCachedBucketRegionResolver = S3AccessGrantsCachedBucketRegionResolver.builder()
+                .s3AsyncClient(s3AsyncClient)
+                .expireCacheAfterWriteSeconds(60)
+                .maxStaleSeconds(60)
+                .build();
+        localS3AccessGrantsCachedBucketRegionResolver.putBucketRegion(TEST_BUCKET_NAME, Region.US_EAST_1);
+        // the region was written more than 60 seconds ago
+        localS3AccessGrantsCachedBucketRegionResolver.getCache().synchronous().policy().expireVariably().get().setExpiresAfter(TEST_BUCKET_NAME, 30, TimeUnit.SECONDS);
+        Assert.assertEquals(Region.US_EAST_1, localS3AccessGrantsCachedBucketRegionResolver.resolve(TEST_BUCKET_NAME));
+        Assert.assertEquals(Region.US_EAST_1, localS3AccessGrantsCachedBucketRegionResolver.resolve(TEST_BUCKET_NAME));
+        // a single refresh runs in the background
+        verify(s3AsyncClient, times(1)).headBucket(any(HeadBucketRequest.class));
+        headBucketResponse.complete(HeadBucketResponse.builder().bucketRegion(Region.EU_WEST_1.toString()).build());
+        Assert.assertEquals(Region.EU_WEST_1, localS3AccessGrantsCachedBucketRegionResolver.resolve(TEST_BUCKET_NAME));
+        Assertions.assertThat(localS3AccessGrantsCachedBucketRegionResolver.getCache().synchronous().policy().expireVariably().get()
+                .getExpiresAfter(TEST_BUCKET_NAME, TimeUnit.SECONDS).getAsLong()).isGreaterThan(60);
+        verify(s3AsyncClient, times(1)).headBucket(any(HeadBucketRequest.class));
+    }
+
+    @Test
+    public void call_resolve_with_stale_region_keeps_it_when_refresh_fails() {
+        S3AsyncClient s3AsyncClient = mock(S3AsyncClient.class);
+        CompletableFuture<HeadBucketResponse> failedResponse = new CompletableFuture<>();
+        failedResponse.completeExceptionally(S3Exception.builder().message("Service unavailable").statusCode(503).build());
+        when(s3AsyncClient.headBucket(any(HeadBucketRequest.class))).thenReturn(failedResponse);
+        S3AccessGrantsCachedBucketRegionResolver localS3AccessGrantsCachedBucketRegionResolver = S3AccessGrantsCachedBucketRegionResolver.builder()
+                .s3AsyncClient(s3AsyncClient)
+                .expireCacheAfterWriteSeconds(60)
+                .maxStaleSeconds(60)
+                .build();
+        localS3AccessGrantsCachedBucketRegionResolver.putBucketRegion(TEST_BUCKET_NAME, Region.US_EAST_1);
+        localS3AccessGrantsCachedBucketRegionResolver.getCache().synchronous().policy().expireVariably().get().setExpiresAfter(TEST_BUCKET_NAME, 30, TimeUnit.SECONDS);
+        Assert.assertEquals(Region.US_EAST_1, localS3AccessGrantsCachedBucketRegionResolver.resolve(TEST_BUCKET_NAME));
+        // the failed refresh is retried by the next caller
+        Assert.assertEquals(Region.US_EAST_1, localS3AccessGrantsCachedBucketRegionResolver.resolve(TEST_BUCKET_NAME));
+        verify(s3AsyncClient, times(2)).headBucket(any(HeadBucketRequest.class));
+    }
+
+    @Test
+    public void call_resolve_with_stale_region_refreshes_it_with_the_s3_client_on_the_configured_executor() {
+        List<Runnable> tasks = new ArrayList<>();
+        S3AccessGrantsCachedBucketRegionResolver localS3AccessGrantsCachedBucketRegionResolver = S3AccessGrantsCachedBucketRegionResolver.builder()
+                .s3Client(s3Client)
+                .expireCacheAfterWriteSeconds(60)
+                .maxStaleSeconds(60)
+                .executor(tasks::add)
+                .build();
+        localS3AccessGrantsCachedBucketRegionResolver.putBucketRegion(TEST_BUCKET_NAME, Region.AP_SOUTH_1);
+        localS3AccessGrantsCachedBucketRegionResolver.getCache().synchronous().policy().expireVariably().get().setExpiresAfter(TEST_BUCKET_NAME, 30, TimeUnit.SECONDS);
+        Assert.assertEquals(Region.AP_SOUTH_1, localS3AccessGrantsCachedBucketRegionResolver.resolve(TEST_BUCKET_NAME));
+        // the head bucket request waits for the executor
+        verify(s3Client, times(0)).headBucket(any(HeadBucketRequest.class));
+        new ArrayList<>(tasks).forEach(Runnable::run);
+        verify(s3Client, times(1)).headBucket(any(HeadBucketRequest.class));
+        Assert.assertEquals(Region.US_EAST_1, localS3AccessGrantsCachedBucketRegionResolver.resolve(TEST_BUCKET_NAME));
+    }
+
+    @Test
+    public void call_resolve_without_max_stale_seconds_does_not_refresh_in_background() {
+        s3AccessGrantsCachedBucketRegionResolver.putBucketRegion(TEST_BUCKET_NAME, Region.AP_SOUTH_1);
+        s3AccessGrantsCachedBucketRegionResolver.getCache().synchronous().policy().expireVariably().get().setExpiresAfter(TEST_BUCKET_NAME, 1, TimeUnit.SECONDS);
+        Assert.assertEquals(Region.AP_SOUTH_1, s3AccessGrantsCachedBucketRegionResolver.resolve(TEST_BUCKET_NAME));
+        verify(s3Client, times(0)).headBucket(any(HeadBucketRequest.class));
+        Assertions.assertThatThrownBy(() -> S3AccessGrantsCachedBucketRegionResolver.builder().maxStaleSeconds(-1)).isInstanceOf(IllegalArgumentException.class);
+        Assertions.assertThatThrownBy(() -> S3AccessGrantsCachedBucketRegionResolver.builder().maxStaleSeconds(86_401)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void call_resolve_for_non_existent_bucket_should_cache_the_failure() {
+        S3Client localS3Client = mock(S3Client.class);
+        S3AccessGrantsCachedBucketRegionResolver localS3AccessGrantsCachedBucketRegionResolver = S3AccessGrantsCachedBucketRegionResolver.builder().s3Client(localS3Client).build();
+        when(localS3Client.headBucket(any(HeadBucketRequest.class))).thenThrow(S3Exception.builder().message("Bucket does not exist").statusCode(404).build());
+        Assertions.assertThatThrownBy(() -> localS3AccessGrantsCachedBucketRegionResolver.resolve(TEST_BUCKET_NAME)).isInstanceOf(SdkServiceException.class);
+        // the failure is returned from the cache without making another head bucket request
+        Assertions.assertThatThrownBy(() -> localS3AccessGrantsCachedBucketRegionResolver.resolve(TEST_BUCKET_NAME))
+                .isInstanceOf(SdkServiceException.class)
+                .hasMessageContaining("Bucket does not exist");
+        verify(localS3Client, times(1)).headBucket(any(HeadBucketRequest.class));
+        Assert.assertEquals(1, localS3AccessGrantsCachedBucketRegionResolver.getNegativeCacheStats().hitCount());
+        MetricCollector collector = MetricCollector.create("test");
+        localS3AccessGrantsCachedBucketRegionResolver.reportMetrics(collector);
+        Assertions.assertThat(collector.collect().stream().map(MetricRecord::metric).map(metric -> metric.name()))
+                .contains("BucketRegionResolverNegativeCacheHitCount");
+        // a region learned from an S3 response replaces the failure
+        localS3AccessGrantsCachedBucketRegionResolver.putBucketRegion(TEST_BUCKET_NAME, Region.EU_WEST_1);
+        Assert.assertEquals(Region.EU_WEST_1, localS3AccessGrantsCachedBucketRegionResolver.resolve(TEST_BUCKET_NAME));
+    }
+
+    @Test
+    public void call_resolve_with_throttling_or_disabled_negative_cache_should_not_cache_the_failure() {
+        S3Client localS3Client = mock(S3Client.class);
+        when(localS3Client.headBucket(any(HeadBucketRequest.class))).thenThrow(S3Exception.builder().message("Slow down").statusCode(429).build());
+        S3AccessGrantsCachedBucketRegionResolver localS3AccessGrantsCachedBucketRegionResolver = S3AccessGrantsCachedBucketRegionResolver.builder().s3Client(localS3Client).build();
+        Assertions.assertThatThrownBy(() -> localS3AccessGrantsCachedBucketRegionResolver.resolve(TEST_BUCKET_NAME)).isInstanceOf(SdkServiceException.class);
+        Assertions.assertThatThrownBy(() -> localS3AccessGrantsCachedBucketRegionResolver.resolve(TEST_BUCKET_NAME)).isInstanceOf(SdkServiceException.class);
+        verify(localS3Client, times(2)).headBucket(any(HeadBucketRequest.class));
+
+        S3Client disabledS3Client = mock(S3Client.class);
+        when(disabledS3Client.headBucket(any(HeadBucketRequest.class))).thenThrow(S3Exception.builder().message("Bucket does not exist").statusCode(404).build());
+        S3AccessGrantsCachedBucketRegionResolver disabledResolver = S3AccessGrantsCachedBucketRegionResolver.builder()
+                .s3Client(disabledS3Client)
+                .negativeCacheExpireAfterWriteSeconds(0)
+                .build();
+        Assertions.assertThatThrownBy(() -> disabledResolver.resolve(TEST_BUCKET_NAME)).isInstanceOf(SdkServiceException.class);
+        Assertions.assertThatThrownBy(() -> disabledResolver.resolve(TEST_BUCKET_NAME)).isInstanceOf(SdkServiceException.class);
+        verify(disabledS3Client, times(2)).headBucket(any(HeadBucketRequest.class));
+    }
+
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.awssdk.s3accessgrants.cache;
+
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsConstants.DEFAULT_ACCESS_GRANTS_MAX_CACHE_SIZE;
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsTestConstants.AWS_SESSION_CREDENTIALS;
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsTestConstants.S3_ACCESS_GRANTS_CREDENTIALS;
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsTestConstants.TEST_S3_ACCESSGRANTS_ACCOUNT;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import software.amazon.awssdk.identity.spi.AwsCredentialsIdentity;
+import software.amazon.awssdk.services.s3control.model.Permission;
+
+/**
+ * Compares the lookup modes of the Access Grants cache on the hit path.
+ * Run the main method from the test classpath after mvn test-compile, or org.openjdk.jmh.Main with JMH options.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class S3AccessGrantsCacheLookupBenchmark {
+
+    @Param({"INDEXED", "BATCHED"})
+    public S3AccessGrantsCacheLookupMode lookupMode;
+
+    @Param({"2", "8", "16"})
+    public int depth;
+
+    private S3AccessGrantsCache cache;
+    private S3AccessGrantsAccessDeniedCache accessDeniedCache;
+    private CacheKey bucketGrantRequest;
+    private CacheKey readWriteGrantRequest;
+
+    @Setup
+    public void setup() {
+        cache = S3AccessGrantsCache.builder()
+                                   .cacheExpirationTimePercentage(90)
+                                   .maxCacheSize(DEFAULT_ACCESS_GRANTS_MAX_CACHE_SIZE)
+                                   .lookupMode(lookupMode).build();
+        accessDeniedCache = S3AccessGrantsAccessDeniedCache.builder().build();
+        StringBuilder s3Prefix = new StringBuilder("s3://bucket");
+        for (int i = 0; i < depth; i++) {
+            s3Prefix.append("/folder").append(i);
+        }
+        s3Prefix.append("/object.txt");
+        CacheKey.Builder grantKey = CacheKey.builder().credentials(AWS_SESSION_CREDENTIALS);
+        cache.putValueInCache(grantKey.permission(Permission.READ).s3Prefix("s3://bucket").build(),
+                              CompletableFuture.completedFuture(S3_ACCESS_GRANTS_CREDENTIALS), 3600);
+        cache.putValueInCache(grantKey.permission(Permission.READWRITE).s3Prefix("s3://bucket/folder0").build(),
+                              CompletableFuture.completedFuture(S3_ACCESS_GRANTS_CREDENTIALS), 3600);
+        bucketGrantRequest = CacheKey.builder().credentials(AWS_SESSION_CREDENTIALS).permission(Permission.READ)
+                                     .s3Prefix(s3Prefix.toString()).build();
+        readWriteGrantRequest = CacheKey.builder().credentials(AWS_SESSION_CREDENTIALS).permission(Permission.WRITE)
+                                        .s3Prefix(s3Prefix.toString()).build();
+    }
+
+    @Benchmark
+    public AwsCredentialsIdentity hitOnBucketGrant() {
+        return cache.getCredentials(bucketGrantRequest, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, null).join();
+    }
+
+    @Benchmark
+    public AwsCredentialsIdentity hitOnReadWriteGrant() {
+        return cache.getCredentials(readWriteGrantRequest, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, null).join();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(S3AccessGrantsCacheLookupBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -22,10 +22,17 @@ import java.time.Duration;
 import java.time.Instant;
 
 import java.time.temporal.ChronoUnit;
+import java.util.Collections;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.assertj.core.api.Assertions;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 import static org.mockito.Mockito.atLeastOnce;
@@ -186,7 +193,7 @@ public class S3AccessGrantsCacheTest {
                                                                                 accessDeniedCache, s3ControlAsyncClient).join());
         // When
         Thread.sleep(3000);
-        when(mockResolver.resolve(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(TEST_S3_ACCESSGRANTS_ACCOUNT);
+        when(mockResolver.resolveAsync(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(CompletableFuture.completedFuture(TEST_S3_ACCESSGRANTS_ACCOUNT));
         when(s3ControlAsyncClient.getDataAccess(any(GetDataAccessRequest.class))).thenReturn(getDataAccessResponseSetUp("s3://bucket2/foo/bar"));
         cacheWithMockedAccountIdResolver.getCredentials(key1, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient).join();
         // Then
@@ -203,7 +210,7 @@ public class S3AccessGrantsCacheTest {
                                .s3Prefix("s3://bucket/foo/bar").build();
         CompletableFuture<GetDataAccessResponse> getDataAccessResponse = getDataAccessResponseSetUp("s3://bucket2/foo/bar");
 
-        when(mockResolver.resolve(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(TEST_S3_ACCESSGRANTS_ACCOUNT);
+        when(mockResolver.resolveAsync(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(CompletableFuture.completedFuture(TEST_S3_ACCESSGRANTS_ACCOUNT));
         when(s3ControlAsyncClient.getDataAccess(any(GetDataAccessRequest.class))).thenReturn(getDataAccessResponse);
         // When
         cacheWithMockedAccountIdResolver.getCredentials(key, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient).join();
@@ -227,7 +234,7 @@ public class S3AccessGrantsCacheTest {
 
         CompletableFuture<GetDataAccessResponse> getDataAccessResponse = getDataAccessResponseSetUp("s3://bucket2/foo/bar");
 
-        when(mockResolver.resolve(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(TEST_S3_ACCESSGRANTS_ACCOUNT);
+        when(mockResolver.resolveAsync(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(CompletableFuture.completedFuture(TEST_S3_ACCESSGRANTS_ACCOUNT));
         when(s3ControlAsyncClient.getDataAccess(any(GetDataAccessRequest.class))).thenReturn(getDataAccessResponse);
         // When
         cacheWithMockedAccountIdResolver.getCredentials(key2, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient).join();
@@ -253,13 +260,13 @@ public class S3AccessGrantsCacheTest {
 
         S3ControlException s3ControlException = Mockito.mock(S3ControlException.class);
 
-        when(mockResolver.resolve(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(TEST_S3_ACCESSGRANTS_ACCOUNT);
+        when(mockResolver.resolveAsync(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(CompletableFuture.completedFuture(TEST_S3_ACCESSGRANTS_ACCOUNT));
         when(s3ControlAsyncClient.getDataAccess(any(GetDataAccessRequest.class))).thenThrow(s3ControlException);
         when(s3ControlException.statusCode()).thenReturn(403);
         // When
         try {
             cacheWithMockedAccountIdResolver.getCredentials(key1, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient).join();
-        }catch (S3ControlException e){}
+        }catch (CompletionException | S3ControlException e){}
         // Then
         assertThat(accessDeniedCache.getValueFromCache(key1)).isInstanceOf(S3ControlException.class);
     }
@@ -293,7 +300,7 @@ public class S3AccessGrantsCacheTest {
                                 .permission(Permission.READ)
                                 .s3Prefix("s3://bucket/foo/bar/text.txt").build();
 
-        when(mockResolver.resolve(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(TEST_S3_ACCESSGRANTS_ACCOUNT);
+        when(mockResolver.resolveAsync(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(CompletableFuture.completedFuture(TEST_S3_ACCESSGRANTS_ACCOUNT));
         when(s3ControlAsyncClient.getDataAccess(any(GetDataAccessRequest.class))).thenReturn(getDataAccessResponse);
         cacheWithMockedAccountIdResolver.getCredentials(key1, TEST_S3_ACCESSGRANTS_ACCOUNT,accessDeniedCache, s3ControlAsyncClient).join();
         // When
@@ -343,7 +350,7 @@ public class S3AccessGrantsCacheTest {
                                 .permission(Permission.READ)
                                 .s3Prefix("s3://bucket/foo/bar/text.txt").build();
         // When
-        when(mockResolver.resolve(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(TEST_S3_ACCESSGRANTS_ACCOUNT);
+        when(mockResolver.resolveAsync(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(CompletableFuture.completedFuture(TEST_S3_ACCESSGRANTS_ACCOUNT));
         when(s3ControlAsyncClient.getDataAccess(any(GetDataAccessRequest.class))).thenReturn(getDataAccessResponse);
         cacheWithMockedAccountIdResolver.getCredentials(key, TEST_S3_ACCESSGRANTS_ACCOUNT,accessDeniedCache, s3ControlAsyncClient).join();
         cacheWithMockedAccountIdResolver.getCredentials(key, TEST_S3_ACCESSGRANTS_ACCOUNT,accessDeniedCache, s3ControlAsyncClient).join();
@@ -352,6 +359,37 @@ public class S3AccessGrantsCacheTest {
 
     }
 
+    @Test
+    public void accessGrantsCache_cachesExactObjectLevelGrant() {
+        // Given
+        Instant ttl  = Instant.now().plus(Duration.ofMinutes(1));
+        Credentials creds = Credentials.builder()
+                                       .accessKeyId(ACCESS_KEY_ID)
+                                       .secretAccessKey(SECRET_ACCESS_KEY)
+                                       .sessionToken(SESSION_TOKEN)
+                                       .expiration(ttl).build();
+        CompletableFuture<GetDataAccessResponse> getDataAccessResponse =
+            CompletableFuture.completedFuture(GetDataAccessResponse.builder()
+                                                                   .credentials(creds)
+                                                                   .matchedGrantTarget("s3://bucket/foo/bar/text.txt").build());
+        CacheKey key = CacheKey.builder()
+                               .credentials(AWS_BASIC_CREDENTIALS)
+                               .permission(Permission.READ)
+                               .s3Prefix("s3://bucket/foo/bar/text.txt").build();
+        CacheKey otherObjectKey = key.toBuilder().s3Prefix("s3://bucket/foo/bar/text.txt.bak").build();
+        when(mockResolver.resolveAsync(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(CompletableFuture.completedFuture(TEST_S3_ACCESSGRANTS_ACCOUNT));
+        when(s3ControlAsyncClient.getDataAccess(any(GetDataAccessRequest.class))).thenReturn(getDataAccessResponse);
+        // When
+        cacheWithMockedAccountIdResolver.getCredentials(key, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient).join();
+        cacheWithMockedAccountIdResolver.getCredentials(key, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient).join();
+        // Then
+        verify(s3ControlAsyncClient, times(1)).getDataAccess(any(GetDataAccessRequest.class));
+        // When
+        cacheWithMockedAccountIdResolver.getCredentials(otherObjectKey, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient).join();
+        // Then
+        verify(s3ControlAsyncClient, times(2)).getDataAccess(any(GetDataAccessRequest.class));
+    }
+
     @Test
     public void accessGrantsCache_concurrentAccess_shouldMakeOnlyOneServiceCall() throws InterruptedException {
         // Given
@@ -372,8 +410,8 @@ public class S3AccessGrantsCacheTest {
                                                                     .credentials(creds)
                                                                     .matchedGrantTarget("s3://bucket/concurrent/*").build());
         
-        when(mockResolver.resolve(any(String.class), any(String.class), any(S3ControlAsyncClient.class)))
-            .thenReturn(TEST_S3_ACCESSGRANTS_ACCOUNT);
+        when(mockResolver.resolveAsync(any(String.class), any(String.class), any(S3ControlAsyncClient.class)))
+            .thenReturn(CompletableFuture.completedFuture(TEST_S3_ACCESSGRANTS_ACCOUNT));
         when(s3ControlAsyncClient.getDataAccess(any(GetDataAccessRequest.class)))
             .thenReturn(response);
         
@@ -400,4 +438,362 @@ public class S3AccessGrantsCacheTest {
         }
     }
 
+    @Test
+    public void accessGrantsCache_expiredGrantFallsBackToBroaderGrant() throws Exception {
+        // Given
+        CacheKey bucketKey = CacheKey.builder()
+                                     .credentials(AWS_BASIC_CREDENTIALS)
+                                     .permission(Permission.READ)
+                                     .s3Prefix("s3://bucket").build();
+        CacheKey folderKey = bucketKey.toBuilder().s3Prefix("s3://bucket/foo/bar").build();
+        CompletableFuture<AwsCredentialsIdentity> bucketCredentials = CompletableFuture.completedFuture(S3_ACCESS_GRANTS_CREDENTIALS);
+        CompletableFuture<AwsCredentialsIdentity> folderCredentials = CompletableFuture.completedFuture(AWS_SESSION_CREDENTIALS);
+        cache.putValueInCache(bucketKey, bucketCredentials, 60);
+        cache.putValueInCache(folderKey, folderCredentials, 1);
+        CacheKey requestKey = bucketKey.toBuilder().s3Prefix("s3://bucket/foo/bar/text.txt").build();
+        assertThat(cache.getCredentials(requestKey, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient))
+            .isEqualTo(folderCredentials);
+        // When
+        Thread.sleep(2000);
+        // Then
+        assertThat(cache.getCredentials(requestKey, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient))
+            .isEqualTo(bucketCredentials);
+        verify(s3ControlAsyncClient, times(0)).getDataAccess(any(GetDataAccessRequest.class));
+    }
+
+
+    @Test
+    public void accessGrantsCache_concurrentMissesForSameKeyShareOneServiceCall() {
+        // Given
+        CacheKey key = CacheKey.builder()
+                               .credentials(AWS_BASIC_CREDENTIALS)
+                               .permission(Permission.READ)
+                               .s3Prefix("s3://bucket/foo/bar.txt").build();
+        CompletableFuture<GetDataAccessResponse> pendingResponse = new CompletableFuture<>();
+        when(mockResolver.resolveAsync(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(CompletableFuture.completedFuture(TEST_S3_ACCESSGRANTS_ACCOUNT));
+        when(s3ControlAsyncClient.getDataAccess(any(GetDataAccessRequest.class))).thenReturn(pendingResponse);
+        // When
+        CompletableFuture<AwsCredentialsIdentity> first =
+            cacheWithMockedAccountIdResolver.getCredentials(key, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient);
+        CompletableFuture<AwsCredentialsIdentity> second =
+            cacheWithMockedAccountIdResolver.getCredentials(key, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient);
+        pendingResponse.complete(getDataAccessResponseSetUp("s3://bucket/foo").join());
+        // Then
+        assertThat(second.join()).isEqualTo(first.join());
+        verify(s3ControlAsyncClient, times(1)).getDataAccess(any(GetDataAccessRequest.class));
+    }
+
+    @Test
+    public void accessGrantsCache_missesForDifferentKeysAreNotSerialized() {
+        // Given
+        CacheKey key1 = CacheKey.builder()
+                                .credentials(AWS_BASIC_CREDENTIALS)
+                                .permission(Permission.READ)
+                                .s3Prefix("s3://bucket1/foo/bar.txt").build();
+        CacheKey key2 = key1.toBuilder().s3Prefix("s3://bucket2/foo/bar.txt").build();
+        when(mockResolver.resolveAsync(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(CompletableFuture.completedFuture(TEST_S3_ACCESSGRANTS_ACCOUNT));
+        when(s3ControlAsyncClient.getDataAccess(any(GetDataAccessRequest.class))).thenReturn(new CompletableFuture<>());
+        // When
+        CompletableFuture<AwsCredentialsIdentity> first =
+            cacheWithMockedAccountIdResolver.getCredentials(key1, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient);
+        CompletableFuture<AwsCredentialsIdentity> second =
+            cacheWithMockedAccountIdResolver.getCredentials(key2, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient);
+        // Then
+        assertThat(first).isNotSameAs(second);
+        verify(s3ControlAsyncClient, times(2)).getDataAccess(any(GetDataAccessRequest.class));
+    }
+
+
+    @Test
+    public void accessGrantsCache_countsTheProbesOfAMissOnce() {
+        // Given
+        S3AccessGrantsMetrics metrics = new S3AccessGrantsMetrics(Collections.singletonList(MetricsCollector.CACHE_LOOKUP_PROBE_COUNT));
+        S3AccessGrantsCache countingCache = S3AccessGrantsCache.builder()
+                                                               .s3AccessGrantsCachedAccountIdResolver(mockResolver)
+                                                               .metrics(metrics)
+                                                               .maxCacheSize(DEFAULT_ACCESS_GRANTS_MAX_CACHE_SIZE).buildWithAccountIdResolver();
+        CacheKey key = CacheKey.builder()
+                               .credentials(AWS_BASIC_CREDENTIALS)
+                               .permission(Permission.READ)
+                               .s3Prefix("s3://bucket/foo/bar.txt").build();
+        when(mockResolver.resolveAsync(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(CompletableFuture.completedFuture(TEST_S3_ACCESSGRANTS_ACCOUNT));
+        when(s3ControlAsyncClient.getDataAccess(any(GetDataAccessRequest.class))).thenReturn(getDataAccessResponseSetUp("s3://bucket/foo"));
+        // When
+        countingCache.getCredentials(key, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient).join();
+        // Then the search before the request and the search again before calling Access Grants are counted once
+        assertThat(metrics.snapshot().count(MetricsCollector.CACHE_LOOKUP_PROBE_COUNT)).isEqualTo(1);
+    }
+
+    @Test
+    public void accessGrantsCache_refreshAheadRefreshesCredentialsInBackground() {
+        // Given
+        S3AccessGrantsCache refreshAheadCache = S3AccessGrantsCache.builder()
+                                                                   .cacheExpirationTimePercentage(60)
+                                                                   .refreshAheadTimePercentage(1)
+                                                                   .s3AccessGrantsCachedAccountIdResolver(mockResolver)
+                                                                   .maxCacheSize(DEFAULT_ACCESS_GRANTS_MAX_CACHE_SIZE).buildWithAccountIdResolver();
+        CacheKey key = CacheKey.builder()
+                               .credentials(AWS_BASIC_CREDENTIALS)
+                               .permission(Permission.READ)
+                               .s3Prefix("s3://bucket/foo/bar.txt").build();
+        when(mockResolver.resolveAsync(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(CompletableFuture.completedFuture(TEST_S3_ACCESSGRANTS_ACCOUNT));
+        when(s3ControlAsyncClient.getDataAccess(any(GetDataAccessRequest.class))).thenReturn(getDataAccessResponseSetUp("s3://bucket/foo"));
+        AwsCredentialsIdentity fetchedCredentials =
+            refreshAheadCache.getCredentials(key, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient).join();
+        // When
+        AwsCredentialsIdentity cachedCredentials =
+            refreshAheadCache.getCredentials(key, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient).join();
+        // Then
+        assertThat(cachedCredentials).isEqualTo(fetchedCredentials);
+        verify(s3ControlAsyncClient, Mockito.timeout(5000).times(2)).getDataAccess(any(GetDataAccessRequest.class));
+        refreshAheadCache.invalidateCache();
+    }
+
+    @Test
+    public void accessGrantsCache_refreshAheadKeepsRefreshingWhenTheRefreshMatchesAnotherGrant() {
+        // Given
+        S3AccessGrantsCache refreshAheadCache = S3AccessGrantsCache.builder()
+                                                                   .cacheExpirationTimePercentage(60)
+                                                                   .refreshAheadTimePercentage(1)
+                                                                   .s3AccessGrantsCachedAccountIdResolver(mockResolver)
+                                                                   .maxCacheSize(DEFAULT_ACCESS_GRANTS_MAX_CACHE_SIZE).buildWithAccountIdResolver();
+        CacheKey key = CacheKey.builder()
+                               .credentials(AWS_BASIC_CREDENTIALS)
+                               .permission(Permission.READ)
+                               .s3Prefix("s3://bucket/foo/bar.txt").build();
+        when(mockResolver.resolveAsync(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(CompletableFuture.completedFuture(TEST_S3_ACCESSGRANTS_ACCOUNT));
+        when(s3ControlAsyncClient.getDataAccess(any(GetDataAccessRequest.class))).thenReturn(CompletableFuture.completedFuture(getDataAccessResponseSetUp("s3://bucket/foo").join()),
+                                                                                             CompletableFuture.completedFuture(getDataAccessResponseSetUp("s3://bucket").join()));
+        refreshAheadCache.getCredentials(key, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient).join();
+        // When
+        refreshAheadCache.getCredentials(key, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient).join();
+        // Then the refresh is started by the lookup itself
+        verify(s3ControlAsyncClient, times(2)).getDataAccess(any(GetDataAccessRequest.class));
+        // When
+        refreshAheadCache.getCredentials(key, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient).join();
+        // Then
+        verify(s3ControlAsyncClient, times(3)).getDataAccess(any(GetDataAccessRequest.class));
+        refreshAheadCache.invalidateCache();
+    }
+
+    @Test
+    public void accessGrantsCache_refreshAheadDoesNotRetryAFailedRefreshOnTheNextRead() {
+        // Given
+        S3AccessGrantsCache refreshAheadCache = S3AccessGrantsCache.builder()
+                                                                   .cacheExpirationTimePercentage(60)
+                                                                   .refreshAheadTimePercentage(1)
+                                                                   .s3AccessGrantsCachedAccountIdResolver(mockResolver)
+                                                                   .maxCacheSize(DEFAULT_ACCESS_GRANTS_MAX_CACHE_SIZE).buildWithAccountIdResolver();
+        CacheKey key = CacheKey.builder()
+                               .credentials(AWS_BASIC_CREDENTIALS)
+                               .permission(Permission.READ)
+                               .s3Prefix("s3://bucket/foo/bar.txt").build();
+        CompletableFuture<GetDataAccessResponse> throttled = new CompletableFuture<>();
+        throttled.completeExceptionally(S3ControlException.builder().statusCode(503).message("Slow Down").build());
+        when(mockResolver.resolveAsync(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(CompletableFuture.completedFuture(TEST_S3_ACCESSGRANTS_ACCOUNT));
+        when(s3ControlAsyncClient.getDataAccess(any(GetDataAccessRequest.class))).thenReturn(CompletableFuture.completedFuture(getDataAccessResponseSetUp("s3://bucket/foo").join()),
+                                                                                             throttled);
+        AwsCredentialsIdentity fetchedCredentials =
+            refreshAheadCache.getCredentials(key, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient).join();
+        // When the refresh fails
+        refreshAheadCache.getCredentials(key, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient).join();
+        verify(s3ControlAsyncClient, times(2)).getDataAccess(any(GetDataAccessRequest.class));
+        AwsCredentialsIdentity cachedCredentials =
+            refreshAheadCache.getCredentials(key, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient).join();
+        // Then the next read keeps the cached credentials without another request
+        assertThat(cachedCredentials).isEqualTo(fetchedCredentials);
+        verify(s3ControlAsyncClient, times(2)).getDataAccess(any(GetDataAccessRequest.class));
+        refreshAheadCache.invalidateCache();
+    }
+
+    @Test
+    public void accessGrantsCache_refreshAheadUsesTheCredentialsOfTheRequestThatReadTheEntry() {
+        // Given
+        S3AccessGrantsCache refreshAheadCache = S3AccessGrantsCache.builder()
+                                                                   .cacheExpirationTimePercentage(60)
+                                                                   .refreshAheadTimePercentage(1)
+                                                                   .s3AccessGrantsCachedAccountIdResolver(mockResolver)
+                                                                   .maxCacheSize(DEFAULT_ACCESS_GRANTS_MAX_CACHE_SIZE).buildWithAccountIdResolver();
+        String principal = "arn:aws:sts::" + TEST_S3_ACCESSGRANTS_ACCOUNT + ":assumed-role/test-role/session";
+        CacheKey key = CacheKey.builder()
+                               .credentials(AWS_BASIC_CREDENTIALS)
+                               .permission(Permission.READ)
+                               .s3Prefix("s3://bucket/foo/bar.txt")
+                               .principal(principal).build();
+        AwsBasicCredentials rotatedCredentials = AwsBasicCredentials.create("rotatedAccessKeyId", "rotatedSecretAccessKey");
+        CacheKey rotatedKey = key.toBuilder().credentials(rotatedCredentials).s3Prefix("s3://bucket/foo/baz.txt").build();
+        when(mockResolver.resolveAsync(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(CompletableFuture.completedFuture(TEST_S3_ACCESSGRANTS_ACCOUNT));
+        when(s3ControlAsyncClient.getDataAccess(any(GetDataAccessRequest.class))).thenReturn(getDataAccessResponseSetUp("s3://bucket/foo"));
+        refreshAheadCache.getCredentials(key, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient).join();
+        // When
+        refreshAheadCache.getCredentials(rotatedKey, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient).join();
+        // Then the refresh is sent with the rotated credentials for the target of the request that cached the grant
+        ArgumentCaptor<GetDataAccessRequest> requests = ArgumentCaptor.forClass(GetDataAccessRequest.class);
+        verify(s3ControlAsyncClient, Mockito.timeout(5000).times(2)).getDataAccess(requests.capture());
+        GetDataAccessRequest refreshRequest = requests.getAllValues().get(1);
+        assertThat(refreshRequest.target()).isEqualTo("s3://bucket/foo/bar.txt");
+        assertThat(refreshRequest.overrideConfiguration().get().credentialsProvider().get().resolveCredentials().accessKeyId())
+            .isEqualTo("rotatedAccessKeyId");
+        refreshAheadCache.invalidateCache();
+    }
+
+    @Test
+    public void accessGrantsCache_refreshAheadDisabledByDefault() {
+        // Given
+        CacheKey key = CacheKey.builder()
+                               .credentials(AWS_BASIC_CREDENTIALS)
+                               .permission(Permission.READ)
+                               .s3Prefix("s3://bucket/foo/bar.txt").build();
+        when(mockResolver.resolveAsync(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(CompletableFuture.completedFuture(TEST_S3_ACCESSGRANTS_ACCOUNT));
+        when(s3ControlAsyncClient.getDataAccess(any(GetDataAccessRequest.class))).thenReturn(getDataAccessResponseSetUp("s3://bucket/foo"));
+        // When
+        cacheWithMockedAccountIdResolver.getCredentials(key, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient).join();
+        cacheWithMockedAccountIdResolver.getCredentials(key, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient).join();
+        // Then
+        verify(s3ControlAsyncClient, Mockito.after(500).times(1)).getDataAccess(any(GetDataAccessRequest.class));
+    }
+
+
+    @Test
+    public void accessGrantsCache_cachesAccessDeniedFromFailedRequest() {
+        // Given
+        CacheKey key = CacheKey.builder()
+                               .credentials(AWS_BASIC_CREDENTIALS)
+                               .permission(Permission.READ)
+                               .s3Prefix("s3://bucket/foo/bar.txt").build();
+        S3ControlException s3ControlException = (S3ControlException) S3ControlException.builder().statusCode(403).message("Access denied").build();
+        CompletableFuture<GetDataAccessResponse> failedResponse = new CompletableFuture<>();
+        failedResponse.completeExceptionally(s3ControlException);
+        when(mockResolver.resolveAsync(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(CompletableFuture.completedFuture(TEST_S3_ACCESSGRANTS_ACCOUNT));
+        when(s3ControlAsyncClient.getDataAccess(any(GetDataAccessRequest.class))).thenReturn(failedResponse);
+        // When
+        CompletableFuture<AwsCredentialsIdentity> credentials =
+            cacheWithMockedAccountIdResolver.getCredentials(key, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient);
+        // Then
+        Assertions.assertThatThrownBy(credentials::join).hasCauseInstanceOf(S3ControlException.class);
+        assertThat(accessDeniedCache.getValueFromCache(key)).isEqualTo(s3ControlException);
+    }
+
+    @Test
+    public void accessGrantsCache_doesNotCacheOtherFailures() {
+        // Given
+        CacheKey key = CacheKey.builder()
+                               .credentials(AWS_BASIC_CREDENTIALS)
+                               .permission(Permission.READ)
+                               .s3Prefix("s3://bucket/foo/bar.txt").build();
+        CompletableFuture<GetDataAccessResponse> failedResponse = new CompletableFuture<>();
+        failedResponse.completeExceptionally(S3ControlException.builder().statusCode(500).message("Internal error").build());
+        when(mockResolver.resolveAsync(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(CompletableFuture.completedFuture(TEST_S3_ACCESSGRANTS_ACCOUNT));
+        when(s3ControlAsyncClient.getDataAccess(any(GetDataAccessRequest.class))).thenReturn(failedResponse);
+        // When
+        CompletableFuture<AwsCredentialsIdentity> credentials =
+            cacheWithMockedAccountIdResolver.getCredentials(key, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient);
+        // Then
+        Assertions.assertThatThrownBy(credentials::join).hasCauseInstanceOf(S3ControlException.class);
+        assertThat(accessDeniedCache.getValueFromCache(key)).isNull();
+    }
+
+    @Test
+    public void accessGrantsCache_boundedByEstimatedSize() {
+        // Given
+        long maxCacheWeightBytes = 8192;
+        S3AccessGrantsCache weightedCache = S3AccessGrantsCache.builder()
+                                                               .cacheExpirationTimePercentage(60)
+                                                               .maxCacheWeightBytes(maxCacheWeightBytes)
+                                                               // evictions run on the calling thread, so the size is bounded once the puts return
+                                                               .executor(Runnable::run).build();
+        // When
+        for (int i = 0; i < 100; i++) {
+            CacheKey key = CacheKey.builder()
+                                   .credentials(AWS_SESSION_CREDENTIALS)
+                                   .permission(Permission.READ)
+                                   .s3Prefix("s3://bucket2/foo" + i).build();
+            weightedCache.putValueInCache(key, CompletableFuture.completedFuture(S3_ACCESS_GRANTS_CREDENTIALS), 60);
+        }
+        // Then
+        assertThat(weightedCache.getEstimatedSizeBytes().getAsLong()).isPositive().isLessThanOrEqualTo(maxCacheWeightBytes);
+        assertThat(cache.getEstimatedSizeBytes().isPresent()).isFalse();
+    }
+
+    @Test
+    public void accessGrantsCache_runsContinuationsOnConfiguredExecutor() {
+        // Given
+        AtomicInteger executions = new AtomicInteger();
+        Executor executor = command -> {
+            executions.incrementAndGet();
+            ForkJoinPool.commonPool().execute(command);
+        };
+        S3AccessGrantsCache cacheWithExecutor = S3AccessGrantsCache.builder()
+                                                                   .cacheExpirationTimePercentage(60)
+                                                                   .s3AccessGrantsCachedAccountIdResolver(mockResolver)
+                                                                   .maxCacheSize(DEFAULT_ACCESS_GRANTS_MAX_CACHE_SIZE)
+                                                                   .executor(executor).buildWithAccountIdResolver();
+        CacheKey key = CacheKey.builder()
+                               .credentials(AWS_SESSION_CREDENTIALS)
+                               .permission(Permission.READ)
+                               .s3Prefix("s3://bucket2/foo/bar").build();
+        when(mockResolver.resolveAsync(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(CompletableFuture.completedFuture(TEST_S3_ACCESSGRANTS_ACCOUNT));
+        when(s3ControlAsyncClient.getDataAccess(any(GetDataAccessRequest.class))).thenReturn(getDataAccessResponseSetUp("s3://bucket2/foo"));
+        // When
+        AwsCredentialsIdentity credentials = cacheWithExecutor.getCredentials(key, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient).join();
+        // Then
+        assertThat(credentials).isNotNull();
+        assertThat(executions.get()).isPositive();
+        assertThat(cacheWithExecutor.getCredentials(key, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient)).isDone();
+    }
+
+    @Test
+    public void accessGrantsCache_batchedLookupReturnsMostSpecificGrant() {
+        // Given
+        S3AccessGrantsCache batchedCache = S3AccessGrantsCache.builder()
+                                                              .cacheExpirationTimePercentage(60)
+                                                              .maxCacheSize(DEFAULT_ACCESS_GRANTS_MAX_CACHE_SIZE)
+                                                              .lookupMode(S3AccessGrantsCacheLookupMode.BATCHED).build();
+        AwsCredentialsIdentity bucketCredentials = AwsBasicCredentials.create("bucketAccessKey", "bucketSecretKey");
+        AwsCredentialsIdentity folderCredentials = AwsBasicCredentials.create("folderAccessKey", "folderSecretKey");
+        AwsCredentialsIdentity characterCredentials = AwsBasicCredentials.create("characterAccessKey", "characterSecretKey");
+        AwsCredentialsIdentity readWriteCredentials = AwsBasicCredentials.create("readWriteAccessKey", "readWriteSecretKey");
+        CacheKey.Builder grantKey = CacheKey.builder().credentials(AWS_SESSION_CREDENTIALS);
+        batchedCache.putValueInCache(grantKey.permission(Permission.READ).s3Prefix("s3://bucket").build(),
+                                     CompletableFuture.completedFuture(bucketCredentials), 60);
+        batchedCache.putValueInCache(grantKey.permission(Permission.READ).s3Prefix("s3://bucket/foo/bar*").build(),
+                                     CompletableFuture.completedFuture(characterCredentials), 60);
+        batchedCache.putValueInCache(grantKey.permission(Permission.READWRITE).s3Prefix("s3://bucket/foo").build(),
+                                     CompletableFuture.completedFuture(readWriteCredentials), 60);
+        batchedCache.putValueInCache(grantKey.permission(Permission.READ).s3Prefix("s3://bucket/foo/baz").build(),
+                                     CompletableFuture.completedFuture(folderCredentials), 60);
+        CacheKey.Builder requestKey = CacheKey.builder().credentials(AWS_SESSION_CREDENTIALS).permission(Permission.READ);
+        // Then
+        assertThat(batchedCache.getCredentials(requestKey.s3Prefix("s3://bucket/foo/baz/file.txt").build(), TEST_S3_ACCESSGRANTS_ACCOUNT,
+                                               accessDeniedCache, s3ControlAsyncClient).join()).isEqualTo(folderCredentials);
+        assertThat(batchedCache.getCredentials(requestKey.s3Prefix("s3://bucket/foo/barbaz.txt").build(), TEST_S3_ACCESSGRANTS_ACCOUNT,
+                                               accessDeniedCache, s3ControlAsyncClient).join()).isEqualTo(bucketCredentials);
+    }
+
+    @Test
+    public void accessGrantsCache_batchedLookupPrefersReadWritePathGrantOverCharacterGrant() {
+        // Given
+        S3AccessGrantsCache batchedCache = S3AccessGrantsCache.builder()
+                                                              .cacheExpirationTimePercentage(60)
+                                                              .maxCacheSize(DEFAULT_ACCESS_GRANTS_MAX_CACHE_SIZE)
+                                                              .lookupMode(S3AccessGrantsCacheLookupMode.BATCHED).build();
+        AwsCredentialsIdentity characterCredentials = AwsBasicCredentials.create("characterAccessKey", "characterSecretKey");
+        AwsCredentialsIdentity readWriteCredentials = AwsBasicCredentials.create("readWriteAccessKey", "readWriteSecretKey");
+        CacheKey.Builder grantKey = CacheKey.builder().credentials(AWS_SESSION_CREDENTIALS);
+        batchedCache.putValueInCache(grantKey.permission(Permission.WRITE).s3Prefix("s3://bucket/foo/bar*").build(),
+                                     CompletableFuture.completedFuture(characterCredentials), 60);
+        batchedCache.putValueInCache(grantKey.permission(Permission.READWRITE).s3Prefix("s3://bucket/foo").build(),
+                                     CompletableFuture.completedFuture(readWriteCredentials), 60);
+        CacheKey requestKey = CacheKey.builder().credentials(AWS_SESSION_CREDENTIALS).permission(Permission.WRITE)
+                                      .s3Prefix("s3://bucket/foo/bar.txt").build();
+        // Then
+        assertThat(batchedCache.getCredentials(requestKey, TEST_S3_ACCESSGRANTS_ACCOUNT, accessDeniedCache, s3ControlAsyncClient).join())
+            .isEqualTo(readWriteCredentials);
+        // Only the requested S3 prefix and the indexed grants matching it are read.
+        assertThat(batchedCache.getCandidateKeys(requestKey).size()).isEqualTo(3);
+        assertThat(batchedCache.getCandidateKeys(requestKey).get(0)).isEqualTo(requestKey);
+        assertThat(batchedCache.getCandidateKeys(requestKey).get(1).s3Prefix).isEqualTo("s3://bucket/foo");
+        assertThat(batchedCache.getCandidateKeys(requestKey).get(2).s3Prefix).isEqualTo("s3://bucket/foo/bar*");
+    }
+
 }
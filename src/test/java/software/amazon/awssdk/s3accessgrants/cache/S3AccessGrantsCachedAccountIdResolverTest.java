@@ -22,12 +22,14 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsTestConstants.TEST_S3_ACCESSGRANTS_ACCOUNT;
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsTestConstants.TEST_S3_BUCKET;
 import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsTestConstants.TEST_S3_ACCESSGRANTS_INSTANCE_ARN;
 import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsTestConstants.TEST_S3_ACCESSGRANTS_INSTANCE_DEFAULT;
 import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsTestConstants.TEST_S3_PREFIX;
 import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsTestConstants.TEST_S3_PREFIX_2;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -172,4 +174,142 @@ public class S3AccessGrantsCachedAccountIdResolverTest {
         }
     }
 
+    @Test
+    public void resolveAsync_doesNotBlockWhileServiceCallIsPending() {
+        // Given
+        CompletableFuture<GetAccessGrantsInstanceForPrefixResponse> response = new CompletableFuture<>();
+        when(S3ControlAsyncClient.getAccessGrantsInstanceForPrefix(any(GetAccessGrantsInstanceForPrefixRequest.class)))
+            .thenReturn(response);
+        // When
+        CompletableFuture<String> accountId1 = resolver.resolveAsync(TEST_S3_ACCESSGRANTS_ACCOUNT, TEST_S3_PREFIX, S3ControlAsyncClient);
+        CompletableFuture<String> accountId2 = resolver.resolveAsync(TEST_S3_ACCESSGRANTS_ACCOUNT, TEST_S3_PREFIX_2, S3ControlAsyncClient);
+        // Then
+        assertThat(accountId1.isDone()).isFalse();
+        response.complete(GetAccessGrantsInstanceForPrefixResponse.builder()
+                                                                  .accessGrantsInstanceId(TEST_S3_ACCESSGRANTS_INSTANCE_DEFAULT)
+                                                                  .accessGrantsInstanceArn(TEST_S3_ACCESSGRANTS_INSTANCE_ARN).build());
+        assertThat(accountId1.join()).isEqualTo(TEST_S3_ACCESSGRANTS_ACCOUNT);
+        assertThat(accountId2.join()).isEqualTo(TEST_S3_ACCESSGRANTS_ACCOUNT);
+        verify(S3ControlAsyncClient, times(1)).getAccessGrantsInstanceForPrefix(any(GetAccessGrantsInstanceForPrefixRequest.class));
+        assertThat(((S3AccessGrantsCachedAccountIdResolver) resolver).getCacheStats().hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void resolveAsync_doesNotCacheFailures() {
+        // Given
+        CompletableFuture<GetAccessGrantsInstanceForPrefixResponse> failedResponse = new CompletableFuture<>();
+        failedResponse.completeExceptionally(S3ControlException.builder().statusCode(500).build());
+        CompletableFuture<GetAccessGrantsInstanceForPrefixResponse> response =
+            CompletableFuture.completedFuture(GetAccessGrantsInstanceForPrefixResponse.builder()
+                                                                                      .accessGrantsInstanceId(TEST_S3_ACCESSGRANTS_INSTANCE_DEFAULT)
+                                                                                      .accessGrantsInstanceArn(TEST_S3_ACCESSGRANTS_INSTANCE_ARN).build());
+        when(S3ControlAsyncClient.getAccessGrantsInstanceForPrefix(any(GetAccessGrantsInstanceForPrefixRequest.class)))
+            .thenReturn(failedResponse, response);
+        // Then
+        assertThatThrownBy(() -> resolver.resolveAsync(TEST_S3_ACCESSGRANTS_ACCOUNT, TEST_S3_PREFIX, S3ControlAsyncClient).join())
+            .hasCauseInstanceOf(S3ControlException.class);
+        assertThat(resolver.resolveAsync(TEST_S3_ACCESSGRANTS_ACCOUNT, TEST_S3_PREFIX, S3ControlAsyncClient).join())
+            .isEqualTo(TEST_S3_ACCESSGRANTS_ACCOUNT);
+    }
+
+    @Test
+    public void resolveAsync_returnsStaleAccountIdWhileRefreshingInBackground() {
+        // Given
+        S3AccessGrantsCachedAccountIdResolver staleResolver = S3AccessGrantsCachedAccountIdResolver.builder()
+                                                                                                  .expireCacheAfterWriteSeconds(60)
+                                                                                                  .maxStaleSeconds(60)
+                                                                                                  .build();
+        CompletableFuture<GetAccessGrantsInstanceForPrefixResponse> refreshedResponse = new CompletableFuture<>();
+        when(S3ControlAsyncClient.getAccessGrantsInstanceForPrefix(any(GetAccessGrantsInstanceForPrefixRequest.class)))
+            .thenReturn(CompletableFuture.completedFuture(GetAccessGrantsInstanceForPrefixResponse.builder()
+                                                                                                  .accessGrantsInstanceId(TEST_S3_ACCESSGRANTS_INSTANCE_DEFAULT)
+                                                                                                  .accessGrantsInstanceArn(TEST_S3_ACCESSGRANTS_INSTANCE_ARN).build()),
+                        refreshedResponse);
+        staleResolver.resolve(TEST_S3_ACCESSGRANTS_ACCOUNT, TEST_S3_PREFIX, S3ControlAsyncClient);
+        // When
+        staleResolver.getCache().synchronous().policy().expireVariably().get().setExpiresAfter(S3AccessGrantsCachedAccountIdResolver.cacheKey(TEST_S3_ACCESSGRANTS_ACCOUNT, TEST_S3_BUCKET), 30, TimeUnit.SECONDS);
+        // Then
+        assertThat(staleResolver.resolveAsync(TEST_S3_ACCESSGRANTS_ACCOUNT, TEST_S3_PREFIX, S3ControlAsyncClient).isDone()).isTrue();
+        assertThat(staleResolver.resolve(TEST_S3_ACCESSGRANTS_ACCOUNT, TEST_S3_PREFIX_2, S3ControlAsyncClient)).isEqualTo(TEST_S3_ACCESSGRANTS_ACCOUNT);
+        verify(S3ControlAsyncClient, times(2)).getAccessGrantsInstanceForPrefix(any(GetAccessGrantsInstanceForPrefixRequest.class));
+        refreshedResponse.complete(GetAccessGrantsInstanceForPrefixResponse.builder()
+                                                                           .accessGrantsInstanceId(TEST_S3_ACCESSGRANTS_INSTANCE_DEFAULT)
+                                                                           .accessGrantsInstanceArn(TEST_S3_ACCESSGRANTS_INSTANCE_ARN).build());
+        assertThat(staleResolver.getCache().synchronous().policy().expireVariably().get()
+                                .getExpiresAfter(S3AccessGrantsCachedAccountIdResolver.cacheKey(TEST_S3_ACCESSGRANTS_ACCOUNT, TEST_S3_BUCKET), TimeUnit.SECONDS).getAsLong()).isGreaterThan(60);
+        assertThat(staleResolver.resolve(TEST_S3_ACCESSGRANTS_ACCOUNT, TEST_S3_PREFIX, S3ControlAsyncClient)).isEqualTo(TEST_S3_ACCESSGRANTS_ACCOUNT);
+        verify(S3ControlAsyncClient, times(2)).getAccessGrantsInstanceForPrefix(any(GetAccessGrantsInstanceForPrefixRequest.class));
+    }
+
+    @Test
+    public void resolveAsync_cachesClientErrors() {
+        // Given
+        CompletableFuture<GetAccessGrantsInstanceForPrefixResponse> notFound = new CompletableFuture<>();
+        notFound.completeExceptionally(S3ControlException.builder().message("No Access Grants instance").statusCode(404).build());
+        when(S3ControlAsyncClient.getAccessGrantsInstanceForPrefix(any(GetAccessGrantsInstanceForPrefixRequest.class)))
+            .thenReturn(notFound);
+        // When
+        assertThatThrownBy(() -> resolver.resolve(TEST_S3_ACCESSGRANTS_ACCOUNT, TEST_S3_PREFIX, S3ControlAsyncClient))
+            .isInstanceOf(S3ControlException.class);
+        // Then
+        assertThatThrownBy(() -> resolver.resolve(TEST_S3_ACCESSGRANTS_ACCOUNT, TEST_S3_PREFIX_2, S3ControlAsyncClient))
+            .isInstanceOf(S3ControlException.class)
+            .hasMessageContaining("No Access Grants instance");
+        verify(S3ControlAsyncClient, times(1)).getAccessGrantsInstanceForPrefix(any(GetAccessGrantsInstanceForPrefixRequest.class));
+        assertThat(((S3AccessGrantsCachedAccountIdResolver) resolver).getNegativeCacheStats().hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void resolveAsync_doesNotCacheAccessDenied() {
+        // Given
+        CompletableFuture<GetAccessGrantsInstanceForPrefixResponse> accessDenied = new CompletableFuture<>();
+        accessDenied.completeExceptionally(S3ControlException.builder().message("Access Denied").statusCode(403).build());
+        when(S3ControlAsyncClient.getAccessGrantsInstanceForPrefix(any(GetAccessGrantsInstanceForPrefixRequest.class)))
+            .thenReturn(accessDenied);
+        // When
+        assertThatThrownBy(() -> resolver.resolve(TEST_S3_ACCESSGRANTS_ACCOUNT, TEST_S3_PREFIX, S3ControlAsyncClient))
+            .isInstanceOf(S3ControlException.class);
+        assertThatThrownBy(() -> resolver.resolve(TEST_S3_ACCESSGRANTS_ACCOUNT, TEST_S3_PREFIX, S3ControlAsyncClient))
+            .isInstanceOf(S3ControlException.class);
+        // Then
+        verify(S3ControlAsyncClient, times(2)).getAccessGrantsInstanceForPrefix(any(GetAccessGrantsInstanceForPrefixRequest.class));
+        assertThat(((S3AccessGrantsCachedAccountIdResolver) resolver).getNegativeCacheStats().hitCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void resolveAsync_doesNotCacheThrottlingErrors() {
+        // Given
+        CompletableFuture<GetAccessGrantsInstanceForPrefixResponse> throttled = new CompletableFuture<>();
+        throttled.completeExceptionally(S3ControlException.builder().message("Slow down").statusCode(429).build());
+        when(S3ControlAsyncClient.getAccessGrantsInstanceForPrefix(any(GetAccessGrantsInstanceForPrefixRequest.class)))
+            .thenReturn(throttled);
+        // When
+        assertThatThrownBy(() -> resolver.resolve(TEST_S3_ACCESSGRANTS_ACCOUNT, TEST_S3_PREFIX, S3ControlAsyncClient))
+            .isInstanceOf(S3ControlException.class);
+        assertThatThrownBy(() -> resolver.resolve(TEST_S3_ACCESSGRANTS_ACCOUNT, TEST_S3_PREFIX, S3ControlAsyncClient))
+            .isInstanceOf(S3ControlException.class);
+        // Then
+        verify(S3ControlAsyncClient, times(2)).getAccessGrantsInstanceForPrefix(any(GetAccessGrantsInstanceForPrefixRequest.class));
+    }
+
+    @Test
+    public void resolveAsync_cachesAccountIdPerCallerAccountAndBucket() {
+        // Given
+        S3ControlAsyncClient otherRegionS3ControlAsyncClient = Mockito.mock(S3ControlAsyncClient.class);
+        CompletableFuture<GetAccessGrantsInstanceForPrefixResponse> response =
+            CompletableFuture.completedFuture(GetAccessGrantsInstanceForPrefixResponse.builder()
+                                                                                      .accessGrantsInstanceId(TEST_S3_ACCESSGRANTS_INSTANCE_DEFAULT)
+                                                                                      .accessGrantsInstanceArn(TEST_S3_ACCESSGRANTS_INSTANCE_ARN).build());
+        when(S3ControlAsyncClient.getAccessGrantsInstanceForPrefix(any(GetAccessGrantsInstanceForPrefixRequest.class)))
+            .thenReturn(response);
+        // When
+        resolver.resolve(TEST_S3_ACCESSGRANTS_ACCOUNT, TEST_S3_PREFIX, S3ControlAsyncClient);
+        resolver.resolve(TEST_S3_ACCESSGRANTS_ACCOUNT, TEST_S3_PREFIX_2, otherRegionS3ControlAsyncClient);
+        resolver.resolve("210987654321", TEST_S3_PREFIX, S3ControlAsyncClient);
+        // Then
+        verify(S3ControlAsyncClient, times(2)).getAccessGrantsInstanceForPrefix(any(GetAccessGrantsInstanceForPrefixRequest.class));
+        verify(otherRegionS3ControlAsyncClient, times(0)).getAccessGrantsInstanceForPrefix(any(GetAccessGrantsInstanceForPrefixRequest.class));
+        assertThat(((S3AccessGrantsCachedAccountIdResolver) resolver).getAvoidedServiceCalls()).isEqualTo(1);
+    }
+
 }
@@ -15,9 +15,13 @@
 
 package software.amazon.awssdk.s3accessgrants.cache;
 
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.assertj.core.api.Assertions.assertThatNoException;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -27,21 +31,29 @@ import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsTestCons
 import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsTestConstants.SESSION_TOKEN;
 import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsTestConstants. TEST_S3_ACCESSGRANTS_ACCOUNT;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 
 import software.amazon.awssdk.auth.credentials.AwsSessionCredentials;
 import software.amazon.awssdk.identity.spi.AwsCredentialsIdentity;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsMetrics.Stage;
 import software.amazon.awssdk.services.s3control.S3ControlAsyncClient;
 import software.amazon.awssdk.services.s3control.S3ControlAsyncClientBuilder;
 import software.amazon.awssdk.services.s3control.model.Credentials;
 import software.amazon.awssdk.services.s3control.model.GetDataAccessRequest;
 import software.amazon.awssdk.services.s3control.model.GetDataAccessResponse;
 import software.amazon.awssdk.services.s3control.model.Permission;
+import software.amazon.awssdk.services.s3control.model.S3ControlException;
 
 public class S3AccessGrantsCachedCredentialsProviderImplTest {
     S3AccessGrantsCachedCredentialsProviderImpl cache;
@@ -81,7 +93,7 @@ public class S3AccessGrantsCachedCredentialsProviderImplTest {
         // Given
         S3ControlAsyncClient = Mockito.mock(S3ControlAsyncClient.class);
         CompletableFuture<GetDataAccessResponse> getDataAccessResponse = getDataAccessResponseSetUp("s3://bucket2/foo/*");
-        when(mockResolver.resolve(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(TEST_S3_ACCESSGRANTS_ACCOUNT);
+        when(mockResolver.resolveAsync(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(CompletableFuture.completedFuture(TEST_S3_ACCESSGRANTS_ACCOUNT));
         when(S3ControlAsyncClient.getDataAccess(any(GetDataAccessRequest.class))).thenReturn(getDataAccessResponse);
         cacheWithMockedAccountIdResolver.getDataAccess(AWS_SESSION_CREDENTIALS, Permission.READ, "s3://bucket2/foo/bar", TEST_S3_ACCESSGRANTS_ACCOUNT, S3ControlAsyncClient);
         AwsSessionCredentials sessionCredentials = AwsSessionCredentials.builder().accessKeyId(credentials.accessKeyId())
@@ -103,13 +115,112 @@ public class S3AccessGrantsCachedCredentialsProviderImplTest {
         // Given
         S3ControlAsyncClient = Mockito.mock(S3ControlAsyncClient.class);
         CompletableFuture<GetDataAccessResponse> getDataAccessResponse = getDataAccessResponseSetUp("s3://bucket2/foo/bar");
-        when(mockResolver.resolve(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(TEST_S3_ACCESSGRANTS_ACCOUNT);
+        when(mockResolver.resolveAsync(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(CompletableFuture.completedFuture(TEST_S3_ACCESSGRANTS_ACCOUNT));
         when(S3ControlAsyncClient.getDataAccess(any(GetDataAccessRequest.class))).thenReturn(getDataAccessResponse);
         // When
-        cacheWithMockedAccountIdResolver.getDataAccess(AWS_SESSION_CREDENTIALS, Permission.READ, "s3://bucket2/foo/bar", TEST_S3_ACCESSGRANTS_ACCOUNT, S3ControlAsyncClient);
-        cacheWithMockedAccountIdResolver.getDataAccess(AWS_SESSION_CREDENTIALS, Permission.READ, "s3://bucket2/foo/bar", TEST_S3_ACCESSGRANTS_ACCOUNT, S3ControlAsyncClient);
+        cacheWithMockedAccountIdResolver.getDataAccess(AWS_SESSION_CREDENTIALS, Permission.READ, "s3://bucket2/foo/bar", TEST_S3_ACCESSGRANTS_ACCOUNT, S3ControlAsyncClient).join();
+        // Object level grants only apply to their exact target.
+        cacheWithMockedAccountIdResolver.getDataAccess(AWS_SESSION_CREDENTIALS, Permission.READ, "s3://bucket2/foo/bar/baz", TEST_S3_ACCESSGRANTS_ACCOUNT, S3ControlAsyncClient).join();
         // Then
         verify(S3ControlAsyncClient, times(2)).getDataAccess(any(GetDataAccessRequest.class));
 
     }
+    @Test
+    public void cacheImpl_recordsTheLatencyOfEveryStageOnceItCompletes() throws InterruptedException {
+        // Given
+        S3ControlAsyncClient = Mockito.mock(S3ControlAsyncClient.class);
+        CompletableFuture<GetDataAccessResponse> getDataAccessResponse = new CompletableFuture<>();
+        when(mockResolver.resolveAsync(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(CompletableFuture.completedFuture(TEST_S3_ACCESSGRANTS_ACCOUNT));
+        when(S3ControlAsyncClient.getDataAccess(any(GetDataAccessRequest.class))).thenReturn(getDataAccessResponse);
+        when(mockResolver.getCacheStats()).thenReturn(CacheStats.empty());
+        when(mockResolver.getNegativeCacheStats()).thenReturn(CacheStats.empty());
+        // When
+        CompletableFuture<AwsCredentialsIdentity> pendingCredentials = cacheWithMockedAccountIdResolver.getDataAccess(AWS_SESSION_CREDENTIALS, Permission.READ, "s3://bucket2/foo/bar", TEST_S3_ACCESSGRANTS_ACCOUNT, null, S3ControlAsyncClient, Region.US_EAST_2.id());
+        Thread.sleep(50);
+        getDataAccessResponse.complete(getDataAccessResponseSetUp("s3://bucket2/foo/*").join());
+        pendingCredentials.join();
+        cacheWithMockedAccountIdResolver.getDataAccess(AWS_SESSION_CREDENTIALS, Permission.READ, "s3://bucket2/foo/baz", TEST_S3_ACCESSGRANTS_ACCOUNT, null, S3ControlAsyncClient, Region.US_EAST_2.id()).join();
+        MetricCollection metrics = cacheWithMockedAccountIdResolver.reportAccessGrantsMetrics().collect();
+        // Then
+        assertThat(metrics.metricValues(MetricsCollector.LATENCY).get(0)).isGreaterThanOrEqualTo(Duration.ofMillis(25));
+        assertThat(metrics.metricValues(MetricsCollector.CACHE_LOOKUP_PROBE_COUNT).get(0)).isGreaterThanOrEqualTo(2);
+        assertThat(stages(metrics).containsAll(Arrays.asList(Stage.CACHE_LOOKUP.metricName() + ":Miss:us-east-2",
+                                             Stage.CACHE_LOOKUP.metricName() + ":Hit:us-east-2",
+                                             Stage.ACCOUNT_ID_RESOLUTION.metricName() + ":Hit:us-east-2",
+                                             Stage.GET_DATA_ACCESS.metricName() + ":Miss:us-east-2",
+                                             Stage.ACCESS_GRANTS_CREDENTIALS.metricName() + ":Miss:us-east-2",
+                                             Stage.ACCESS_GRANTS_CREDENTIALS.metricName() + ":Hit:us-east-2"))).isTrue();
+        assertThat(stages(cacheWithMockedAccountIdResolver.reportAccessGrantsMetrics().collect()).isEmpty()).isTrue();
+        // The getter reports the totals and does not reset them.
+        assertThat(stages(cacheWithMockedAccountIdResolver.getAccessGrantsMetrics().collect()).containsAll(stages(metrics))).isTrue();
+        assertThat(stages(cacheWithMockedAccountIdResolver.getAccessGrantsMetrics().collect()).containsAll(stages(metrics))).isTrue();
+        verify(S3ControlAsyncClient, never()).serviceClientConfiguration();
+    }
+
+    private static List<String> stages(MetricCollection metrics) {
+        return metrics.children().stream()
+                      .map(stage -> stage.name() + ":" + stage.metricValues(MetricsCollector.STAGE_RESULT).get(0) + ":"
+                                    + stage.metricValues(MetricsCollector.STAGE_REGION).get(0))
+                      .collect(Collectors.toList());
+    }
+
+    @Test
+    public void cacheImpl_refreshAheadTimePercentageValidation() {
+        assertThatIllegalArgumentException().isThrownBy(() -> S3AccessGrantsCachedCredentialsProviderImpl.builder().refreshAheadTimePercentage(-1));
+        assertThatIllegalArgumentException().isThrownBy(() -> S3AccessGrantsCachedCredentialsProviderImpl.builder().refreshAheadTimePercentage(100));
+        assertThatIllegalArgumentException().isThrownBy(() -> S3AccessGrantsCachedCredentialsProviderImpl.builder()
+                                                                                                          .cacheExpirationTimePercentage(50)
+                                                                                                          .refreshAheadTimePercentage(50).build());
+        assertThatNoException().isThrownBy(() -> S3AccessGrantsCachedCredentialsProviderImpl.builder().refreshAheadTimePercentage(75).build());
+    }
+
+    @Test
+    public void cacheImpl_maxCacheWeightBytesValidation() {
+        assertThatIllegalArgumentException().isThrownBy(() -> S3AccessGrantsCachedCredentialsProviderImpl.builder().maxCacheWeightBytes(0));
+        assertThatIllegalArgumentException().isThrownBy(() -> S3AccessGrantsCachedCredentialsProviderImpl.builder().maxAccessDeniedCacheWeightBytes(-1));
+        assertThatNoException().isThrownBy(() -> S3AccessGrantsCachedCredentialsProviderImpl.builder()
+                                                                                            .maxCacheWeightBytes(1024 * 1024)
+                                                                                            .maxAccessDeniedCacheWeightBytes(1024 * 1024).build());
+    }
+
+    @Test
+    public void cacheImpl_principalKeyedCacheHitAfterCredentialsRotation() {
+        // Given
+        S3ControlAsyncClient = Mockito.mock(S3ControlAsyncClient.class);
+        String principal = "arn:aws:sts::" + TEST_S3_ACCESSGRANTS_ACCOUNT + ":assumed-role/test-role/session";
+        AwsSessionCredentials rotatedCredentials = AwsSessionCredentials.builder().accessKeyId("rotatedAccessKey")
+                                                                        .secretAccessKey("rotatedSecretKey")
+                                                                        .sessionToken("rotatedSessionToken").build();
+        CompletableFuture<GetDataAccessResponse> getDataAccessResponse = getDataAccessResponseSetUp("s3://bucket2/foo/*");
+        when(mockResolver.resolveAsync(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(CompletableFuture.completedFuture(TEST_S3_ACCESSGRANTS_ACCOUNT));
+        when(S3ControlAsyncClient.getDataAccess(any(GetDataAccessRequest.class))).thenReturn(getDataAccessResponse);
+        AwsCredentialsIdentity credentialsIdentity = cacheWithMockedAccountIdResolver.getDataAccess(AWS_SESSION_CREDENTIALS, Permission.READ, "s3://bucket2/foo/bar",
+                                                                                                    TEST_S3_ACCESSGRANTS_ACCOUNT, principal, S3ControlAsyncClient).join();
+        // When
+        AwsCredentialsIdentity credentialsAfterRotation = cacheWithMockedAccountIdResolver.getDataAccess(rotatedCredentials, Permission.READ, "s3://bucket2/foo/bar",
+                                                                                                         TEST_S3_ACCESSGRANTS_ACCOUNT, principal, S3ControlAsyncClient).join();
+        // Then
+        assertThat(credentialsAfterRotation).isEqualTo(credentialsIdentity);
+        verify(S3ControlAsyncClient, times(1)).getDataAccess(any(GetDataAccessRequest.class));
+    }
+
+    @Test
+    public void cacheImpl_accessDeniedFromFailedRequestIsCached() {
+        // Given
+        S3ControlAsyncClient = Mockito.mock(S3ControlAsyncClient.class);
+        CompletableFuture<GetDataAccessResponse> failedResponse = new CompletableFuture<>();
+        failedResponse.completeExceptionally(S3ControlException.builder().statusCode(403).message("Access denied").build());
+        when(mockResolver.resolveAsync(any(String.class), any(String.class), any(S3ControlAsyncClient.class))).thenReturn(CompletableFuture.completedFuture(TEST_S3_ACCESSGRANTS_ACCOUNT));
+        when(S3ControlAsyncClient.getDataAccess(any(GetDataAccessRequest.class))).thenReturn(failedResponse);
+        assertThatThrownBy(() -> cacheWithMockedAccountIdResolver.getDataAccess(AWS_SESSION_CREDENTIALS, Permission.READ, "s3://bucket2/denied/bar",
+                                                                               TEST_S3_ACCESSGRANTS_ACCOUNT, S3ControlAsyncClient).join())
+            .hasCauseInstanceOf(S3ControlException.class);
+        // When
+        assertThatThrownBy(() -> cacheWithMockedAccountIdResolver.getDataAccess(AWS_SESSION_CREDENTIALS, Permission.READ, "s3://bucket2/denied/bar",
+                                                                               TEST_S3_ACCESSGRANTS_ACCOUNT, S3ControlAsyncClient))
+            .isInstanceOf(S3ControlException.class);
+        // Then
+        verify(S3ControlAsyncClient, times(1)).getDataAccess(any(GetDataAccessRequest.class));
+    }
+
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package software.amazon.awssdk.s3accessgrants.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsMetrics.Stage;
+import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsMetrics.StageResult;
+
+public class S3AccessGrantsMetricsTest {
+
+    @Test
+    public void metrics_reportCountersAndLatenciesSinceThePreviousDelta() {
+        // Given
+        S3AccessGrantsMetrics metrics = new S3AccessGrantsMetrics(Arrays.asList(MetricsCollector.CALL_COUNT, MetricsCollector.ERROR_COUNT));
+        metrics.increment(MetricsCollector.CALL_COUNT);
+        metrics.increment(MetricsCollector.CALL_COUNT);
+        metrics.recordLatency(Stage.GET_DATA_ACCESS, TimeUnit.MILLISECONDS.toNanos(5));
+        // When
+        MetricCollection delta = metrics.delta().toMetricCollection("test");
+        // Then
+        assertThat(delta.metricValues(MetricsCollector.CALL_COUNT)).containsExactly(2);
+        assertThat(delta.metricValues(MetricsCollector.ERROR_COUNT)).containsExactly(0);
+        assertThat(delta.children()).hasSize(1);
+        assertThat(delta.children().get(0).name()).isEqualTo(Stage.GET_DATA_ACCESS.metricName());
+        assertThat(delta.children().get(0).metricValues(MetricsCollector.LATENCY_COUNT)).containsExactly(1L);
+        // When
+        metrics.increment(MetricsCollector.ERROR_COUNT);
+        MetricCollection nextDelta = metrics.delta().toMetricCollection("test");
+        // Then
+        assertThat(nextDelta.metricValues(MetricsCollector.CALL_COUNT)).containsExactly(0);
+        assertThat(nextDelta.metricValues(MetricsCollector.ERROR_COUNT)).containsExactly(1);
+        assertThat(nextDelta.children()).isEmpty();
+        S3AccessGrantsMetrics.Snapshot snapshot = metrics.snapshot();
+        assertThat(snapshot.count(MetricsCollector.CALL_COUNT)).isEqualTo(2);
+        assertThat(snapshot.latency(Stage.GET_DATA_ACCESS).count()).isEqualTo(1);
+    }
+
+    @Test
+    public void metrics_boundTheNumberOfCountersAndHistograms() {
+        // Given
+        S3AccessGrantsMetrics metrics = new S3AccessGrantsMetrics(Arrays.asList(MetricsCollector.CALL_COUNT));
+        // Then
+        assertThatThrownBy(() -> metrics.increment(MetricsCollector.ERROR_COUNT)).isInstanceOf(IllegalArgumentException.class);
+        // When
+        for (int i = 0; i < S3AccessGrantsConstants.MAX_LATENCY_HISTOGRAMS + 10; i++) {
+            metrics.recordLatency(Stage.CACHE_LOOKUP, StageResult.HIT, "region-" + i, 1_000);
+        }
+        metrics.recordLatency(Stage.GET_DATA_ACCESS, 1_000);
+        // Then the stages without a region are still recorded
+        S3AccessGrantsMetrics.Snapshot snapshot = metrics.snapshot();
+        assertThat(snapshot.toMetricCollection("test").children()).hasSize(S3AccessGrantsConstants.MAX_LATENCY_HISTOGRAMS + 1);
+        assertThat(snapshot.latency(Stage.CACHE_LOOKUP, StageResult.HIT, "region-0").count()).isEqualTo(1);
+        assertThat(snapshot.latency(Stage.CACHE_LOOKUP, StageResult.HIT, "region-" + (S3AccessGrantsConstants.MAX_LATENCY_HISTOGRAMS + 1)).count())
+            .isEqualTo(0);
+        assertThat(snapshot.latency(Stage.GET_DATA_ACCESS).count()).isEqualTo(1);
+    }
+
+    @Test
+    public void metrics_tagTheLatencyOfAStageWithItsResultAndRegion() {
+        // Given
+        S3AccessGrantsMetrics metrics = new S3AccessGrantsMetrics(Collections.emptyList());
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        CompletableFuture<String> failed = new CompletableFuture<>();
+        // When
+        metrics.recordLatencyOnCompletion(Stage.CACHE_LOOKUP, "us-east-2", System.nanoTime(), CompletableFuture.completedFuture("hit"));
+        metrics.recordLatencyOnCompletion(Stage.CACHE_LOOKUP, "us-east-2", System.nanoTime(), pending);
+        metrics.recordLatencyOnCompletion(Stage.CACHE_LOOKUP, "us-east-2", System.nanoTime(), failed);
+        metrics.recordLatencyOnCompletion(Stage.CACHE_LOOKUP, "us-east-2", System.nanoTime(), null);
+        // Then
+        assertThat(metrics.snapshot().latency(Stage.CACHE_LOOKUP).count()).isEqualTo(1);
+        // When
+        pending.complete("miss");
+        failed.completeExceptionally(new IllegalStateException());
+        S3AccessGrantsMetrics.Snapshot snapshot = metrics.delta();
+        MetricCollection delta = snapshot.toMetricCollection("test");
+        // Then
+        assertThat(snapshot.latency(Stage.CACHE_LOOKUP).count()).isEqualTo(3);
+        assertThat(snapshot.latency(Stage.CACHE_LOOKUP, StageResult.HIT, "us-east-2").count()).isEqualTo(1);
+        assertThat(snapshot.latency(Stage.CACHE_LOOKUP, StageResult.MISS, "us-east-2").count()).isEqualTo(1);
+        assertThat(snapshot.latency(Stage.CACHE_LOOKUP, StageResult.ERROR, "us-east-2").count()).isEqualTo(1);
+        assertThat(snapshot.latency(Stage.CACHE_LOOKUP, StageResult.HIT, "eu-west-1").count()).isEqualTo(0);
+        assertThat(delta.children()).hasSize(3);
+        assertThat(delta.children()).allSatisfy(stage -> {
+            assertThat(stage.name()).isEqualTo(Stage.CACHE_LOOKUP.metricName());
+            assertThat(stage.metricValues(MetricsCollector.STAGE_REGION)).containsExactly("us-east-2");
+        });
+        assertThat(delta.children()).flatExtracting(stage -> stage.metricValues(MetricsCollector.STAGE_RESULT))
+                                    .containsExactlyInAnyOrder(StageResult.HIT.metricValue(), StageResult.MISS.metricValue(),
+                                                               StageResult.ERROR.metricValue());
+    }
+}
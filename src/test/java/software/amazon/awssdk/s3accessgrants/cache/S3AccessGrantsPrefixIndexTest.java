@@ -0,0 +1,138 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.awssdk.s3accessgrants.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsTestConstants.AWS_BASIC_CREDENTIALS;
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsTestConstants.AWS_SESSION_CREDENTIALS;
+
+import org.junit.Before;
+import org.junit.Test;
+import software.amazon.awssdk.services.s3control.model.Permission;
+
+public class S3AccessGrantsPrefixIndexTest {
+
+    private S3AccessGrantsPrefixIndex prefixIndex;
+
+    @Before
+    public void setup() {
+        prefixIndex = new S3AccessGrantsPrefixIndex();
+    }
+
+    private CacheKey cacheKey(Permission permission, String s3Prefix) {
+        return CacheKey.builder().credentials(AWS_BASIC_CREDENTIALS).permission(permission).s3Prefix(s3Prefix).build();
+    }
+
+    @Test
+    public void prefixIndex_findsLongestPathGrant() {
+        // Given
+        CacheKey bucketGrant = cacheKey(Permission.READ, "s3://bucket");
+        CacheKey folderGrant = cacheKey(Permission.READ, "s3://bucket/foo/bar");
+        prefixIndex.add(bucketGrant);
+        prefixIndex.add(folderGrant);
+        // Then
+        assertThat(prefixIndex.findLongestMatch(AWS_BASIC_CREDENTIALS, Permission.READ, "s3://bucket/foo/bar/file.txt")).isEqualTo(folderGrant);
+        assertThat(prefixIndex.findLongestMatch(AWS_BASIC_CREDENTIALS, Permission.READ, "s3://bucket/foo/bar")).isEqualTo(folderGrant);
+        assertThat(prefixIndex.findLongestMatch(AWS_BASIC_CREDENTIALS, Permission.READ, "s3://bucket/foo/barbaz.txt")).isEqualTo(bucketGrant);
+        assertThat(prefixIndex.findLongestMatch(AWS_BASIC_CREDENTIALS, Permission.READ, "s3://bucket2/foo")).isNull();
+    }
+
+    @Test
+    public void prefixIndex_findsLongestCharacterGrant() {
+        // Given
+        CacheKey shortGrant = cacheKey(Permission.READ, "s3://bucket/f*");
+        CacheKey longGrant = cacheKey(Permission.READ, "s3://bucket/foo/ba*");
+        prefixIndex.add(shortGrant);
+        prefixIndex.add(longGrant);
+        // Then
+        assertThat(prefixIndex.findLongestMatch(AWS_BASIC_CREDENTIALS, Permission.READ, "s3://bucket/foo/bar.txt")).isEqualTo(longGrant);
+        assertThat(prefixIndex.findLongestMatch(AWS_BASIC_CREDENTIALS, Permission.READ, "s3://bucket/foo/qux.txt")).isEqualTo(shortGrant);
+        assertThat(prefixIndex.findLongestMatch(AWS_BASIC_CREDENTIALS, Permission.READ, "s3://bucket/bar.txt")).isNull();
+    }
+
+    @Test
+    public void prefixIndex_prefersPathGrantOverCharacterGrant() {
+        // Given
+        CacheKey pathGrant = cacheKey(Permission.READ, "s3://bucket/foo");
+        CacheKey characterGrant = cacheKey(Permission.READ, "s3://bucket/foo/bar*");
+        prefixIndex.add(pathGrant);
+        prefixIndex.add(characterGrant);
+        // Then
+        assertThat(prefixIndex.findLongestMatch(AWS_BASIC_CREDENTIALS, Permission.READ, "s3://bucket/foo/bar.txt")).isEqualTo(pathGrant);
+    }
+
+    @Test
+    public void prefixIndex_separatesCredentialsAndPermissions() {
+        // Given
+        CacheKey readGrant = cacheKey(Permission.READ, "s3://bucket/foo");
+        prefixIndex.add(readGrant);
+        // Then
+        assertThat(prefixIndex.findLongestMatch(AWS_BASIC_CREDENTIALS, Permission.WRITE, "s3://bucket/foo/bar.txt")).isNull();
+        assertThat(prefixIndex.findLongestMatch(AWS_SESSION_CREDENTIALS, Permission.READ, "s3://bucket/foo/bar.txt")).isNull();
+    }
+
+    @Test
+    public void prefixIndex_matchesRootGrant() {
+        // Given
+        CacheKey rootGrant = cacheKey(Permission.READ, "s3:/");
+        prefixIndex.add(rootGrant);
+        // Then
+        assertThat(prefixIndex.findLongestMatch(AWS_BASIC_CREDENTIALS, Permission.READ, "s3://bucket/foo/bar.txt")).isEqualTo(rootGrant);
+    }
+
+    @Test
+    public void prefixIndex_removesGrantsThatAreNoLongerCached() {
+        // Given
+        CacheKey pathGrant = cacheKey(Permission.READ, "s3://bucket/foo");
+        CacheKey characterGrant = cacheKey(Permission.READ, "s3://bucket/fo*");
+        prefixIndex.add(pathGrant);
+        prefixIndex.add(characterGrant);
+        // When
+        prefixIndex.remove(pathGrant, key -> true);
+        // Then
+        assertThat(prefixIndex.findLongestMatch(AWS_BASIC_CREDENTIALS, Permission.READ, "s3://bucket/foo/bar.txt")).isEqualTo(pathGrant);
+        // When
+        prefixIndex.remove(pathGrant, key -> false);
+        // Then
+        assertThat(prefixIndex.findLongestMatch(AWS_BASIC_CREDENTIALS, Permission.READ, "s3://bucket/foo/bar.txt")).isEqualTo(characterGrant);
+        // When
+        prefixIndex.remove(characterGrant, key -> false);
+        // Then
+        assertThat(prefixIndex.findLongestMatch(AWS_BASIC_CREDENTIALS, Permission.READ, "s3://bucket/foo/bar.txt")).isNull();
+    }
+
+    @Test
+    public void prefixIndex_distinguishesSegmentsWithSameHash() {
+        // Given
+        CacheKey grant = cacheKey(Permission.READ, "s3://bucket/Aa");
+        prefixIndex.add(grant);
+        // Then
+        assertThat("Aa".hashCode()).isEqualTo("BB".hashCode());
+        assertThat(prefixIndex.findLongestMatch(AWS_BASIC_CREDENTIALS, Permission.READ, "s3://bucket/BB/file.txt")).isNull();
+        assertThat(prefixIndex.findLongestMatch(AWS_BASIC_CREDENTIALS, Permission.READ, "s3://bucket/Aa/file.txt")).isEqualTo(grant);
+    }
+
+    @Test
+    public void prefixIndex_clear() {
+        // Given
+        prefixIndex.add(cacheKey(Permission.READ, "s3://bucket/foo"));
+        // When
+        prefixIndex.clear();
+        // Then
+        assertThat(prefixIndex.findLongestMatch(AWS_BASIC_CREDENTIALS, Permission.READ, "s3://bucket/foo/bar.txt")).isNull();
+    }
+
+}
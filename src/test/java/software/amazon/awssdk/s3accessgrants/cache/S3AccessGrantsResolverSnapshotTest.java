@@ -0,0 +1,179 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.awssdk.s3accessgrants.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsTestConstants.TEST_S3_ACCESSGRANTS_ACCOUNT;
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsTestConstants.TEST_S3_ACCESSGRANTS_INSTANCE_ARN;
+import static software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsTestConstants.TEST_S3_PREFIX;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
+import software.amazon.awssdk.services.s3control.S3ControlAsyncClient;
+import software.amazon.awssdk.services.s3control.model.GetAccessGrantsInstanceForPrefixRequest;
+import software.amazon.awssdk.services.s3control.model.GetAccessGrantsInstanceForPrefixResponse;
+
+public class S3AccessGrantsResolverSnapshotTest {
+
+    private static final String TEST_BUCKET_NAME = "test-bucket";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path snapshotFile;
+    private S3Client s3Client;
+    private S3ControlAsyncClient s3ControlAsyncClient;
+
+    @Before
+    public void setup() throws IOException {
+        snapshotFile = temporaryFolder.getRoot().toPath().resolve("snapshot");
+        s3Client = mock(S3Client.class);
+        s3ControlAsyncClient = mock(S3ControlAsyncClient.class);
+        when(s3ControlAsyncClient.getAccessGrantsInstanceForPrefix(any(GetAccessGrantsInstanceForPrefixRequest.class)))
+            .thenReturn(CompletableFuture.completedFuture(GetAccessGrantsInstanceForPrefixResponse.builder()
+                                                                                                   .accessGrantsInstanceArn(TEST_S3_ACCESSGRANTS_INSTANCE_ARN)
+                                                                                                   .build()));
+    }
+
+    private S3AccessGrantsResolverSnapshot snapshot(S3AccessGrantsCachedBucketRegionResolver bucketRegionResolver,
+                                                    S3AccessGrantsCachedAccountIdResolver accountIdResolver, Clock clock) {
+        return ((S3AccessGrantsResolverSnapshot.BuilderImpl) S3AccessGrantsResolverSnapshot.builder())
+            .clock(clock)
+            .file(snapshotFile)
+            .bucketRegionResolver(bucketRegionResolver)
+            .accountIdResolver(accountIdResolver)
+            .build();
+    }
+
+    @Test
+    public void snapshot_restoresCachesWithoutCallingTheServices() {
+        // Given
+        S3AccessGrantsCachedBucketRegionResolver bucketRegionResolver = S3AccessGrantsCachedBucketRegionResolver.builder().s3Client(s3Client).build();
+        S3AccessGrantsCachedAccountIdResolver accountIdResolver = S3AccessGrantsCachedAccountIdResolver.builder().build();
+        bucketRegionResolver.putBucketRegion(TEST_BUCKET_NAME, Region.EU_WEST_1);
+        accountIdResolver.resolve(TEST_S3_ACCESSGRANTS_ACCOUNT, TEST_S3_PREFIX, s3ControlAsyncClient);
+        snapshot(bucketRegionResolver, accountIdResolver, Clock.systemUTC()).write();
+        S3ControlAsyncClient newS3ControlAsyncClient = mock(S3ControlAsyncClient.class);
+        S3AccessGrantsCachedBucketRegionResolver newBucketRegionResolver = S3AccessGrantsCachedBucketRegionResolver.builder().s3Client(s3Client).build();
+        S3AccessGrantsCachedAccountIdResolver newAccountIdResolver = S3AccessGrantsCachedAccountIdResolver.builder().build();
+        // When
+        int loaded = snapshot(newBucketRegionResolver, newAccountIdResolver, Clock.systemUTC()).load();
+        // Then
+        assertThat(loaded).isEqualTo(2);
+        assertThat(newBucketRegionResolver.resolve(TEST_BUCKET_NAME)).isEqualTo(Region.EU_WEST_1);
+        assertThat(newAccountIdResolver.resolve(TEST_S3_ACCESSGRANTS_ACCOUNT, TEST_S3_PREFIX, newS3ControlAsyncClient)).isEqualTo(TEST_S3_ACCESSGRANTS_ACCOUNT);
+        verify(s3Client, never()).headBucket(any(HeadBucketRequest.class));
+        verify(newS3ControlAsyncClient, never()).getAccessGrantsInstanceForPrefix(any(GetAccessGrantsInstanceForPrefixRequest.class));
+    }
+
+    @Test
+    public void snapshot_sharesTheRegionsOfEveryBucketRegionResolver() {
+        // Given
+        S3AccessGrantsCachedBucketRegionResolver firstResolver = S3AccessGrantsCachedBucketRegionResolver.builder().s3Client(s3Client).build();
+        S3AccessGrantsCachedBucketRegionResolver secondResolver = S3AccessGrantsCachedBucketRegionResolver.builder().s3Client(s3Client).build();
+        firstResolver.putBucketRegion(TEST_BUCKET_NAME, Region.EU_WEST_1);
+        secondResolver.putBucketRegion(TEST_BUCKET_NAME, Region.EU_WEST_1);
+        secondResolver.putBucketRegion("other-bucket", Region.US_WEST_2);
+        S3AccessGrantsResolverSnapshot snapshot = snapshot(firstResolver, null, Clock.systemUTC());
+        snapshot.addBucketRegionResolver(secondResolver);
+        snapshot.write();
+        S3AccessGrantsCachedBucketRegionResolver newResolver = S3AccessGrantsCachedBucketRegionResolver.builder().s3Client(s3Client).build();
+        S3AccessGrantsResolverSnapshot newSnapshot = snapshot(newResolver, null, Clock.systemUTC());
+        // When
+        newSnapshot.start();
+        S3AccessGrantsCachedBucketRegionResolver addedResolver = S3AccessGrantsCachedBucketRegionResolver.builder().s3Client(s3Client).build();
+        newSnapshot.addBucketRegionResolver(addedResolver);
+        newSnapshot.removeBucketRegionResolver(newResolver);
+        newSnapshot.close();
+        // Then each bucket is written once and loaded into the resolvers added after the snapshot started
+        assertThat(newResolver.resolve("other-bucket")).isEqualTo(Region.US_WEST_2);
+        assertThat(addedResolver.resolve(TEST_BUCKET_NAME)).isEqualTo(Region.EU_WEST_1);
+        assertThat(addedResolver.resolve("other-bucket")).isEqualTo(Region.US_WEST_2);
+        assertThat(snapshot(S3AccessGrantsCachedBucketRegionResolver.builder().s3Client(s3Client).build(), null, Clock.systemUTC()).load())
+            .isEqualTo(2);
+        verify(s3Client, never()).headBucket(any(HeadBucketRequest.class));
+    }
+
+    @Test
+    public void snapshot_keepsTheExpiryOfTheEntries() {
+        // Given
+        Instant now = Instant.now();
+        S3AccessGrantsCachedBucketRegionResolver bucketRegionResolver = S3AccessGrantsCachedBucketRegionResolver.builder().s3Client(s3Client).build();
+        bucketRegionResolver.putBucketRegion(TEST_BUCKET_NAME, Region.EU_WEST_1);
+        snapshot(bucketRegionResolver, null, Clock.fixed(now, ZoneOffset.UTC)).write();
+        // When
+        S3AccessGrantsCachedBucketRegionResolver restoredResolver = S3AccessGrantsCachedBucketRegionResolver.builder().s3Client(s3Client).build();
+        Clock halfAnHourLater = Clock.fixed(now.plus(Duration.ofMinutes(30)), ZoneOffset.UTC);
+        snapshot(restoredResolver, null, halfAnHourLater).load();
+        // Then
+        assertThat(restoredResolver.getCache().synchronous().policy().expireVariably().get().getExpiresAfter(TEST_BUCKET_NAME).get())
+            .isLessThanOrEqualTo(Duration.ofMinutes(30));
+        // When
+        S3AccessGrantsCachedBucketRegionResolver expiredResolver = S3AccessGrantsCachedBucketRegionResolver.builder().s3Client(s3Client).build();
+        Clock twoHoursLater = Clock.fixed(now.plus(Duration.ofHours(2)), ZoneOffset.UTC);
+        // Then
+        assertThat(snapshot(expiredResolver, null, twoHoursLater).load()).isEqualTo(0);
+    }
+
+    @Test
+    public void snapshot_ignoresInvalidFiles() throws IOException {
+        // Given
+        S3AccessGrantsCachedBucketRegionResolver bucketRegionResolver = S3AccessGrantsCachedBucketRegionResolver.builder().s3Client(s3Client).build();
+        S3AccessGrantsResolverSnapshot snapshot = snapshot(bucketRegionResolver, null, Clock.systemUTC());
+        // Then
+        assertThat(snapshot.load()).isEqualTo(0);
+        // When
+        Files.write(snapshotFile, "not a snapshot".getBytes(StandardCharsets.UTF_8));
+        // Then
+        assertThat(snapshot.load()).isEqualTo(0);
+        // When
+        Files.write(snapshotFile, ("# S3 Access Grants resolver snapshot v2\nregion\ttest-bucket\n"
+                                   + "region\tother-bucket\tus-west-2\tnot-a-time\n").getBytes(StandardCharsets.UTF_8));
+        // Then
+        assertThat(snapshot.load()).isEqualTo(0);
+    }
+
+    @Test
+    public void snapshot_builderValidation() {
+        assertThatThrownBy(() -> S3AccessGrantsResolverSnapshot.builder().accountIdResolver(S3AccessGrantsCachedAccountIdResolver.builder().build()).build())
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> S3AccessGrantsResolverSnapshot.builder().file(snapshotFile).build())
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> S3AccessGrantsResolverSnapshot.builder().writeIntervalSeconds(0))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+}
@@ -32,4 +32,13 @@ public class S3AccessGrantsUtilTest {
         assertThat(bucketName).isEqualTo(TEST_S3_BUCKET);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void getBucketName_from_s3Prefix_without_path_or_scheme() {
+        assertThat(getBucketName("s3://bucket-name")).isEqualTo("bucket-name");
+        assertThat(getBucketName("s3://bucket-name/")).isEqualTo("bucket-name");
+        assertThat(getBucketName("s3://bucket-name?versionId=1")).isEqualTo("bucket-name");
+        assertThat(getBucketName("bucket-name/path")).isNull();
+        assertThat(getBucketName("s3:///path")).isNull();
+    }
+
+}
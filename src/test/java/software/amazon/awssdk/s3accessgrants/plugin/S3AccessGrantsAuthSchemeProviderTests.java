@@ -138,11 +138,12 @@ public class S3AccessGrantsAuthSchemeProviderTests {
         when(authSchemeParams.operation()).thenReturn("GetObject");
         when(authSchemeProvider.resolveAuthScheme(authSchemeParams)).thenReturn(authSchemeResolverResult);
         List<AuthSchemeOption> accessGrantsAuthSchemeResult = accessGrantsAuthSchemeProvider.resolveAuthScheme(authSchemeParams);
-        Assertions.assertThat(accessGrantsAuthSchemeResult.get(0).identityProperty(BUCKET_LOCATION_PROPERTY)).isEqualTo(Region.US_EAST_1);
+        Assertions.assertThat(accessGrantsAuthSchemeResult.get(0).identityProperty(BUCKET_NAME_PROPERTY)).isEqualTo(BUCKET_NAME);
+        Assertions.assertThat(accessGrantsAuthSchemeResult.get(0).identityProperty(BUCKET_LOCATION_PROPERTY)).isNull();
     }
 
     @Test
-    public void call_authSchemeProvider_with_valid_params_valid_bucket_cross_region_access_enabled_cache_test() {
+    public void call_authSchemeProvider_with_valid_params_valid_bucket_cross_region_access_enabled_does_not_call_head_bucket() {
         S3AuthSchemeProvider authSchemeProvider = mock(S3AuthSchemeProvider.class);
         S3AccessGrantsAuthSchemeProvider accessGrantsAuthSchemeProvider = new S3AccessGrantsAuthSchemeProvider(authSchemeProvider, s3client, !DefaultCrossRegionAccess);
         S3AuthSchemeParams authSchemeParams = mock(S3AuthSchemeParams.class);
@@ -150,13 +151,10 @@ public class S3AccessGrantsAuthSchemeProviderTests {
         when(authSchemeParams.bucket()).thenReturn(BUCKET_NAME);
         when(authSchemeParams.operation()).thenReturn("GetObject");
         when(authSchemeProvider.resolveAuthScheme(authSchemeParams)).thenReturn(authSchemeResolverResult);
-        List<AuthSchemeOption> accessGrantsAuthSchemeResult = accessGrantsAuthSchemeProvider.resolveAuthScheme(authSchemeParams);
-        Assertions.assertThat(accessGrantsAuthSchemeResult.get(0).identityProperty(BUCKET_LOCATION_PROPERTY)).isEqualTo(Region.US_EAST_1);
-        verify(s3client, times(1)).headBucket(any(HeadBucketRequest.class));
-        //resending the request to verify if the cache already has the bucket region
-        accessGrantsAuthSchemeResult = accessGrantsAuthSchemeProvider.resolveAuthScheme(authSchemeParams);
-        Assertions.assertThat(accessGrantsAuthSchemeResult.get(0).identityProperty(BUCKET_LOCATION_PROPERTY)).isEqualTo(Region.US_EAST_1);
-        verify(s3client, times(1)).headBucket(any(HeadBucketRequest.class));
+        accessGrantsAuthSchemeProvider.resolveAuthScheme(authSchemeParams);
+        accessGrantsAuthSchemeProvider.resolveAuthScheme(authSchemeParams);
+        // the region of the bucket is resolved by the identity provider
+        verify(s3client, never()).headBucket(any(HeadBucketRequest.class));
 
     }
 
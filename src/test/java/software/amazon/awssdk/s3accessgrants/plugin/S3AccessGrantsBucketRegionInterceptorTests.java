@@ -0,0 +1,97 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.awssdk.s3accessgrants.plugin;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Before;
+import org.junit.Test;
+import software.amazon.awssdk.core.SdkRequest;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.http.SdkHttpResponse;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsCachedBucketRegionResolver;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
+import software.amazon.awssdk.services.s3.model.ListBucketsRequest;
+
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class S3AccessGrantsBucketRegionInterceptorTests {
+
+    private static final String BUCKET_NAME = "test-bucket";
+
+    private S3Client s3Client;
+
+    private S3AccessGrantsCachedBucketRegionResolver bucketRegionResolver;
+
+    private S3AccessGrantsBucketRegionInterceptor interceptor;
+
+    @Before
+    public void setUp() {
+        s3Client = mock(S3Client.class);
+        bucketRegionResolver = S3AccessGrantsCachedBucketRegionResolver.builder().s3Client(s3Client).build();
+        interceptor = new S3AccessGrantsBucketRegionInterceptor(bucketRegionResolver);
+    }
+
+    private Context.AfterTransmission afterTransmission(SdkRequest request, SdkHttpResponse httpResponse) {
+        Context.AfterTransmission context = mock(Context.AfterTransmission.class);
+        when(context.request()).thenReturn(request);
+        when(context.httpResponse()).thenReturn(httpResponse);
+        return context;
+    }
+
+    @Test
+    public void create_interceptor_without_bucket_region_resolver() {
+        Assertions.assertThatThrownBy(() -> new S3AccessGrantsBucketRegionInterceptor(null)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void call_interceptor_with_redirect_records_bucket_region() {
+        // Given
+        SdkHttpResponse redirect = SdkHttpResponse.builder().statusCode(301).putHeader("x-amz-bucket-region", "eu-west-1").build();
+        // When
+        interceptor.afterTransmission(afterTransmission(GetObjectRequest.builder().bucket(BUCKET_NAME).key("key").build(), redirect), new ExecutionAttributes());
+        // Then
+        Assertions.assertThat(bucketRegionResolver.resolve(BUCKET_NAME)).isEqualTo(Region.EU_WEST_1);
+        verify(s3Client, never()).headBucket(any(HeadBucketRequest.class));
+    }
+
+    @Test
+    public void call_interceptor_without_bucket_region_header_does_not_record_anything() {
+        // Given
+        SdkHttpResponse response = SdkHttpResponse.builder().statusCode(200).build();
+        when(s3Client.headBucket(any(HeadBucketRequest.class))).thenThrow(new IllegalStateException("bucket region is not cached"));
+        // When
+        interceptor.afterTransmission(afterTransmission(GetObjectRequest.builder().bucket(BUCKET_NAME).key("key").build(), response), new ExecutionAttributes());
+        // Then
+        Assertions.assertThatThrownBy(() -> bucketRegionResolver.resolve(BUCKET_NAME)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void call_interceptor_for_request_without_bucket_does_not_fail() {
+        // Given
+        SdkHttpResponse response = SdkHttpResponse.builder().statusCode(200).putHeader("x-amz-bucket-region", "eu-west-1").build();
+        // Then
+        Assertions.assertThatNoException().isThrownBy(() -> interceptor.afterTransmission(afterTransmission(ListBucketsRequest.builder().build(), response), new ExecutionAttributes()));
+    }
+
+}
@@ -16,9 +16,11 @@
 package software.amazon.awssdk.s3accessgrants.plugin;
 
 import java.nio.file.AccessDeniedException;
+import java.time.Instant;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -35,7 +37,10 @@ import software.amazon.awssdk.metrics.MetricCollection;
 import software.amazon.awssdk.metrics.MetricCollector;
 import software.amazon.awssdk.metrics.MetricPublisher;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.s3accessgrants.cache.MetricsCollector;
+import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsBucketRegionResolver;
 import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsCachedCredentialsProvider;
+import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsCachedAccountIdResolver;
 import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsCachedCredentialsProviderImpl;
 import software.amazon.awssdk.services.s3control.S3ControlAsyncClientBuilder;
 import software.amazon.awssdk.services.s3control.model.Credentials;
@@ -53,10 +58,13 @@ import software.amazon.awssdk.services.s3control.S3ControlAsyncClient;
 
 import org.junit.BeforeClass;
 import software.amazon.awssdk.services.sts.StsAsyncClient;
+import software.amazon.awssdk.services.sts.model.GetCallerIdentityRequest;
 import software.amazon.awssdk.services.sts.model.GetCallerIdentityResponse;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.when;
@@ -71,6 +79,7 @@ import static org.mockito.Mockito.spy;
 import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.PERMISSION_PROPERTY;
 import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.PREFIX_PROPERTY;
 import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.BUCKET_LOCATION_PROPERTY;
+import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.BUCKET_NAME_PROPERTY;
 import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.AUTH_EXCEPTIONS_PROPERTY;
 
 
@@ -150,9 +159,10 @@ public class S3AccessGrantsIdentityProviderTests {
         when(s3ControlAsyncClientBuilder.region(Region.US_EAST_2)).thenReturn(s3ControlAsyncClientBuilder);
         when(s3ControlAsyncClientBuilder.region(Region.US_EAST_2).build()).thenReturn(s3ControlClient);
         when(s3ControlClient.getDataAccess(any(GetDataAccessRequest.class))).thenReturn(getDataAccessResponse);
-        when(cache.getDataAccess(any(), any(), any(), any(), any())).thenReturn(cacheResponse);
-        when(stsAsyncClient.getCallerIdentity()).thenReturn(callerIdentityResponse);
-        when(cache.getAccessGrantsMetrics()).thenReturn(metricsCollector);
+        when(cache.getDataAccess(any(), any(), any(), any(), any(), any(), any())).thenReturn(cacheResponse);
+        when(stsAsyncClient.getCallerIdentity(any(GetCallerIdentityRequest.class))).thenReturn(callerIdentityResponse);
+        when(cache.reportAccessGrantsMetrics()).thenReturn(metricsCollector);
+        when(metricsCollector.createChild(any())).thenReturn(mock(MetricCollector.class));
         when(metricsCollector.collect()).thenReturn(mock(MetricCollection.class));
         when(credentialsProvider.resolveIdentity(any(ResolveIdentityRequest.class))).thenReturn(CompletableFuture.supplyAsync(() -> credentials));
         when(clientsCache.get(any(Region.class))).thenReturn(s3ControlClient);
@@ -178,7 +188,7 @@ public class S3AccessGrantsIdentityProviderTests {
     @Test
     public void call_identity_provider_with_invalid_request() {
         StsAsyncClient localAsyncStsClient = mock(StsAsyncClient.class);
-        when(localAsyncStsClient.getCallerIdentity()).thenReturn(CompletableFuture.supplyAsync(() ->
+        when(localAsyncStsClient.getCallerIdentity(any(GetCallerIdentityRequest.class))).thenReturn(CompletableFuture.supplyAsync(() ->
                 GetCallerIdentityResponse.builder()
                         .account(TEST_ACCOUNT)
                         .build()));
@@ -216,8 +226,8 @@ public class S3AccessGrantsIdentityProviderTests {
                 .secretAccessKey(TEST_SECRET_KEY)
                 .sessionToken(TEST_SESSION_TOKEN)
                 .build());
-        Assertions.assertThat(accessGrantsIdentityProvider.getCallerAccountID(localCredentials)).isEqualTo(TEST_ACCOUNT);
-        verify(stsAsyncClient, times(1)).getCallerIdentity();
+        Assertions.assertThat(accessGrantsIdentityProvider.getCallerAccountID(localCredentials).join()).isEqualTo(TEST_ACCOUNT);
+        verify(stsAsyncClient, times(1)).getCallerIdentity(any(GetCallerIdentityRequest.class));
     }
 
     @Test
@@ -228,10 +238,10 @@ public class S3AccessGrantsIdentityProviderTests {
                 .secretAccessKey(TEST_SECRET_KEY)
                 .sessionToken(TEST_SESSION_TOKEN)
                 .build());
-        Assertions.assertThat(accessGrantsIdentityProvider.getCallerAccountID(localCredentials)).isEqualTo(TEST_ACCOUNT);
-        verify(stsAsyncClient, times(1)).getCallerIdentity();
-        Assertions.assertThat(accessGrantsIdentityProvider.getCallerAccountID(localCredentials)).isEqualTo(TEST_ACCOUNT);
-        verify(stsAsyncClient, times(1)).getCallerIdentity();
+        Assertions.assertThat(accessGrantsIdentityProvider.getCallerAccountID(localCredentials).join()).isEqualTo(TEST_ACCOUNT);
+        verify(stsAsyncClient, times(1)).getCallerIdentity(any(GetCallerIdentityRequest.class));
+        Assertions.assertThat(accessGrantsIdentityProvider.getCallerAccountID(localCredentials).join()).isEqualTo(TEST_ACCOUNT);
+        verify(stsAsyncClient, times(1)).getCallerIdentity(any(GetCallerIdentityRequest.class));
     }
 
     @Test
@@ -243,16 +253,16 @@ public class S3AccessGrantsIdentityProviderTests {
                 .sessionToken(TEST_SESSION_TOKEN)
                 .build());
         CompletableFuture<AwsSessionCredentials> localCredentials2 = CompletableFuture.supplyAsync(() -> AwsSessionCredentials.builder()
-                .accessKeyId(TEST_ACCESS_KEY)
+                .accessKeyId(TEST_ACCESS_KEY+"xx")
                 .secretAccessKey(TEST_SECRET_KEY)
                 .sessionToken(TEST_SESSION_TOKEN+"xx")
                 .build());
-        Assertions.assertThat(accessGrantsIdentityProvider.getCallerAccountID(localCredentials)).isEqualTo(TEST_ACCOUNT);
-        verify(stsAsyncClient, times(1)).getCallerIdentity();
-        Assertions.assertThat(accessGrantsIdentityProvider.getCallerAccountID(localCredentials2)).isEqualTo(TEST_ACCOUNT);
-        verify(stsAsyncClient, times(2)).getCallerIdentity();
-        Assertions.assertThat(accessGrantsIdentityProvider.getCallerAccountID(localCredentials2)).isEqualTo(TEST_ACCOUNT);
-        verify(stsAsyncClient, times(2)).getCallerIdentity();
+        Assertions.assertThat(accessGrantsIdentityProvider.getCallerAccountID(localCredentials).join()).isEqualTo(TEST_ACCOUNT);
+        verify(stsAsyncClient, times(1)).getCallerIdentity(any(GetCallerIdentityRequest.class));
+        Assertions.assertThat(accessGrantsIdentityProvider.getCallerAccountID(localCredentials2).join()).isEqualTo(TEST_ACCOUNT);
+        verify(stsAsyncClient, times(2)).getCallerIdentity(any(GetCallerIdentityRequest.class));
+        Assertions.assertThat(accessGrantsIdentityProvider.getCallerAccountID(localCredentials2).join()).isEqualTo(TEST_ACCOUNT);
+        verify(stsAsyncClient, times(2)).getCallerIdentity(any(GetCallerIdentityRequest.class));
     }
 
     @Test
@@ -296,13 +306,16 @@ public class S3AccessGrantsIdentityProviderTests {
         when(localS3ControlClientBuilder.region(Region.US_EAST_2).build()).thenReturn(localS3ControlClient);
         S3AccessGrantsIdentityProvider accessGrantsIdentityProvider = new S3AccessGrantsIdentityProvider(credentialsProvider, stsAsyncClient, TEST_PRIVILEGE, TEST_CACHE_ENABLED, localS3ControlClientBuilder, testCache, TEST_FALLBACK_ENABLED, testMetricPublisher, clientsCache, overrideConfig);
         when(credentialsProvider.resolveIdentity(any(ResolveIdentityRequest.class))).thenReturn(CompletableFuture.supplyAsync(() -> credentials));
-        when(testCache.getAccessGrantsMetrics()).thenReturn(testMetricCollector);
+        when(testCache.reportAccessGrantsMetrics()).thenReturn(testMetricCollector);
+        when(testMetricCollector.createChild(any())).thenReturn(mock(MetricCollector.class));
         when(testMetricCollector.collect()).thenReturn(mock(MetricCollection.class));
-        when(testCache.getDataAccess(any(), any(), any(), any(), any())).thenReturn(cacheResponse);
+        when(testCache.getDataAccess(any(), any(), any(), any(), any(), any(), any())).thenReturn(cacheResponse);
 
-        Assertions.assertThatNoException().isThrownBy(() -> accessGrantsIdentityProvider.resolveIdentity(resolveIdentityRequest));
+        Assertions.assertThatNoException().isThrownBy(() -> accessGrantsIdentityProvider.resolveIdentity(resolveIdentityRequest).join());
         verify(credentialsProvider, times(1)).resolveIdentity(resolveIdentityRequest);
+        accessGrantsIdentityProvider.close();
         verify(testMetricPublisher, times(1)).publish(any());
+        verify(testMetricPublisher, never()).close();
     }
 
     @Test
@@ -331,6 +344,56 @@ public class S3AccessGrantsIdentityProviderTests {
         Assertions.assertThatThrownBy(() -> accessGrantsIdentityProvider.resolveIdentity(localResolveIdentityRequest)).isInstanceOf(IllegalArgumentException.class);
     }
 
+    @Test
+    public void call_resolve_identity_resolves_bucket_region_without_blocking() throws Exception {
+        S3AccessGrantsBucketRegionResolver bucketRegionResolver = mock(S3AccessGrantsBucketRegionResolver.class);
+        S3AccessGrantsIdentityProvider accessGrantsIdentityProvider = S3AccessGrantsIdentityProvider.builder().credentialsProvider(credentialsProvider).stsAsyncClient(stsAsyncClient).privilege(TEST_PRIVILEGE)
+                .isCacheEnabled(TEST_CACHE_ENABLED).s3ControlAsyncClientBuilder(s3ControlAsyncClientBuilder).cache(cache)
+                .enableFallback(TEST_FALLBACK_ENABLED).metricsPublisher(null).clientsCache(clientsCache).overrideConfig(overrideConfig)
+                .bucketRegionResolver(bucketRegionResolver).build();
+        ResolveIdentityRequest localResolveIdentityRequest = mock(ResolveIdentityRequest.class);
+        CompletableFuture<Region> bucketRegion = new CompletableFuture<>();
+        // Given
+        when(localResolveIdentityRequest.property(PREFIX_PROPERTY)).thenReturn("s3://test-bucket/");
+        when(localResolveIdentityRequest.property(PERMISSION_PROPERTY)).thenReturn(Permission.READ);
+        when(localResolveIdentityRequest.property(BUCKET_NAME_PROPERTY)).thenReturn("test-bucket");
+        when(bucketRegionResolver.resolveAsync("test-bucket")).thenReturn(bucketRegion);
+        when(clientsCache.containsKey(Region.US_WEST_2)).thenReturn(true);
+        // When
+        CompletableFuture<? extends AwsCredentialsIdentity> credentialsIdentity = accessGrantsIdentityProvider.resolveIdentity(localResolveIdentityRequest);
+        // Then
+        Assertions.assertThat(credentialsIdentity).isNotDone();
+        verify(cache, never()).getDataAccess(any(), any(), any(), any(), any(), any(), any());
+        // When
+        bucketRegion.complete(Region.US_WEST_2);
+        // Then
+        Assertions.assertThat(credentialsIdentity.join().accessKeyId()).isEqualTo(TEST_ACCESS_KEY);
+        verify(clientsCache, times(1)).get(Region.US_WEST_2);
+    }
+
+    @Test
+    public void call_resolve_identity_falls_back_when_bucket_region_cannot_be_resolved() throws Exception {
+        S3AccessGrantsBucketRegionResolver bucketRegionResolver = mock(S3AccessGrantsBucketRegionResolver.class);
+        S3AccessGrantsIdentityProvider accessGrantsIdentityProvider = S3AccessGrantsIdentityProvider.builder().credentialsProvider(credentialsProvider).stsAsyncClient(stsAsyncClient).privilege(TEST_PRIVILEGE)
+                .isCacheEnabled(TEST_CACHE_ENABLED).s3ControlAsyncClientBuilder(s3ControlAsyncClientBuilder).cache(cache)
+                .enableFallback(!TEST_FALLBACK_ENABLED).metricsPublisher(null).clientsCache(clientsCache).overrideConfig(overrideConfig)
+                .bucketRegionResolver(bucketRegionResolver).build();
+        ResolveIdentityRequest localResolveIdentityRequest = mock(ResolveIdentityRequest.class);
+        CompletableFuture<Region> bucketRegion = new CompletableFuture<>();
+        bucketRegion.completeExceptionally(SdkServiceException.builder().statusCode(403).message("Access denied").build());
+        // Given
+        when(localResolveIdentityRequest.property(PREFIX_PROPERTY)).thenReturn("s3://test-bucket/");
+        when(localResolveIdentityRequest.property(PERMISSION_PROPERTY)).thenReturn(Permission.READ);
+        when(localResolveIdentityRequest.property(BUCKET_NAME_PROPERTY)).thenReturn("test-bucket");
+        when(bucketRegionResolver.resolveAsync("test-bucket")).thenReturn(bucketRegion);
+        // When
+        AwsCredentialsIdentity credentialsIdentity = accessGrantsIdentityProvider.resolveIdentity(localResolveIdentityRequest).join();
+        // Then
+        Assertions.assertThat(credentialsIdentity.accessKeyId()).isEqualTo(TEST_ACCESS_KEY);
+        verify(cache, never()).getDataAccess(any(), any(), any(), any(), any(), any(), any());
+        verify(credentialsProvider, times(2)).resolveIdentity(localResolveIdentityRequest);
+    }
+
     @Test
     public void call_get_data_access_with_access_denied_response_with_cache() throws Exception {
         IdentityProvider credentialsProvider = mock(IdentityProvider.class);
@@ -348,15 +411,18 @@ public class S3AccessGrantsIdentityProviderTests {
         when(localS3ControlClientBuilder.region(Region.US_EAST_2)).thenReturn(localS3ControlClientBuilder);
         when(localS3ControlClientBuilder.overrideConfiguration(any(ClientOverrideConfiguration.class))).thenReturn(localS3ControlClientBuilder);
         when(localS3ControlClientBuilder.region(Region.US_EAST_2).build()).thenReturn(localS3ControlClient);
-        when(testCache.getDataAccess(any(), any(), any(), any(), any())).thenThrow(S3ControlException.builder().statusCode(403).message("Access denied for the user").build());
+        when(testCache.getDataAccess(any(), any(), any(), any(), any(), any(), any())).thenThrow(S3ControlException.builder().statusCode(403).message("Access denied for the user").build());
         when(credentialsProvider.resolveIdentity(any(ResolveIdentityRequest.class))).thenReturn(CompletableFuture.supplyAsync(() -> AwsCredentialsIdentity.builder().accessKeyId(TEST_ACCESS_KEY).secretAccessKey(TEST_SECRET_KEY).build()));
-        when(testCache.getAccessGrantsMetrics()).thenReturn(testMetricCollector);
+        when(testCache.reportAccessGrantsMetrics()).thenReturn(testMetricCollector);
+        when(testMetricCollector.createChild(any())).thenReturn(mock(MetricCollector.class));
         when(testMetricCollector.collect()).thenReturn(mock(MetricCollection.class));
 
         AwsCredentialsIdentity credentialsIdentity = accessGrantsIdentityProvider.resolveIdentity(resolveIdentityRequest).join();
         Assertions.assertThat(credentialsIdentity.accessKeyId()).isEqualTo(TEST_ACCESS_KEY);
         Assertions.assertThat(credentialsIdentity.secretAccessKey()).isEqualTo(TEST_SECRET_KEY);
+        accessGrantsIdentityProvider.close();
         verify(testMetricPublisher, times(1)).publish(any());
+        verify(testMetricPublisher, never()).close();
     }
 
     @Test
@@ -376,17 +442,20 @@ public class S3AccessGrantsIdentityProviderTests {
         when(localS3ControlClientBuilder.region(Region.US_EAST_2)).thenReturn(localS3ControlClientBuilder);
         when(localS3ControlClientBuilder.overrideConfiguration(any(ClientOverrideConfiguration.class))).thenReturn(localS3ControlClientBuilder);
         when(localS3ControlClientBuilder.region(Region.US_EAST_2).build()).thenReturn(localS3ControlClient);
-        when(testCache.getDataAccess(any(), any(), any(), any(), any())).thenThrow(NullPointerException.class);
+        when(testCache.getDataAccess(any(), any(), any(), any(), any(), any(), any())).thenThrow(NullPointerException.class);
         when(localS3ControlClient.getDataAccess(any(GetDataAccessRequest.class))).thenReturn(CompletableFuture.supplyAsync(() -> GetDataAccessResponse.builder().build()).whenComplete((r,e) -> { throw S3ControlException.builder().statusCode(403).build(); }));
         when(credentialsProvider.resolveIdentity(any(ResolveIdentityRequest.class))).thenReturn(CompletableFuture.supplyAsync(() -> AwsCredentialsIdentity.builder().accessKeyId(TEST_ACCESS_KEY).secretAccessKey(TEST_SECRET_KEY).build()));
-        when(testCache.getAccessGrantsMetrics()).thenReturn(testMetricCollector);
+        when(testCache.reportAccessGrantsMetrics()).thenReturn(testMetricCollector);
+        when(testMetricCollector.createChild(any())).thenReturn(mock(MetricCollector.class));
         when(testMetricCollector.collect()).thenReturn(mock(MetricCollection.class));
 
         AwsCredentialsIdentity credentialsIdentity = accessGrantsIdentityProvider.resolveIdentity(resolveIdentityRequest).join();
 
         Assertions.assertThat(credentialsIdentity.accessKeyId()).isEqualTo(TEST_ACCESS_KEY);
         Assertions.assertThat(credentialsIdentity.secretAccessKey()).isEqualTo(TEST_SECRET_KEY);
+        accessGrantsIdentityProvider.close();
         verify(testMetricPublisher, times(1)).publish(any());
+        verify(testMetricPublisher, never()).close();
     }
 
 
@@ -410,16 +479,19 @@ public class S3AccessGrantsIdentityProviderTests {
         when(localS3ControlClientBuilder.region(Region.US_EAST_2)).thenReturn(localS3ControlClientBuilder);
         when(localS3ControlClientBuilder.overrideConfiguration(any(ClientOverrideConfiguration.class))).thenReturn(localS3ControlClientBuilder);
         when(localS3ControlClientBuilder.region(Region.US_EAST_2).build()).thenReturn(localS3ControlClient);
-        when(testCache.getDataAccess(any(), any(), any(), any(), any())).thenReturn(cacheResponse);
+        when(testCache.getDataAccess(any(), any(), any(), any(), any(), any(), any())).thenReturn(cacheResponse);
         when(credentialsProvider.resolveIdentity(any(ResolveIdentityRequest.class))).thenReturn(CompletableFuture.supplyAsync(() -> {
             return credentials;
         }));
-        when(testCache.getAccessGrantsMetrics()).thenReturn(testMetricCollector);
+        when(testCache.reportAccessGrantsMetrics()).thenReturn(testMetricCollector);
+        when(testMetricCollector.createChild(any())).thenReturn(mock(MetricCollector.class));
         when(testMetricCollector.collect()).thenReturn(mock(MetricCollection.class));
 
         Assertions.assertThatNoException().isThrownBy(() -> accessGrantsIdentityProvider.resolveIdentity(resolveIdentityRequest).join());
-        verify(testCache, times(1)).getDataAccess(any(), any(), any(), any(), any());
+        verify(testCache, times(1)).getDataAccess(any(), any(), any(), any(), any(), any(), any());
+        accessGrantsIdentityProvider.close();
         verify(testMetricPublisher, times(1)).publish(any());
+        verify(testMetricPublisher, never()).close();
     }
 
     @Test
@@ -452,7 +524,9 @@ public class S3AccessGrantsIdentityProviderTests {
         AwsCredentialsIdentity credentialsIdentity = accessGrantsIdentityProvider.resolveIdentity(resolveIdentityRequest).join();
         Assertions.assertThat(credentialsIdentity.accessKeyId()).isEqualTo(credentials.accessKeyId());
         Assertions.assertThat(credentialsIdentity.secretAccessKey()).isEqualTo(credentials.secretAccessKey());
+        accessGrantsIdentityProvider.close();
         verify(testMetricPublisher, times(1)).publish(any());
+        verify(testMetricPublisher, never()).close();
     }
 
     @Test
@@ -465,7 +539,7 @@ public class S3AccessGrantsIdentityProviderTests {
                 .builder()
                 .build();
         MetricPublisher testMetricPublisher = mock(MetricPublisher.class);
-        S3AccessGrantsIdentityProvider accessGrantsIdentityProvider = new S3AccessGrantsIdentityProvider(credentialsProvider, stsAsyncClient, TEST_PRIVILEGE, TEST_CACHE_ENABLED, localS3ControlClientBuilder, testCache, TEST_FALLBACK_ENABLED, testMetricPublisher, clientsCache, overrideConfig);
+        S3AccessGrantsIdentityProvider accessGrantsIdentityProvider = new S3AccessGrantsIdentityProvider(credentialsProvider, stsAsyncClient, TEST_PRIVILEGE, TEST_CACHE_ENABLED, localS3ControlClientBuilder, testCache, TEST_FALLBACK_ENABLED, testMetricPublisher, new ConcurrentHashMap<>(), overrideConfig);
         ResolveIdentityRequest resolveIdentityRequest = mock(ResolveIdentityRequest.class);
         AwsCredentialsIdentity credentials = AwsCredentialsIdentity.builder().accessKeyId(TEST_ACCESS_KEY).secretAccessKey(TEST_SECRET_KEY).build();
         CompletableFuture<GetAccessGrantsInstanceForPrefixResponse>  getAccessGrantsInstanceForPrefixResponse = CompletableFuture.supplyAsync(() -> GetAccessGrantsInstanceForPrefixResponse.builder()
@@ -483,7 +557,9 @@ public class S3AccessGrantsIdentityProviderTests {
         when(credentialsProvider.resolveIdentity(any(ResolveIdentityRequest.class))).thenReturn(CompletableFuture.supplyAsync(() -> credentials));
 
         Assertions.assertThatThrownBy(() -> accessGrantsIdentityProvider.resolveIdentity(resolveIdentityRequest).join()).isInstanceOf(CompletionException.class).getCause().isInstanceOf(SdkServiceException.class).getCause().isInstanceOf(InvalidRequestException.class);
+        accessGrantsIdentityProvider.close();
         verify(testMetricPublisher, times(1)).publish(any());
+        verify(testMetricPublisher, never()).close();
     }
 
     @Test
@@ -537,23 +613,23 @@ public class S3AccessGrantsIdentityProviderTests {
         when(localS3ControlClientBuilder.region(Region.US_EAST_2)).thenReturn(localS3ControlClientBuilder);
         when(localS3ControlClientBuilder.overrideConfiguration(any(ClientOverrideConfiguration.class))).thenReturn(localS3ControlClientBuilder);
         when(localS3ControlClientBuilder.region(Region.US_EAST_2).build()).thenReturn(localS3ControlClient);
-        when(testCache.getDataAccess(any(), any(), any(), any(), any())).thenReturn(cacheResponse);
+        when(testCache.getDataAccess(any(), any(), any(), any(), any(), any(), any())).thenReturn(cacheResponse);
         when(credentialsProvider.resolveIdentity(any(ResolveIdentityRequest.class))).thenReturn(CompletableFuture.supplyAsync(() -> {
             return credentials;
         }));
-        when(testCache.getAccessGrantsMetrics()).thenReturn(testMetricCollector);
+        when(testCache.reportAccessGrantsMetrics()).thenReturn(testMetricCollector);
+        when(testMetricCollector.createChild(any())).thenReturn(mock(MetricCollector.class));
         when(testMetricCollector.collect()).thenReturn(mock(MetricCollection.class));
 
         Assertions.assertThatNoException().isThrownBy(() -> accessGrantsIdentityProvider.resolveIdentity(resolveIdentityRequest).join());
 
-        verify(mockClientsCache, times(1)).containsKey(any());
-        verify(mockClientsCache, times(1)).get(any()); // Should not invoke get but containsKey invokes get internally
-        verify(mockClientsCache, times(1)).put(any(), any()); // Should have called containsKey but no client in the hashMap for the region, so PUT should be invoked
+        verify(mockClientsCache, times(1)).get(any());
+        verify(mockClientsCache, times(1)).computeIfAbsent(any(), any()); // No client in the hashMap for the region, so one is built
 
         Assertions.assertThatNoException().isThrownBy(() -> accessGrantsIdentityProvider.resolveIdentity(resolveIdentityRequest).join());
-        verify(mockClientsCache, times(2)).containsKey(any());
-        verify(mockClientsCache, times(3)).get(any()); // verifying if the
-        verify(mockClientsCache, times(1)).put(any(), any()); // Client already in the cache, so no PUT calls are expected for the second request.
+        verify(mockClientsCache, times(2)).get(any());
+        verify(mockClientsCache, times(1)).computeIfAbsent(any(), any()); // Client already in the cache, so it is not built again for the second request.
+        verify(mockClientsCache, never()).put(any(), any());
     }
 
     @Test
@@ -563,7 +639,7 @@ public class S3AccessGrantsIdentityProviderTests {
         String expectedAccountId = "123456789012";
         
         StsAsyncClient localStsClient = mock(StsAsyncClient.class);
-        when(localStsClient.getCallerIdentity()).thenReturn(
+        when(localStsClient.getCallerIdentity(any(GetCallerIdentityRequest.class))).thenReturn(
             CompletableFuture.completedFuture(GetCallerIdentityResponse.builder().account(expectedAccountId).build())
         );
         
@@ -578,7 +654,7 @@ public class S3AccessGrantsIdentityProviderTests {
         
         for (int i = 0; i < threadCount; i++) {
             futures[i] = CompletableFuture.supplyAsync(() -> 
-                testProvider.getCallerAccountID(CompletableFuture.completedFuture(testCredentials))
+                testProvider.getCallerAccountID(CompletableFuture.completedFuture(testCredentials)).join()
             );
         }
         
@@ -586,11 +662,221 @@ public class S3AccessGrantsIdentityProviderTests {
         CompletableFuture.allOf(futures).join();
         
         // Then - verify only one STS call was made
-        verify(localStsClient, times(1)).getCallerIdentity();
+        verify(localStsClient, times(1)).getCallerIdentity(any(GetCallerIdentityRequest.class));
         
         // Verify all threads got the same account ID
         for (int i = 0; i < threadCount; i++) {
             assertThat(futures[i].join()).isEqualTo(expectedAccountId);
         }
     }
-}
\ No newline at end of file
+    @Test
+    public void call_access_grants_identity_provider_with_principal_keyed_cache() throws Exception {
+        String callerArn = "arn:aws:sts::" + TEST_ACCOUNT + ":assumed-role/test-role/session";
+        StsAsyncClient localStsClient = mock(StsAsyncClient.class);
+        when(localStsClient.getCallerIdentity(any(GetCallerIdentityRequest.class))).thenReturn(CompletableFuture.completedFuture(
+            GetCallerIdentityResponse.builder().account(TEST_ACCOUNT).arn(callerArn).build()));
+        AwsCredentialsIdentity credentials = AwsCredentialsIdentity.builder().accessKeyId(TEST_ACCESS_KEY).secretAccessKey(TEST_SECRET_KEY).build();
+        when(cache.getDataAccess(any(), any(), any(), any(), any(), any(), any())).thenReturn(CompletableFuture.completedFuture(credentials));
+        when(clientsCache.containsKey(Region.US_EAST_2)).thenReturn(true);
+        S3AccessGrantsIdentityProvider accessGrantsIdentityProvider = S3AccessGrantsIdentityProvider.builder().credentialsProvider(credentialsProvider).stsAsyncClient(localStsClient).privilege(TEST_PRIVILEGE)
+                .isCacheEnabled(TEST_CACHE_ENABLED).s3ControlAsyncClientBuilder(s3ControlAsyncClientBuilder).cache(cache)
+                .enableFallback(TEST_FALLBACK_ENABLED).metricsPublisher(metricsPublisher).clientsCache(clientsCache).overrideConfig(overrideConfig)
+                .enablePrincipalKeyedCache(true).build();
+
+        Assertions.assertThat(accessGrantsIdentityProvider.resolveIdentity(resolveIdentityRequest).join()).isEqualTo(credentials);
+        verify(cache, times(1)).getDataAccess(any(), any(), any(), any(), Mockito.eq(callerArn), any(), Mockito.eq(Region.US_EAST_2.id()));
+        verify(cache, never()).getDataAccess(any(), any(), any(), any(), Mockito.isNull(), any(), any());
+    }
+
+    @Test
+    public void call_resolve_identity_does_not_block_while_credentials_and_caller_account_are_pending() throws Exception {
+        // Given
+        IdentityProvider credentialsProvider = mock(IdentityProvider.class);
+        StsAsyncClient localStsClient = mock(StsAsyncClient.class);
+        CompletableFuture<AwsCredentialsIdentity> userCredentials = new CompletableFuture<>();
+        CompletableFuture<GetCallerIdentityResponse> callerIdentityResponse = new CompletableFuture<>();
+        AwsCredentialsIdentity credentials = AwsCredentialsIdentity.builder().accessKeyId(TEST_ACCESS_KEY).secretAccessKey(TEST_SECRET_KEY).build();
+        when(credentialsProvider.resolveIdentity(any(ResolveIdentityRequest.class))).thenReturn(userCredentials);
+        when(localStsClient.getCallerIdentity(any(GetCallerIdentityRequest.class))).thenReturn(callerIdentityResponse);
+        when(cache.getDataAccess(any(), any(), any(), any(), any(), any(), any())).thenReturn(CompletableFuture.completedFuture(credentials));
+        when(clientsCache.containsKey(Region.US_EAST_2)).thenReturn(true);
+        S3AccessGrantsIdentityProvider accessGrantsIdentityProvider = new S3AccessGrantsIdentityProvider(credentialsProvider, localStsClient, TEST_PRIVILEGE, TEST_CACHE_ENABLED, s3ControlAsyncClientBuilder, cache, TEST_FALLBACK_ENABLED, null, clientsCache, overrideConfig);
+        // When
+        CompletableFuture<? extends AwsCredentialsIdentity> identity = accessGrantsIdentityProvider.resolveIdentity(resolveIdentityRequest);
+        // Then
+        Assertions.assertThat(identity.isDone()).isFalse();
+        verify(localStsClient, never()).getCallerIdentity(any(GetCallerIdentityRequest.class));
+        // When
+        userCredentials.complete(credentials);
+        // Then
+        Assertions.assertThat(identity.isDone()).isFalse();
+        verify(localStsClient, times(1)).getCallerIdentity(any(GetCallerIdentityRequest.class));
+        // When
+        callerIdentityResponse.complete(GetCallerIdentityResponse.builder().account(TEST_ACCOUNT).build());
+        // Then
+        Assertions.assertThat(identity.join()).isEqualTo(credentials);
+        verify(cache, times(1)).getDataAccess(any(), any(), any(), Mockito.eq(TEST_ACCOUNT), any(), any(), any());
+    }
+
+    @Test
+    public void getCallerAccountID_doesNotCacheFailures() {
+        // Given
+        StsAsyncClient localStsClient = mock(StsAsyncClient.class);
+        CompletableFuture<GetCallerIdentityResponse> failedResponse = new CompletableFuture<>();
+        failedResponse.completeExceptionally(SdkServiceException.builder().statusCode(503).build());
+        when(localStsClient.getCallerIdentity(any(GetCallerIdentityRequest.class))).thenReturn(failedResponse,
+            CompletableFuture.completedFuture(GetCallerIdentityResponse.builder().account(TEST_ACCOUNT).build()));
+        S3AccessGrantsIdentityProvider accessGrantsIdentityProvider = new S3AccessGrantsIdentityProvider(credentialsProvider, localStsClient, TEST_PRIVILEGE, TEST_CACHE_ENABLED, s3ControlAsyncClientBuilder, cache, TEST_FALLBACK_ENABLED, null, clientsCache, overrideConfig);
+        CompletableFuture<AwsCredentialsIdentity> credentials = CompletableFuture.completedFuture(AwsBasicCredentials.create("accessKey", "secretKey"));
+        // Then
+        Assertions.assertThatThrownBy(() -> accessGrantsIdentityProvider.getCallerAccountID(credentials).join())
+                  .hasCauseInstanceOf(SdkServiceException.class);
+        Assertions.assertThat(accessGrantsIdentityProvider.getCallerAccountID(credentials).join()).isEqualTo(TEST_ACCOUNT);
+        verify(localStsClient, times(2)).getCallerIdentity(any(GetCallerIdentityRequest.class));
+    }
+
+    @Test
+    public void getCallerAccountID_cachesTheAccountOfEveryIdentity() {
+        // Given
+        StsAsyncClient localStsClient = mock(StsAsyncClient.class);
+        when(localStsClient.getCallerIdentity(any(GetCallerIdentityRequest.class))).thenReturn(
+            CompletableFuture.completedFuture(GetCallerIdentityResponse.builder().account(TEST_ACCOUNT).build()));
+        S3AccessGrantsIdentityProvider accessGrantsIdentityProvider = new S3AccessGrantsIdentityProvider(credentialsProvider, localStsClient, TEST_PRIVILEGE, TEST_CACHE_ENABLED, s3ControlAsyncClientBuilder, cache, TEST_FALLBACK_ENABLED, null, clientsCache, overrideConfig);
+        CompletableFuture<AwsCredentialsIdentity> tenant1 = CompletableFuture.completedFuture(AwsBasicCredentials.create("accessKey1", "secretKey1"));
+        CompletableFuture<AwsCredentialsIdentity> tenant2 = CompletableFuture.completedFuture(AwsBasicCredentials.create("accessKey2", "secretKey2"));
+        // When requests alternate between identities
+        for (int i = 0; i < 3; i++) {
+            accessGrantsIdentityProvider.getCallerAccountID(tenant1).join();
+            accessGrantsIdentityProvider.getCallerAccountID(tenant2).join();
+        }
+        // Then
+        verify(localStsClient, times(2)).getCallerIdentity(any(GetCallerIdentityRequest.class));
+        Assertions.assertThat(accessGrantsIdentityProvider.getCallerIdentityCacheStats().missCount()).isEqualTo(2);
+        Assertions.assertThat(accessGrantsIdentityProvider.getCallerIdentityCacheStats().hitCount()).isEqualTo(4);
+        MetricCollector collector = MetricCollector.create("test");
+        MetricsCollector.getMetricsForCallerAccountCache(accessGrantsIdentityProvider.getCallerIdentityCacheStats(), collector);
+        Assertions.assertThat(collector.collect().stream().map(record -> record.metric().name()))
+                  .contains("CallerAccountCacheHitCount", "CallerAccountCacheMissCount");
+    }
+
+    @Test
+    public void getCallerAccountID_sendsTheRequesterCredentialsToSts() {
+        // Given
+        StsAsyncClient localStsClient = mock(StsAsyncClient.class);
+        when(localStsClient.getCallerIdentity(any(GetCallerIdentityRequest.class))).thenReturn(
+            CompletableFuture.completedFuture(GetCallerIdentityResponse.builder().account(TEST_ACCOUNT).build()));
+        S3AccessGrantsIdentityProvider accessGrantsIdentityProvider = new S3AccessGrantsIdentityProvider(credentialsProvider, localStsClient, TEST_PRIVILEGE, TEST_CACHE_ENABLED, s3ControlAsyncClientBuilder, cache, TEST_FALLBACK_ENABLED, null, clientsCache, overrideConfig);
+        AwsSessionCredentials requesterCredentials = AwsSessionCredentials.create("accessKey", "secretKey", "sessionToken1");
+        // When
+        accessGrantsIdentityProvider.getCallerAccountID(CompletableFuture.completedFuture(requesterCredentials)).join();
+        // Then
+        ArgumentCaptor<GetCallerIdentityRequest> request = ArgumentCaptor.forClass(GetCallerIdentityRequest.class);
+        verify(localStsClient, times(1)).getCallerIdentity(request.capture());
+        AwsCredentialsIdentity stsCredentials = request.getValue().overrideConfiguration().get()
+                                                       .credentialsIdentityProvider().get().resolveIdentity().join();
+        Assertions.assertThat(stsCredentials.accessKeyId()).isEqualTo("accessKey");
+        Assertions.assertThat(stsCredentials.secretAccessKey()).isEqualTo("secretKey");
+        // When the same access key is used again, the access key ID of temporary credentials being unique per session
+        accessGrantsIdentityProvider.getCallerAccountID(CompletableFuture.completedFuture(
+            AwsSessionCredentials.create("accessKey", "secretKey", "sessionToken1"))).join();
+        // Then
+        verify(localStsClient, times(1)).getCallerIdentity(any(GetCallerIdentityRequest.class));
+        // When
+        accessGrantsIdentityProvider.getCallerAccountID(CompletableFuture.completedFuture(
+            AwsSessionCredentials.create("otherAccessKey", "secretKey", "sessionToken2"))).join();
+        // Then
+        verify(localStsClient, times(2)).getCallerIdentity(any(GetCallerIdentityRequest.class));
+    }
+
+    @Test
+    public void call_access_grants_identity_provider_with_principal_keyed_cache_isolates_alternating_identities() {
+        // Given
+        AwsSessionCredentials tenant1 = AwsSessionCredentials.create("tenant1AccessKey", "tenant1SecretKey", "tenant1SessionToken");
+        AwsSessionCredentials tenant2 = AwsSessionCredentials.create("tenant2AccessKey", "tenant2SecretKey", "tenant2SessionToken");
+        IdentityProvider alternatingProvider = mock(IdentityProvider.class);
+        when(alternatingProvider.resolveIdentity(any(ResolveIdentityRequest.class))).thenReturn(
+            CompletableFuture.completedFuture(tenant1), CompletableFuture.completedFuture(tenant2),
+            CompletableFuture.completedFuture(tenant1), CompletableFuture.completedFuture(tenant2));
+        StsAsyncClient localStsClient = mock(StsAsyncClient.class);
+        when(localStsClient.getCallerIdentity(any(GetCallerIdentityRequest.class))).thenAnswer(invocation -> {
+            String accessKeyId = requestCredentials(invocation.<GetCallerIdentityRequest>getArgument(0).overrideConfiguration().get()
+                                                              .credentialsIdentityProvider().get()).accessKeyId();
+            return CompletableFuture.completedFuture(GetCallerIdentityResponse.builder().account(TEST_ACCOUNT)
+                                                                              .arn("arn:aws:sts::" + TEST_ACCOUNT + ":assumed-role/" + accessKeyId + "/session")
+                                                                              .build());
+        });
+        // Each identity is granted its own credentials for the whole bucket.
+        S3ControlAsyncClient localS3ControlClient = mock(S3ControlAsyncClient.class);
+        when(localS3ControlClient.getDataAccess(any(GetDataAccessRequest.class))).thenAnswer(invocation -> {
+            String accessKeyId = requestCredentials(invocation.<GetDataAccessRequest>getArgument(0).overrideConfiguration().get()
+                                                              .credentialsIdentityProvider().get()).accessKeyId();
+            return CompletableFuture.completedFuture(GetDataAccessResponse.builder().matchedGrantTarget("s3://test-bucket/*")
+                                                                          .credentials(Credentials.builder()
+                                                                                                  .accessKeyId(accessKeyId + "Grant")
+                                                                                                  .secretAccessKey("grantSecretKey")
+                                                                                                  .sessionToken("grantSessionToken")
+                                                                                                  .expiration(Instant.now().plusSeconds(3600))
+                                                                                                  .build())
+                                                                          .build());
+        });
+        S3AccessGrantsCachedAccountIdResolver accountIdResolver = mock(S3AccessGrantsCachedAccountIdResolver.class);
+        when(accountIdResolver.resolveAsync(any(), any(), any())).thenReturn(CompletableFuture.completedFuture(TEST_ACCOUNT));
+        S3AccessGrantsCachedCredentialsProvider accessGrantsCache = S3AccessGrantsCachedCredentialsProviderImpl.builder()
+                                                                                                               .s3AccessGrantsCachedAccountIdResolver(accountIdResolver)
+                                                                                                               .buildWithAccountIdResolver();
+        ConcurrentHashMap<Region, S3ControlAsyncClient> localClientsCache = new ConcurrentHashMap<>();
+        localClientsCache.put(Region.US_EAST_2, localS3ControlClient);
+        S3AccessGrantsIdentityProvider accessGrantsIdentityProvider = S3AccessGrantsIdentityProvider.builder().credentialsProvider(alternatingProvider).stsAsyncClient(localStsClient).privilege(TEST_PRIVILEGE)
+                .isCacheEnabled(TEST_CACHE_ENABLED).s3ControlAsyncClientBuilder(s3ControlAsyncClientBuilder).cache(accessGrantsCache)
+                .enableFallback(TEST_FALLBACK_ENABLED).metricsPublisher(null).clientsCache(localClientsCache).overrideConfig(overrideConfig)
+                .enablePrincipalKeyedCache(true).build();
+        // When requests alternate between identities
+        for (int i = 0; i < 2; i++) {
+            // Then
+            Assertions.assertThat(accessGrantsIdentityProvider.resolveIdentity(resolveIdentityRequest).join().accessKeyId())
+                      .isEqualTo("tenant1AccessKeyGrant");
+            Assertions.assertThat(accessGrantsIdentityProvider.resolveIdentity(resolveIdentityRequest).join().accessKeyId())
+                      .isEqualTo("tenant2AccessKeyGrant");
+        }
+        verify(localS3ControlClient, times(2)).getDataAccess(any(GetDataAccessRequest.class));
+    }
+
+    @Test
+    public void call_resolve_identity_builds_one_client_per_region_for_concurrent_requests() throws Exception {
+        // Given
+        S3ControlAsyncClientBuilder localS3ControlClientBuilder = mock(S3ControlAsyncClientBuilder.class);
+        S3ControlAsyncClient localS3ControlClient = mock(S3ControlAsyncClient.class);
+        when(localS3ControlClientBuilder.region(any(Region.class))).thenReturn(localS3ControlClientBuilder);
+        when(localS3ControlClientBuilder.overrideConfiguration(any(ClientOverrideConfiguration.class))).thenReturn(localS3ControlClientBuilder);
+        when(localS3ControlClientBuilder.build()).thenAnswer(invocation -> {
+            Thread.sleep(100);
+            return localS3ControlClient;
+        });
+        ConcurrentHashMap<Region, S3ControlAsyncClient> localClientsCache = new ConcurrentHashMap<>();
+        S3AccessGrantsIdentityProvider accessGrantsIdentityProvider = new S3AccessGrantsIdentityProvider(credentialsProvider, stsAsyncClient, TEST_PRIVILEGE, TEST_CACHE_ENABLED, localS3ControlClientBuilder, cache, TEST_FALLBACK_ENABLED, null, localClientsCache, overrideConfig);
+        int threadCount = 4;
+        CountDownLatch startLatch = new CountDownLatch(1);
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            futures[i] = CompletableFuture.runAsync(() -> {
+                try {
+                    startLatch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                accessGrantsIdentityProvider.resolveIdentity(resolveIdentityRequest).join();
+            });
+        }
+        // When
+        startLatch.countDown();
+        CompletableFuture.allOf(futures).join();
+        // Then
+        verify(localS3ControlClientBuilder, times(1)).build();
+        Assertions.assertThat(localClientsCache).containsEntry(Region.US_EAST_2, localS3ControlClient);
+    }
+
+    private static AwsCredentialsIdentity requestCredentials(IdentityProvider<? extends AwsCredentialsIdentity> credentialsProvider) {
+        return credentialsProvider.resolveIdentity().join();
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.awssdk.s3accessgrants.plugin;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricPublisher;
+import software.amazon.awssdk.utils.SdkAutoCloseable;
+
+public class S3AccessGrantsMetricsReporterTests {
+
+    @Test
+    public void metrics_reporter_publishes_on_every_interval_once_started() {
+        // Given
+        MetricPublisher metricPublisher = mock(MetricPublisher.class);
+        AtomicInteger collections = new AtomicInteger();
+        S3AccessGrantsMetricsReporter reporter = new S3AccessGrantsMetricsReporter(() -> {
+            collections.incrementAndGet();
+            return mock(MetricCollection.class);
+        }, 1);
+        reporter.addPublisher(metricPublisher);
+        // Then
+        verify(metricPublisher, never()).publish(any());
+        // When
+        reporter.start();
+        reporter.start();
+        // Then
+        verify(metricPublisher, timeout(5_000).atLeast(1)).publish(any());
+        reporter.close();
+        Assertions.assertThat(collections.get()).isGreaterThanOrEqualTo(2);
+        verify(metricPublisher, never()).close();
+    }
+
+    @Test
+    public void metrics_reporter_publishes_the_last_interval_when_closed() {
+        // Given
+        MetricPublisher metricPublisher = mock(MetricPublisher.class);
+        S3AccessGrantsMetricsReporter reporter = new S3AccessGrantsMetricsReporter(() -> mock(MetricCollection.class), 3_600);
+        reporter.addPublisher(metricPublisher);
+        reporter.start();
+        // When
+        reporter.close();
+        reporter.close();
+        reporter.start();
+        // Then
+        verify(metricPublisher, times(1)).publish(any());
+        verify(metricPublisher, never()).close();
+    }
+
+    @Test
+    public void metrics_reporter_does_not_publish_when_never_started() {
+        // Given
+        MetricPublisher metricPublisher = mock(MetricPublisher.class);
+        S3AccessGrantsMetricsReporter reporter = new S3AccessGrantsMetricsReporter(() -> mock(MetricCollection.class), 3_600);
+        reporter.addPublisher(metricPublisher);
+        // When
+        reporter.close();
+        // Then
+        verify(metricPublisher, never()).publish(any());
+    }
+
+    @Test
+    public void metrics_reporter_ignores_publisher_failures() {
+        // Given
+        MetricPublisher metricPublisher = mock(MetricPublisher.class);
+        doThrow(new IllegalStateException("publisher failure")).when(metricPublisher).publish(any());
+        S3AccessGrantsMetricsReporter reporter = new S3AccessGrantsMetricsReporter(() -> mock(MetricCollection.class), 3_600);
+        reporter.addPublisher(metricPublisher);
+        // Then
+        Assertions.assertThatNoException().isThrownBy(reporter::publish);
+        Assertions.assertThatNoException().isThrownBy(reporter::publish);
+        verify(metricPublisher, times(2)).publish(any());
+    }
+
+    @Test
+    public void metrics_reporter_collects_the_metrics_once_for_every_publisher() {
+        // Given
+        MetricPublisher firstPublisher = mock(MetricPublisher.class);
+        MetricPublisher secondPublisher = mock(MetricPublisher.class);
+        MetricCollection metrics = mock(MetricCollection.class);
+        AtomicInteger collections = new AtomicInteger();
+        S3AccessGrantsMetricsReporter reporter = new S3AccessGrantsMetricsReporter(() -> {
+            collections.incrementAndGet();
+            return metrics;
+        }, 3_600);
+        reporter.addPublisher(firstPublisher);
+        reporter.addPublisher(secondPublisher);
+        reporter.addPublisher(firstPublisher);
+        // When
+        reporter.publish();
+        // Then
+        Assertions.assertThat(collections.get()).isEqualTo(1);
+        verify(firstPublisher, times(1)).publish(metrics);
+        verify(secondPublisher, times(1)).publish(metrics);
+    }
+
+    @Test
+    public void metrics_reporter_removes_a_publisher_once_every_registration_is_closed() {
+        // Given
+        MetricPublisher metricPublisher = mock(MetricPublisher.class);
+        S3AccessGrantsMetricsReporter reporter = new S3AccessGrantsMetricsReporter(() -> mock(MetricCollection.class), 3_600);
+        SdkAutoCloseable firstRegistration = reporter.addPublisher(metricPublisher);
+        SdkAutoCloseable secondRegistration = reporter.addPublisher(metricPublisher);
+        // When
+        firstRegistration.close();
+        firstRegistration.close();
+        reporter.publish();
+        // Then
+        verify(metricPublisher, times(1)).publish(any());
+        // When
+        secondRegistration.close();
+        reporter.publish();
+        // Then
+        verify(metricPublisher, times(1)).publish(any());
+    }
+}
@@ -15,15 +15,57 @@
 
 package software.amazon.awssdk.s3accessgrants.plugin;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.assertj.core.api.Assertions;
 import software.amazon.awssdk.core.SdkServiceClientConfiguration;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
 import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.identity.spi.AwsCredentialsIdentity;
+import software.amazon.awssdk.identity.spi.ResolveIdentityRequest;
+import software.amazon.awssdk.metrics.MetricPublisher;
 import software.amazon.awssdk.services.s3.S3ServiceClientConfiguration;
 import software.amazon.awssdk.services.s3.auth.scheme.S3AuthSchemeProvider;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3control.model.Permission;
+import software.amazon.awssdk.services.s3control.model.Privilege;
+import software.amazon.awssdk.services.s3control.model.S3ControlException;
+import software.amazon.awssdk.services.s3control.S3ControlAsyncClient;
+import software.amazon.awssdk.services.s3control.S3ControlAsyncClientBuilder;
+import software.amazon.awssdk.services.sts.StsAsyncClient;
+import software.amazon.awssdk.services.sts.model.GetCallerIdentityRequest;
+import software.amazon.awssdk.services.sts.model.GetCallerIdentityResponse;
+import software.amazon.awssdk.s3accessgrants.cache.S3AccessGrantsCachedCredentialsProvider;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.BUCKET_LOCATION_PROPERTY;
+import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.BUCKET_NAME_PROPERTY;
+import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.PERMISSION_PROPERTY;
+import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.PREFIX_PROPERTY;
+import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.DEFAULT_METRICS_PUBLISHING_INTERVAL_SECONDS;
+import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.MAX_METRICS_PUBLISHING_INTERVAL_SECONDS;
 
 public class S3AccessGrantsPluginTests {
 
@@ -51,6 +93,52 @@ public class S3AccessGrantsPluginTests {
         Assertions.assertThat(accessGrantsPlugin.enableFallback()).isTrue();
     }
 
+    @Test
+    public void create_access_grants_plugin_with_executor_specified() {
+        Executor executor = Runnable::run;
+        S3AccessGrantsPlugin accessGrantsPlugin = S3AccessGrantsPlugin.builder().executor(executor).build();
+        Assertions.assertThat(accessGrantsPlugin.executor()).isSameAs(executor);
+        Assertions.assertThat(((S3AccessGrantsPlugin) accessGrantsPlugin.toBuilder().build()).executor()).isSameAs(executor);
+        Assertions.assertThat(S3AccessGrantsPlugin.builder().build().executor()).isNull();
+    }
+
+    @Test
+    public void create_access_grants_plugin_with_resolver_snapshot_file_specified() {
+        Path snapshotFile = Paths.get("s3-access-grants-snapshot");
+        S3AccessGrantsPlugin accessGrantsPlugin = S3AccessGrantsPlugin.builder().resolverSnapshotFile(snapshotFile).build();
+        Assertions.assertThat(accessGrantsPlugin.resolverSnapshotFile()).isEqualTo(snapshotFile);
+        Assertions.assertThat(((S3AccessGrantsPlugin) accessGrantsPlugin.toBuilder().build()).resolverSnapshotFile()).isEqualTo(snapshotFile);
+        Assertions.assertThat(S3AccessGrantsPlugin.builder().build().resolverSnapshotFile()).isNull();
+    }
+
+    @Test
+    public void create_access_grants_plugin_with_resolver_max_stale_seconds_specified() {
+        S3AccessGrantsPlugin accessGrantsPlugin = S3AccessGrantsPlugin.builder().resolverMaxStaleSeconds(600).build();
+        Assertions.assertThat(accessGrantsPlugin.resolverMaxStaleSeconds()).isEqualTo(600);
+        Assertions.assertThat(((S3AccessGrantsPlugin) accessGrantsPlugin.toBuilder().build()).resolverMaxStaleSeconds()).isEqualTo(600);
+        Assertions.assertThat(S3AccessGrantsPlugin.builder().build().resolverMaxStaleSeconds()).isEqualTo(0);
+        Assertions.assertThatThrownBy(() -> S3AccessGrantsPlugin.builder().resolverMaxStaleSeconds(-1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void create_access_grants_plugin_with_shared_runtime_specified() {
+        S3AccessGrantsSharedRuntime runtime = S3AccessGrantsSharedRuntime.create();
+        S3AccessGrantsPlugin accessGrantsPlugin = (S3AccessGrantsPlugin) S3AccessGrantsPlugin.builder().sharedRuntime(runtime).build();
+        Assertions.assertThat(accessGrantsPlugin.sharedRuntime()).isSameAs(runtime);
+        Assertions.assertThat(((S3AccessGrantsPlugin) accessGrantsPlugin.toBuilder().build()).sharedRuntime()).isSameAs(runtime);
+        Assertions.assertThat(S3AccessGrantsPlugin.builder().build().sharedRuntime()).isNull();
+    }
+
+    @Test
+    public void create_access_grants_plugin_with_metrics_publishing_interval_specified() {
+        S3AccessGrantsPlugin accessGrantsPlugin = (S3AccessGrantsPlugin) S3AccessGrantsPlugin.builder().metricsPublishingIntervalSeconds(10).build();
+        Assertions.assertThat(accessGrantsPlugin.metricsPublishingIntervalSeconds()).isEqualTo(10);
+        Assertions.assertThat(((S3AccessGrantsPlugin) accessGrantsPlugin.toBuilder().build()).metricsPublishingIntervalSeconds()).isEqualTo(10);
+        Assertions.assertThat(S3AccessGrantsPlugin.builder().build().metricsPublishingIntervalSeconds()).isEqualTo(DEFAULT_METRICS_PUBLISHING_INTERVAL_SECONDS);
+        Assertions.assertThatThrownBy(() -> S3AccessGrantsPlugin.builder().metricsPublishingIntervalSeconds(0)).isInstanceOf(IllegalArgumentException.class);
+        Assertions.assertThatThrownBy(() -> S3AccessGrantsPlugin.builder().metricsPublishingIntervalSeconds(MAX_METRICS_PUBLISHING_INTERVAL_SECONDS + 1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
     @Test
     public void create_access_grants_rebuild_plugin_from_existing_plugin() {
         S3AccessGrantsPlugin accessGrantsPlugin = S3AccessGrantsPlugin.builder().build();
@@ -91,6 +179,130 @@ public class S3AccessGrantsPluginTests {
 
     }
 
+    @Test
+    public void call_configure_client_reuses_the_clients_of_the_plugin_and_closes_them_on_close() {
+        // Given
+        S3AccessGrantsPlugin accessGrantsPlugin = S3AccessGrantsPlugin.builder().build();
+        DefaultCredentialsProvider credentialsProvider = DefaultCredentialsProvider.create();
+        S3AccessGrantsSharedRuntime runtime = accessGrantsPlugin.runtime();
+        // When
+        accessGrantsPlugin.configureClient(S3ServiceClientConfiguration.builder()
+                .authSchemeProvider(S3AuthSchemeProvider.defaultProvider())
+                .credentialsProvider(credentialsProvider)
+                .region(Region.US_EAST_2));
+        Object stsClient = runtime.component("StsAsyncClient", credentialsProvider, Region.US_EAST_2, () -> null);
+        Object s3Client = runtime.component("S3Client", credentialsProvider, Region.US_EAST_2, () -> null);
+        accessGrantsPlugin.configureClient(S3ServiceClientConfiguration.builder()
+                .authSchemeProvider(S3AuthSchemeProvider.defaultProvider())
+                .credentialsProvider(credentialsProvider)
+                .region(Region.US_EAST_2));
+        // Then
+        Assertions.assertThat(stsClient).isNotNull();
+        Assertions.assertThat(s3Client).isNotNull();
+        Assertions.assertThat(runtime.component("StsAsyncClient", credentialsProvider, Region.US_EAST_2, Object::new)).isSameAs(stsClient);
+        Assertions.assertThat(runtime.component("S3Client", credentialsProvider, Region.US_EAST_2, Object::new)).isSameAs(s3Client);
+        // When
+        accessGrantsPlugin.close();
+        // Then
+        Assertions.assertThat(runtime.references()).isEqualTo(0);
+    }
+
+    @Test
+    public void call_configure_client_starts_one_resolver_snapshot_per_plugin_and_closes_it_on_close() throws Exception {
+        // Given
+        Path snapshotFile = Files.createTempDirectory("s3-access-grants").resolve("snapshot");
+        S3AccessGrantsPlugin accessGrantsPlugin = S3AccessGrantsPlugin.builder().resolverSnapshotFile(snapshotFile).build();
+        DefaultCredentialsProvider credentialsProvider = DefaultCredentialsProvider.create();
+        S3AccessGrantsSharedRuntime runtime = accessGrantsPlugin.runtime();
+        // When
+        accessGrantsPlugin.configureClient(S3ServiceClientConfiguration.builder()
+                .authSchemeProvider(S3AuthSchemeProvider.defaultProvider())
+                .credentialsProvider(credentialsProvider)
+                .region(Region.US_EAST_2));
+        Object snapshot = runtime.component("ResolverSnapshot", () -> null);
+        Object bucketRegionResolver = runtime.component("BucketRegionResolver", credentialsProvider, Region.US_EAST_2, () -> null);
+        accessGrantsPlugin.configureClient(S3ServiceClientConfiguration.builder()
+                .authSchemeProvider(S3AuthSchemeProvider.defaultProvider())
+                .credentialsProvider(credentialsProvider)
+                .region(Region.US_WEST_2));
+        // Then
+        Assertions.assertThat(snapshot).isNotNull();
+        Assertions.assertThat(bucketRegionResolver).isNotNull();
+        Assertions.assertThat(runtime.component("ResolverSnapshot", Object::new)).isSameAs(snapshot);
+        Object otherBucketRegionResolver = runtime.component("BucketRegionResolver", credentialsProvider, Region.US_WEST_2, () -> null);
+        Assertions.assertThat(otherBucketRegionResolver).isNotNull().isNotSameAs(bucketRegionResolver);
+        Assertions.assertThat(runtime.<Object>components("BucketRegionResolver")).hasSize(2);
+        Assertions.assertThat(Files.exists(snapshotFile)).isFalse();
+        // When
+        accessGrantsPlugin.close();
+        // Then the snapshot is written one last time
+        Assertions.assertThat(Files.exists(snapshotFile)).isTrue();
+    }
+
+    @Test
+    public void call_configure_client_publishes_the_metrics_of_every_s3_client_through_one_reporter() {
+        // Given
+        S3AccessGrantsPlugin accessGrantsPlugin = S3AccessGrantsPlugin.builder().build();
+        MetricPublisher metricPublisher = mock(MetricPublisher.class);
+        S3ServiceClientConfiguration.Builder firstConfiguration = S3ServiceClientConfiguration.builder()
+                .authSchemeProvider(S3AuthSchemeProvider.defaultProvider())
+                .credentialsProvider(DefaultCredentialsProvider.create())
+                .overrideConfiguration(ClientOverrideConfiguration.builder().addMetricPublisher(metricPublisher).build())
+                .region(Region.US_EAST_2);
+        S3ServiceClientConfiguration.Builder secondConfiguration = S3ServiceClientConfiguration.builder()
+                .authSchemeProvider(S3AuthSchemeProvider.defaultProvider())
+                .credentialsProvider(DefaultCredentialsProvider.create())
+                .overrideConfiguration(ClientOverrideConfiguration.builder().addMetricPublisher(metricPublisher).build())
+                .region(Region.US_WEST_2);
+        // When
+        accessGrantsPlugin.configureClient(firstConfiguration);
+        accessGrantsPlugin.configureClient(secondConfiguration);
+        S3AccessGrantsIdentityProvider firstIdentityProvider = (S3AccessGrantsIdentityProvider) firstConfiguration.credentialsProvider();
+        S3AccessGrantsIdentityProvider secondIdentityProvider = (S3AccessGrantsIdentityProvider) secondConfiguration.credentialsProvider();
+        firstIdentityProvider.metricsReporter().start();
+        firstIdentityProvider.close();
+        // Then
+        Assertions.assertThat(secondIdentityProvider.metricsReporter()).isSameAs(firstIdentityProvider.metricsReporter());
+        Assertions.assertThat(secondIdentityProvider.stageMetrics()).isSameAs(firstIdentityProvider.stageMetrics());
+        verify(metricPublisher, never()).publish(any());
+        // When
+        accessGrantsPlugin.close();
+        // Then the last interval is published once
+        verify(metricPublisher, times(1)).publish(any());
+        verify(metricPublisher, never()).close();
+    }
+
+    @Test
+    public void closing_a_plugin_removes_its_metrics_publishers_from_the_shared_reporter() {
+        // Given
+        S3AccessGrantsSharedRuntime runtime = S3AccessGrantsSharedRuntime.create();
+        S3AccessGrantsPlugin firstPlugin = (S3AccessGrantsPlugin) S3AccessGrantsPlugin.builder().sharedRuntime(runtime).build();
+        S3AccessGrantsPlugin secondPlugin = (S3AccessGrantsPlugin) S3AccessGrantsPlugin.builder().sharedRuntime(runtime).build();
+        MetricPublisher firstPublisher = mock(MetricPublisher.class);
+        MetricPublisher secondPublisher = mock(MetricPublisher.class);
+        S3ServiceClientConfiguration.Builder firstConfiguration = S3ServiceClientConfiguration.builder()
+                .authSchemeProvider(S3AuthSchemeProvider.defaultProvider())
+                .credentialsProvider(DefaultCredentialsProvider.create())
+                .overrideConfiguration(ClientOverrideConfiguration.builder().addMetricPublisher(firstPublisher).build())
+                .region(Region.US_EAST_2);
+        S3ServiceClientConfiguration.Builder secondConfiguration = S3ServiceClientConfiguration.builder()
+                .authSchemeProvider(S3AuthSchemeProvider.defaultProvider())
+                .credentialsProvider(DefaultCredentialsProvider.create())
+                .overrideConfiguration(ClientOverrideConfiguration.builder().addMetricPublisher(secondPublisher).build())
+                .region(Region.US_EAST_2);
+        firstPlugin.configureClient(firstConfiguration);
+        secondPlugin.configureClient(secondConfiguration);
+        S3AccessGrantsMetricsReporter metricsReporter = ((S3AccessGrantsIdentityProvider) firstConfiguration.credentialsProvider()).metricsReporter();
+        // When
+        firstPlugin.close();
+        metricsReporter.publish();
+        // Then
+        verify(firstPublisher, never()).publish(any());
+        verify(secondPublisher, times(1)).publish(any());
+        secondPlugin.close();
+        runtime.close();
+    }
+
     @Test
     public void call_configure_client_with_invalid_auth_provider_in_config() {
 
@@ -156,4 +368,139 @@ public class S3AccessGrantsPluginTests {
     public void create_access_grants_plugin_with_not_permitted_userAgent_name() {
         Assertions.assertThatThrownBy(() -> S3AccessGrantsPlugin.builder().userAgent("testUserAgent/").build()).isInstanceOf(IllegalArgumentException.class);
     }
+
+    @Test
+    public void call_warm_up_before_configure_client() {
+        S3AccessGrantsPlugin accessGrantsPlugin = S3AccessGrantsPlugin.builder().build();
+        Assertions.assertThatThrownBy(() -> accessGrantsPlugin.warmUp(Collections.emptyList())).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void call_warm_up_with_invalid_params() {
+        S3AccessGrantsPlugin accessGrantsPlugin = S3AccessGrantsPlugin.builder().build();
+        accessGrantsPlugin.addWarmUpTarget(mock(S3AccessGrantsIdentityProvider.class), DefaultCredentialsProvider.create(), Region.US_EAST_2);
+        Assertions.assertThatThrownBy(() -> accessGrantsPlugin.warmUp(null)).isInstanceOf(IllegalArgumentException.class);
+        Assertions.assertThatThrownBy(() -> accessGrantsPlugin.warmUp(Collections.emptyList(), 0)).isInstanceOf(IllegalArgumentException.class);
+        Assertions.assertThatThrownBy(() -> S3AccessGrantsWarmUpEntry.builder().permission(Permission.READ).build()).isInstanceOf(IllegalArgumentException.class);
+        Assertions.assertThatThrownBy(() -> S3AccessGrantsWarmUpEntry.builder().bucket("test-bucket").build()).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void call_warm_up_loads_every_entry_with_bounded_concurrency() {
+        // Given
+        S3AccessGrantsPlugin accessGrantsPlugin = S3AccessGrantsPlugin.builder().executor(Runnable::run).build();
+        S3AccessGrantsIdentityProvider identityProvider = mock(S3AccessGrantsIdentityProvider.class);
+        accessGrantsPlugin.addWarmUpTarget(identityProvider, DefaultCredentialsProvider.create(), null);
+        List<CompletableFuture<AwsCredentialsIdentity>> pendingRequests = new CopyOnWriteArrayList<>();
+        List<ResolveIdentityRequest> requests = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            CompletableFuture<AwsCredentialsIdentity> credentials = new CompletableFuture<>();
+            requests.add(invocation.getArgument(0));
+            pendingRequests.add(credentials);
+            return credentials;
+        }).when(identityProvider).loadIdentity(any(ResolveIdentityRequest.class));
+        List<S3AccessGrantsWarmUpEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            entries.add(S3AccessGrantsWarmUpEntry.builder().bucket("test-bucket").prefix("prefix-" + i + "/*").permission(Permission.READ).build());
+        }
+        // When
+        CompletableFuture<Void> warmUp = accessGrantsPlugin.warmUp(entries, 2);
+        // Then
+        Assertions.assertThat(pendingRequests).hasSize(2);
+        Assertions.assertThat(warmUp).isNotDone();
+        Assertions.assertThat(requests.get(0).property(BUCKET_NAME_PROPERTY)).isEqualTo("test-bucket");
+        Assertions.assertThat(requests.get(0).property(BUCKET_LOCATION_PROPERTY)).isNull();
+        // When
+        for (int completed = 0; completed < entries.size(); completed++) {
+            pendingRequests.get(completed).complete(AwsCredentialsIdentity.create("accessKey", "secretKey"));
+            Assertions.assertThat(pendingRequests).hasSize(Math.min(entries.size(), completed + 3));
+        }
+        // Then
+        Assertions.assertThatNoException().isThrownBy(warmUp::join);
+        Assertions.assertThat(requests).extracting(request -> request.property(PREFIX_PROPERTY))
+                  .containsExactlyInAnyOrder("s3://test-bucket/prefix-0/*", "s3://test-bucket/prefix-1/*", "s3://test-bucket/prefix-2/*",
+                                             "s3://test-bucket/prefix-3/*", "s3://test-bucket/prefix-4/*");
+    }
+
+    @Test
+    public void call_warm_up_reports_failed_entries_after_every_entry_is_attempted() {
+        // Given
+        S3AccessGrantsPlugin accessGrantsPlugin = S3AccessGrantsPlugin.builder().build();
+        S3AccessGrantsIdentityProvider identityProvider = mock(S3AccessGrantsIdentityProvider.class);
+        accessGrantsPlugin.addWarmUpTarget(identityProvider, DefaultCredentialsProvider.create(), Region.US_EAST_2);
+        CompletableFuture<AwsCredentialsIdentity> failure = new CompletableFuture<>();
+        failure.completeExceptionally(SdkServiceException.builder().statusCode(403).message("Access denied").build());
+        doReturn(failure, CompletableFuture.completedFuture(AwsCredentialsIdentity.create("accessKey", "secretKey")))
+            .when(identityProvider).loadIdentity(any(ResolveIdentityRequest.class));
+        List<S3AccessGrantsWarmUpEntry> entries = new ArrayList<>();
+        entries.add(S3AccessGrantsWarmUpEntry.builder().bucket("test-bucket").prefix("denied/*").permission(Permission.READ).build());
+        entries.add(S3AccessGrantsWarmUpEntry.builder().bucket("test-bucket").permission(Permission.WRITE).build());
+        // When
+        CompletableFuture<Void> warmUp = accessGrantsPlugin.warmUp(entries, 1);
+        // Then
+        Assertions.assertThatThrownBy(warmUp::join).hasCauseInstanceOf(SdkClientException.class);
+        verify(identityProvider, times(2)).loadIdentity(any(ResolveIdentityRequest.class));
+    }
+
+    @Test
+    public void call_warm_up_with_fallback_enabled_reports_entries_that_could_not_be_loaded() throws Exception {
+        // Given
+        S3AccessGrantsPlugin accessGrantsPlugin = S3AccessGrantsPlugin.builder().enableFallback(true).build();
+        AwsCredentialsProvider credentialsProvider = StaticCredentialsProvider.create(AwsBasicCredentials.create("accessKey", "secretKey"));
+        StsAsyncClient stsAsyncClient = mock(StsAsyncClient.class);
+        doReturn(CompletableFuture.completedFuture(GetCallerIdentityResponse.builder().account("123456789012").build()))
+            .when(stsAsyncClient).getCallerIdentity(any(GetCallerIdentityRequest.class));
+        S3AccessGrantsCachedCredentialsProvider cache = mock(S3AccessGrantsCachedCredentialsProvider.class);
+        CompletableFuture<AwsCredentialsIdentity> failedGetDataAccess = new CompletableFuture<>();
+        failedGetDataAccess.completeExceptionally(S3ControlException.builder().statusCode(403).message("Access denied").build());
+        doReturn(failedGetDataAccess).when(cache).getDataAccess(any(), any(), any(), any(), any(), any(), any());
+        ConcurrentHashMap<Region, S3ControlAsyncClient> clientsCache = new ConcurrentHashMap<>();
+        clientsCache.put(Region.US_EAST_2, mock(S3ControlAsyncClient.class));
+        S3AccessGrantsIdentityProvider identityProvider = S3AccessGrantsIdentityProvider.builder().credentialsProvider(credentialsProvider)
+                .stsAsyncClient(stsAsyncClient).privilege(Privilege.DEFAULT).isCacheEnabled(true)
+                .s3ControlAsyncClientBuilder(mock(S3ControlAsyncClientBuilder.class)).cache(cache).enableFallback(true)
+                .metricsPublisher(null).clientsCache(clientsCache).overrideConfig(ClientOverrideConfiguration.builder().build()).build();
+        accessGrantsPlugin.addWarmUpTarget(identityProvider, credentialsProvider, Region.US_EAST_2);
+        ResolveIdentityRequest request = ResolveIdentityRequest.builder()
+                .putProperty(PREFIX_PROPERTY, "s3://test-bucket/*")
+                .putProperty(PERMISSION_PROPERTY, Permission.READ)
+                .putProperty(BUCKET_LOCATION_PROPERTY, Region.US_EAST_2)
+                .build();
+        // Then requests to S3 fall back to the credentials of the S3 Client
+        Assertions.assertThat(identityProvider.resolveIdentity(request).join().accessKeyId()).isEqualTo("accessKey");
+        // When
+        CompletableFuture<Void> warmUp = accessGrantsPlugin.warmUp(Collections.singletonList(
+            S3AccessGrantsWarmUpEntry.builder().bucket("test-bucket").permission(Permission.READ).build()));
+        // Then
+        Assertions.assertThatThrownBy(warmUp::join).hasCauseInstanceOf(SdkClientException.class)
+                  .hasRootCauseInstanceOf(S3ControlException.class);
+        verify(cache, times(2)).getDataAccess(any(), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    public void call_warm_up_loads_the_caches_once_per_credentials_provider_and_region() {
+        // Given
+        S3AccessGrantsPlugin accessGrantsPlugin = S3AccessGrantsPlugin.builder().build();
+        Object credentialsProvider = new Object();
+        S3AccessGrantsIdentityProvider firstIdentityProvider = mock(S3AccessGrantsIdentityProvider.class);
+        S3AccessGrantsIdentityProvider secondIdentityProvider = mock(S3AccessGrantsIdentityProvider.class);
+        S3AccessGrantsIdentityProvider otherRegionIdentityProvider = mock(S3AccessGrantsIdentityProvider.class);
+        accessGrantsPlugin.addWarmUpTarget(firstIdentityProvider, credentialsProvider, Region.US_EAST_2);
+        accessGrantsPlugin.addWarmUpTarget(secondIdentityProvider, credentialsProvider, Region.US_EAST_2);
+        accessGrantsPlugin.addWarmUpTarget(otherRegionIdentityProvider, credentialsProvider, Region.US_WEST_2);
+        CompletableFuture<AwsCredentialsIdentity> credentials = CompletableFuture.completedFuture(AwsCredentialsIdentity.create("accessKey", "secretKey"));
+        doReturn(credentials).when(firstIdentityProvider).loadIdentity(any(ResolveIdentityRequest.class));
+        doReturn(credentials).when(secondIdentityProvider).loadIdentity(any(ResolveIdentityRequest.class));
+        doReturn(credentials).when(otherRegionIdentityProvider).loadIdentity(any(ResolveIdentityRequest.class));
+        // When
+        CompletableFuture<Void> warmUp = accessGrantsPlugin.warmUp(Collections.singletonList(
+            S3AccessGrantsWarmUpEntry.builder().bucket("test-bucket").permission(Permission.READ).build()));
+        // Then the entries are loaded on the calling thread without an executor
+        Assertions.assertThat(warmUp).isDone();
+        // Targets are held weakly and have no order, either identity provider of the same region can be picked.
+        Assertions.assertThat(mockingDetails(firstIdentityProvider).getInvocations().size()
+                              + mockingDetails(secondIdentityProvider).getInvocations().size()).isEqualTo(1);
+        verify(otherRegionIdentityProvider, times(1)).loadIdentity(any(ResolveIdentityRequest.class));
+    }
+
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.awssdk.s3accessgrants.plugin;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import org.assertj.core.api.Assertions;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.core.SdkServiceClientConfiguration;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3ServiceClientConfiguration;
+import software.amazon.awssdk.services.s3.auth.scheme.S3AuthSchemeProvider;
+
+public class S3AccessGrantsSharedRuntimeTests {
+
+    @BeforeClass
+    public static void setUp() {
+        System.setProperty("aws.region", "us-east-2");
+    }
+
+    @Test
+    public void shared_runtime_returns_the_same_component_for_the_same_key() {
+        // Given
+        S3AccessGrantsSharedRuntime runtime = S3AccessGrantsSharedRuntime.create();
+        Object credentialsProvider = new Object();
+        // When
+        Object component = runtime.component("component", credentialsProvider, Region.US_EAST_2, Object::new);
+        // Then
+        Assertions.assertThat(runtime.component("component", credentialsProvider, Region.US_EAST_2, Object::new)).isSameAs(component);
+        Assertions.assertThat(runtime.component("component", new Object(), Region.US_EAST_2, Object::new)).isNotSameAs(component);
+        Assertions.assertThat(runtime.component("component", credentialsProvider, Region.US_WEST_2, Object::new)).isNotSameAs(component);
+        Assertions.assertThat(runtime.component("other", credentialsProvider, Region.US_EAST_2, Object::new)).isNotSameAs(component);
+    }
+
+    @Test
+    public void shared_runtime_is_closed_once_every_reference_is_released() throws Exception {
+        // Given
+        S3AccessGrantsSharedRuntime runtime = S3AccessGrantsSharedRuntime.create();
+        AutoCloseable client = mock(AutoCloseable.class);
+        runtime.closeOnShutdown(client);
+        S3AccessGrantsPlugin plugin = (S3AccessGrantsPlugin) S3AccessGrantsPlugin.builder().sharedRuntime(runtime).build();
+        Assertions.assertThat(runtime.references()).isEqualTo(2);
+        // When
+        runtime.close();
+        runtime.close();
+        // Then
+        Assertions.assertThat(runtime.references()).isEqualTo(1);
+        verify(client, never()).close();
+        // When
+        plugin.close();
+        plugin.close();
+        // Then
+        Assertions.assertThat(runtime.references()).isEqualTo(0);
+        verify(client, times(1)).close();
+    }
+
+    @Test
+    public void shared_runtime_closes_the_components_of_a_credentials_provider_once_no_plugin_uses_them() throws Exception {
+        // Given
+        S3AccessGrantsSharedRuntime runtime = S3AccessGrantsSharedRuntime.create();
+        S3AccessGrantsPlugin firstPlugin = (S3AccessGrantsPlugin) S3AccessGrantsPlugin.builder().sharedRuntime(runtime).build();
+        S3AccessGrantsPlugin secondPlugin = (S3AccessGrantsPlugin) S3AccessGrantsPlugin.builder().sharedRuntime(runtime).build();
+        Object credentialsProvider = new Object();
+        AutoCloseable client = mock(AutoCloseable.class);
+        Object component = runtime.component("component", credentialsProvider, Region.US_EAST_2, firstPlugin, () -> {
+            runtime.closeOnRelease(credentialsProvider, Region.US_EAST_2, client);
+            return new Object();
+        });
+        runtime.component("component", credentialsProvider, Region.US_EAST_2, secondPlugin, Object::new);
+        // When
+        firstPlugin.close();
+        // Then
+        verify(client, never()).close();
+        Assertions.assertThat(runtime.<Object>components("component")).containsExactly(component);
+        // When
+        secondPlugin.close();
+        // Then the runtime is still open but the components of the credentials provider are closed
+        Assertions.assertThat(runtime.references()).isEqualTo(1);
+        verify(client, times(1)).close();
+        Assertions.assertThat(runtime.<Object>components("component")).isEmpty();
+        Assertions.assertThat(runtime.component("component", credentialsProvider, Region.US_EAST_2, Object::new)).isNotSameAs(component);
+        runtime.close();
+    }
+
+    @Test
+    public void shared_runtime_cannot_be_used_once_closed() {
+        // Given
+        S3AccessGrantsSharedRuntime runtime = S3AccessGrantsSharedRuntime.create();
+        // When
+        runtime.close();
+        // Then
+        Assertions.assertThatThrownBy(() -> S3AccessGrantsPlugin.builder().sharedRuntime(runtime).build())
+                  .isInstanceOf(IllegalStateException.class);
+        Assertions.assertThatThrownBy(() -> runtime.component("component", Object::new))
+                  .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void plugins_with_a_shared_runtime_share_the_access_grants_cache() {
+        // Given
+        S3AccessGrantsSharedRuntime runtime = S3AccessGrantsSharedRuntime.create();
+        S3AccessGrantsPlugin firstPlugin = (S3AccessGrantsPlugin) S3AccessGrantsPlugin.builder().sharedRuntime(runtime).build();
+        S3AccessGrantsPlugin secondPlugin = (S3AccessGrantsPlugin) S3AccessGrantsPlugin.builder().sharedRuntime(runtime).build();
+        // When
+        firstPlugin.configureClient(s3ClientConfiguration());
+        Object accessGrantsCache = runtime.component("AccessGrantsCache", () -> null);
+        secondPlugin.configureClient(s3ClientConfiguration());
+        // Then
+        Assertions.assertThat(accessGrantsCache).isNotNull();
+        Assertions.assertThat(runtime.component("AccessGrantsCache", Object::new)).isSameAs(accessGrantsCache);
+        firstPlugin.close();
+        secondPlugin.close();
+        runtime.close();
+        Assertions.assertThat(runtime.references()).isEqualTo(0);
+    }
+
+    private SdkServiceClientConfiguration.Builder s3ClientConfiguration() {
+        return S3ServiceClientConfiguration.builder()
+                                           .authSchemeProvider(S3AuthSchemeProvider.defaultProvider())
+                                           .credentialsProvider(DefaultCredentialsProvider.create())
+                                           .region(Region.US_EAST_2);
+    }
+}